@@ -0,0 +1,144 @@
+package com.laytonsmith.benchmark;
+
+import com.laytonsmith.core.MethodScriptCompiler;
+import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.Static;
+import com.laytonsmith.core.environments.Environment;
+import com.laytonsmith.testing.StaticTest;
+
+/**
+ * The harness that all the benchmarks are run with. A task is run once to warm up,
+ * and then timed over a number of rounds, and the time per operation is printed.
+ * The benchmarks are not part of the test suite, they are run with the benchmark
+ * profile, see {@link Benchmarks}.
+ *
+ * @author lsmith
+ */
+public final class Benchmark {
+
+	/**
+	 * A unit of work to be timed. Only {@link #run()} is timed.
+	 */
+	public static abstract class Task {
+
+		/**
+		 * Called before every run, including the warm up.
+		 *
+		 * @throws Exception
+		 */
+		public void setUp() throws Exception {
+		}
+
+		public abstract void run() throws Exception;
+	}
+
+	/**
+	 * A group of related benchmarks.
+	 */
+	public static interface Suite {
+
+		/**
+		 * The name used to select the suite from the command line.
+		 *
+		 * @return
+		 */
+		public String getName();
+
+		public void run(Benchmark b) throws Exception;
+	}
+
+	private static Environment env = null;
+
+	private final String suite;
+	private int rounds = 10;
+
+	Benchmark(String suite) {
+		this.suite = suite;
+	}
+
+	/**
+	 * Sets the number of timed rounds for the following benchmarks in this suite.
+	 * The default is 10.
+	 *
+	 * @param rounds
+	 * @return
+	 */
+	public Benchmark setRounds(int rounds) {
+		this.rounds = rounds;
+		return this;
+	}
+
+	/**
+	 * Times the task, and prints the time per operation.
+	 *
+	 * @param name
+	 * @param operations The number of operations that each run of the task does.
+	 * @param unit What an operation is, for the report.
+	 * @param task
+	 * @return The average number of nanoseconds per operation.
+	 * @throws Exception
+	 */
+	public double time(String name, long operations, String unit, Task task) throws Exception {
+		task.setUp();
+		task.run();
+		long time = 0;
+		for (int round = 0; round < rounds; round++) {
+			task.setUp();
+			long start = System.nanoTime();
+			task.run();
+			time += System.nanoTime() - start;
+		}
+		double nanos = time / (double) (operations * rounds);
+		report(name, nanos, unit);
+		return nanos;
+	}
+
+	/**
+	 * Compiles the script, and times running it in the standalone environment.
+	 *
+	 * @param name
+	 * @param script
+	 * @param operations The number of operations that the script does.
+	 * @param unit What an operation is, for the report.
+	 * @return The average number of nanoseconds per operation.
+	 * @throws Exception
+	 */
+	public double timeScript(String name, String script, long operations, String unit) throws Exception {
+		final Environment env = Environment();
+		final ParseTree tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(script, null, true));
+		return time(name, operations, unit, new Task() {
+
+			@Override
+			public void run() throws Exception {
+				MethodScriptCompiler.execute(tree, env, null, null);
+			}
+		});
+	}
+
+	/**
+	 * Prints a result that was worked out by the benchmark itself, for instance the
+	 * difference between two timings.
+	 *
+	 * @param name
+	 * @param nanos
+	 * @param unit
+	 */
+	public void report(String name, double nanos, String unit) {
+		System.out.println(String.format("%-12s %-24s %12.1f ns/%s", suite, name, nanos, unit));
+	}
+
+	/**
+	 * Returns the standalone environment that scripts are run in, setting up the fake
+	 * server frontend the first time.
+	 *
+	 * @return
+	 * @throws Exception
+	 */
+	public static Environment Environment() throws Exception {
+		if (env == null) {
+			StaticTest.InstallFakeServerFrontend();
+			env = Static.GenerateStandaloneEnvironment();
+		}
+		return env;
+	}
+}
@@ -0,0 +1,59 @@
+package com.laytonsmith.benchmark;
+
+import com.laytonsmith.core.CallOverheadBenchmark;
+import com.laytonsmith.core.FunctionDispatchBenchmark;
+import com.laytonsmith.core.ProcedureCallBenchmark;
+import com.laytonsmith.core.ReturnCacheBenchmark;
+import com.laytonsmith.core.compiler.BytecodeCompilerBenchmark;
+import com.laytonsmith.core.constructs.AssociativeArrayBenchmark;
+import com.laytonsmith.persistence.DataSourceFilterBenchmark;
+import com.laytonsmith.persistence.SQLiteDataSourceBenchmark;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks. With the benchmark profile, src/benchmark/java is added to
+ * the test sources, and this is run instead of the tests:
+ * <pre>
+ * mvn -P benchmark test -Dbenchmarks=dispatch,procedures
+ * </pre>
+ * The argument is a comma separated list of suite names, or "all".
+ *
+ * @author lsmith
+ */
+public class Benchmarks {
+
+	private static final Benchmark.Suite[] SUITES = new Benchmark.Suite[]{
+		new FunctionDispatchBenchmark(),
+		new CallOverheadBenchmark(),
+		new ProcedureCallBenchmark(),
+		new ReturnCacheBenchmark(),
+		new BytecodeCompilerBenchmark(),
+		new AssociativeArrayBenchmark(),
+		new DataSourceFilterBenchmark(),
+		new SQLiteDataSourceBenchmark()
+	};
+
+	public static void main(String[] args) throws Exception {
+		List<String> known = new ArrayList<String>();
+		for (Benchmark.Suite suite : SUITES) {
+			known.add(suite.getName());
+		}
+		List<String> names = new ArrayList<String>();
+		for (String arg : args) {
+			names.addAll(Arrays.asList(arg.split(",")));
+		}
+		boolean all = names.isEmpty() || names.contains("all");
+		names.remove("all");
+		if (!known.containsAll(names)) {
+			names.removeAll(known);
+			throw new IllegalArgumentException("Unknown benchmarks: " + names + ", the benchmarks are: " + known);
+		}
+		for (Benchmark.Suite suite : SUITES) {
+			if (all || names.contains(suite.getName())) {
+				suite.run(new Benchmark(suite.getName()));
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.benchmark.Benchmark;
+
+/**
+ * Measures the overhead of a single function call in the interpreter, by
+ * comparing a loop that only calls a trivial function (is_proc) against an empty
+ * loop. The call is measured with a constant argument, with a variable argument,
+ * which has to be resolved before the call, and with a nested call as the argument.
+ *
+ * @author lsmith
+ */
+public class CallOverheadBenchmark implements Benchmark.Suite {
+
+	private static final int ITERATIONS = 100000;
+	private static final int CALLS = 10;
+
+	@Override
+	public String getName() {
+		return "calls";
+	}
+
+	@Override
+	public void run(Benchmark b) throws Exception {
+		double empty = b.timeScript("empty loop", loop(""), ITERATIONS * CALLS, "call");
+		report(b, "constant", "is_proc(1)", empty);
+		report(b, "variable", "is_proc(@i)", empty);
+		report(b, "nested", "is_proc(add(@i, 1))", empty);
+	}
+
+	private static void report(Benchmark b, String name, String call, double empty) throws Exception {
+		StringBuilder calls = new StringBuilder();
+		for (int i = 0; i < CALLS; i++) {
+			calls.append(call).append("\n");
+		}
+		double time = b.timeScript(name + " loop", loop(calls.toString()), ITERATIONS * CALLS, "call");
+		b.report(name + " call", time - empty, "call");
+	}
+
+	private static String loop(String body) {
+		return "for(assign(@i, 0), lt(@i, " + ITERATIONS + "), inc(@i),\n"
+				+ body
+				+ ")";
+	}
+}
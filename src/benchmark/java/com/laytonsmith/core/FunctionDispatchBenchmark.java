@@ -0,0 +1,57 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.benchmark.Benchmark;
+import com.laytonsmith.core.constructs.CFunction;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.functions.FunctionList;
+
+/**
+ * Runs a tight for loop through the interpreter, and reports the time per loop
+ * iteration. It also compares the per call cost of the dispatch that eval used
+ * to do for every function node (the procedure regex, and a lookup in the
+ * function list) against the function linked into the node by the compiler.
+ *
+ * @author lsmith
+ */
+public class FunctionDispatchBenchmark implements Benchmark.Suite {
+
+	private static final int ITERATIONS = 100000;
+	private static final int LOOKUPS = 1000000;
+
+	@Override
+	public String getName() {
+		return "dispatch";
+	}
+
+	@Override
+	public void run(Benchmark b) throws Exception {
+		b.timeScript("for loop", "assign(@sum, 0)\n"
+				+ "for(assign(@i, 0), lt(@i, " + ITERATIONS + "), inc(@i),\n"
+				+ "	assign(@sum, add(@sum, @i))\n"
+				+ ")", ITERATIONS, "iteration");
+
+		final CFunction node = new CFunction("add", Target.UNKNOWN);
+		b.time("lookup", LOOKUPS, "call", new Benchmark.Task() {
+
+			@Override
+			public void run() throws Exception {
+				for (int i = 0; i < LOOKUPS; i++) {
+					if (node.val().matches("^_[^_].*") || FunctionList.getFunction(node) == null) {
+						throw new Error("Function lookup failed");
+					}
+				}
+			}
+		});
+		b.time("linked", LOOKUPS, "call", new Benchmark.Task() {
+
+			@Override
+			public void run() throws Exception {
+				for (int i = 0; i < LOOKUPS; i++) {
+					if (node.isProcedure() || node.getFunction() == null) {
+						throw new Error("Function lookup failed");
+					}
+				}
+			}
+		});
+	}
+}
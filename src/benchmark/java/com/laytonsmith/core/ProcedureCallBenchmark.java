@@ -0,0 +1,58 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.benchmark.Benchmark;
+import com.laytonsmith.core.environments.Environment;
+import com.laytonsmith.core.environments.GlobalEnv;
+import java.util.HashMap;
+
+/**
+ * Defines a few hundred procedures, and then calls one of them in a loop, reporting
+ * the time per procedure call. Each call clones the environment, so this also reports
+ * the cost of the clone on its own, compared against copying the procs map, which is
+ * what every clone used to do.
+ *
+ * @author lsmith
+ */
+public class ProcedureCallBenchmark implements Benchmark.Suite {
+
+	private static final int PROCS = 500;
+	private static final int CALLS = 100000;
+	private static final int CLONES = 100000;
+
+	@Override
+	public String getName() {
+		return "procedures";
+	}
+
+	@Override
+	public void run(Benchmark b) throws Exception {
+		final Environment env = Benchmark.Environment();
+		StringBuilder script = new StringBuilder();
+		for (int i = 0; i < PROCS; i++) {
+			script.append("proc(_p").append(i).append(", @a, return(add(@a, ").append(i).append(")))\n");
+		}
+		MethodScriptCompiler.execute(MethodScriptCompiler.compile(MethodScriptCompiler.lex(script.toString(), null, true)), env, null, null);
+		b.timeScript("call", "assign(@sum, 0)\n"
+				+ "for(assign(@i, 0), lt(@i, " + CALLS + "), inc(@i),\n"
+				+ "	assign(@sum, _p" + (PROCS / 2) + "(@i))\n"
+				+ ")", CALLS, "call");
+		b.time("clone", CLONES, "op", new Benchmark.Task() {
+
+			@Override
+			public void run() throws Exception {
+				for (int i = 0; i < CLONES; i++) {
+					env.clone();
+				}
+			}
+		});
+		b.time("map copy", CLONES, "op", new Benchmark.Task() {
+
+			@Override
+			public void run() throws Exception {
+				for (int i = 0; i < CLONES; i++) {
+					new HashMap<String, Procedure>(env.getEnv(GlobalEnv.class).GetProcs());
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,53 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.benchmark.Benchmark;
+
+/**
+ * Compares calls to cacheable functions with and without the {@link ReturnCache}. An
+ * expensive function (sha1 of a long string) should be faster with the cache, and a
+ * cheap one (add) should cost the same either way, since its call sites find out that
+ * it isn't worth caching.
+ *
+ * @author lsmith
+ */
+public class ReturnCacheBenchmark implements Benchmark.Suite {
+
+	private static final int ITERATIONS = 10000;
+	private static final int CALLS = 10;
+
+	@Override
+	public String getName() {
+		return "returncache";
+	}
+
+	@Override
+	public void run(Benchmark b) throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			text.append("0123456789");
+		}
+		compare(b, "sha1", "assign(@s, '" + text + "')\n", "sha1(@s)");
+		compare(b, "add", "assign(@x, 5)\n", "add(@x, 1)");
+	}
+
+	private static void compare(Benchmark b, String name, String setUp, String call) throws Exception {
+		StringBuilder calls = new StringBuilder();
+		for (int i = 0; i < CALLS; i++) {
+			calls.append(call).append("\n");
+		}
+		String script = setUp
+				+ "for(assign(@i, 0), lt(@i, " + ITERATIONS + "), inc(@i),\n"
+				+ calls
+				+ ")";
+		double cached;
+		double uncached;
+		try {
+			ReturnCache.SetEnabled(false);
+			uncached = b.timeScript(name + " uncached", script, ITERATIONS * CALLS, "call");
+		} finally {
+			ReturnCache.SetEnabled(true);
+		}
+		cached = b.timeScript(name + " cached", script, ITERATIONS * CALLS, "call");
+		b.report(name + " saved", uncached - cached, "call");
+	}
+}
@@ -0,0 +1,54 @@
+package com.laytonsmith.core.compiler;
+
+import com.laytonsmith.benchmark.Benchmark;
+import com.laytonsmith.core.MethodScriptCompiler;
+import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.environments.Environment;
+
+/**
+ * Runs the scripts from {@link BytecodeCompilerTest} through the interpreter, and then
+ * again with hot code compiled by the {@link BytecodeCompiler}, and reports the time
+ * per run of the script for both. Each script is run enough times that its nodes pass
+ * the default threshold during the warm up.
+ *
+ * @author lsmith
+ */
+public class BytecodeCompilerBenchmark implements Benchmark.Suite {
+
+	private static final int RUNS = 1000;
+
+	@Override
+	public String getName() {
+		return "bytecode";
+	}
+
+	@Override
+	public void run(Benchmark b) throws Exception {
+		String[] names = new String[]{"loop", "special exec", "procedures", "exceptions", "variables"};
+		for (int i = 0; i < BytecodeCompilerTest.SCRIPTS.length; i++) {
+			String script = BytecodeCompilerTest.SCRIPTS[i];
+			try {
+				BytecodeCompiler.SetEnabled(false);
+				time(b, names[i] + " interpreted", script);
+				BytecodeCompiler.SetEnabled(true);
+				time(b, names[i] + " compiled", script);
+			} finally {
+				BytecodeCompiler.ReloadPreferences();
+			}
+		}
+	}
+
+	private static void time(Benchmark b, String name, String script) throws Exception {
+		final Environment env = Benchmark.Environment();
+		final ParseTree tree = MethodScriptCompiler.compile(MethodScriptCompiler.lex(script, null, true));
+		b.time(name, RUNS, "run", new Benchmark.Task() {
+
+			@Override
+			public void run() throws Exception {
+				for (int i = 0; i < RUNS; i++) {
+					MethodScriptCompiler.execute(tree, env, null, null);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,114 @@
+package com.laytonsmith.core.constructs;
+
+import com.laytonsmith.benchmark.Benchmark;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the throughput of {@link AssociativeArray} against the TreeMap that
+ * associative arrays used to be stored in, for getting, setting and iterating
+ * over string and integer keys.
+ *
+ * @author lsmith
+ */
+public class AssociativeArrayBenchmark implements Benchmark.Suite {
+
+	private static final int SIZE = 10000;
+	private static final Construct VALUE = new CString("value", Target.UNKNOWN);
+
+	/**
+	 * The comparator the TreeMap used.
+	 */
+	private static final Comparator<String> OLD_COMPARATOR = new Comparator<String>() {
+
+		@Override
+		public int compare(String o1, String o2) {
+			if (o1.matches(".*[^0-9\\.]+.*") || o2.matches(".*[^0-9\\.]+.*")) {
+				return o1.compareTo(o2);
+			}
+			try {
+				int i1 = Integer.parseInt(o1);
+				int i2 = Integer.parseInt(o2);
+				return new Integer(i1).compareTo(new Integer(i2));
+			} catch (NumberFormatException e) {
+				try {
+					double d1 = Double.parseDouble(o1);
+					double d2 = Double.parseDouble(o2);
+					return new Double(d1).compareTo(new Double(d2));
+				} catch (NumberFormatException ee) {
+					return o1.compareTo(o2);
+				}
+			}
+		}
+	};
+
+	@Override
+	public String getName() {
+		return "arrays";
+	}
+
+	@Override
+	public void run(Benchmark b) throws Exception {
+		b.setRounds(20);
+		String[] stringKeys = new String[SIZE];
+		String[] intKeys = new String[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			stringKeys[i] = "key" + i;
+			intKeys[i] = Integer.toString(i * 7);
+		}
+		for (boolean tree : new boolean[]{true, false}) {
+			run(b, tree, "string keys", stringKeys);
+			run(b, tree, "int keys", intKeys);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void run(Benchmark b, final boolean tree, String name, final String[] keys) throws Exception {
+		name = (tree ? "TreeMap " : "AssociativeArray ") + name;
+		final Map<String, Construct>[] map = new Map[1];
+		b.time(name + " set", keys.length, "op", new Benchmark.Task() {
+
+			@Override
+			public void setUp() {
+				map[0] = create(tree);
+			}
+
+			@Override
+			public void run() {
+				for (String key : keys) {
+					map[0].put(key, VALUE);
+				}
+			}
+		});
+		b.time(name + " get", keys.length, "op", new Benchmark.Task() {
+
+			@Override
+			public void run() {
+				for (String key : keys) {
+					if (map[0].get(key) == null) {
+						throw new Error();
+					}
+				}
+			}
+		});
+		b.time(name + " iterate", keys.length, "op", new Benchmark.Task() {
+
+			@Override
+			public void run() {
+				for (Map.Entry<String, Construct> e : map[0].entrySet()) {
+					if (e.getValue() == null) {
+						throw new Error();
+					}
+				}
+			}
+		});
+	}
+
+	private static Map<String, Construct> create(boolean tree) {
+		if (tree) {
+			return new TreeMap<String, Construct>(OLD_COMPARATOR);
+		}
+		return new AssociativeArray();
+	}
+}
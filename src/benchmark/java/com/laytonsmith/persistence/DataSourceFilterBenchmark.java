@@ -0,0 +1,105 @@
+package com.laytonsmith.persistence;
+
+import com.laytonsmith.benchmark.Benchmark;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Routes 10,000 keys through a filter configuration with 200 filters, and compares
+ * that against matching each key against every filter's regex, which is how
+ * routing used to be done. Every key is distinct, and each round uses a new
+ * filter, so the lookup cache doesn't help.
+ *
+ * @author lsmith
+ */
+public class DataSourceFilterBenchmark implements Benchmark.Suite {
+
+	private static final int FILTERS = 200;
+	private static final int KEYS = 10000;
+
+	@Override
+	public String getName() {
+		return "filters";
+	}
+
+	@Override
+	public void run(Benchmark b) throws Exception {
+		Random r = new Random(0);
+		final StringBuilder config = new StringBuilder();
+		List<String> filters = new ArrayList<String>();
+		for (int i = 0; i < FILTERS; i++) {
+			String filter;
+			switch (i % 4) {
+				case 0:
+					filter = "storage.plugin" + i + ".**";
+					break;
+				case 1:
+					filter = "storage.players.*.stat" + i;
+					break;
+				case 2:
+					filter = "storage.*.group" + i + ".*";
+					break;
+				default:
+					filter = "storage.world" + i + ".**.data";
+					break;
+			}
+			filters.add(filter);
+			config.append(filter).append("=yml://file").append(i).append(".yml\n");
+		}
+		config.append("**=yml://default.yml\n");
+		final List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < KEYS; i++) {
+			int f = r.nextInt(FILTERS);
+			switch (f % 4) {
+				case 0:
+					keys.add("storage.plugin" + f + ".key" + i);
+					break;
+				case 1:
+					keys.add("storage.players.player" + i + ".stat" + f);
+					break;
+				case 2:
+					keys.add("storage.x" + i + ".group" + f + ".y");
+					break;
+				default:
+					keys.add("storage.world" + f + ".region" + i + ".chunk.data");
+					break;
+			}
+		}
+
+		b.time("trie", KEYS, "lookup", new Benchmark.Task() {
+
+			private DataSourceFilter filter;
+
+			@Override
+			public void setUp() throws Exception {
+				filter = new DataSourceFilter(config.toString(), new URI("default"));
+			}
+
+			@Override
+			public void run() throws Exception {
+				for (String key : keys) {
+					filter.getConnection(key);
+				}
+			}
+		});
+
+		final List<Pattern> patterns = new ArrayList<Pattern>();
+		for (String filter : filters) {
+			patterns.add(Pattern.compile(DataSourceFilter.toRegex(filter) + "$"));
+		}
+		b.time("regex", KEYS, "lookup", new Benchmark.Task() {
+
+			@Override
+			public void run() throws Exception {
+				for (String key : keys) {
+					for (Pattern p : patterns) {
+						p.matcher(key).matches();
+					}
+				}
+			}
+		});
+	}
+}
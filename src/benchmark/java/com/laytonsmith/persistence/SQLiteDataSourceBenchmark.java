@@ -0,0 +1,95 @@
+package com.laytonsmith.persistence;
+
+import com.laytonsmith.PureUtilities.Common.FileUtil;
+import com.laytonsmith.PureUtilities.DaemonManager;
+import com.laytonsmith.benchmark.Benchmark;
+import com.laytonsmith.persistence.io.ConnectionMixinFactory;
+import java.io.File;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Compares the throughput of the SQLite data source against the old behavior of
+ * opening a new connection and preparing a new statement for every operation.
+ *
+ * @author lsmith
+ */
+public class SQLiteDataSourceBenchmark implements Benchmark.Suite {
+
+	private static final int OPERATIONS = 2000;
+
+	@Override
+	public String getName() {
+		return "sqlite";
+	}
+
+	@Override
+	public void run(Benchmark b) throws Exception {
+		b.setRounds(3);
+		File folder = new File("benchmark");
+		try {
+			ConnectionMixinFactory.ConnectionMixinOptions options = new ConnectionMixinFactory.ConnectionMixinOptions();
+			options.setWorkingDirectory(new File("."));
+			final DaemonManager dm = new DaemonManager();
+			final DataSource ds = DataSourceFactory.GetDataSource(new URI("sqlite://benchmark/pooled.db"), options);
+			b.time("pooled set", OPERATIONS, "op", new Benchmark.Task() {
+
+				@Override
+				public void run() throws Exception {
+					for (int i = 0; i < OPERATIONS; i++) {
+						ds.set(dm, new String[]{"player", "p" + i}, "value" + i);
+					}
+				}
+			});
+			b.time("pooled get", OPERATIONS, "op", new Benchmark.Task() {
+
+				@Override
+				public void run() throws Exception {
+					for (int i = 0; i < OPERATIONS; i++) {
+						ds.get(new String[]{"player", "p" + i});
+					}
+				}
+			});
+
+			Class.forName(org.sqlite.JDBC.class.getName());
+			final String db = new File(folder, "unpooled.db").getPath();
+			Connection c = DriverManager.getConnection("jdbc:sqlite:" + db);
+			c.createStatement().executeUpdate("CREATE TABLE IF NOT EXISTS `persistance` (`key` TEXT PRIMARY KEY, `value` TEXT)");
+			c.close();
+			b.time("unpooled set", OPERATIONS, "op", new Benchmark.Task() {
+
+				@Override
+				public void run() throws Exception {
+					for (int i = 0; i < OPERATIONS; i++) {
+						Connection c = DriverManager.getConnection("jdbc:sqlite:" + db);
+						PreparedStatement ps = c.prepareStatement("INSERT OR REPLACE INTO `persistance` (`key`, `value`) VALUES (?, ?)");
+						ps.setString(1, "player.p" + i);
+						ps.setString(2, "value" + i);
+						ps.executeUpdate();
+						c.close();
+					}
+				}
+			});
+			b.time("unpooled get", OPERATIONS, "op", new Benchmark.Task() {
+
+				@Override
+				public void run() throws Exception {
+					for (int i = 0; i < OPERATIONS; i++) {
+						Connection c = DriverManager.getConnection("jdbc:sqlite:" + db);
+						PreparedStatement ps = c.prepareStatement("SELECT `value` FROM `persistance` WHERE `key`=?");
+						ps.setString(1, "player.p" + i);
+						ResultSet rs = ps.executeQuery();
+						rs.next();
+						c.close();
+					}
+				}
+			});
+		} finally {
+			SQLiteDataSource.CloseConnections();
+			FileUtil.recursiveDelete(folder);
+		}
+	}
+}
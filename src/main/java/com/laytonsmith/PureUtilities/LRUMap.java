@@ -0,0 +1,43 @@
+package com.laytonsmith.PureUtilities;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An LRUMap is a map with a maximum size. Once the map is full, adding a new
+ * entry evicts the entry that was least recently accessed. This is useful for
+ * caches that would otherwise grow without bound. Like LinkedHashMap, this
+ * class is not threadsafe, so external synchronization is required if it is
+ * used from multiple threads.
+ *
+ * @author lsmith
+ */
+public class LRUMap<K, V> extends LinkedHashMap<K, V> {
+
+	private final int maxSize;
+
+	/**
+	 * Creates a new LRUMap.
+	 *
+	 * @param maxSize The maximum number of entries that the map will hold
+	 * before it starts evicting the least recently used ones.
+	 */
+	public LRUMap(int maxSize) {
+		super(16, 0.75f, true);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the maximum number of entries this map will hold.
+	 *
+	 * @return
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+		return size() > maxSize;
+	}
+}
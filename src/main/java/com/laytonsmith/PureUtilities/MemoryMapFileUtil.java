@@ -1,9 +1,14 @@
 
 package com.laytonsmith.PureUtilities;
 
-import com.laytonsmith.PureUtilities.Common.FileUtil;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -15,15 +20,22 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Writes a file in the background, on behalf of an in memory model. When the model
+ * changes, {@link #mark(DaemonManager)} is called, and some time later, the
+ * data is grabbed from the model and written out. Changes that happen while waiting
+ * for the write delay to pass are batched into a single write. Writes are atomic:
+ * the data is written to a temporary file next to the real one, forced to disk,
+ * and then moved over the real file, so a crash mid write leaves either the old
+ * file or the new file, never a partially written one.
  *
  * @author Layton
  */
 public class MemoryMapFileUtil {
 	private static Map<String, MemoryMapFileUtil> instances = new HashMap<String, MemoryMapFileUtil>();
 	/**
-	 * The minimum delay between FS writes. In milliseconds.
+	 * The default minimum delay between FS writes. In milliseconds.
 	 */
-	private static final int WRITE_DELAY = 250;
+	public static final int DEFAULT_WRITE_DELAY = 250;
 	
 	public static synchronized MemoryMapFileUtil getInstance(File f, DataGrabber grabber) throws IOException{
 		String s = f.getCanonicalPath();
@@ -45,66 +57,69 @@ public class MemoryMapFileUtil {
 	private String file;
 	private DataGrabber grabber;
 	private boolean modelDirty = false;
-	private boolean fileDirty = false;
 	private boolean running = false;
 	private long lastWrite = 0;
+	private volatile int writeDelay = DEFAULT_WRITE_DELAY;
+	/**
+	 * Held while writing the file, so that the background writer and {@link #writeNow()}
+	 * don't write at the same time. This is always acquired before the lock on this
+	 * object, never after.
+	 */
+	private final Object writeLock = new Object();
 	private ExecutorService service;
 	private MemoryMapFileUtil(File file, DataGrabber grabber) throws IOException{
 		this.file = file.getCanonicalPath();
 		this.grabber = grabber;
 	}
+
+	/**
+	 * Sets the minimum delay between writes, in milliseconds. Changes made within
+	 * this window are batched into a single write. A longer delay means fewer writes,
+	 * but more data is lost if the process dies before the write happens.
+	 * @param writeDelay
+	 */
+	public void setWriteDelay(int writeDelay){
+		this.writeDelay = Math.max(0, writeDelay);
+	}
+
+	/**
+	 * Returns the minimum delay between writes, in milliseconds.
+	 * @return
+	 */
+	public int getWriteDelay(){
+		return writeDelay;
+	}
 	
 	private void run(){
 		try{
-			synchronized(this){
-				running = true;
-			}
 			while(true){
 				//We don't want to write out files too frequently, so we want to check when our last write action was,
 				//and delay some if it was too recent.
 				long lastWriteDelta = System.currentTimeMillis() - lastWrite;
-				if(lastWriteDelta < WRITE_DELAY){
+				if(lastWriteDelta < writeDelay){
 					try {
-						Thread.sleep(lastWriteDelta);
+						Thread.sleep(writeDelay - lastWriteDelta);
 					} catch (InterruptedException ex) {}
 				}
-//				File temp = null;
 				try {
-					synchronized(this){
-						if(!modelDirty && !fileDirty){
-							return;
+					synchronized(writeLock){
+						byte[] data;
+						synchronized(this){
+							if(!modelDirty){
+								//Setting running to false while holding the lock guarantees that a
+								//mark that happens after this point will start a new writer.
+								running = false;
+								return;
+							}
+							data = grabber.getData();
+							modelDirty = false;
 						}
+						write(data);
 					}
-//					temp = File.createTempFile("MemoryMapFile", ".tmp");
-					File permanent = new File(file);
-					byte [] data; 
-					synchronized(this){
-						data = grabber.getData();
-						modelDirty = false;
-						fileDirty = true;
-					}
-					
-					synchronized(this){
-						FileUtil.write(data, permanent, FileUtil.OVERWRITE, true);
-						fileDirty = false;
-					}
-//					synchronized(this){
-//						if(FileUtility.move(temp, permanent)){
-//							//If and only if the file was moved, do we want to clear the dirty flag.
-//							fileDirty = false;
-//							modelDirty = false;
-//							lastWrite = System.currentTimeMillis();
-//						} else {
-//							System.out.println("Could not move tmp file.");
-//						}
-//					}
 				} catch (IOException ex) {
 					Logger.getLogger(MemoryMapFileUtil.class.getName()).log(Level.SEVERE, null, ex);
 				} finally {
-//					if(temp != null){
-//						temp.delete();
-//						temp.deleteOnExit();
-//					}
+					lastWrite = System.currentTimeMillis();
 				}
 			}
 		} finally{
@@ -113,6 +128,51 @@ public class MemoryMapFileUtil {
 			}
 		}
 	}
+
+	/**
+	 * Writes the data out atomically. The data is written to a temporary file through
+	 * a FileChannel, forced to disk, then moved over the real file. The channel writes
+	 * straight from the data array, so no extra copies of the data are made. (The temporary
+	 * file isn't memory mapped, since a mapped file can't be moved or deleted on some
+	 * platforms until the mapping is garbage collected.)
+	 */
+	private void write(byte[] data) throws IOException {
+		File permanent = new File(file);
+		File temp = new File(file + ".tmp");
+		FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+		try {
+			Files.move(temp.toPath(), permanent.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(AtomicMoveNotSupportedException e){
+			Files.move(temp.toPath(), permanent.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Writes the data out immediately, on the calling thread, rather than waiting for
+	 * the background writer. When this returns, the data is on disk.
+	 * @throws IOException
+	 */
+	public void writeNow() throws IOException {
+		synchronized(writeLock){
+			byte[] data;
+			synchronized(this){
+				data = grabber.getData();
+				modelDirty = false;
+			}
+			write(data);
+			lastWrite = System.currentTimeMillis();
+		}
+	}
 	
 	/**
 	 * Marks the data as dirty. This also triggers the writer to start if it isn't already
@@ -122,8 +182,9 @@ public class MemoryMapFileUtil {
 	 */
 	public void mark(final DaemonManager dm){
 		synchronized(this){
-			modelDirty = fileDirty = true;
+			modelDirty = true;
 			if(!running){
+				running = true;
 				if(dm != null){
 					dm.activateThread(null);
 				}
@@ -157,14 +218,6 @@ public class MemoryMapFileUtil {
 												return t;
 											}
 										});
-//			service = Executors.newSingleThreadExecutor(new ThreadFactory() {
-//
-//				public Thread newThread(Runnable r) {
-//					Thread t = new Thread(r, "MemoryMapWriter-" + file);
-//					t.setPriority(Thread.MIN_PRIORITY);
-//					return t;
-//				}
-//			});
 		}
 		return service;
 	}
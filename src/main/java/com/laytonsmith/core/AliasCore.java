@@ -9,6 +9,7 @@ import com.laytonsmith.abstraction.StaticLayer;
 import com.laytonsmith.abstraction.enums.MCChatColor;
 import com.laytonsmith.commandhelper.CommandHelperFileLocations;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
+import com.laytonsmith.core.compiler.BytecodeCompiler;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.environments.CommandHelperEnvironment;
 import com.laytonsmith.core.environments.Environment;
@@ -27,7 +28,10 @@ import com.laytonsmith.core.profiler.ProfilePoint;
 import com.laytonsmith.core.profiler.Profiler;
 import com.laytonsmith.database.Profiles;
 import com.laytonsmith.persistence.MemoryDataSource;
+import com.laytonsmith.persistence.MySQLDataSource;
 import com.laytonsmith.persistence.PersistenceNetwork;
+import com.laytonsmith.persistence.RedisDataSource;
+import com.laytonsmith.persistence.SQLiteDataSource;
 import com.laytonsmith.persistence.io.ConnectionMixinFactory;
 import com.sk89q.util.StringUtil;
 import java.io.BufferedReader;
@@ -385,14 +389,45 @@ public class AliasCore {
 				parent.profiler = new Profiler(MethodScriptFileLocations.getDefault().getProfilerConfigFile());
 			}
 			if (parent.persistenceNetwork == null || reloadPersistenceConfig) {
+				if (parent.persistenceNetwork != null) {
+					try {
+						parent.persistenceNetwork.close();
+					} catch (Exception ex) {
+						Logger.getLogger(AliasCore.class.getName()).log(Level.SEVERE, "Could not write buffered persistence values", ex);
+					}
+				}
 				MemoryDataSource.ClearDatabases();
+				SQLiteDataSource.CloseConnections();
+				MySQLDataSource.ClosePools();
+				RedisDataSource.ClosePools();
 				//PacketJumper.startup();
 				ConnectionMixinFactory.ConnectionMixinOptions options = new ConnectionMixinFactory.ConnectionMixinOptions();
 				options.setWorkingDirectory(MethodScriptFileLocations.getDefault().getConfigDirectory());
 				parent.persistenceNetwork = new PersistenceNetwork(MethodScriptFileLocations.getDefault().getPersistenceConfig(),
 						new URI("sqlite:/" + MethodScriptFileLocations.getDefault().getDefaultPersistenceDBFile()
 						.getCanonicalFile().toURI().getRawSchemeSpecificPart().replace("\\", "/")), options);
+				//Reloads happen on the main thread, so async data sources may not be used synchronously from this thread
+				parent.persistenceNetwork.setMainThread(Thread.currentThread());
 			}
+			final PersistenceNetwork network = parent.persistenceNetwork;
+			StaticLayer.GetConvertor().addShutdownHook(new Runnable() {
+
+				@Override
+				public void run() {
+					//Let any queued background function calls finish first, since they may still write values
+					try {
+						InstantReturnExecutor.drain(10000);
+					} catch (InterruptedException ex) {
+						//Carry on with the flush anyways
+					}
+					//Write out any buffered values before the server stops, or the network is replaced
+					try {
+						network.flush();
+					} catch (Exception ex) {
+						Logger.getLogger(AliasCore.class.getName()).log(Level.SEVERE, "Could not write buffered persistence values", ex);
+					}
+				}
+			});
 			GlobalEnv gEnv;
 			try {
 				gEnv = new GlobalEnv(parent.executionQueue, parent.profiler, parent.persistenceNetwork, parent.permissionsResolver,
@@ -441,6 +476,12 @@ public class AliasCore {
 
 			if (!Prefs.isInitialized() || reloadPreferences) {
 				Prefs.init(prefFile);
+				BytecodeCompiler.ReloadPreferences();
+				try {
+					InstantReturnExecutor.ReloadPreferences();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
 			}
 
 			if (reloadScripts) {
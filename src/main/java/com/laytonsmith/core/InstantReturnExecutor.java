@@ -0,0 +1,266 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.PureUtilities.DaemonManager;
+import com.laytonsmith.core.constructs.CBoolean;
+import com.laytonsmith.core.constructs.CDouble;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CNull;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.CVoid;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.environments.Environment;
+import com.laytonsmith.core.environments.GlobalEnv;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.exceptions.ProgramFlowManipulationException;
+import com.laytonsmith.core.functions.Function;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs functions that declare {@link Optimizable.OptimizationOption#INSTANT_RETURN}.
+ * Instead of being run in place, these functions are queued up, and the script
+ * immediately continues with void as the return value. The queued functions are run
+ * on a single worker thread, so they still run in the order they were called in,
+ * relative to each other, but not relative to the functions that are run in place.
+ * For instance, the output of a sys_out may appear after the output of a console or
+ * msg call that the script made later.
+ * <p>
+ * The function is run after the script has moved on, so it must not see any changes
+ * that the script makes to the arguments in the meantime. Only calls whose arguments
+ * are all immutable values (strings, numbers, booleans, null and void) are queued.
+ * Calls with any other arguments, such as arrays, are run in place.
+ * <p>
+ * The queue is bounded, its size is set with the instant-return-queue-size preference.
+ * If the queue is full, the script blocks until there is room, so a script that calls
+ * these functions faster than they can run is slowed down to match, rather than
+ * running out of memory. Each queued call keeps the script's DaemonManager active
+ * until the call has run, so anything waiting for the script's threads also waits
+ * for the queue. At JVM shutdown, the queue is drained before the worker is stopped.
+ * When the preferences are reloaded, the worker is drained and stopped the same way,
+ * and a new one is started with the new queue size on the next call.
+ *
+ * @author lsmith
+ */
+public final class InstantReturnExecutor {
+
+	private InstantReturnExecutor() {
+	}
+
+	/**
+	 * The queue size used if the preferences aren't available.
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+	/**
+	 * The maximum number of seconds to wait for the queue to drain at shutdown.
+	 */
+	private static final int SHUTDOWN_TIMEOUT = 10;
+
+	private static ThreadPoolExecutor executor = null;
+	private static boolean shutdownHookAdded = false;
+
+	/**
+	 * Returns true if calls to this function may be run on the worker thread. That is
+	 * the case if it declares INSTANT_RETURN, and isn't required to run on the main
+	 * server thread.
+	 *
+	 * @param f
+	 * @return
+	 */
+	public static boolean IsInstantReturn(Function f) {
+		return f instanceof Optimizable
+				&& ((Optimizable) f).optimizationOptions().contains(Optimizable.OptimizationOption.INSTANT_RETURN)
+				&& !Boolean.FALSE.equals(f.runAsync());
+	}
+
+	/**
+	 * Queues up the function to be run with the given arguments, and returns void
+	 * straight away. If any of the arguments could be changed by the script before the
+	 * function is run, or the executor has been shut down, the function is run in place
+	 * instead.
+	 *
+	 * @param f
+	 * @param t
+	 * @param env
+	 * @param args The already resolved arguments
+	 * @return
+	 */
+	public static Construct exec(final Function f, final Target t, final Environment env, final Construct... args) {
+		for (Construct arg : args) {
+			if (!IsImmutable(arg)) {
+				return f.exec(t, env, args);
+			}
+		}
+		ThreadPoolExecutor e = getExecutor();
+		final DaemonManager dm = env.getEnv(GlobalEnv.class).GetDaemonManager();
+		dm.activateThread(null);
+		try {
+			e.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						f.exec(t, env, args);
+					} catch (ConfigRuntimeException ex) {
+						ConfigRuntimeException.React(ex, env);
+					} catch (ProgramFlowManipulationException ex) {
+						//There is nothing left in the script to manipulate
+					} catch (Throwable ex) {
+						Logger.getLogger(InstantReturnExecutor.class.getName()).log(Level.SEVERE,
+								"Error while running " + f.getName() + " in the background", ex);
+					} finally {
+						dm.deactivateThread(null);
+					}
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			dm.deactivateThread(null);
+			return f.exec(t, env, args);
+		}
+		return new CVoid(t);
+	}
+
+	/**
+	 * Returns true if the value can't be changed once it has been created. These are
+	 * exact class checks, since a subclass may add mutable state.
+	 */
+	private static boolean IsImmutable(Construct c) {
+		Class<?> type = c.getClass();
+		return type == CString.class || type == CInt.class || type == CDouble.class
+				|| type == CBoolean.class || type == CNull.class || type == CVoid.class;
+	}
+
+	/**
+	 * Blocks until everything queued so far has run, or the timeout expires.
+	 *
+	 * @param timeout The maximum number of milliseconds to wait
+	 * @return True if the queue was drained, false if the timeout expired first.
+	 * @throws InterruptedException
+	 */
+	public static boolean drain(long timeout) throws InterruptedException {
+		ThreadPoolExecutor e;
+		synchronized (InstantReturnExecutor.class) {
+			e = executor;
+		}
+		if (e == null || e.isShutdown()) {
+			return true;
+		}
+		try {
+			//The worker runs things in order, so once this has run, so has everything before it
+			e.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					//Nothing to do
+				}
+			}).get(timeout, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (ExecutionException ex) {
+			return true;
+		} catch (TimeoutException ex) {
+			return false;
+		} catch (RejectedExecutionException ex) {
+			//Shut down while we were waiting, which also drains the queue
+			return true;
+		}
+	}
+
+	/**
+	 * Stops accepting new calls, and waits for the queued calls to finish. Calls made
+	 * after this are run in place.
+	 *
+	 * @throws InterruptedException
+	 */
+	public static void shutdown() throws InterruptedException {
+		ThreadPoolExecutor e;
+		synchronized (InstantReturnExecutor.class) {
+			e = executor;
+		}
+		shutdown(e);
+	}
+
+	/**
+	 * Drains and stops the worker, so that the next call starts a new one, with the
+	 * instant-return-queue-size preference read again. This should be called whenever
+	 * the preferences are reloaded. Calls that are made while the old worker is being
+	 * stopped are run in place.
+	 *
+	 * @throws InterruptedException
+	 */
+	public static void ReloadPreferences() throws InterruptedException {
+		ThreadPoolExecutor e;
+		synchronized (InstantReturnExecutor.class) {
+			e = executor;
+			executor = null;
+		}
+		shutdown(e);
+	}
+
+	private static void shutdown(ThreadPoolExecutor e) throws InterruptedException {
+		if (e == null) {
+			return;
+		}
+		e.shutdown();
+		if (!e.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+			Logger.getLogger(InstantReturnExecutor.class.getName()).log(Level.WARNING,
+					"Gave up waiting for " + e.getQueue().size() + " queued background function calls to finish");
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			int queueSize = DEFAULT_QUEUE_SIZE;
+			if (Prefs.isInitialized()) {
+				queueSize = Prefs.InstantReturnQueueSize();
+			}
+			executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "InstantReturnExecutor");
+					t.setDaemon(true);
+					return t;
+				}
+			}, new RejectedExecutionHandler() {
+
+				@Override
+				public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+					if (e.isShutdown()) {
+						throw new RejectedExecutionException();
+					}
+					//The queue is full, so wait for room. This is the back pressure on the script.
+					try {
+						e.getQueue().put(r);
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						throw new RejectedExecutionException(ex);
+					}
+				}
+			});
+		}
+		if (!shutdownHookAdded) {
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						shutdown();
+					} catch (InterruptedException ex) {
+						//Shutting down anyways
+					}
+				}
+			}, "InstantReturnExecutor-Shutdown"));
+			shutdownHookAdded = true;
+		}
+		return executor;
+	}
+}
@@ -1321,6 +1321,8 @@ public final class MethodScriptCompiler {
 		Function func;
 		try {
 			func = (Function) FunctionList.getFunction(cFunction);
+			//Link the node to the function now, so it doesn't need to be looked up at runtime
+			cFunction.setFunction(func);
 		} catch (ConfigCompileException e) {
 			func = null;
 		}
@@ -1532,6 +1534,11 @@ public final class MethodScriptCompiler {
 
 				//If the result is null, it was just a check, it can't optimize further.
 				if (result != null) {
+					if (result instanceof CInt && result.getTarget() != tree.getData().getTarget()) {
+						//Probably one of the shared instances from CInt.GetCInt, but this one goes
+						//into the tree, so it gets its own copy, with the right target.
+						result = new CInt(((CInt) result).getInt(), tree.getData().getTarget());
+					}
 					result.setWasIdentifier(tree.getData().wasIdentifier());
 					tree.setData(result);
 					tree.removeChildren();
@@ -48,9 +48,14 @@ public interface Optimizable extends Function {
 		 * not need to be ordered, this can be selected, and the function will
 		 * be run on another thread. Note that this will only be valid if a
 		 * function also can be run async. This is a runtime optimization.
+		 * These calls stay in order relative to each other, but not relative to
+		 * other functions, and they are only moved to the other thread if all
+		 * their arguments are immutable, see {@link InstantReturnExecutor}.
 		 */
 		INSTANT_RETURN("Some functions can be run async, and there is no benefit for it to wait around for the operation to finish."
-				+ " For instance, using sys_out() does not need to wait for the IO to flush before returning control to the script.", CHVersion.V3_3_1),
+				+ " For instance, using sys_out() does not need to wait for the IO to flush before returning control to the script."
+				+ " These calls still happen in the order they were made, relative to each other, but not relative to other"
+				+ " functions, so for instance, the output of sys_out() may appear after the output of a later console() call.", CHVersion.V3_3_1),
 		/**
 		 * If a function can do some amount of optimization at compile time, but
 		 * can't simply run the exec() function directly, this can be selected,
@@ -1,6 +1,8 @@
 
 package com.laytonsmith.core;
 
+import com.laytonsmith.core.compiler.BytecodeCompiler;
+import com.laytonsmith.core.compiler.CompiledTree;
 import com.laytonsmith.core.compiler.FileOptions;
 import com.laytonsmith.core.constructs.CFunction;
 import com.laytonsmith.core.constructs.CString;
@@ -79,6 +81,9 @@ public class ParseTree implements Cloneable{
 	private final FileOptions fileOptions;
 	private List<ParseTree> children = null;
 	private boolean hasBeenMadeStatic = false;
+	private int invocations = 0;
+	private volatile CompiledTree compiled = null;
+	private volatile boolean uncompilable = false;
 	
 	/**
 	 * Creates a new empty tree node
@@ -103,6 +108,8 @@ public class ParseTree implements Cloneable{
 	
 	public void setData(Construct data) {
 		this.data = data;
+		compiled = null;
+		uncompilable = false;
 	}
 	
 	public void setOptimized(boolean optimized){
@@ -171,6 +178,53 @@ public class ParseTree implements Cloneable{
 	
 	public void setChildren(List<ParseTree> children){
 		this.children = children;
+		compiled = null;
+		uncompilable = false;
+	}
+	
+	/**
+	 * Counts one more evaluation of this node, and returns the new count. This
+	 * is used to find the nodes that are worth compiling, and isn't exact if the node
+	 * is evaluated from several threads at once.
+	 * @return 
+	 */
+	public int countInvocation(){
+		return ++invocations;
+	}
+	
+	/**
+	 * Returns the compiled version of this node, or null if it hasn't been compiled.
+	 * @see BytecodeCompiler
+	 * @return 
+	 */
+	public CompiledTree getCompiled(){
+		return compiled;
+	}
+	
+	/**
+	 * Sets the compiled version of this node. This should only be called by the
+	 * {@link BytecodeCompiler}.
+	 * @param compiled 
+	 */
+	public void setCompiled(CompiledTree compiled){
+		this.compiled = compiled;
+	}
+	
+	/**
+	 * Returns true if the {@link BytecodeCompiler} has found that this node can't be
+	 * compiled, or isn't worth compiling.
+	 * @return 
+	 */
+	public boolean isUncompilable(){
+		return uncompilable;
+	}
+	
+	/**
+	 * Marks this node as not worth compiling, so the compiler doesn't try again. This
+	 * should only be called by the {@link BytecodeCompiler}.
+	 */
+	public void setUncompilable(){
+		uncompilable = true;
 	}
 	
 	/**
@@ -315,6 +369,9 @@ public class ParseTree implements Cloneable{
 		ParseTree clone = (ParseTree)super.clone();
 		clone.data = data.clone();
 		clone.children = new ArrayList<ParseTree>(this.children);
+		clone.invocations = 0;
+		clone.compiled = null;
+		clone.uncompilable = false;
 		return clone;
 	}
 	
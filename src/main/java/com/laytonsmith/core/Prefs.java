@@ -44,7 +44,9 @@ public final class Prefs {
 		ALLOW_SHELL_COMMANDS("allow-shell-commands"),
 		ALLOW_DYNAMIC_SHELL("allow-dynamic-shell"),
 		SCREAM_ERRORS("scream-errors"),
-		INTERPRETER_TIMEOUT("interpreter-timeout");
+		INTERPRETER_TIMEOUT("interpreter-timeout"),
+		INSTANT_RETURN_QUEUE_SIZE("instant-return-queue-size"),
+		COMPILE_HOT_CODE("compile-hot-code");
         String name;
         private PNames(String name){
             this.name = name;
@@ -90,6 +92,13 @@ public final class Prefs {
 		a.add(new Preference(PNames.INTERPRETER_TIMEOUT.config(), "15", Preferences.Type.INT, "Sets the time (in minutes) that interpreter mode is unlocked for when /interpreter-on is run from console. Set to 0 (or a negative number)"
 				+ " to disable this feature, and allow interpreter mode all the time. It is highly recommended that you leave this set to some number greater than 0, to enahnce"
 				+ " server security, and require a \"two step\" authentication for interpreter mode."));
+		a.add(new Preference(PNames.INSTANT_RETURN_QUEUE_SIZE.config(), "1000", Preferences.Type.INT, "Some functions, such as sys_out(), don't need to finish before the script"
+				+ " continues, so they are queued up and run in the background. This sets how many of these calls may be queued up at once. If the queue is full, the"
+				+ " script waits until there is room. Queued calls run in order relative to each other, but not relative to other functions, so the output of"
+				+ " sys_out() may appear after the output of a msg() or console() call that came after it. Calls with an array (or any other value that the"
+				+ " script could change before the call runs) as an argument are not queued."));
+		a.add(new Preference(PNames.COMPILE_HOT_CODE.config(), "false", Preferences.Type.BOOLEAN, "If true, parts of scripts that are run very often, such as the"
+				+ " body of a loop, are compiled to java bytecode, which usually makes them run faster. This is experimental."));
         prefs = new Preferences("CommandHelper", Static.getLogger(), a);
         prefs.init(f);
     }
@@ -200,4 +209,16 @@ public final class Prefs {
 		}
 		return i;
 	}
+	
+	public static Integer InstantReturnQueueSize(){
+		Integer i = (Integer)pref(PNames.INSTANT_RETURN_QUEUE_SIZE);
+		if(i < 1){
+			i = 1;
+		}
+		return i;
+	}
+	
+	public static Boolean CompileHotCode(){
+		return (Boolean)pref(PNames.COMPILE_HOT_CODE);
+	}
 }
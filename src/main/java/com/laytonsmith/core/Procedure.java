@@ -27,8 +27,21 @@ public class Procedure implements Cloneable {
 
     private String name;
     private Map<String, IVariable> varList;
-    private Map<String, Construct> originals = new HashMap<String, Construct>();
     private List<IVariable> varIndex = new ArrayList<IVariable>();
+	/**
+	 * The parameters, in order, bound to their default values. These are put in
+	 * the variable list as they are, if no value is passed in for the parameter.
+	 */
+	private IVariable[] defaults;
+	/**
+	 * True if the body may refer to @arguments, in which case it needs to be built
+	 * on each call.
+	 */
+	private boolean usesArguments;
+	/**
+	 * The slots of the variables in the body, which are the same for every call.
+	 */
+	private final IVariableList.Slots slots = new IVariableList.Slots();
     private ParseTree tree;
     private boolean possiblyConstant = false;
 	/**
@@ -40,6 +53,7 @@ public class Procedure implements Cloneable {
         this.name = name;
 		this.definedAt = t;
         this.varList = new HashMap<String, IVariable>();
+		this.defaults = new IVariable[varList.size()];
         for (IVariable var : varList) {
             try {
                 this.varList.put(var.getName(), var.clone());
@@ -47,10 +61,11 @@ public class Procedure implements Cloneable {
             catch (CloneNotSupportedException e) {
                 this.varList.put(var.getName(), var);
             }
+			this.defaults[this.varIndex.size()] = new IVariable(var, var.ival(), Target.UNKNOWN);
             this.varIndex.add(var);
-            this.originals.put(var.getName(), var.ival());
         }
         this.tree = tree;
+		this.usesArguments = checkUsesArguments(tree);
         if (!this.name.matches("^_[^_].*")) {
             throw new ConfigRuntimeException("Procedure names must start with an underscore", ExceptionType.FormatException, t);
         }
@@ -60,6 +75,26 @@ public class Procedure implements Cloneable {
         this.possiblyConstant = checkPossiblyConstant(tree);
     }
 
+	/**
+	 * Returns true if the tree refers to @arguments, or contains code that could refer to
+	 * it dynamically.
+	 */
+	private static boolean checkUsesArguments(ParseTree tree) {
+		Construct data = tree.getData();
+		if (data instanceof IVariable && ((IVariable) data).getName().equals("@arguments")) {
+			return true;
+		}
+		if (data instanceof CFunction && (data.val().equals("eval") || data.val().equals("include"))) {
+			return true;
+		}
+		for (ParseTree child : tree.getChildren()) {
+			if (checkUsesArguments(child)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
     private boolean checkPossiblyConstant(ParseTree tree) {
 		//TODO: This whole thing is a mess. Instead of doing it this way,
 		//individual procs need to be inlined as deemed appropriate.
@@ -157,24 +192,24 @@ public class Procedure implements Cloneable {
      * @return
      */
     public Construct execute(List<Construct> args, Environment env, Target t) {
-        env.getEnv(GlobalEnv.class).SetVarList(new IVariableList());
-		//This is what will become our @arguments var
-        CArray arguments = new CArray(Target.UNKNOWN);
-        for (String key : originals.keySet()) {
-            Construct c = originals.get(key);
-            env.getEnv(GlobalEnv.class).GetVarList().set(new IVariable(key, c, Target.UNKNOWN));
-            arguments.push(c);
+		IVariableList vars = new IVariableList(slots);
+        env.getEnv(GlobalEnv.class).SetVarList(vars);
+        for (int i = 0; i < defaults.length; i++) {
+            if (i < args.size()) {
+                Construct c = args.get(i);
+                vars.set(new IVariable(varIndex.get(i), c, c.getTarget()));
+            } else {
+                vars.set(defaults[i]);
+            }
         }
-        Script fakeScript = Script.GenerateScript(tree, env.getEnv(GlobalEnv.class).GetLabel());//new Script(null, null);        
-        for (int i = 0; i < args.size(); i++) {
-            Construct c = args.get(i);
-            arguments.set(i, c, t);
-            if (varIndex.size() > i) {
-                String varname = varIndex.get(i).getName();
-                env.getEnv(GlobalEnv.class).GetVarList().set(new IVariable(varname, c, c.getTarget()));
+        if (usesArguments) {
+            CArray arguments = new CArray(Target.UNKNOWN);
+            for (int i = 0; i < args.size() || i < defaults.length; i++) {
+                arguments.push(i < args.size() ? args.get(i) : defaults[i].ival());
             }
+            vars.set(new IVariable("@arguments", arguments, Target.UNKNOWN));
         }
-        env.getEnv(GlobalEnv.class).GetVarList().set(new IVariable("@arguments", arguments, Target.UNKNOWN));
+        Script fakeScript = Script.GenerateScript(tree, env.getEnv(GlobalEnv.class).GetLabel());//new Script(null, null);        
 
         try {
 			if(tree.getData() instanceof CFunction
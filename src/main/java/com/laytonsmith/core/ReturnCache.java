@@ -0,0 +1,341 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CBoolean;
+import com.laytonsmith.core.constructs.CDouble;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CNull;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.environments.Environment;
+import com.laytonsmith.core.functions.Function;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The runtime cache for functions that declare {@link Optimizable.OptimizationOption#CACHE_RETURN}.
+ * Each call site (that is, each CFunction node) keeps its own small cache of the last few
+ * return values, so the cached values always carry the target of the call site, and there
+ * is nothing shared between call sites that would need to be locked.
+ * <p>
+ * Most cacheable functions are so cheap that looking up the return value would take as
+ * long as running them, so a call site first measures how long the function takes,
+ * and only uses the cache if it never takes less than {@link #MIN_COST} nanoseconds. After that,
+ * a call site that rarely hits the cache stops using it too. Only calls whose arguments are
+ * all primitives are cached, and they are compared by their typed values.
+ *
+ * @author lsmith
+ */
+public final class ReturnCache {
+
+	private ReturnCache() {
+	}
+
+	/**
+	 * The number of return values each call site keeps.
+	 */
+	public static final int SIZE = 8;
+	/**
+	 * The number of calls a call site makes without the cache, to measure how long the
+	 * function takes.
+	 */
+	public static final int PROBE_SIZE = 100;
+	/**
+	 * Call sites whose function takes less than this many nanoseconds never use the
+	 * cache. The fastest of the measured calls is used, so that a pause, or loading
+	 * classes on the first call, doesn't make a cheap function look expensive.
+	 */
+	public static final long MIN_COST = 1000;
+	/**
+	 * The number of calls a call site makes before its hit rate is checked.
+	 */
+	public static final int SAMPLE_SIZE = 100;
+	/**
+	 * Call sites whose hit rate is below this after {@link #SAMPLE_SIZE} calls
+	 * stop using the cache.
+	 */
+	public static final double MIN_HIT_RATE = 0.25;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong disabled = new AtomicLong();
+	/**
+	 * Incremented by {@link #clear()}, call sites drop their values when they see
+	 * that this has changed.
+	 */
+	private static volatile int generation = 0;
+	private static volatile boolean enabled = true;
+
+	/**
+	 * Returns true if the given function declares that its return value can be
+	 * cached.
+	 *
+	 * @param f
+	 * @return
+	 */
+	public static boolean IsCacheable(Function f) {
+		return f instanceof Optimizable
+				&& ((Optimizable) f).optimizationOptions().contains(Optimizable.OptimizationOption.CACHE_RETURN);
+	}
+
+	/**
+	 * Turns the cache on or off. While it is off, functions are simply run, and
+	 * call sites don't measure them.
+	 *
+	 * @param enable
+	 */
+	public static void SetEnabled(boolean enable) {
+		enabled = enable;
+	}
+
+	/**
+	 * Runs the function, or returns the cached return value if the call site has
+	 * already run the function with the same arguments. Returned arrays are always
+	 * clones, so the cached value can't be changed by the caller.
+	 *
+	 * @param site The call site that is running the function
+	 * @param f The function, which must be cacheable
+	 * @param t
+	 * @param env
+	 * @param args The already resolved arguments
+	 * @return
+	 */
+	public static Construct exec(CallSite site, Function f, Target t, Environment env, Construct... args) {
+		if (!enabled || site.state == CallSite.OFF) {
+			return f.exec(t, env, args);
+		}
+		if (site.state == CallSite.PROBING) {
+			return site.probe(f, t, env, args);
+		}
+		if (!IsCacheable(args)) {
+			return f.exec(t, env, args);
+		}
+		Entry[] entries = site.entries;
+		if (site.generation != generation) {
+			entries = new Entry[0];
+			site.entries = entries;
+			site.generation = generation;
+		}
+		for (int i = 0; i < entries.length; i++) {
+			if (entries[i].matches(args)) {
+				hits.incrementAndGet();
+				if (i > 0) {
+					site.entries = moveToFront(entries, i);
+				}
+				site.record(true);
+				return copy(entries[i].value);
+			}
+		}
+		misses.incrementAndGet();
+		site.record(false);
+		Construct ret = f.exec(t, env, args);
+		if (ret != null && site.state == CallSite.CACHING) {
+			Entry[] newEntries = new Entry[java.lang.Math.min(entries.length + 1, SIZE)];
+			newEntries[0] = new Entry(args.clone(), copy(ret));
+			System.arraycopy(entries, 0, newEntries, 1, newEntries.length - 1);
+			site.entries = newEntries;
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns true if the arguments are all primitives whose value is fully described
+	 * by their type and typed value. Ints and doubles that were created from an unusual
+	 * string, such as "007", are not, since some functions use the string.
+	 */
+	private static boolean IsCacheable(Construct[] args) {
+		for (Construct c : args) {
+			Class<?> type = c.getClass();
+			if (type == CInt.class) {
+				if (!((CInt) c).isCanonical()) {
+					return false;
+				}
+			} else if (type == CDouble.class) {
+				if (!((CDouble) c).isCanonical()) {
+					return false;
+				}
+			} else if (type != CString.class && type != CBoolean.class && type != CNull.class) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Entry[] moveToFront(Entry[] entries, int index) {
+		Entry[] newEntries = new Entry[entries.length];
+		newEntries[0] = entries[index];
+		System.arraycopy(entries, 0, newEntries, 1, index);
+		System.arraycopy(entries, index + 1, newEntries, index + 1, entries.length - index - 1);
+		return newEntries;
+	}
+
+	/**
+	 * Arrays are mutable, so a cached array is never handed out directly.
+	 */
+	private static Construct copy(Construct c) {
+		if (c instanceof CArray) {
+			return ((CArray) c).clone();
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the number of calls that were answered from the cache.
+	 *
+	 * @return
+	 */
+	public static long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of cacheable calls that had to run the function, because the
+	 * return value wasn't cached yet.
+	 *
+	 * @return
+	 */
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of call sites that have stopped using the cache, because
+	 * their function is too cheap, or their hit rate was too low.
+	 *
+	 * @return
+	 */
+	public static long getDisabledCallSites() {
+		return disabled.get();
+	}
+
+	/**
+	 * Empties the caches of all call sites, and resets the statistics. Call sites
+	 * that have already stopped using the cache are not re-enabled.
+	 */
+	public static synchronized void clear() {
+		generation++;
+		hits.set(0);
+		misses.set(0);
+		disabled.set(0);
+	}
+
+	/**
+	 * The cache of one call site. The entries are replaced as a whole rather than
+	 * modified, so no locking is needed, and the counts are not synchronized either,
+	 * since a lost count only delays a decision slightly.
+	 */
+	public static final class CallSite {
+
+		private static final int PROBING = 0;
+		private static final int CACHING = 1;
+		private static final int OFF = 2;
+
+		private volatile int state = PROBING;
+		private volatile Entry[] entries = new Entry[0];
+		private int generation = ReturnCache.generation;
+		private int calls = 0;
+		private int hits = 0;
+		private long cost = Long.MAX_VALUE;
+
+		private Construct probe(Function f, Target t, Environment env, Construct[] args) {
+			long start = System.nanoTime();
+			Construct ret = f.exec(t, env, args);
+			cost = java.lang.Math.min(cost, System.nanoTime() - start);
+			if (++calls >= PROBE_SIZE) {
+				if (cost < MIN_COST) {
+					disable();
+				} else {
+					state = CACHING;
+				}
+				calls = 0;
+			}
+			return ret;
+		}
+
+		private void record(boolean hit) {
+			calls++;
+			if (hit) {
+				hits++;
+			}
+			if (calls >= SAMPLE_SIZE) {
+				if (hits < SAMPLE_SIZE * MIN_HIT_RATE) {
+					disable();
+				}
+				calls = 0;
+				hits = 0;
+			}
+		}
+
+		private void disable() {
+			if (state != OFF) {
+				state = OFF;
+				entries = new Entry[0];
+				disabled.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Returns true if this call site is measuring its function, or using the cache.
+		 *
+		 * @return
+		 */
+		public boolean isEnabled() {
+			return state != OFF;
+		}
+
+		/**
+		 * Returns true if this call site is using the cache.
+		 *
+		 * @return
+		 */
+		public boolean isCaching() {
+			return state == CACHING;
+		}
+	}
+
+	private static final class Entry {
+
+		private final Construct[] args;
+		private final Construct value;
+
+		private Entry(Construct[] args, Construct value) {
+			this.args = args;
+			this.value = value;
+		}
+
+		/**
+		 * Returns true if the given arguments, which are known to be cacheable, are
+		 * the same as the ones this value was returned for.
+		 */
+		boolean matches(Construct[] other) {
+			if (args.length != other.length) {
+				return false;
+			}
+			for (int i = 0; i < args.length; i++) {
+				Construct a = args[i];
+				Construct b = other[i];
+				if (a.getClass() != b.getClass()) {
+					return false;
+				}
+				if (a instanceof CInt) {
+					if (((CInt) a).getInt() != ((CInt) b).getInt()) {
+						return false;
+					}
+				} else if (a instanceof CDouble) {
+					if (Double.doubleToLongBits(((CDouble) a).getDouble()) != Double.doubleToLongBits(((CDouble) b).getDouble())) {
+						return false;
+					}
+				} else if (a instanceof CBoolean) {
+					if (((CBoolean) a).getBoolean() != ((CBoolean) b).getBoolean()) {
+						return false;
+					}
+				} else if (a instanceof CString) {
+					if (!a.val().equals(b.val())) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+	}
+}
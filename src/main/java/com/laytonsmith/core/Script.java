@@ -8,6 +8,8 @@ import com.laytonsmith.abstraction.Implementation;
 import com.laytonsmith.abstraction.MCCommandSender;
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.abstraction.StaticLayer;
+import com.laytonsmith.core.compiler.BytecodeCompiler;
+import com.laytonsmith.core.compiler.CompiledTree;
 import com.laytonsmith.core.constructs.*;
 import com.laytonsmith.core.constructs.Construct.ConstructType;
 import com.laytonsmith.core.constructs.Token.TType;
@@ -50,6 +52,10 @@ public class Script {
     boolean compilerError = false;
     private String label;
     private Environment CurrentEnv;
+	/**
+	 * The slots of the variables in this alias, which are the same for every run.
+	 */
+	private final IVariableList.Slots slots = new IVariableList.Slots();
 
     @Override
     public String toString() {
@@ -62,7 +68,7 @@ public class Script {
     }
 
     private Procedure getProc(String name) {
-        return CurrentEnv.getEnv(GlobalEnv.class).GetProcs().get(name);
+        return CurrentEnv.getEnv(GlobalEnv.class).GetProc(name);
     }
     
     public Environment getCurrentEnv(){
@@ -145,6 +151,8 @@ public class Script {
             }
         }
 
+        //Each run starts with no variables, but keeps the slots from the last run
+        CurrentEnv.getEnv(GlobalEnv.class).SetVarList(new IVariableList(slots));
         try {
             for (ParseTree rootNode : cright) {
                 for (Construct tempNode : rootNode.getAllData()) {
@@ -208,7 +216,7 @@ public class Script {
         Construct ret = eval(c, env);
         while(ret instanceof IVariable){
             IVariable cur = (IVariable)ret;
-            ret = env.getEnv(GlobalEnv.class).GetVarList().get(cur.getName(), cur.getTarget()).ival();
+            ret = env.getEnv(GlobalEnv.class).GetVarList().get(cur).ival();
         }
         return ret;
     }
@@ -221,9 +229,11 @@ public class Script {
         CurrentEnv.getEnv(GlobalEnv.class).SetLabel(this.label);
         if (m.getCType() == ConstructType.FUNCTION) {
                 env.getEnv(GlobalEnv.class).SetScript(this);
-                if (m.val().matches("^_[^_].*")) {
+                if (m instanceof CFunction ? ((CFunction) m).isProcedure() : m.val().matches("^_[^_].*")) {
                     //Not really a function, so we can't put it in Function.
-                    Procedure p = getProc(m.val());
+                    Procedure p = m instanceof CFunction
+							? env.getEnv(GlobalEnv.class).GetProc(m.val(), ((CFunction) m).getProcedureCallSite())
+							: getProc(m.val());
                     if (p == null) {
                         throw new ConfigRuntimeException("Unknown procedure \"" + m.val() + "\"", ExceptionType.InvalidProcedureException, m.getTarget());
                     }
@@ -241,23 +251,45 @@ public class Script {
 					return ret;
                 }
                 final Function f;
-                try{
-                    f = (Function)FunctionList.getFunction(m);
-                } catch(ConfigCompileException e){
-                    //Turn it into a config runtime exception. This shouldn't ever happen though.
-                    throw ConfigRuntimeException.CreateUncatchableException("Unable to find function " + m.val(), m.getTarget());
-                }
+				if(m instanceof CFunction){
+					//Normally already linked by the compiler
+					f = ((CFunction) m).getFunction();
+				} else {
+					try{
+						f = (Function)FunctionList.getFunction(m);
+					} catch(ConfigCompileException e){
+						//Turn it into a config runtime exception. This shouldn't ever happen though.
+						throw ConfigRuntimeException.CreateUncatchableException("Unable to find function " + m.val(), m.getTarget());
+					}
+				}
 				
-				ArrayList<Construct> args = new ArrayList<Construct>();
+				if(!f.useSpecialExec()){
+					//Hot nodes are compiled, see BytecodeCompiler
+					CompiledTree compiled = BytecodeCompiler.Get(c);
+					if(compiled != null && CompiledTree.CanRun(env)){
+						try{
+							return compiled.run(this, env);
+						} catch(ConfigRuntimeException e){
+							throw e;
+						} catch(ProgramFlowManipulationException e){
+							throw e;
+						} catch(Exception e){
+							throw reportError(m, f, env, null, e);
+						}
+					}
+				}
+				
+				List<ParseTree> children = c.getChildren();
+				Construct[] args = null;
                 try{
 					if(f.useSpecialExec()){
 						ProfilePoint p = null;
 						if(f.shouldProfile() && env.getEnv(GlobalEnv.class).GetProfiler() != null && env.getEnv(GlobalEnv.class).GetProfiler().isLoggable(f.profileAt())){
-							p = env.getEnv(GlobalEnv.class).GetProfiler().start(f.profileMessageS(c.getChildren()), f.profileAt());
+							p = env.getEnv(GlobalEnv.class).GetProfiler().start(f.profileMessageS(children), f.profileAt());
 						}
 						Construct ret;
 						try {
-							ret = f.execs(m.getTarget(), env, this, c.getChildren().toArray(new ParseTree[]{}));
+							ret = f.execs(m.getTarget(), env, this, children.toArray(new ParseTree[children.size()]));
 						} finally { 
 							if(p != null){
 								p.stop();
@@ -266,53 +298,11 @@ public class Script {
 						return ret;
 					}
 
-					for (ParseTree c2 : c.getChildren()) {
-						args.add(eval(c2, env));
-					}
-					if (f.isRestricted()) {
-						boolean perm = Static.hasCHPermission(f.getName(), env);
-						if (!perm) {
-							throw new ConfigRuntimeException("You do not have permission to use the " + f.getName() + " function.",
-									ExceptionType.InsufficientPermissionException, m.getTarget());
-						}
-					}
-					Object[] a = args.toArray();
-					Construct[] ca = new Construct[a.length];
-					for (int i = 0; i < a.length; i++) {
-						ca[i] = (Construct) a[i];
-						//CArray, CBoolean, CDouble, CInt, CNull, CString, CVoid, CEntry, CLabel (only to sconcat).
-						if (!(ca[i] instanceof CArray || ca[i] instanceof CBoolean || ca[i] instanceof CDouble
-								|| ca[i] instanceof CInt || ca[i] instanceof CNull
-								|| ca[i] instanceof CString || ca[i] instanceof CVoid 
-								|| ca[i] instanceof IVariable || ca[i] instanceof CEntry || ca[i] instanceof CLabel)
-								&& (!f.getName().equals("__autoconcat__") && (ca[i] instanceof CLabel))) {
-							throw new ConfigRuntimeException("Invalid Construct (" 
-									+ ca[i].getClass() + ") being passed as an argument to a function (" 
-									+ f.getName() + ")", null, m.getTarget());
-						}
-						while(f.preResolveVariables() && ca[i] instanceof IVariable){
-							IVariable cur = (IVariable)ca[i];
-							ca[i] = env.getEnv(GlobalEnv.class).GetVarList().get(cur.getName(), cur.getTarget()).ival();
-						}
-					}
-
-					{ 
-						//It takes a moment to generate the toString of some things, so lets not do it
-						//if we actually aren't going to profile
-						ProfilePoint p = null;				
-						if(f.shouldProfile() && env.getEnv(GlobalEnv.class).GetProfiler() != null && env.getEnv(GlobalEnv.class).GetProfiler().isLoggable(f.profileAt())){						
-							p = env.getEnv(GlobalEnv.class).GetProfiler().start(f.profileMessage(ca), f.profileAt());
-						}
-						Construct ret;
-						try {
-							ret = f.exec(m.getTarget(), env, ca);
-						} finally {
-							if(p != null){
-								p.stop();
-							}
-						}
-						return ret;
+					args = new Construct[children.size()];
+					for (int i = 0; i < args.length; i++) {
+						args[i] = eval(children.get(i), env);
 					}
+					return exec(m, f, env, args);
 				//We want to catch and rethrow the ones we know how to catch, and then
 				//catch and report anything else.
 				} catch(ConfigRuntimeException e){
@@ -320,64 +310,154 @@ public class Script {
 				} catch(ProgramFlowManipulationException e){
 					throw e;
 				} catch(Exception e){
-					String version = "Unknown";
-					try{
-						version = Main.loadSelfVersion();
-					} catch(Exception ex){
-						//Ignored
-					}
-					String emsg = TermColors.RED + "Uh oh! You've found an error in " + Implementation.GetServerType().getBranding()
-							 + ". This is an error caused by your code, so you may be able to find a workaround,"
-							+ " but is ultimately an error in " + Implementation.GetServerType().getBranding()
-							+ " itself. The line of code that caused the error was this:\n" + TermColors.WHITE;
-					List<String> args2 = new ArrayList<String>();
-					Map<String, String> vars = new HashMap<String, String>();
-					
-					for(Construct cc : args){
-						if(cc instanceof IVariable){
-							Construct ccc = env.getEnv(GlobalEnv.class).GetVarList().get(((IVariable)cc).getName(), cc.getTarget()).ival();
-							String vval = ccc.val();
-							if(ccc instanceof CString){
-								vval = ccc.asString().getQuote();
-							}
-							vars.put(((IVariable)cc).getName(), vval);
-						}
-						if(cc == null){
-							args2.add("java-null");
-						} else if(cc instanceof CString){
-							args2.add(cc.asString().getQuote());
-						} else if(cc instanceof IVariable){
-							args2.add(((IVariable)cc).getName());
-						} else {
-							args2.add(cc.val());
-						}
-					}
-					//Server might not be available in this platform, so let's be sure to ignore those exceptions
-					String modVersion = "Unsupported platform";
-					try{
-						modVersion = StaticLayer.GetConvertor().GetServer().getModVersion();
-					} catch(Exception ex){
-						modVersion = Implementation.GetServerType().name();
-					}
-					if(!vars.isEmpty()){
-						emsg += StringUtils.Join(vars, " = ", "\n") + "\n";
-					}
-					emsg += f.getName() + "(";
-					emsg += StringUtils.Join(args2, ", ");
-					emsg += ")\n" + TermColors.RED + "on or around " + m.getTarget() + ".\nPlease report this error to the developers, and be sure to include the version numbers: Server version: "
-							+ modVersion + "; "
-							+ Implementation.GetServerType().getBranding() + " version: " + version + ". Here's the stacktrace:\n" + TermColors.RESET;
-					emsg += Static.GetStacktraceString(e);
-					Static.getLogger().log(Level.SEVERE, emsg);
-					throw new CancelCommandException(null, Target.UNKNOWN);
+					throw reportError(m, f, env, args, e);
 				}
         } else if (m.getCType() == ConstructType.VARIABLE) {            
             return new CString(m.val(), m.getTarget());
+        } else if (m instanceof CRange) {
+            //Slices and folded ranges are constants in the tree, so each evaluation gets
+            //its own copy, which shares the values until it is modified.
+            return ((CRange) m).clone();
         } else {
             return m;
         }
     }
 
+	/**
+	 * Runs a function whose arguments have already been evaluated. This is what
+	 * {@link #eval} does for normal functions once the arguments are evaluated, and
+	 * is also used by compiled code.
+	 *
+	 * @param m The function's node data
+	 * @param f The function
+	 * @param env
+	 * @param args The evaluated arguments
+	 * @return
+	 */
+	public Construct execFunction(Construct m, Function f, Environment env, Construct[] args) {
+		CurrentEnv = env;
+		CurrentEnv.getEnv(GlobalEnv.class).SetLabel(this.label);
+		env.getEnv(GlobalEnv.class).SetScript(this);
+		try{
+			return exec(m, f, env, args);
+		} catch(ConfigRuntimeException e){
+			throw e;
+		} catch(ProgramFlowManipulationException e){
+			throw e;
+		} catch(Exception e){
+			throw reportError(m, f, env, args, e);
+		}
+	}
+	
+	private Construct exec(Construct m, Function f, Environment env, Construct[] args) {
+		if (f.isRestricted()) {
+			boolean perm = Static.hasCHPermission(f.getName(), env);
+			if (!perm) {
+				throw new ConfigRuntimeException("You do not have permission to use the " + f.getName() + " function.",
+						ExceptionType.InsufficientPermissionException, m.getTarget());
+			}
+		}
+		//The variables are resolved into a separate array, so the original arguments are still
+		//available for the error report. The array is only copied if there is actually a
+		//variable to resolve.
+		//(There used to be a check on the type of each argument here as well, but it
+		//could never fail, since any construct may be passed to a function.)
+		Construct[] ca = args;
+		if (m instanceof CFunction ? ((CFunction) m).preResolveVariables() : f.preResolveVariables()) {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i] instanceof IVariable) {
+					if (ca == args) {
+						ca = args.clone();
+					}
+					while (ca[i] instanceof IVariable) {
+						ca[i] = env.getEnv(GlobalEnv.class).GetVarList().get((IVariable) ca[i]).ival();
+					}
+				}
+			}
+		}
+
+		//It takes a moment to generate the toString of some things, so lets not do it
+		//if we actually aren't going to profile
+		ProfilePoint p = null;				
+		if(f.shouldProfile() && env.getEnv(GlobalEnv.class).GetProfiler() != null && env.getEnv(GlobalEnv.class).GetProfiler().isLoggable(f.profileAt())){						
+			p = env.getEnv(GlobalEnv.class).GetProfiler().start(f.profileMessage(ca), f.profileAt());
+		}
+		Construct ret;
+		try {
+			ReturnCache.CallSite site = m instanceof CFunction ? ((CFunction) m).getCallSite() : null;
+			if(m instanceof CFunction && ((CFunction) m).isInstantReturn()){
+				ret = InstantReturnExecutor.exec(f, m.getTarget(), env, ca);
+			} else if(site != null){
+				ret = ReturnCache.exec(site, f, m.getTarget(), env, ca);
+			} else {
+				ret = f.exec(m.getTarget(), env, ca);
+			}
+		} finally {
+			if(p != null){
+				p.stop();
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Logs an unexpected exception that happened while running a function, and
+	 * returns the exception that should be thrown instead.
+	 */
+	public CancelCommandException reportError(Construct m, Function f, Environment env, Construct[] args, Exception e){
+		String version = "Unknown";
+		try{
+			version = Main.loadSelfVersion();
+		} catch(Exception ex){
+			//Ignored
+		}
+		String emsg = TermColors.RED + "Uh oh! You've found an error in " + Implementation.GetServerType().getBranding()
+				 + ". This is an error caused by your code, so you may be able to find a workaround,"
+				+ " but is ultimately an error in " + Implementation.GetServerType().getBranding()
+				+ " itself. The line of code that caused the error was this:\n" + TermColors.WHITE;
+		List<String> args2 = new ArrayList<String>();
+		Map<String, String> vars = new HashMap<String, String>();
+		
+		for(int i = 0; args != null && i < args.length; i++){
+			Construct cc = args[i];
+			if(cc instanceof IVariable){
+				Construct ccc = env.getEnv(GlobalEnv.class).GetVarList().get(((IVariable)cc).getName(), cc.getTarget()).ival();
+				String vval = ccc.val();
+				if(ccc instanceof CString){
+					vval = ccc.asString().getQuote();
+				}
+				vars.put(((IVariable)cc).getName(), vval);
+			}
+			if(cc == null){
+				args2.add("java-null");
+			} else if(cc instanceof CString){
+				args2.add(cc.asString().getQuote());
+			} else if(cc instanceof IVariable){
+				args2.add(((IVariable)cc).getName());
+			} else {
+				args2.add(cc.val());
+			}
+		}
+		//Server might not be available in this platform, so let's be sure to ignore those exceptions
+		String modVersion = "Unsupported platform";
+		try{
+			modVersion = StaticLayer.GetConvertor().GetServer().getModVersion();
+		} catch(Exception ex){
+			modVersion = Implementation.GetServerType().name();
+		}
+		if(!vars.isEmpty()){
+			emsg += StringUtils.Join(vars, " = ", "\n") + "\n";
+		}
+		emsg += f.getName() + "(";
+		emsg += StringUtils.Join(args2, ", ");
+		emsg += ")\n" + TermColors.RED + "on or around " + m.getTarget() + ".\nPlease report this error to the developers, and be sure to include the version numbers: Server version: "
+				+ modVersion + "; "
+				+ Implementation.GetServerType().getBranding() + " version: " + version + ". Here's the stacktrace:\n" + TermColors.RESET;
+		emsg += Static.GetStacktraceString(e);
+		Static.getLogger().log(Level.SEVERE, emsg);
+		return new CancelCommandException(null, Target.UNKNOWN);
+	}
+
     public boolean match(String command) {
         if(cleft == null){
             //The compilation error happened during the signature declaration, so 
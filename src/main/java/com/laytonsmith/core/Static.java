@@ -99,7 +99,7 @@ public final class Static {
             d = ((CDouble) c).getDouble();
         } else if (c instanceof CString) {
             try {
-                d = Double.parseDouble(c.val());
+                d = ((CString) c).getNumber();
             } catch (NumberFormatException e) {
                 throw new ConfigRuntimeException("Expecting a number, but received \"" + c.val() + "\" instead",
                         ExceptionType.CastException, t);
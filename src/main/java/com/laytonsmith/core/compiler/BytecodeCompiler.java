@@ -0,0 +1,406 @@
+package com.laytonsmith.core.compiler;
+
+import com.laytonsmith.core.LogLevel;
+import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.Prefs;
+import com.laytonsmith.core.ReturnCache;
+import com.laytonsmith.core.Script;
+import com.laytonsmith.core.constructs.CFunction;
+import com.laytonsmith.core.constructs.CRange;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.functions.Function;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Compiles hot ParseTree nodes into JVM classes. The interpreter counts how often
+ * each function node is evaluated, and once a node has been evaluated
+ * {@link #GetThreshold()} times, it is compiled into a subclass of {@link CompiledTree},
+ * which is then run instead of the node from then on.
+ * <p>
+ * The generated code evaluates the whole subtree under the node in one method. Normal
+ * functions are called directly through {@link Function#exec}, with the arguments
+ * evaluated straight into the argument array, and variables read from their slot in
+ * the variable list, rather than going back through {@link Script#eval} for each node.
+ * Functions that need the interpreter's checks when they are called (restricted
+ * functions, and functions whose calls are queued or cached) are called through
+ * {@link Script#execFunction}. Anything else, such as procedure calls and functions that
+ * control their own execution (if, for, etc) is handed back to the interpreter, which
+ * may in turn compile the node separately, if it gets hot.
+ * <p>
+ * This is turned on with the compile-hot-code preference.
+ *
+ * @author lsmith
+ */
+public final class BytecodeCompiler implements Opcodes {
+
+	private BytecodeCompiler() {
+	}
+
+	/**
+	 * The number of evaluations after which a node is compiled, by default.
+	 */
+	public static final int DEFAULT_THRESHOLD = 1000;
+	/**
+	 * The maximum number of nodes that are compiled into a single class. Beyond
+	 * this, nodes are handed back to the interpreter, so that the generated methods
+	 * stay well below the JVM's method size limit.
+	 */
+	public static final int MAX_NODES = 500;
+
+	private static final String BASE = "com/laytonsmith/core/compiler/CompiledTree";
+	private static final String CONSTRUCT = "com/laytonsmith/core/constructs/Construct";
+	private static final String FUNCTION = "com/laytonsmith/core/functions/Function";
+	private static final String VARIABLES = "com/laytonsmith/core/constructs/IVariableList";
+	private static final String SCRIPT = "com/laytonsmith/core/Script";
+	private static final String ENVIRONMENT = "com/laytonsmith/core/environments/Environment";
+	private static final String RUN_DESC = "(L" + SCRIPT + ";L" + ENVIRONMENT + ";)L" + CONSTRUCT + ";";
+	private static final String EXEC_DESC = "(Lcom/laytonsmith/core/constructs/Target;L" + ENVIRONMENT + ";[L" + CONSTRUCT + ";)L" + CONSTRUCT + ";";
+	private static final String CALL_DESC = "(L" + SCRIPT + ";L" + ENVIRONMENT + ";I[L" + CONSTRUCT + ";)L" + CONSTRUCT + ";";
+	private static final String EVAL_DESC = "(L" + SCRIPT + ";L" + ENVIRONMENT + ";I)L" + CONSTRUCT + ";";
+	private static final String RANGE_DESC = "(I)L" + CONSTRUCT + ";";
+	private static final String VARIABLE_DESC = "(L" + VARIABLES + ";I)L" + CONSTRUCT + ";";
+	private static final String VARIABLES_DESC = "(L" + ENVIRONMENT + ";)L" + VARIABLES + ";";
+	private static final String RESOLVE_DESC = "(L" + CONSTRUCT + ";L" + VARIABLES + ";)L" + CONSTRUCT + ";";
+	private static final String FAIL_DESC = "(L" + SCRIPT + ";L" + ENVIRONMENT + ";ILjava/lang/Exception;)Ljava/lang/RuntimeException;";
+
+	//The local variables of the generated run method
+	private static final int SCRIPT_LOCAL = 1;
+	private static final int ENV_LOCAL = 2;
+	private static final int VARS_LOCAL = 3;
+	/**
+	 * The index of the node whose function is being called, for error reports.
+	 */
+	private static final int NODE_LOCAL = 4;
+	private static final int EXCEPTION_LOCAL = 5;
+
+	private static final AtomicInteger classCount = new AtomicInteger();
+	private static volatile Boolean enabled = null;
+	private static volatile int threshold = DEFAULT_THRESHOLD;
+
+	/**
+	 * Returns true if hot nodes are compiled.
+	 *
+	 * @return
+	 */
+	public static boolean IsEnabled() {
+		Boolean e = enabled;
+		if (e == null) {
+			if (!Prefs.isInitialized()) {
+				return false;
+			}
+			e = Prefs.CompileHotCode();
+			enabled = e;
+		}
+		return e;
+	}
+
+	/**
+	 * Turns compilation on or off, overriding the preference until the preferences
+	 * are reloaded.
+	 *
+	 * @param enable
+	 */
+	public static void SetEnabled(boolean enable) {
+		enabled = enable;
+	}
+
+	/**
+	 * Reads the compile-hot-code preference again the next time it is needed. This
+	 * should be called whenever the preferences are reloaded. Nodes that are already
+	 * compiled stay compiled.
+	 */
+	public static void ReloadPreferences() {
+		enabled = null;
+	}
+
+	public static int GetThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Sets the number of evaluations after which a node is compiled.
+	 *
+	 * @param evaluations
+	 */
+	public static void SetThreshold(int evaluations) {
+		threshold = evaluations;
+	}
+
+	/**
+	 * Counts an evaluation of the node, and returns the compiled version of it, if
+	 * it has been, or now is, compiled. If null is returned, the node should simply
+	 * be interpreted.
+	 *
+	 * @param node
+	 * @return
+	 */
+	public static CompiledTree Get(ParseTree node) {
+		CompiledTree compiled = node.getCompiled();
+		if (compiled != null || node.isUncompilable()) {
+			return compiled;
+		}
+		if (!IsEnabled() || node.countInvocation() < threshold) {
+			return null;
+		}
+		try {
+			compiled = Compile(node);
+		} catch (RuntimeException ex) {
+			Logger.getLogger(BytecodeCompiler.class.getName()).log(Level.WARNING, "Could not compile " + node.getData().val()
+					+ " at " + node.getData().getTarget() + ", it will continue to be interpreted", ex);
+			compiled = null;
+		} catch (LinkageError ex) {
+			Logger.getLogger(BytecodeCompiler.class.getName()).log(Level.WARNING, "Could not compile " + node.getData().val()
+					+ " at " + node.getData().getTarget() + ", it will continue to be interpreted", ex);
+			compiled = null;
+		}
+		if (compiled == null) {
+			node.setUncompilable();
+		} else {
+			node.setCompiled(compiled);
+		}
+		return compiled;
+	}
+
+	/**
+	 * Compiles the given node right away. Null is returned if the node isn't worth
+	 * compiling, that is, if there wouldn't be at least two function calls made
+	 * by the generated code.
+	 *
+	 * @param node
+	 * @return
+	 */
+	public static CompiledTree Compile(ParseTree node) {
+		Generator g = new Generator();
+		if (g.kind(node) == Generator.EVAL || g.countCalls(node) < 2) {
+			return null;
+		}
+		String name = BASE.substring(0, BASE.lastIndexOf('/') + 1) + "CompiledTree" + classCount.incrementAndGet();
+		byte[] bytes = g.generate(name, node);
+		Class<?> c = new Loader(CompiledTree.class.getClassLoader()).define(name.replace('/', '.'), bytes);
+		CompiledTree compiled;
+		try {
+			compiled = (CompiledTree) c.newInstance();
+		} catch (InstantiationException ex) {
+			throw new RuntimeException(ex);
+		} catch (IllegalAccessException ex) {
+			throw new RuntimeException(ex);
+		}
+		compiled.init(g.nodes.toArray(new ParseTree[g.nodes.size()]), g.functions.toArray(new Function[g.functions.size()]));
+		return compiled;
+	}
+
+	private static final class Generator {
+
+		/**
+		 * Nodes that are handed back to the interpreter.
+		 */
+		static final int EVAL = 0;
+		/**
+		 * Function calls that the generated code makes directly.
+		 */
+		static final int DIRECT = 1;
+		/**
+		 * Function calls that go through {@link Script#execFunction}.
+		 */
+		static final int CALL = 2;
+
+		private final List<ParseTree> nodes = new ArrayList<ParseTree>();
+		private final List<Function> functions = new ArrayList<Function>();
+
+		/**
+		 * Returns how the generated code runs the node.
+		 */
+		int kind(ParseTree node) {
+			Construct data = node.getData();
+			if (data.getClass() != CFunction.class || ((CFunction) data).isProcedure()) {
+				return EVAL;
+			}
+			CFunction cf = (CFunction) data;
+			Function f;
+			try {
+				f = cf.getFunction();
+			} catch (ConfigRuntimeException ex) {
+				//The function doesn't exist, let the interpreter report that
+				return EVAL;
+			}
+			if (f.useSpecialExec()) {
+				return EVAL;
+			}
+			ReturnCache.CallSite site = cf.getCallSite();
+			if (f.isRestricted() || cf.isInstantReturn() || (site != null && site.isEnabled())
+					|| (f.shouldProfile() && f.profileAt() != LogLevel.VERBOSE)) {
+				return CALL;
+			}
+			return DIRECT;
+		}
+
+		int countCalls(ParseTree node) {
+			if (kind(node) == EVAL) {
+				return 0;
+			}
+			int count = 1;
+			for (ParseTree child : node.getChildren()) {
+				count += countCalls(child);
+			}
+			return count;
+		}
+
+		byte[] generate(String name, ParseTree root) {
+			ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+			//Java 5 classes are verified without stack map frames, so they don't have to be computed
+			cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name, null, BASE, null);
+			MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+			init.visitCode();
+			init.visitVarInsn(ALOAD, 0);
+			init.visitMethodInsn(INVOKESPECIAL, BASE, "<init>", "()V");
+			init.visitInsn(RETURN);
+			init.visitMaxs(0, 0);
+			init.visitEnd();
+			MethodVisitor run = cw.visitMethod(ACC_PUBLIC, "run", RUN_DESC, null, null);
+			run.visitCode();
+			Label start = new Label();
+			Label end = new Label();
+			Label handler = new Label();
+			run.visitTryCatchBlock(start, end, handler, "java/lang/Exception");
+			run.visitVarInsn(ALOAD, ENV_LOCAL);
+			run.visitMethodInsn(INVOKESTATIC, BASE, "variables", VARIABLES_DESC);
+			run.visitVarInsn(ASTORE, VARS_LOCAL);
+			push(run, 0);
+			run.visitVarInsn(ISTORE, NODE_LOCAL);
+			run.visitLabel(start);
+			emit(run, root, false);
+			run.visitLabel(end);
+			run.visitInsn(ARETURN);
+			run.visitLabel(handler);
+			run.visitVarInsn(ASTORE, EXCEPTION_LOCAL);
+			run.visitVarInsn(ALOAD, 0);
+			run.visitVarInsn(ALOAD, SCRIPT_LOCAL);
+			run.visitVarInsn(ALOAD, ENV_LOCAL);
+			run.visitVarInsn(ILOAD, NODE_LOCAL);
+			run.visitVarInsn(ALOAD, EXCEPTION_LOCAL);
+			run.visitMethodInsn(INVOKEVIRTUAL, BASE, "fail", FAIL_DESC);
+			run.visitInsn(ATHROW);
+			run.visitMaxs(0, 0);
+			run.visitEnd();
+			cw.visitEnd();
+			return cw.toByteArray();
+		}
+
+		/**
+		 * Emits the code that leaves the value of the node on the stack.
+		 *
+		 * @param resolve If true, the value is resolved if it is a variable, because
+		 * the function it is passed to is called directly, and expects its variables
+		 * resolved.
+		 */
+		private void emit(MethodVisitor mv, ParseTree node, boolean resolve) {
+			int index = nodes.size();
+			Construct data = node.getData();
+			int kind = index < MAX_NODES ? kind(node) : EVAL;
+			nodes.add(node);
+			functions.add(kind != EVAL ? ((CFunction) data).getFunction() : null);
+			List<ParseTree> children = node.getChildren();
+			if (kind == DIRECT) {
+				boolean preResolve = ((CFunction) data).preResolveVariables();
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitFieldInsn(GETFIELD, BASE, "functions", "[L" + FUNCTION + ";");
+				push(mv, index);
+				mv.visitInsn(AALOAD);
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitFieldInsn(GETFIELD, BASE, "targets", "[Lcom/laytonsmith/core/constructs/Target;");
+				push(mv, index);
+				mv.visitInsn(AALOAD);
+				mv.visitVarInsn(ALOAD, ENV_LOCAL);
+				emitArguments(mv, children, preResolve);
+				push(mv, index);
+				mv.visitVarInsn(ISTORE, NODE_LOCAL);
+				mv.visitMethodInsn(INVOKEINTERFACE, FUNCTION, "exec", EXEC_DESC);
+			} else if (kind == CALL) {
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitVarInsn(ALOAD, SCRIPT_LOCAL);
+				mv.visitVarInsn(ALOAD, ENV_LOCAL);
+				push(mv, index);
+				//The interpreter resolves the variables itself
+				emitArguments(mv, children, false);
+				mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "call", CALL_DESC);
+			} else if (data instanceof IVariable && resolve) {
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitVarInsn(ALOAD, VARS_LOCAL);
+				push(mv, index);
+				mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "variable", VARIABLE_DESC);
+				return;
+			} else if (data.getCType() == Construct.ConstructType.FUNCTION
+					|| data.getCType() == Construct.ConstructType.VARIABLE) {
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitVarInsn(ALOAD, SCRIPT_LOCAL);
+				mv.visitVarInsn(ALOAD, ENV_LOCAL);
+				push(mv, index);
+				mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "eval", EVAL_DESC);
+			} else if (data instanceof CRange) {
+				mv.visitVarInsn(ALOAD, 0);
+				push(mv, index);
+				mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "range", RANGE_DESC);
+				return;
+			} else {
+				//Everything else evaluates to itself
+				mv.visitVarInsn(ALOAD, 0);
+				mv.visitFieldInsn(GETFIELD, BASE, "data", "[L" + CONSTRUCT + ";");
+				push(mv, index);
+				mv.visitInsn(AALOAD);
+				return;
+			}
+			if (resolve) {
+				//Functions such as assign return a variable
+				mv.visitVarInsn(ALOAD, VARS_LOCAL);
+				mv.visitMethodInsn(INVOKESTATIC, BASE, "resolve", RESOLVE_DESC);
+			}
+		}
+
+		/**
+		 * Emits the code that leaves an array of the values of the nodes on the stack.
+		 */
+		private void emitArguments(MethodVisitor mv, List<ParseTree> children, boolean resolve) {
+			push(mv, children.size());
+			mv.visitTypeInsn(ANEWARRAY, CONSTRUCT);
+			for (int i = 0; i < children.size(); i++) {
+				mv.visitInsn(DUP);
+				push(mv, i);
+				emit(mv, children.get(i), resolve);
+				mv.visitInsn(AASTORE);
+			}
+		}
+
+		private static void push(MethodVisitor mv, int i) {
+			if (i >= -1 && i <= 5) {
+				mv.visitInsn(ICONST_0 + i);
+			} else if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+				mv.visitIntInsn(BIPUSH, i);
+			} else if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) {
+				mv.visitIntInsn(SIPUSH, i);
+			} else {
+				mv.visitLdcInsn(i);
+			}
+		}
+	}
+
+	private static final class Loader extends ClassLoader {
+
+		Loader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
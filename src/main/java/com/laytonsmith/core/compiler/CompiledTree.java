@@ -0,0 +1,145 @@
+package com.laytonsmith.core.compiler;
+
+import com.laytonsmith.core.LogLevel;
+import com.laytonsmith.core.ParseTree;
+import com.laytonsmith.core.Script;
+import com.laytonsmith.core.constructs.CRange;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.IVariable;
+import com.laytonsmith.core.constructs.IVariableList;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.environments.Environment;
+import com.laytonsmith.core.environments.GlobalEnv;
+import com.laytonsmith.core.exceptions.CancelCommandException;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
+import com.laytonsmith.core.exceptions.ProgramFlowManipulationException;
+import com.laytonsmith.core.functions.Function;
+import com.laytonsmith.core.profiler.Profiler;
+
+/**
+ * The superclass of the classes generated by the {@link BytecodeCompiler}. Each
+ * generated class runs one ParseTree node. Most function calls are made by the generated
+ * code itself, straight to {@link Function#exec}, and the methods in this class are only
+ * used for the parts that are handed back to the interpreter.
+ *
+ * @author lsmith
+ */
+public abstract class CompiledTree {
+
+	/**
+	 * The data of each node, by index. These are protected rather than private, since
+	 * the generated classes are defined in their own class loader, and so can't access
+	 * package private members.
+	 */
+	protected Construct[] data;
+	/**
+	 * The function of each function node that the generated code calls, by index.
+	 */
+	protected Function[] functions;
+	/**
+	 * The target of each node, by index.
+	 */
+	protected Target[] targets;
+	private ParseTree[] nodes;
+
+	protected CompiledTree() {
+	}
+
+	/**
+	 * Sets the nodes and functions that the generated code refers to by index.
+	 * Called once by the compiler, right after the instance is created.
+	 */
+	final void init(ParseTree[] nodes, Function[] functions) {
+		this.nodes = nodes;
+		this.functions = functions;
+		this.data = new Construct[nodes.length];
+		this.targets = new Target[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			data[i] = nodes[i].getData();
+			targets[i] = data[i].getTarget();
+		}
+	}
+
+	/**
+	 * Returns true if compiled code may be run in the given environment. Compiled code
+	 * doesn't record a profile point for each function call, so it isn't used while the
+	 * profiler is recording them.
+	 *
+	 * @param env
+	 * @return
+	 */
+	public static boolean CanRun(Environment env) {
+		Profiler p = env.getEnv(GlobalEnv.class).GetProfiler();
+		return p == null || !p.isLoggable(LogLevel.VERBOSE);
+	}
+
+	/**
+	 * Runs the compiled node, returning the same value that
+	 * {@link Script#eval(ParseTree, Environment)} would.
+	 *
+	 * @param script
+	 * @param env
+	 * @return
+	 */
+	public abstract Construct run(Script script, Environment env);
+
+	/**
+	 * Runs the function at the given node through the interpreter's checks, for the
+	 * functions that the generated code can't call directly.
+	 */
+	protected final Construct call(Script script, Environment env, int node, Construct[] args) {
+		return script.execFunction(data[node], functions[node], env, args);
+	}
+
+	/**
+	 * Hands the given node back to the interpreter.
+	 */
+	protected final Construct eval(Script script, Environment env, int node) throws CancelCommandException {
+		return script.eval(nodes[node], env);
+	}
+
+	/**
+	 * Returns the value of a range constant. Like in the interpreter, each evaluation
+	 * gets its own copy.
+	 */
+	protected final Construct range(int node) {
+		return ((CRange) data[node]).clone();
+	}
+
+	/**
+	 * Returns the value of the variable at the given node.
+	 */
+	protected final Construct variable(IVariableList vars, int node) {
+		return vars.get((IVariable) data[node]).ival();
+	}
+
+	/**
+	 * Returns the variable list of the environment.
+	 */
+	protected static IVariableList variables(Environment env) {
+		return env.getEnv(GlobalEnv.class).GetVarList();
+	}
+
+	/**
+	 * Returns the value of c, if it is a variable, otherwise c itself. Functions such
+	 * as assign() return the variable, rather than its value.
+	 */
+	protected static Construct resolve(Construct c, IVariableList vars) {
+		while (c instanceof IVariable) {
+			c = vars.get((IVariable) c).ival();
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the exception to throw for an exception that a function threw. Exceptions
+	 * that scripts can handle are thrown as they are, anything else is reported the same
+	 * way the interpreter reports it.
+	 */
+	protected final RuntimeException fail(Script script, Environment env, int node, Exception e) {
+		if (e instanceof ConfigRuntimeException || e instanceof ProgramFlowManipulationException) {
+			return (RuntimeException) e;
+		}
+		return script.reportError(data[node], functions[node], env, null, e);
+	}
+}
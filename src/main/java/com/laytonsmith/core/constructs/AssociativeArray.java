@@ -0,0 +1,426 @@
+package com.laytonsmith.core.constructs;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The backing store of an associative {@link CArray}. Values are looked up through a
+ * hash map, and a separate index keeps the keys in order for iteration, so lookups
+ * and updates of existing keys don't have to go through the ordering at all.
+ * <p>
+ * The order, and which keys are considered the same, is exactly what it was when
+ * this was a TreeMap with a comparator: Keys that consist only of digits and dots
+ * are compared numerically, if both can be parsed as numbers, everything else is
+ * compared as a string. So, "1", "01" and "1.0" are all the same key, and the
+ * first one that was inserted is the one that is kept. Each key is classified
+ * once, when it is inserted, rather than on every comparison.
+ * <p>
+ * The largest integer key is also tracked, so that pushing onto an associative
+ * array doesn't have to go through all the keys to find the next index.
+ *
+ * @author lsmith
+ */
+class AssociativeArray extends AbstractMap<String, Construct> {
+
+	private final Map<Object, Node> map;
+	private final TreeSet<Node> order;
+	private Set<Map.Entry<String, Construct>> entrySet = null;
+	private boolean hasIntKey = false;
+	private int maxIntKey;
+	/**
+	 * Set when the largest integer key has been removed, in which case it is
+	 * found again the next time it is needed.
+	 */
+	private boolean maxIntKeyStale = false;
+	/**
+	 * Incremented whenever a key is added or removed, so that open cursors know to
+	 * find their place again.
+	 */
+	private int modCount = 0;
+
+	public AssociativeArray() {
+		map = new HashMap<Object, Node>();
+		order = new TreeSet<Node>(COMPARATOR);
+	}
+
+	/**
+	 * Creates a copy of the given array.
+	 *
+	 * @param copy
+	 */
+	public AssociativeArray(AssociativeArray copy) {
+		map = new HashMap<Object, Node>(copy.map.size() * 2);
+		order = new TreeSet<Node>(COMPARATOR);
+		for (Node n : copy.order) {
+			Node clone = new Node(n.key, n.value);
+			map.put(clone.key.id, clone);
+			order.add(clone);
+		}
+		hasIntKey = copy.hasIntKey;
+		maxIntKey = copy.maxIntKey;
+		maxIntKeyStale = copy.maxIntKeyStale;
+	}
+
+	/**
+	 * Returns true if any of the keys is an integer, that is, it can be parsed by
+	 * {@link Integer#parseInt}.
+	 *
+	 * @return
+	 */
+	public boolean hasIntKey() {
+		findMaxIntKey();
+		return hasIntKey;
+	}
+
+	/**
+	 * Returns the largest integer key. Only meaningful if {@link #hasIntKey()}
+	 * returns true.
+	 *
+	 * @return
+	 */
+	public int maxIntKey() {
+		findMaxIntKey();
+		return maxIntKey;
+	}
+
+	private void findMaxIntKey() {
+		if (maxIntKeyStale) {
+			hasIntKey = false;
+			for (Node n : order) {
+				countIntKey(n.key);
+			}
+			maxIntKeyStale = false;
+		}
+	}
+
+	private void countIntKey(Key k) {
+		if (k.isInt && (!hasIntKey || k.intValue > maxIntKey)) {
+			maxIntKey = k.intValue;
+			hasIntKey = true;
+		}
+	}
+
+	private void removed(Node n) {
+		if (n.key.isInt && n.key.intValue == maxIntKey) {
+			maxIntKeyStale = true;
+		}
+	}
+
+	@Override
+	public Construct get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		Node n = map.get(Key.GetId((String) key));
+		return n == null ? null : n.value;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && map.containsKey(Key.GetId((String) key));
+	}
+
+	@Override
+	public Construct put(String key, Construct value) {
+		Key k = new Key(key);
+		Node n = map.get(k.id);
+		if (n != null) {
+			//The key that was there first is kept
+			Construct old = n.value;
+			n.value = value;
+			return old;
+		}
+		n = new Node(k, value);
+		map.put(k.id, n);
+		order.add(n);
+		modCount++;
+		if (!maxIntKeyStale) {
+			countIntKey(k);
+		}
+		return null;
+	}
+
+	@Override
+	public Construct remove(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		Node n = map.remove(Key.GetId((String) key));
+		if (n == null) {
+			return null;
+		}
+		order.remove(n);
+		removed(n);
+		modCount++;
+		return n.value;
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public void clear() {
+		map.clear();
+		order.clear();
+		hasIntKey = false;
+		maxIntKeyStale = false;
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Construct>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String, Construct>>() {
+
+				@Override
+				public Iterator<Map.Entry<String, Construct>> iterator() {
+					final Iterator<Node> it = order.iterator();
+					return new Iterator<Map.Entry<String, Construct>>() {
+
+						private Node current = null;
+
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Map.Entry<String, Construct> next() {
+							current = it.next();
+							return current;
+						}
+
+						@Override
+						public void remove() {
+							it.remove();
+							map.remove(current.key.id);
+							removed(current);
+							modCount++;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return map.size();
+				}
+
+				@Override
+				public void clear() {
+					AssociativeArray.this.clear();
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Returns a new cursor, positioned before the first key.
+	 *
+	 * @return
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Walks through the entries in order. Unlike an iterator, the array may be
+	 * modified while a cursor is open. If keys are added or removed, the cursor finds
+	 * its place again by continuing with the first key after the one it was last on,
+	 * so keys that are added after the current one will be visited, and keys that are
+	 * removed before they are reached won't be.
+	 */
+	final class Cursor {
+
+		private Iterator<Node> it = null;
+		private int expectedModCount;
+		/**
+		 * The node the cursor is on, or was last on.
+		 */
+		private Node current = null;
+
+		private Cursor() {
+		}
+
+		/**
+		 * Moves to the next key.
+		 *
+		 * @return False if there are no more keys, in which case the cursor doesn't
+		 * move.
+		 */
+		public boolean next() {
+			if (it == null || expectedModCount != modCount) {
+				it = (current == null ? order : order.tailSet(current, false)).iterator();
+				expectedModCount = modCount;
+			}
+			if (!it.hasNext()) {
+				return false;
+			}
+			current = it.next();
+			return true;
+		}
+
+		/**
+		 * Positions the cursor on the given key, whether or not it exists, so that
+		 * the next key is the first one after it.
+		 *
+		 * @param key
+		 */
+		public void seek(String key) {
+			current = new Node(new Key(key), null);
+			it = null;
+		}
+
+		public String key() {
+			return current.key.key;
+		}
+
+		public Construct value() {
+			return current.value;
+		}
+	}
+
+	private static final class Node implements Map.Entry<String, Construct> {
+
+		private final Key key;
+		private Construct value;
+
+		private Node(Key key, Construct value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public String getKey() {
+			return key.key;
+		}
+
+		@Override
+		public Construct getValue() {
+			return value;
+		}
+
+		@Override
+		public Construct setValue(Construct value) {
+			Construct old = this.value;
+			this.value = value;
+			return old;
+		}
+	}
+
+	/**
+	 * A key, along with its numeric classification.
+	 */
+	static final class Key {
+
+		private final String key;
+		/**
+		 * True if the key only consists of digits and dots.
+		 */
+		private final boolean plain;
+		/**
+		 * True if the key can be parsed by {@link Integer#parseInt}. Note that this
+		 * includes keys like "-1", which aren't plain.
+		 */
+		private final boolean isInt;
+		private final int intValue;
+		private final boolean isDouble;
+		private final double doubleValue;
+		/**
+		 * What the key is identified by in the hash map. Keys that compare as equal
+		 * have equal ids.
+		 */
+		private final Object id;
+
+		Key(String key) {
+			this.key = key;
+			this.plain = IsPlain(key);
+			int i = 0;
+			boolean isInt = false;
+			double d = 0;
+			boolean isDouble = false;
+			char first = key.isEmpty() ? ' ' : key.charAt(0);
+			if ((first >= '0' && first <= '9') || first == '-' || first == '+') {
+				try {
+					i = Integer.parseInt(key);
+					isInt = true;
+				} catch (NumberFormatException e) {
+					//Not an int
+				}
+			}
+			if (plain) {
+				try {
+					d = Double.parseDouble(key);
+					isDouble = true;
+				} catch (NumberFormatException e) {
+					//Not a number at all, so it is compared as a string
+				}
+			}
+			this.isInt = isInt;
+			this.intValue = i;
+			this.isDouble = isDouble;
+			this.doubleValue = d;
+			this.id = isDouble ? (Object) Double.valueOf(d) : key;
+		}
+
+		/**
+		 * Returns the id of the given key, see {@link #id}.
+		 */
+		static Object GetId(String key) {
+			if (IsPlain(key)) {
+				try {
+					return Double.valueOf(Double.parseDouble(key));
+				} catch (NumberFormatException e) {
+					//Compared as a string
+				}
+			}
+			return key;
+		}
+
+		private static boolean IsPlain(String key) {
+			for (int i = 0; i < key.length(); i++) {
+				char c = key.charAt(i);
+				if ((c < '0' || c > '9') && c != '.') {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Compares two keys the same way the old TreeMap comparator did.
+	 */
+	static final Comparator<Key> KEY_COMPARATOR = new Comparator<Key>() {
+
+		@Override
+		public int compare(Key o1, Key o2) {
+			if (!o1.plain || !o2.plain) {
+				return o1.key.compareTo(o2.key);
+			}
+			if (o1.isInt && o2.isInt) {
+				return o1.intValue < o2.intValue ? -1 : (o1.intValue == o2.intValue ? 0 : 1);
+			}
+			if (o1.isDouble && o2.isDouble) {
+				return Double.compare(o1.doubleValue, o2.doubleValue);
+			}
+			return o1.key.compareTo(o2.key);
+		}
+	};
+
+	private static final Comparator<Node> COMPARATOR = new Comparator<Node>() {
+
+		@Override
+		public int compare(Node o1, Node o2) {
+			return KEY_COMPARATOR.compare(o1.key, o2.key);
+		}
+	};
+}
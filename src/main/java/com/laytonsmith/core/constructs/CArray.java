@@ -30,11 +30,16 @@ public class CArray extends Construct implements ArrayAccess{
     private boolean associative_mode = false;
     private long next_index = 0;
     private List<Construct> array;
-    private SortedMap<String, Construct> associative_array;
+    private AssociativeArray associative_array;
     private String mutVal;
     CArray parent = null;
 	private boolean valueDirty = true;
 	private boolean loadedExterns = false;
+	/**
+	 * True if the normal array is a list that was given to {@link #setCopyOnWriteArray},
+	 * which must be copied before it is modified.
+	 */
+	private boolean copyOnWrite = false;
     
     
     public CArray(Target t){
@@ -61,6 +66,76 @@ public class CArray extends Construct implements ArrayAccess{
 		return array;
 	}
 	
+	/**
+	 * Makes this a normal array, backed by the given list. The list isn't copied until the
+	 * array is modified, so it may be a read only list, which calculates its elements as
+	 * they are needed. Clones of the array share the list as well.
+	 * @param list 
+	 */
+	protected void setCopyOnWriteArray(List<Construct> list){
+		associative_mode = false;
+		associative_array = new AssociativeArray();
+		array = list;
+		copyOnWrite = true;
+		next_index = list.size();
+		regenValue();
+	}
+	
+	/**
+	 * Returns true if the normal array is still backed by the list that was given to
+	 * {@link #setCopyOnWriteArray}, that is, if it hasn't been modified since.
+	 * @return 
+	 */
+	protected boolean isCopyOnWrite(){
+		return copyOnWrite;
+	}
+	
+	/**
+	 * This must be called before the normal array is modified.
+	 */
+	private void copyArray(){
+		if(copyOnWrite){
+			array = PrimitiveList.Copy(array);
+			copyOnWrite = false;
+		}
+	}
+	
+	/**
+	 * This must be called before c is stored in the normal array. While all the values
+	 * are ints, doubles, or strings, they are stored in a {@link PrimitiveList}, so
+	 * if this is the first value, the array is switched to the list for its type, and if
+	 * the array is a primitive list that can't hold c, it is turned back into a normal
+	 * list.
+	 * @param c 
+	 */
+	private void prepareArray(Construct c){
+		copyArray();
+		if(array instanceof PrimitiveList){
+			if(!((PrimitiveList) array).accepts(c)){
+				array = new ArrayList<Construct>(array);
+			}
+		} else if(array.isEmpty()){
+			PrimitiveList store = PrimitiveList.For(c);
+			if(store != null){
+				array = store;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the list the values are stored in, if this is a normal array that
+	 * currently only contains ints, only doubles, or only strings, otherwise null. This
+	 * is meant for functions that can work on the values directly, rather than on each
+	 * value as a construct, and the list must not be modified.
+	 * @return 
+	 */
+	public PrimitiveList getPrimitiveList(){
+		if(!associative_mode && array instanceof PrimitiveList){
+			return (PrimitiveList) array;
+		}
+		return null;
+	}
+	
 	/**
 	 * Returns a List based on the array. This is only applicable if this
 	 * is a normal array.
@@ -78,7 +153,7 @@ public class CArray extends Construct implements ArrayAccess{
 	 * Returns the backing associative array.
 	 * @return 
 	 */
-	protected SortedMap<String, Construct> getAssociativeArray(){
+	protected Map<String, Construct> getAssociativeArray(){
 		return associative_array;
 	}
 	
@@ -102,7 +177,7 @@ public class CArray extends Construct implements ArrayAccess{
                 }
             }
         }
-        associative_array = new TreeMap<String, Construct>(comparator);
+        associative_array = new AssociativeArray();
         array = new ArrayList<Construct>();
         if(associative_mode){
             if(items != null){
@@ -110,15 +185,9 @@ public class CArray extends Construct implements ArrayAccess{
                     if(item instanceof CEntry){
                         associative_array.put(normalizeConstruct(((CEntry)item).ckey), ((CEntry)item).construct);
                     } else {
-                        int max = Integer.MIN_VALUE;            
-                        for (String key : associative_array.keySet()) {
-                            try{
-                                int i = Integer.parseInt(key);
-                                max = java.lang.Math.max(max, i);
-                            } catch(NumberFormatException e){}
-                        }
-                        if(max == Integer.MIN_VALUE){
-                            max = -1; //Special case, there are no integer indexes in here yet.
+                        int max = -1; //Special case, there are no integer indexes in here yet.
+                        if(associative_array.hasIntKey()){
+                            max = associative_array.maxIntKey();
                         }
                         associative_array.put(Integer.toString(max + 1), item);
                         if(item instanceof CArray){
@@ -130,6 +199,7 @@ public class CArray extends Construct implements ArrayAccess{
         } else {
             if(items != null){
                 for(Construct item : items){
+                    prepareArray(item);
                     array.add(item);
                     if(item instanceof CArray){
                         ((CArray)item).parent = this;
@@ -138,7 +208,7 @@ public class CArray extends Construct implements ArrayAccess{
             }
             this.next_index = array.size();
         }
-        regenValue(new HashSet<CArray>());
+        regenValue();
     }
 
     /**
@@ -167,7 +237,7 @@ public class CArray extends Construct implements ArrayAccess{
      */
     private CArray forceAssociativeMode(){
         if(associative_array == null){
-            associative_array = new TreeMap<String, Construct>();
+            associative_array = new AssociativeArray();
         }
         associative_mode = true;
 		return this;
@@ -176,16 +246,27 @@ public class CArray extends Construct implements ArrayAccess{
 	/**
 	 * This must be called every time the underlying model is changed, which
 	 * sets the toString value to dirty, which means that the value will be regenerated
-	 * next time it is requested.
+	 * next time it is requested. The parents are marked dirty as well. Since each array
+	 * only has one parent, the parents form a chain, which may loop back on itself, so
+	 * rather than keeping track of which arrays have been visited, a second pointer
+	 * follows the chain at half the speed, and if the two meet, the whole chain,
+	 * including the loop, has been marked.
 	 */
-    private void regenValue(Set<CArray> arrays) {
-		if(arrays.contains(this)){
-			return; //Recursive, so don't continue.
-		}
-		arrays.add(this);
-        valueDirty = true;
-		if(parent != null){
-			parent.regenValue(arrays);
+    private void regenValue() {
+		CArray fast = this;
+		CArray slow = this;
+		while(fast != null){
+			fast.valueDirty = true;
+			fast = fast.parent;
+			if(fast == null){
+				return;
+			}
+			fast.valueDirty = true;
+			fast = fast.parent;
+			slow = slow.parent;
+			if(fast == slow){
+				return; //Recursive, so don't continue.
+			}
 		}
     }
 	
@@ -195,8 +276,9 @@ public class CArray extends Construct implements ArrayAccess{
 	 */
 	public void reverse(){
 		if(!associative_mode){
+			copyArray();
 			Collections.reverse(array);
-			regenValue(new HashSet<CArray>());
+			regenValue();
 		} else {
 			throw new ConfigRuntimeException("Cannot reverse an associative array.", ExceptionType.CastException, getTarget());
 		}
@@ -222,6 +304,7 @@ public class CArray extends Construct implements ArrayAccess{
      */
     public void push(Construct c, Integer index) throws IllegalArgumentException, IndexOutOfBoundsException {
         if (!associative_mode) {
+			prepareArray(c);
 			if(index != null){
 				array.add(index, c);
 			} else {
@@ -232,12 +315,9 @@ public class CArray extends Construct implements ArrayAccess{
 			if(index != null){
 				throw new IllegalArgumentException("Cannot insert into an associative array");
 			}
-            int max = 0;            
-            for (String key : associative_array.keySet()) {
-                try{
-                    int i = Integer.parseInt(key);
-                    max = java.lang.Math.max(max, i);
-                } catch(NumberFormatException e){}
+            int max = 0;
+            if(associative_array.hasIntKey()){
+                max = java.lang.Math.max(max, associative_array.maxIntKey());
             }
             if(c instanceof CEntry){
                 associative_array.put(Integer.toString(max + 1), ((CEntry)c).construct());
@@ -248,7 +328,7 @@ public class CArray extends Construct implements ArrayAccess{
         if(c instanceof CArray){
             ((CArray)c).parent = this;
         }
-        regenValue(new HashSet<CArray>());
+        regenValue();
     }
     
     /**
@@ -269,6 +349,109 @@ public class CArray extends Construct implements ArrayAccess{
         return set;
     }
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The cursor works on the live array, and the array may be modified while it is open.
+	 * Values are read as the cursor reaches them. If keys are added or removed, the
+	 * cursor continues with the first key after the one it was last on, in the array's
+	 * current order. So, keys that are added after the current one will be visited, and
+	 * keys that are removed before they are reached won't be. For normal arrays, the keys
+	 * are the indexes, so removing an element before the current one means the element
+	 * after the current one is skipped, just like it would be in a for loop over the indexes.
+	 * @return 
+	 */
+	@Override
+	public ArrayAccess.Cursor cursor(){
+		return new ArrayCursor();
+	}
+	
+	private class ArrayCursor implements ArrayAccess.Cursor {
+		/**
+		 * The position of the current element, or -1 before the first element.
+		 */
+		private int index = -1;
+		private AssociativeArray source = null;
+		private AssociativeArray.Cursor assoc = null;
+		/**
+		 * The key of the current element, if it is in an associative array.
+		 */
+		private String key = null;
+		private Construct value = null;
+
+		@Override
+		public boolean next() {
+			if(!associative_mode){
+				if(index + 1 >= array.size()){
+					return false;
+				}
+				index++;
+				key = null;
+				value = array.get(index);
+				return true;
+			}
+			if(source != associative_array){
+				//Either this is the first element, or the array was made associative
+				//since the last one
+				source = associative_array;
+				assoc = source.cursor();
+				if(index >= 0){
+					assoc.seek(key == null ? Integer.toString(index) : key);
+				}
+			}
+			if(!assoc.next()){
+				return false;
+			}
+			index++;
+			key = assoc.key();
+			value = assoc.value();
+			if(value instanceof CEntry){
+				value = ((CEntry)value).construct();
+			}
+			return true;
+		}
+
+		@Override
+		public Construct key(Target t) {
+			if(key == null){
+				return CInt.GetCInt(index, t);
+			}
+			return new CString(key, t);
+		}
+
+		@Override
+		public Construct value(Target t) {
+			return value;
+		}
+	}
+	
+	/**
+	 * A cursor that only uses {@link #size()} and {@link #get(long, Target)}, for subclasses
+	 * that are always normal arrays, but don't keep their values in the usual place.
+	 */
+	class IndexCursor implements ArrayAccess.Cursor {
+		private long index = -1;
+
+		@Override
+		public boolean next() {
+			if(index + 1 >= size()){
+				return false;
+			}
+			index++;
+			return true;
+		}
+
+		@Override
+		public Construct key(Target t) {
+			return CInt.GetCInt(index, t);
+		}
+
+		@Override
+		public Construct value(Target t) {
+			return get(index, t);
+		}
+	}
+
     /**
      * 
      * @param index
@@ -283,16 +466,18 @@ public class CArray extends Construct implements ArrayAccess{
                 } else if(indx == next_index){
                     this.push(c);
                 } else {
+                    prepareArray(c);
                     array.set(indx, c);
                 }
             } catch (ConfigRuntimeException e) {
                 //Not a number. Convert to associative.
-                associative_array = new TreeMap<String, Construct>(comparator);
+                associative_array = new AssociativeArray();
                 for (int i = 0; i < array.size(); i++) {
                     associative_array.put(Integer.toString(i), array.get(i));
                 }
                 associative_mode = true;
                 array = null; // null out the original array container so it can be GC'd
+                copyOnWrite = false;
             }
         }
         if (associative_mode) {
@@ -301,7 +486,7 @@ public class CArray extends Construct implements ArrayAccess{
         if(c instanceof CArray){
             ((CArray)c).parent = this;
         }
-        regenValue(new HashSet<CArray>());
+        regenValue();
     }
     
     public final void set(int index, Construct c, Target t){
@@ -507,15 +692,17 @@ public class CArray extends Construct implements ArrayAccess{
 		}
         clone.associative_mode = associative_mode;
         if(!associative_mode){
-            if (array != null) {
+            if (array instanceof PrimitiveList && !copyOnWrite) {
+                clone.array = ((PrimitiveList) this.array).copy();
+            } else if (array != null && !copyOnWrite) {
                 clone.array = new ArrayList<Construct>(this.array);
             }
         } else {
             if(associative_array != null){
-                clone.associative_array = new TreeMap<String, Construct>(this.associative_array);
+                clone.associative_array = new AssociativeArray(this.associative_array);
             }
         }
-        clone.regenValue(new HashSet<CArray>());
+        clone.regenValue();
         return clone;
     }
     
@@ -544,7 +731,9 @@ public class CArray extends Construct implements ArrayAccess{
         Construct ret;
         if(!associative_mode){
             try{
-                ret = array.remove(Integer.parseInt(c));
+                int i = Integer.parseInt(c);
+                copyArray();
+                ret = array.remove(i);
 				next_index--;
             } catch(NumberFormatException e){ 
                 throw new ConfigRuntimeException("Expecting an integer, but received \"" + c + "\" (were you expecting an associative array? This array is a normal array.)", ExceptionType.CastException, construct.getTarget());
@@ -554,7 +743,7 @@ public class CArray extends Construct implements ArrayAccess{
         } else {
             ret = associative_array.remove(c);
         }
-        regenValue(new HashSet<CArray>());
+        regenValue();
         return ret;
     }
 	
@@ -577,43 +766,14 @@ public class CArray extends Construct implements ArrayAccess{
 			for(int i = array.size() - 1; i >= 0; i--){
 				Construct c = array.get(i);
 				if(BasicLogic.equals.doEquals(c, construct)){
+					copyArray();
 					array.remove(i);
 				}
 			}
 		}
-		regenValue(new HashSet<CArray>());
+		regenValue();
 	}
     
-    private Comparator<String> comparator = new Comparator<String>(){
-
-		@Override
-        public int compare(String o1, String o2) {
-            //Due to a dumb behavior in Double.parseDouble, 
-            //we need to check to see if there are non-digit characters in
-            //the keys, and if so, do a string comparison.
-            if(o1.matches(".*[^0-9\\.]+.*") || o2.matches(".*[^0-9\\.]+.*")){
-                return o1.compareTo(o2);
-            }
-            try{
-                int i1 = Integer.parseInt(o1);
-                int i2 = Integer.parseInt(o2);
-                //They're both integers, do an integer comparison
-                return new Integer(i1).compareTo(new Integer(i2));
-            } catch(NumberFormatException e){
-                try{                    
-                    double d1 = Double.parseDouble(o1);
-                    double d2 = Double.parseDouble(o2);
-                    //They're both doubles, do a double comparison
-                    return new Double(d1).compareTo(new Double(d2));
-                } catch(NumberFormatException ee){
-                    //Just do a string comparison
-                    return o1.compareTo(o2);
-                }
-            }
-        }
-        
-    };
-
     @Override
     public boolean isDynamic() {
         //The CArray is static, despite what you might first think.
@@ -657,6 +817,7 @@ public class CArray extends Construct implements ArrayAccess{
         STRING_IC
     }
     public void sort(final SortType sort){
+        copyArray();
         List<Construct> list = array;
         if(this.associative_mode){
             list = new ArrayList(associative_array.values());
@@ -664,6 +825,10 @@ public class CArray extends Construct implements ArrayAccess{
             this.associative_array = null;
             this.associative_mode = false;
             CHLog.GetLogger().Log(CHLog.Tags.GENERAL, LogLevel.VERBOSE, "Attempting to sort an associative array; key values will be lost.", this.getTarget());
+        } else if(array instanceof PrimitiveList && ((PrimitiveList) array).sort(sort)){
+            //The values were sorted without creating a construct for each one
+            this.regenValue();
+            return;
         }
         Collections.sort(array, new Comparator<Construct>() {
 			@Override
@@ -742,7 +907,7 @@ public class CArray extends Construct implements ArrayAccess{
             }
         });
         this.array = list;  
-        this.regenValue(new HashSet<CArray>());
+        this.regenValue();
     }
 	
 	public boolean isEmpty(){
@@ -5,11 +5,12 @@ import com.laytonsmith.annotations.typeof;
 import com.laytonsmith.core.Static;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.functions.Exceptions;
+import com.laytonsmith.core.natives.interfaces.ArrayAccess;
 import com.laytonsmith.core.natives.interfaces.Sizable;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.SortedMap;
+import java.util.Map;
 
 /**
  *
@@ -476,6 +477,11 @@ public class CByteArray extends Construct implements Sizable {
 			return backing.length;
 		}
 
+		@Override
+		public ArrayAccess.Cursor cursor() {
+			return new IndexCursor();
+		}
+
 		@Override
 		public String val() {
 			if(value == null){
@@ -500,7 +506,7 @@ public class CByteArray extends Construct implements Sizable {
 		}
 
 		@Override
-		protected SortedMap<String, Construct> getAssociativeArray() {
+		protected Map<String, Construct> getAssociativeArray() {
 			//This is even more serious, because it shouldn't ever happen.
 			throw new Error("This error should not happen. Please report this bug to the developers");
 		}
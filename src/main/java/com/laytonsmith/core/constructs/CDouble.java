@@ -16,9 +16,16 @@ public class CDouble extends Construct implements Cloneable{
     
     public static final long serialVersionUID = 1L;
     final double val;
+	private String string;
+	/**
+	 * True if this was created from a string, which may not be the canonical one.
+	 */
+	private final boolean parsed;
 
     public CDouble(String value, Target t){
         super(value, ConstructType.INT, t);
+		string = value;
+		parsed = true;
         try{
             val = Double.parseDouble(value);
         } catch(NumberFormatException e){
@@ -27,13 +34,34 @@ public class CDouble extends Construct implements Cloneable{
     }
 
     public CDouble(double value, Target t){
-        super(Double.toString(value), ConstructType.DOUBLE, t);
+        super(ConstructType.DOUBLE, t);
         val = value;
+		parsed = false;
     }
+	
+	@Override
+	public String val(){
+		//Most doubles are never turned into a string, so this is done lazily
+		String s = string;
+		if(s == null){
+			s = Double.toString(val);
+			string = s;
+		}
+		return s;
+	}
 
     public double getDouble(){
         return val;
     }
+	
+	/**
+	 * Returns true if the string value of this double is the one it would have if it
+	 * were created from the number, which isn't the case for values such as "1.50".
+	 * @return 
+	 */
+	public boolean isCanonical(){
+		return !parsed || string.equals(Double.toString(val));
+	}
     
     @Override
     public CDouble clone() throws CloneNotSupportedException{
@@ -2,7 +2,11 @@
 
 package com.laytonsmith.core.constructs;
 
+import com.laytonsmith.core.InstantReturnExecutor;
+import com.laytonsmith.core.ReturnCache;
+import com.laytonsmith.core.environments.GlobalEnv;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.functions.Function;
 import com.laytonsmith.core.functions.FunctionBase;
 import com.laytonsmith.core.functions.FunctionList;
@@ -15,9 +19,16 @@ public class CFunction extends Construct {
     
     public static final long serialVersionUID = 1L;
 	private transient Function function;
+	private final boolean procedure;
+	private transient ReturnCache.CallSite callSite;
+	private transient boolean callSiteResolved = false;
+	private transient Boolean instantReturn = null;
+	private transient Boolean preResolveVariables = null;
+	private transient GlobalEnv.ProcedureCallSite procedureCallSite;
 
     public CFunction(String name, Target t) {
         super(name, ConstructType.FUNCTION, t);
+		procedure = name.length() > 1 && name.charAt(0) == '_' && name.charAt(1) != '_';
     }
 
     @Override
@@ -36,21 +47,85 @@ public class CFunction extends Construct {
     }
 	
 	/**
-	 * Returns the underlying function for this construct.
+	 * Returns true if this is actually a call to a procedure, that is, the name
+	 * starts with a single underscore. Procedures are defined at runtime, so
+	 * there is no underlying function for these.
 	 * @return 
 	 */
+	public boolean isProcedure(){
+		return procedure;
+	}
+	
+	/**
+	 * Returns the underlying function for this construct. The compiler links
+	 * this during optimization, otherwise it is looked up the first time it
+	 * is needed, and cached from then on.
+	 * @return 
+	 * @throws ConfigRuntimeException If the function doesn't exist
+	 */
 	public Function getFunction(){
 		if(function == null){
 			try {
 				function = (Function)FunctionList.getFunction(val());
 			} catch (ConfigCompileException ex) {
-				//Shouldn't ever get here?
-				throw new Error(ex);
+				//Shouldn't ever get here, the compiler should have already caught this
+				throw ConfigRuntimeException.CreateUncatchableException("Unable to find function " + val(), getTarget());
 			}
 		}
 		return function;
 	}
 	
+	/**
+	 * Returns the return value cache for this call site, or null if the function
+	 * doesn't declare that its return value can be cached.
+	 * @return 
+	 */
+	public ReturnCache.CallSite getCallSite(){
+		if(!callSiteResolved){
+			if(!procedure && ReturnCache.IsCacheable(getFunction())){
+				callSite = new ReturnCache.CallSite();
+			}
+			callSiteResolved = true;
+		}
+		return callSite;
+	}
+	
+	/**
+	 * Returns true if the function can be queued up to run in the background,
+	 * rather than being run in place.
+	 * @return 
+	 */
+	public boolean isInstantReturn(){
+		if(instantReturn == null){
+			instantReturn = !procedure && InstantReturnExecutor.IsInstantReturn(getFunction());
+		}
+		return instantReturn;
+	}
+	
+	/**
+	 * Returns {@link Function#preResolveVariables()} for the function, which is
+	 * checked on every call, so it is cached here.
+	 * @return 
+	 */
+	public boolean preResolveVariables(){
+		if(preResolveVariables == null){
+			preResolveVariables = getFunction().preResolveVariables();
+		}
+		return preResolveVariables;
+	}
+	
+	/**
+	 * Returns the cache of the procedure this node calls. Only meaningful if
+	 * {@link #isProcedure()} returns true.
+	 * @return 
+	 */
+	public GlobalEnv.ProcedureCallSite getProcedureCallSite(){
+		if(procedureCallSite == null){
+			procedureCallSite = new GlobalEnv.ProcedureCallSite();
+		}
+		return procedureCallSite;
+	}
+	
 	/**
 	 * This function should only be called by the compiler.
 	 * @param f 
@@ -15,9 +15,44 @@ import com.laytonsmith.core.functions.Exceptions.ExceptionType;
 public class CInt extends Construct implements Cloneable{
     
     public static final long serialVersionUID = 1L;
+	
+	private static final int CACHE_LOW = -128;
+	private static final int CACHE_HIGH = 1024;
+	private static final CInt[] CACHE = new CInt[CACHE_HIGH - CACHE_LOW + 1];
+	static {
+		for(int i = 0; i < CACHE.length; i++){
+			CACHE[i] = new CInt(i + CACHE_LOW, Target.UNKNOWN);
+		}
+	}
+	
+	/**
+	 * Returns a CInt with the given value. Common values come from a cache, so
+	 * this should be preferred over the constructor when a new integer is the result of
+	 * some calculation. Since the cached instances are shared, their target is not
+	 * necessarily t, and never changes, so don't use this if the target of the value
+	 * itself matters.
+	 * @param value
+	 * @param t
+	 * @return 
+	 */
+	public static CInt GetCInt(long value, Target t){
+		if(value >= CACHE_LOW && value <= CACHE_HIGH){
+			return CACHE[(int) value - CACHE_LOW];
+		}
+		return new CInt(value, t);
+	}
+	
     final long val;
+	private String string;
+	/**
+	 * True if this was created from a string, which may not be the canonical one.
+	 */
+	private final boolean parsed;
+	
     public CInt(String value, Target t){
         super(value, ConstructType.INT, t);
+		string = value;
+		parsed = true;
         try{
             val = Long.parseLong(value);
         } catch(NumberFormatException e){
@@ -26,13 +61,49 @@ public class CInt extends Construct implements Cloneable{
     }
     
     public CInt(long value, Target t){
-        super(Long.toString(value), ConstructType.INT, t);
+        super(ConstructType.INT, t);
         val = value;
+		parsed = false;
     }
+	
+	@Override
+	public String val(){
+		//Most ints are never turned into a string, so this is done lazily
+		String s = string;
+		if(s == null){
+			s = Long.toString(val);
+			string = s;
+		}
+		return s;
+	}
+
+	/**
+	 * The cached instances are shared by every script and thread, so their target is
+	 * left alone. Otherwise, each read of a variable that holds one would change it.
+	 */
+	@Override
+	void setTarget(Target target){
+		if(!isShared()){
+			super.setTarget(target);
+		}
+	}
+	
+	private boolean isShared(){
+		return val >= CACHE_LOW && val <= CACHE_HIGH && CACHE[(int) val - CACHE_LOW] == this;
+	}
 
     public long getInt(){
         return val;
     }
+	
+	/**
+	 * Returns true if the string value of this int is the one it would have if it
+	 * were created from the number, which isn't the case for values such as "007".
+	 * @return 
+	 */
+	public boolean isCanonical(){
+		return !parsed || string.equals(Long.toString(val));
+	}
     
     @Override
     public CInt clone() throws CloneNotSupportedException{
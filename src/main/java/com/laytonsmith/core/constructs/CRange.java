@@ -0,0 +1,165 @@
+package com.laytonsmith.core.constructs;
+
+import com.laytonsmith.annotations.typeof;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A normal array of evenly spaced integers, such as the arrays returned by range().
+ * Rather than storing each value, the values are calculated as they are needed, so
+ * iterating over a large range doesn't require memory proportional to its size. Once
+ * the array is modified, it is turned into a normal array, and works just like one
+ * from then on.
+ *
+ * @author lsmith
+ */
+@typeof("array")
+public class CRange extends CArray {
+
+	private long start;
+	private long step;
+	private long size;
+
+	/**
+	 * Creates a range of size values, starting at start, each one step more than the last.
+	 *
+	 * @param start
+	 * @param step
+	 * @param size
+	 * @param t
+	 */
+	public CRange(long start, long step, long size, Target t) {
+		super(t);
+		init(start, step, size);
+	}
+
+	/**
+	 * For subclasses that need to work out their values before calling
+	 * {@link #init}.
+	 *
+	 * @param t
+	 */
+	protected CRange(Target t) {
+		super(t);
+	}
+
+	protected final void init(long start, long step, long size) {
+		if (size < 0) {
+			size = 0;
+		}
+		this.start = start;
+		this.step = step;
+		this.size = size;
+		setCopyOnWriteArray(new Sequence(start, step, (int) java.lang.Math.min(size, Integer.MAX_VALUE), getTarget()));
+	}
+
+	/**
+	 * Returns the range of values that range() returns, that is, start, start + increment,
+	 * and so on, up to but not including finish. If the values would never reach finish,
+	 * the range is empty.
+	 *
+	 * @param start
+	 * @param finish
+	 * @param increment
+	 * @param t
+	 * @return
+	 */
+	public static CRange GetRange(long start, long finish, long increment, Target t) {
+		long size;
+		if (start < finish && increment > 0) {
+			size = (finish - start - 1) / increment + 1;
+		} else if (start > finish && increment < 0) {
+			size = (start - finish - 1) / -increment + 1;
+		} else {
+			size = 0;
+		}
+		return new CRange(start, increment, size, t);
+	}
+
+	/**
+	 * Returns true if the array hasn't been modified, so it is still a range.
+	 *
+	 * @return
+	 */
+	public boolean isUnmodified() {
+		return isCopyOnWrite();
+	}
+
+	/**
+	 * Returns whether or not the given number is in the range, the same way array_contains
+	 * would find it, but without going through the values. Only valid while the range
+	 * {@link #isUnmodified()}.
+	 *
+	 * @param number A CInt or CDouble
+	 * @return
+	 */
+	public boolean containsNumber(Construct number) {
+		long value;
+		if (number instanceof CInt) {
+			value = ((CInt) number).getInt();
+		} else if (number instanceof CDouble) {
+			double d = ((CDouble) number).getDouble();
+			value = (long) d;
+			if (value != d) {
+				return false;
+			}
+		} else {
+			throw new IllegalArgumentException();
+		}
+		if (size == 0) {
+			return false;
+		}
+		long last = start + (size - 1) * step;
+		if (value < java.lang.Math.min(start, last) || value > java.lang.Math.max(start, last)) {
+			return false;
+		}
+		return step == 0 || (value - start) % step == 0;
+	}
+
+	@Override
+	public long size() {
+		if (isCopyOnWrite()) {
+			return size;
+		}
+		return super.size();
+	}
+
+	@Override
+	public boolean contains(Construct c) {
+		if (isCopyOnWrite() && (c instanceof CInt || c instanceof CDouble)) {
+			return containsNumber(c);
+		}
+		return super.contains(c);
+	}
+
+	/**
+	 * The values of an unmodified range.
+	 */
+	private static final class Sequence extends AbstractList<Construct> implements RandomAccess {
+
+		private final long start;
+		private final long step;
+		private final int size;
+		private final Target t;
+
+		private Sequence(long start, long step, int size, Target t) {
+			this.start = start;
+			this.step = step;
+			this.size = size;
+			this.t = t;
+		}
+
+		@Override
+		public Construct get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException(Integer.toString(index));
+			}
+			return CInt.GetCInt(start + index * step, t);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
@@ -1,22 +1,21 @@
 package com.laytonsmith.core.constructs;
 
 import com.laytonsmith.annotations.typeof;
-import com.laytonsmith.core.Static;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.core.functions.Exceptions;
 
 /**
+ * A slice, such as 1..5. When used as an index, this selects a range of elements,
+ * otherwise it is a range of the numbers from start to finish, inclusive, counting
+ * down if finish is less than start.
  *
  * @author layton
  */
 @typeof("slice")
-public class CSlice extends CArray {
+public class CSlice extends CRange {
     private long start;
     private long finish;
-	private int direction;
-	private long max;
-	private long size;
     public CSlice(String slice, Target t) throws ConfigCompileException{
         super(t);
         String [] split = slice.split("\\.\\.");
@@ -55,9 +54,7 @@ public class CSlice extends CArray {
     }
 	
 	private void calculateCaches(){
-		direction = start < finish?1:start==finish?0:-1;
-		max = Math.abs(finish - start);
-		size = max + 1;
+		init(start, start <= finish ? 1 : -1, Math.abs(finish - start) + 1);
 	}
     
     public long getStart(){
@@ -75,55 +72,10 @@ public class CSlice extends CArray {
 
 	@Override
 	public String val() {
-		return start + ".." + finish;
-	}
-
-	@Override
-	public boolean inAssociativeMode() {
-		return false;
-	}
-
-	@Override
-	public void set(Construct index, Construct c, Target t) {
-		throw new ConfigRuntimeException("CSlices cannot set values", Exceptions.ExceptionType.CastException, t);
-	}
-
-	@Override
-	public Construct get(Construct index, Target t) {
-		long i = Static.getInt(index, t);
-		if(i > max){
-			throw new ConfigRuntimeException("Index out of bounds. Index: " + i + " Size: " + max, Exceptions.ExceptionType.RangeException, t);
-		}
-		return new CInt(start + (direction * i), t);
-	}
-
-	@Override
-	public long size() {
-		return size;
-	}
-
-	@Override
-	public boolean contains(Construct c) {
-		try{
-			long i = Static.getInt(c, Target.UNKNOWN);
-			if(start < finish){
-				return start <= i && i <= finish;
-			} else {
-				return start >= i && i <= finish;
-			}
-		} catch(ConfigRuntimeException e){
-			return false;
-		}
-	}
-
-	@Override
-	public boolean containsKey(String c) {
-		try{
-			long i = Long.parseLong(c);
-			return i >= 0 && i < size;
-		} catch(NumberFormatException e){
-			return false;
+		if(isUnmodified()){
+			return start + ".." + finish;
 		}
+		return super.val();
 	}
 	
 }
@@ -13,6 +13,17 @@ import com.laytonsmith.core.natives.interfaces.ArrayAccess;
  */
 @typeof("string")
 public class CString extends Construct implements Cloneable, ArrayAccess{
+	
+	/**
+	 * Stands in for the parsed value of strings that aren't numbers. This is compared
+	 * by reference, so that the string "NaN" is still distinguishable.
+	 */
+	private static final Double NOT_A_NUMBER = new Double(Double.NaN);
+	/**
+	 * The parsed value of this string, see {@link #getNumber()}. This is null
+	 * until the string is first parsed.
+	 */
+	private Double number = null;
     
     public CString(String value, Target t){
         super(value==null?"":value, ConstructType.STRING, t);
@@ -26,6 +37,29 @@ public class CString extends Construct implements Cloneable, ArrayAccess{
         this(value.toString(), t);
     }
     
+	/**
+	 * Returns the value of this string parsed as a double. Strings are immutable, and
+	 * the same numeric string is often used over and over in math, so the parsed
+	 * value is cached.
+	 * @return
+	 * @throws NumberFormatException If the string isn't a number.
+	 */
+	public double getNumber() throws NumberFormatException{
+		Double d = number;
+		if(d == null){
+			try{
+				d = Double.parseDouble(val());
+			} catch(NumberFormatException e){
+				d = NOT_A_NUMBER;
+			}
+			number = d;
+		}
+		if(d == NOT_A_NUMBER){
+			throw new NumberFormatException(val());
+		}
+		return d;
+	}
+	
     @Override
     public CString clone() throws CloneNotSupportedException{
         return this;
@@ -64,6 +98,33 @@ public class CString extends Construct implements Cloneable, ArrayAccess{
         return new CString(this.val().substring(begin, end), t);
     }
 	
+	@Override
+	public ArrayAccess.Cursor cursor() {
+		final String s = val();
+		return new ArrayAccess.Cursor() {
+			private int index = -1;
+
+			@Override
+			public boolean next() {
+				if(index + 1 >= s.length()){
+					return false;
+				}
+				index++;
+				return true;
+			}
+
+			@Override
+			public Construct key(Target t) {
+				return CInt.GetCInt(index, t);
+			}
+
+			@Override
+			public Construct value(Target t) {
+				return new CString(s.charAt(index), t);
+			}
+		};
+	}
+	
 	@Override
 	public String getQuote(){
 		return super.getQuote();
@@ -77,6 +77,18 @@ public abstract class Construct implements Cloneable, Comparable<Construct>, Mix
         this.ctype = ctype;
         this.target = t;
     }
+	
+	/**
+	 * Constructor for subclasses that generate their string value lazily. These
+	 * subclasses must override {@link #val()}.
+	 * @param ctype
+	 * @param t 
+	 */
+	protected Construct(ConstructType ctype, Target t){
+		this.value = null;
+		this.ctype = ctype;
+		this.target = t;
+	}
 
     /**
      * Returns the standard string representation of this Construct.
@@ -110,7 +122,7 @@ public abstract class Construct implements Cloneable, Comparable<Construct>, Mix
 
     @Override
     public String toString() {
-        return value;
+        return val();
     }
 
     @Override
@@ -251,16 +263,18 @@ public abstract class Construct implements Cloneable, Comparable<Construct>, Mix
 
 	@Override
     public int compareTo(Construct c) {
-        if(this.value.contains(" ") || this.value.contains("\t") 
-                || c.value.contains(" ") || c.value.contains("\t")){
-            return this.value.compareTo(c.value);
+		String value = val();
+		String other = c.val();
+        if(value.contains(" ") || value.contains("\t") 
+                || other.contains(" ") || other.contains("\t")){
+            return value.compareTo(other);
         }
         try {
-            Double d1 = Double.valueOf(this.value);
-            Double d2 = Double.valueOf(c.value);
+            Double d1 = Double.valueOf(value);
+            Double d2 = Double.valueOf(other);
             return d1.compareTo(d2);
         } catch (NumberFormatException e) {
-            return this.value.compareTo(c.value);
+            return value.compareTo(other);
         }
     }
     
@@ -9,6 +9,12 @@ public class IVariable extends Construct implements Cloneable {
     public static final long serialVersionUID = 1L;
     private Construct var_value;
     final private String name;
+	/**
+	 * The slot this variable was last resolved to, in an {@link IVariableList},
+	 * or null if it hasn't been resolved yet. Slot numbers are only valid for the
+	 * current process, so this is not serialized.
+	 */
+	private transient IVariableList.Slot slot = null;
 
     public IVariable(String name, Target t) {
         super(name, ConstructType.IVARIABLE, t);
@@ -25,6 +31,19 @@ public class IVariable extends Construct implements Cloneable {
         this.name = name;
     }
 
+	/**
+	 * Creates a new variable with the same name (and slot) as the given variable,
+	 * but with a new value. Prefer this over looking the name up again, when
+	 * an existing variable is being replaced.
+	 * @param var
+	 * @param value
+	 * @param t 
+	 */
+	public IVariable(IVariable var, Construct value, Target t) {
+		this(var.name, value, t);
+		this.slot = var.slot;
+	}
+
     @Override
     public String val() {
         return var_value.val();
@@ -39,6 +58,22 @@ public class IVariable extends Construct implements Cloneable {
         return name;
     }
 
+	/**
+	 * Returns the slot that this variable is stored at, in lists that use the given
+	 * table. This is cached in this node, so it is only looked up by name again if
+	 * the node is used with a different table.
+	 * @param slots
+	 * @return 
+	 */
+	int getSlot(IVariableList.Slots slots) {
+		IVariableList.Slot s = slot;
+		if (s == null || s.slots != slots) {
+			s = slots.get(name);
+			slot = s;
+		}
+		return s.index;
+	}
+
     public void setIval(Construct c) {
         var_value = c;
     }
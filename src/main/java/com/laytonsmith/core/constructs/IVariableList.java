@@ -2,36 +2,150 @@
 
 package com.laytonsmith.core.constructs;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- *
+ * Holds the ivariables in a scope. Rather than being keyed by name, each
+ * variable name is given a slot number, and the variables are stored in an array
+ * indexed by that slot. The slot numbers come from a {@link Slots} table, which
+ * belongs to one body of code, for instance an alias or a procedure, and is shared by every
+ * list created for that body, and the clones of those lists. Variable nodes cache
+ * their slot in the table they were last used with, so reading or writing a
+ * variable is just an array access. Dynamically named variables (for instance
+ * from reflection, or import/export) still work, they are simply resolved to
+ * their slot by name first.
  * @author Layton
  */
 public class IVariableList {
-    Map<String, IVariable> varList = new HashMap<String, IVariable>();
+	
+	/**
+	 * The slot numbers of the variable names used by one body of code. Tables only
+	 * grow by the names that are actually used with them, and are released along
+	 * with the code and lists that use them.
+	 */
+	public static final class Slots {
+		
+		private final Map<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+		
+		/**
+		 * Returns the slot for the given variable name, assigning it a new one if this
+		 * name has never been seen before.
+		 * @param name
+		 * @return 
+		 */
+		Slot get(String name){
+			Slot slot = slots.get(name);
+			if(slot == null){
+				synchronized(this){
+					slot = slots.get(name);
+					if(slot == null){
+						slot = new Slot(this, slots.size());
+						slots.put(name, slot);
+					}
+				}
+			}
+			return slot;
+		}
+	}
+	
+	/**
+	 * A slot number, along with the table it is valid in.
+	 */
+	static final class Slot {
+		
+		final Slots slots;
+		final int index;
+		
+		private Slot(Slots slots, int index){
+			this.slots = slots;
+			this.index = index;
+		}
+	}
+	
+	private final Slots slots;
+    IVariable[] varList = new IVariable[0];
+	/**
+	 * True if varList may be shared with a clone of this list, in which case it
+	 * must be copied before it is written to.
+	 */
+	private boolean shared = false;
+	
+	/**
+	 * Creates an empty list, with its own slot table.
+	 */
+	public IVariableList(){
+		this(new Slots());
+	}
+	
+	/**
+	 * Creates an empty list that uses the given slot table. Code that is run
+	 * repeatedly with a new list each time should keep one table for all of them,
+	 * so its variable nodes only have to be resolved once.
+	 * @param slots 
+	 */
+	public IVariableList(Slots slots){
+		this.slots = slots;
+	}
+	
+	/**
+	 * Returns the slot table this list uses.
+	 * @return 
+	 */
+	public Slots getSlots(){
+		return slots;
+	}
     
     public void set(IVariable v){
-        varList.put(v.getName(), v);
+		int slot = v.getSlot(slots);
+		if(slot >= varList.length){
+			varList = Arrays.copyOf(varList, Math.max(slot + 1, varList.length * 2));
+			shared = false;
+		} else if(shared){
+			varList = varList.clone();
+			shared = false;
+		}
+        varList[slot] = v;
     }
     
     public IVariable get(String name, Target t){
-        if(!varList.containsKey(name)){
-            this.set(new IVariable(name, t));
-        }
-        varList.get(name).setTarget(t);
-        return varList.get(name);
+		return get(slots.get(name).index, name, t);
     }
+	
+	/**
+	 * Returns the variable with the same name as the given variable, updating its
+	 * target to the target of the given variable. This is the same as
+	 * {@code get(var.getName(), var.getTarget())}, but avoids the name lookup.
+	 * @param var
+	 * @return 
+	 */
+	public IVariable get(IVariable var){
+		return get(var.getSlot(slots), var.getName(), var.getTarget());
+	}
+	
+	private IVariable get(int slot, String name, Target t){
+		IVariable v = slot < varList.length ? varList[slot] : null;
+		if(v == null){
+			v = new IVariable(name, t);
+			set(v);
+		} else if(v.getTarget() != t){
+			v.setTarget(t);
+		}
+		return v;
+	}
 
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
         b.append("[");
         boolean first = true;
-        for(Map.Entry<String, IVariable> entry : varList.entrySet()){
-            IVariable iv = entry.getValue();
+        for(IVariable iv : varList){
+			if(iv == null){
+				continue;
+			}
             if(first){
                 first = false;
             } else {
@@ -45,14 +159,23 @@ public class IVariableList {
     
     @Override
     public IVariableList clone(){
-        IVariableList clone = new IVariableList();
-        clone.varList = new HashMap<String, IVariable>(varList);
+		//Both lists share the array until one of them writes to it
+        IVariableList clone = new IVariableList(slots);
+        clone.varList = varList;
+		clone.shared = true;
+		shared = true;
         return clone;
     }
 
     //only the reflection package should be accessing this
     public Set<String> keySet() {
-        return varList.keySet();
+		Set<String> keys = new HashSet<String>();
+		for(IVariable iv : varList){
+			if(iv != null){
+				keys.add(iv.getName());
+			}
+		}
+        return keys;
     }
     
     
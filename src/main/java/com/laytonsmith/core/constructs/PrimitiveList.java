@@ -0,0 +1,417 @@
+package com.laytonsmith.core.constructs;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The backing list of a normal {@link CArray} while all of its values are ints, all
+ * doubles, or all strings. The values are stored unboxed, in a long[], double[] or
+ * String[], rather than as a Construct each, which takes a fraction of the memory for
+ * large arrays. The constructs are created again as the values are read. CArray switches
+ * back to a normal list as soon as a value of any other type is stored in it.
+ * <p>
+ * Only values that come back out exactly the same are accepted, so for instance, an
+ * int that was created from the string "007" is not, since it would come back as 7.
+ *
+ * @author lsmith
+ */
+public abstract class PrimitiveList extends AbstractList<Construct> implements RandomAccess {
+
+	private static final int INITIAL_CAPACITY = 10;
+
+	protected int size = 0;
+
+	private PrimitiveList() {
+	}
+
+	/**
+	 * Returns an empty list that can store the given value, or null if the value
+	 * can't be stored in any of the primitive lists.
+	 *
+	 * @param c
+	 * @return
+	 */
+	static PrimitiveList For(Construct c) {
+		if (Longs.Accepts(c)) {
+			return new Longs();
+		} else if (Doubles.Accepts(c)) {
+			return new Doubles();
+		} else if (Strings.Accepts(c)) {
+			return new Strings();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a modifiable copy of the given list, which is a primitive list, if all of
+	 * the values fit in one.
+	 *
+	 * @param list
+	 * @return
+	 */
+	static List<Construct> Copy(List<Construct> list) {
+		if (list instanceof PrimitiveList) {
+			return ((PrimitiveList) list).copy();
+		}
+		if (!list.isEmpty()) {
+			PrimitiveList store = For(list.get(0));
+			if (store != null) {
+				for (Construct c : list) {
+					if (!store.accepts(c)) {
+						return new ArrayList<Construct>(list);
+					}
+					store.add(c);
+				}
+				return store;
+			}
+		}
+		return new ArrayList<Construct>(list);
+	}
+
+	/**
+	 * Returns true if the value can be stored in this list.
+	 *
+	 * @param c
+	 * @return
+	 */
+	public abstract boolean accepts(Construct c);
+
+	/**
+	 * Returns a copy of this list.
+	 *
+	 * @return
+	 */
+	abstract PrimitiveList copy();
+
+	/**
+	 * Sorts the list in place, if it can be done without comparing the values as
+	 * constructs, and gives the same order as {@link CArray#sort} would.
+	 *
+	 * @param type
+	 * @return True if the list was sorted, false if it has to be sorted the normal way.
+	 */
+	abstract boolean sort(CArray.SortType type);
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	protected void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	protected void checkValue(Construct c) {
+		if (!accepts(c)) {
+			throw new IllegalArgumentException("Cannot store a " + c.getClass().getSimpleName() + " in a " + getClass().getSimpleName());
+		}
+	}
+
+	protected int grow(int capacity) {
+		return java.lang.Math.max(INITIAL_CAPACITY, capacity + (capacity >> 1));
+	}
+
+	/**
+	 * A list of ints.
+	 */
+	public static final class Longs extends PrimitiveList {
+
+		private long[] values = new long[0];
+
+		private static boolean Accepts(Construct c) {
+			return c != null && c.getClass() == CInt.class && ((CInt) c).isCanonical();
+		}
+
+		@Override
+		public boolean accepts(Construct c) {
+			return Accepts(c);
+		}
+
+		/**
+		 * Returns the value at the given index.
+		 *
+		 * @param index
+		 * @return
+		 */
+		public long getLong(int index) {
+			checkIndex(index);
+			return values[index];
+		}
+
+		@Override
+		public Construct get(int index) {
+			return CInt.GetCInt(getLong(index), Target.UNKNOWN);
+		}
+
+		@Override
+		public Construct set(int index, Construct c) {
+			checkIndex(index);
+			checkValue(c);
+			Construct old = get(index);
+			values[index] = ((CInt) c).getInt();
+			return old;
+		}
+
+		@Override
+		public void add(int index, Construct c) {
+			if (index < 0 || index > size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			checkValue(c);
+			if (size == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = ((CInt) c).getInt();
+			size++;
+			modCount++;
+		}
+
+		@Override
+		public Construct remove(int index) {
+			Construct old = get(index);
+			System.arraycopy(values, index + 1, values, index, size - index - 1);
+			size--;
+			modCount++;
+			return old;
+		}
+
+		@Override
+		public int indexOf(Object o) {
+			if (Accepts((Construct) o)) {
+				long value = ((CInt) o).getInt();
+				for (int i = 0; i < size; i++) {
+					if (values[i] == value) {
+						return i;
+					}
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		PrimitiveList copy() {
+			Longs copy = new Longs();
+			copy.values = Arrays.copyOf(values, size);
+			copy.size = size;
+			return copy;
+		}
+
+		@Override
+		boolean sort(CArray.SortType type) {
+			if (type != CArray.SortType.REGULAR && type != CArray.SortType.NUMERIC) {
+				return false;
+			}
+			//Ints are compared as doubles, which are only exact up to 2^53
+			for (int i = 0; i < size; i++) {
+				if (values[i] > (1L << 53) || values[i] < -(1L << 53)) {
+					return false;
+				}
+			}
+			Arrays.sort(values, 0, size);
+			modCount++;
+			return true;
+		}
+	}
+
+	/**
+	 * A list of doubles.
+	 */
+	public static final class Doubles extends PrimitiveList {
+
+		private double[] values = new double[0];
+
+		private static boolean Accepts(Construct c) {
+			return c != null && c.getClass() == CDouble.class && ((CDouble) c).isCanonical();
+		}
+
+		@Override
+		public boolean accepts(Construct c) {
+			return Accepts(c);
+		}
+
+		/**
+		 * Returns the value at the given index.
+		 *
+		 * @param index
+		 * @return
+		 */
+		public double getDouble(int index) {
+			checkIndex(index);
+			return values[index];
+		}
+
+		@Override
+		public Construct get(int index) {
+			return new CDouble(getDouble(index), Target.UNKNOWN);
+		}
+
+		@Override
+		public Construct set(int index, Construct c) {
+			checkIndex(index);
+			checkValue(c);
+			Construct old = get(index);
+			values[index] = ((CDouble) c).getDouble();
+			return old;
+		}
+
+		@Override
+		public void add(int index, Construct c) {
+			if (index < 0 || index > size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			checkValue(c);
+			if (size == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = ((CDouble) c).getDouble();
+			size++;
+			modCount++;
+		}
+
+		@Override
+		public Construct remove(int index) {
+			Construct old = get(index);
+			System.arraycopy(values, index + 1, values, index, size - index - 1);
+			size--;
+			modCount++;
+			return old;
+		}
+
+		@Override
+		public int indexOf(Object o) {
+			if (Accepts((Construct) o)) {
+				long bits = Double.doubleToLongBits(((CDouble) o).getDouble());
+				for (int i = 0; i < size; i++) {
+					if (Double.doubleToLongBits(values[i]) == bits) {
+						return i;
+					}
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		PrimitiveList copy() {
+			Doubles copy = new Doubles();
+			copy.values = Arrays.copyOf(values, size);
+			copy.size = size;
+			return copy;
+		}
+
+		@Override
+		boolean sort(CArray.SortType type) {
+			if (type != CArray.SortType.REGULAR && type != CArray.SortType.NUMERIC) {
+				return false;
+			}
+			//Sorts in the same order as Double.compare
+			Arrays.sort(values, 0, size);
+			modCount++;
+			return true;
+		}
+	}
+
+	/**
+	 * A list of strings.
+	 */
+	public static final class Strings extends PrimitiveList {
+
+		private String[] values = new String[0];
+
+		private static boolean Accepts(Construct c) {
+			return c != null && c.getClass() == CString.class;
+		}
+
+		@Override
+		public boolean accepts(Construct c) {
+			return Accepts(c);
+		}
+
+		/**
+		 * Returns the value at the given index.
+		 *
+		 * @param index
+		 * @return
+		 */
+		public String getString(int index) {
+			checkIndex(index);
+			return values[index];
+		}
+
+		@Override
+		public Construct get(int index) {
+			return new CString(getString(index), Target.UNKNOWN);
+		}
+
+		@Override
+		public Construct set(int index, Construct c) {
+			checkIndex(index);
+			checkValue(c);
+			Construct old = get(index);
+			values[index] = c.val();
+			return old;
+		}
+
+		@Override
+		public void add(int index, Construct c) {
+			if (index < 0 || index > size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			checkValue(c);
+			if (size == values.length) {
+				values = Arrays.copyOf(values, grow(values.length));
+			}
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = c.val();
+			size++;
+			modCount++;
+		}
+
+		@Override
+		public Construct remove(int index) {
+			Construct old = get(index);
+			System.arraycopy(values, index + 1, values, index, size - index - 1);
+			size--;
+			values[size] = null;
+			modCount++;
+			return old;
+		}
+
+		@Override
+		public int indexOf(Object o) {
+			if (Accepts((Construct) o)) {
+				String value = ((Construct) o).val();
+				for (int i = 0; i < size; i++) {
+					if (values[i].equals(value)) {
+						return i;
+					}
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		PrimitiveList copy() {
+			Strings copy = new Strings();
+			copy.values = Arrays.copyOf(values, size);
+			copy.size = size;
+			return copy;
+		}
+
+		@Override
+		boolean sort(CArray.SortType type) {
+			if (type != CArray.SortType.STRING) {
+				return false;
+			}
+			Arrays.sort(values, 0, size);
+			modCount++;
+			return true;
+		}
+	}
+}
@@ -17,6 +17,7 @@ import com.laytonsmith.persistence.PersistenceNetwork;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A global environment is always available, and contains the objects that the
@@ -37,6 +38,16 @@ public class GlobalEnv implements Environment.EnvironmentImpl, Cloneable {
 	private File root;
 	private CClosure uncaughtExceptionHandler;
 	private Map<String, Procedure> procs = null;
+	/**
+	 * True if the procs map may be shared with a clone of this environment, in which
+	 * case it must be copied before it is modified.
+	 */
+	private boolean procsShared = false;
+	/**
+	 * Incremented whenever any procs map may have been modified, which invalidates
+	 * the procedures cached in the {@link ProcedureCallSite}s.
+	 */
+	private static final AtomicInteger procsVersion = new AtomicInteger();
 	private IVariableList iVariableList = null;
 	private String label = null;
 	private DaemonManager daemonManager = new DaemonManager();
@@ -151,10 +162,11 @@ public class GlobalEnv implements Environment.EnvironmentImpl, Cloneable {
 	@Override
 	public EnvironmentImpl clone() throws CloneNotSupportedException {
 		GlobalEnv clone = (GlobalEnv) super.clone();
+		//The procs and variables are copied on write, so cloning an environment is cheap
+		//until either one of them is actually changed.
 		if (procs != null) {
-			clone.procs = new HashMap<String, Procedure>(procs);
-		} else {
-			clone.procs = new HashMap<String, Procedure>();
+			procsShared = true;
+			clone.procsShared = true;
 		}
 		if (iVariableList != null) {
 			clone.iVariableList = (IVariableList) iVariableList.clone();
@@ -177,7 +189,11 @@ public class GlobalEnv implements Environment.EnvironmentImpl, Cloneable {
 	/**
 	 * Returns the Map of known procedures in this environment. If the list of
 	 * procedures is currently empty, a new one is created and stored in the
-	 * environment.
+	 * environment. The returned map may be modified, so if it is currently shared
+	 * with another environment, it is copied first. If the procedure is only going to be
+	 * read, use {@link #GetProc(java.lang.String)} instead, and to define a procedure,
+	 * use {@link #DefineProc(com.laytonsmith.core.Procedure)}, which also invalidates
+	 * the procedures cached in the call sites once the map has been modified.
 	 *
 	 * @param env
 	 * @return
@@ -185,12 +201,67 @@ public class GlobalEnv implements Environment.EnvironmentImpl, Cloneable {
 	public Map<String, Procedure> GetProcs() {
 		if (procs == null) {
 			procs = new HashMap<String, Procedure>();
+		} else if (procsShared) {
+			procs = new HashMap<String, Procedure>(procs);
 		}
+		procsShared = false;
+		procsVersion.incrementAndGet();
 		return procs;
 	}
 
+	/**
+	 * Defines the procedure in this environment, replacing any procedure with the
+	 * same name. The cached procedures are invalidated after the procedure is stored,
+	 * so a lookup that runs at the same time can't cache the old procedure under the
+	 * new version.
+	 *
+	 * @param proc
+	 */
+	public void DefineProc(Procedure proc) {
+		GetProcs().put(proc.getName(), proc);
+		procsVersion.incrementAndGet();
+	}
+
+	/**
+	 * Returns the procedure with the given name, or null if no such procedure
+	 * is known in this environment. Unlike {@link #GetProcs()}, this never copies
+	 * the procs map.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public Procedure GetProc(String name) {
+		if (procs == null) {
+			return null;
+		}
+		return procs.get(name);
+	}
+
+	/**
+	 * Returns the procedure with the given name, like {@link #GetProc(java.lang.String)},
+	 * but remembers the result in the call site. As long as no procedures have been
+	 * defined since, and this environment has the same procs as the last time, the
+	 * remembered procedure is returned without looking it up again.
+	 *
+	 * @param name
+	 * @param site
+	 * @return
+	 */
+	public Procedure GetProc(String name, ProcedureCallSite site) {
+		int version = procsVersion.get();
+		ProcedureCallSite.Entry entry = site.entry;
+		if (entry != null && entry.procs == procs && entry.version == version) {
+			return entry.proc;
+		}
+		Procedure proc = GetProc(name);
+		site.entry = new ProcedureCallSite.Entry(procs, version, proc);
+		return proc;
+	}
+
 	public void SetProcs(Map<String, Procedure> procs) {
 		this.procs = procs;
+		procsShared = false;
+		procsVersion.incrementAndGet();
 	}
 
 	/**
@@ -259,4 +330,26 @@ public class GlobalEnv implements Environment.EnvironmentImpl, Cloneable {
     public BoundEvent.ActiveEvent GetEvent(){
         return event;
     }
+
+	/**
+	 * The inline cache for a single procedure call in the code, see
+	 * {@link GlobalEnv#GetProc(java.lang.String, ProcedureCallSite)}.
+	 */
+	public static final class ProcedureCallSite {
+
+		private volatile Entry entry = null;
+
+		private static final class Entry {
+
+			private final Map<String, Procedure> procs;
+			private final int version;
+			private final Procedure proc;
+
+			private Entry(Map<String, Procedure> procs, int version, Procedure proc) {
+				this.procs = procs;
+				this.version = version;
+				this.proc = proc;
+			}
+		}
+	}
 }
@@ -12,7 +12,8 @@ import com.laytonsmith.core.constructs.Target;
 public class FunctionReturnException extends ProgramFlowManipulationException{
     Construct ret;
     public FunctionReturnException(Construct ret, Target t){
-		super(t);
+		//This is thrown for every return, so skip the stacktrace
+		super(t, false);
         this.ret = ret;
     }
     public Construct getReturn(){
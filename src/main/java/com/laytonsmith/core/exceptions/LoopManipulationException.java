@@ -12,7 +12,8 @@ public abstract class LoopManipulationException extends ProgramFlowManipulationE
 	private int times;
 	private String name;
 	protected LoopManipulationException(int times, String name, Target t){
-		super(t);
+		//These are thrown for every break or continue, so skip the stacktrace
+		super(t, false);
 		this.times = times;
 		this.name = name;
 	}
@@ -21,6 +21,19 @@ public abstract class ProgramFlowManipulationException extends RuntimeException
 		this.t = t;
 	}
 	
+	/**
+	 * Constructor for the manipulations that are part of normal program flow,
+	 * such as break, continue and return. These are thrown often, and always
+	 * caught by the script, so the expensive stacktrace is skipped.
+	 * @param t The target at which this program flow manipulation construct
+	 * was defined.
+	 * @param stackTrace If false, no stacktrace is filled in.
+	 */
+	protected ProgramFlowManipulationException(Target t, boolean stackTrace){
+		super(null, null, false, stackTrace);
+		this.t = t;
+	}
+	
 	/**
 	 * Returns the code target at which this program flow manipulation construct
 	 * was defined, so that if it was used improperly, a full stacktrace can
@@ -546,6 +546,19 @@ public class ArrayHandling {
 			equals e = new equals();
 			if (args[0] instanceof CArray) {
 				CArray ca = (CArray) args[0];
+				if (ca instanceof CRange && ((CRange) ca).isUnmodified()
+						&& (args[1] instanceof CInt || args[1] instanceof CDouble)) {
+					return new CBoolean(((CRange) ca).containsNumber(args[1]), t);
+				}
+				PrimitiveList values = ca.getPrimitiveList();
+				if (values instanceof PrimitiveList.Strings) {
+					//Only an exact match can be found without the generic comparison
+					if (values.indexOf(args[1]) != -1) {
+						return new CBoolean(true, t);
+					}
+				} else if (values != null && (args[1] instanceof CInt || args[1] instanceof CDouble)) {
+					return new CBoolean(containsNumber(values, args[1]), t);
+				}
 				for (int i = 0; i < ca.size(); i++) {
 					if (((CBoolean) e.exec(t, env, ca.get(i, t), args[1])).getBoolean()) {
 						return new CBoolean(true, t);
@@ -557,6 +570,41 @@ public class ArrayHandling {
 			}
 		}
 
+		/**
+		 * Goes through a list of ints or doubles without creating a construct for each
+		 * value, comparing them the same way equals does.
+		 */
+		private static boolean containsNumber(PrimitiveList values, Construct number) {
+			if (values instanceof PrimitiveList.Longs && number instanceof CInt) {
+				PrimitiveList.Longs longs = (PrimitiveList.Longs) values;
+				long value = ((CInt) number).getInt();
+				for (int i = 0; i < longs.size(); i++) {
+					if (longs.getLong(i) == value) {
+						return true;
+					}
+				}
+				return false;
+			}
+			double value = Static.getNumber(number, number.getTarget());
+			if (values instanceof PrimitiveList.Longs) {
+				PrimitiveList.Longs longs = (PrimitiveList.Longs) values;
+				for (int i = 0; i < longs.size(); i++) {
+					if (longs.getLong(i) == value) {
+						return true;
+					}
+				}
+			} else {
+				PrimitiveList.Doubles doubles = (PrimitiveList.Doubles) values;
+				for (int i = 0; i < doubles.size(); i++) {
+					double d = doubles.getDouble(i);
+					if (d == value || (Double.isNaN(d) && Double.isNaN(value))) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
 		@Override
 		public ExceptionType[] thrown() {
 			return new ExceptionType[]{ExceptionType.CastException};
@@ -850,14 +898,8 @@ public class ArrayHandling {
 				finish = Static.getInt(args[1], t);
 				increment = Static.getInt(args[2], t);
 			}
-			if (start < finish && increment < 0 || start > finish && increment > 0 || increment == 0) {
-				return new CArray(t);
-			}
-			CArray ret = new CArray(t);
-			for (long i = start; (increment > 0 ? i < finish : i > finish); i = i + increment) {
-				ret.push(new CInt(i, t));
-			}
-			return ret;
+			//The values are calculated as they are needed
+			return CRange.GetRange(start, finish, increment, t);
 		}
 
 		@Override
@@ -918,8 +960,9 @@ public class ArrayHandling {
 			if (args[0] instanceof CArray) {
 				CArray ca = (CArray) args[0];
 				CArray ca2 = new CArray(t);
-				for (String c : ca.keySet()) {
-					ca2.push(new CString(c, t));
+				ArrayAccess.Cursor cursor = ca.cursor();
+				while (cursor.next()) {
+					ca2.push(new CString(cursor.key(t).val(), t));
 				}
 				return ca2;
 			} else {
@@ -1180,8 +1223,9 @@ public class ArrayHandling {
 				glue = args[1].val();
 			}
 			boolean first = true;
-			for (String key : ca.keySet()) {
-				Construct value = ca.get(key, t);
+			ArrayAccess.Cursor cursor = ca.cursor();
+			while (cursor.next()) {
+				Construct value = cursor.value(t);
 				if (!first) {
 					b.append(glue).append(value.val());
 				} else {
@@ -607,6 +607,15 @@ public class BasicLogic {
 			return ret.getBoolean();
 		}
 
+		private static boolean allNumbers(Construct[] args) {
+			for (Construct c : args) {
+				if (!(c instanceof CInt || c instanceof CDouble)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
 		@Override
 		public String getName() {
 			return "equals";
@@ -632,6 +641,25 @@ public class BasicLogic {
 			if (referenceMatch) {
 				return new CBoolean(true, t);
 			}
+			if (allNumbers(args)) {
+				//Fast path, which gives the same answer as the string comparison followed by
+				//the numeric comparison below, without generating the strings.
+				boolean equals = true;
+				for (int i = 1; i < args.length; i++) {
+					if (args[i - 1] instanceof CInt && args[i] instanceof CInt) {
+						equals = ((CInt) args[i - 1]).getInt() == ((CInt) args[i]).getInt();
+					} else {
+						double arg1 = Static.getNumber(args[i - 1], t);
+						double arg2 = Static.getNumber(args[i], t);
+						//NaN only equals itself when compared as a string
+						equals = arg1 == arg2 || (Double.isNaN(arg1) && Double.isNaN(arg2));
+					}
+					if (!equals) {
+						break;
+					}
+				}
+				return new CBoolean(equals, t);
+			}
 			if (Static.anyBooleans(args)) {
 				boolean equals = true;
 				for (int i = 1; i < args.length; i++) {
@@ -1157,6 +1185,9 @@ public class BasicLogic {
 
 		@Override
 		public Construct exec(Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			if (args[0] instanceof CInt && args[1] instanceof CInt) {
+				return new CBoolean(((CInt) args[0]).getInt() < ((CInt) args[1]).getInt(), t);
+			}
 			double arg1 = Static.getNumber(args[0], t);
 			double arg2 = Static.getNumber(args[1], t);
 			return new CBoolean(arg1 < arg2, t);
@@ -1220,6 +1251,9 @@ public class BasicLogic {
 
 		@Override
 		public Construct exec(Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			if (args[0] instanceof CInt && args[1] instanceof CInt) {
+				return new CBoolean(((CInt) args[0]).getInt() > ((CInt) args[1]).getInt(), t);
+			}
 			double arg1 = Static.getNumber(args[0], t);
 			double arg2 = Static.getNumber(args[1], t);
 			return new CBoolean(arg1 > arg2, t);
@@ -1283,6 +1317,9 @@ public class BasicLogic {
 
 		@Override
 		public Construct exec(Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			if (args[0] instanceof CInt && args[1] instanceof CInt) {
+				return new CBoolean(((CInt) args[0]).getInt() <= ((CInt) args[1]).getInt(), t);
+			}
 			double arg1 = Static.getNumber(args[0], t);
 			double arg2 = Static.getNumber(args[1], t);
 			return new CBoolean(arg1 <= arg2, t);
@@ -1347,6 +1384,9 @@ public class BasicLogic {
 
 		@Override
 		public Construct exec(Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			if (args[0] instanceof CInt && args[1] instanceof CInt) {
+				return new CBoolean(((CInt) args[0]).getInt() >= ((CInt) args[1]).getInt(), t);
+			}
 			double arg1 = Static.getNumber(args[0], t);
 			double arg2 = Static.getNumber(args[1], t);
 			return new CBoolean(arg1 >= arg2, t);
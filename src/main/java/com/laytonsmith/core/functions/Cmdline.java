@@ -57,7 +57,7 @@ public class Cmdline {
 
     @api
     @noboilerplate
-    public static class sys_out extends AbstractFunction {
+    public static class sys_out extends AbstractFunction implements Optimizable {
 
 		@Override
         public Exceptions.ExceptionType[] thrown() {
@@ -115,13 +115,18 @@ public class Cmdline {
 				new ExampleScript("Basic usage", "#Note, this is guaranteed to print to standard out\nsys_out('Hello World!')", ":Hello World!")
 			};
 		}
-		
-		
+
+		@Override
+		public Set<OptimizationOption> optimizationOptions() {
+			return EnumSet.of(
+						OptimizationOption.INSTANT_RETURN
+			);
+		}
     }
 
     @api
     @noboilerplate
-    public static class sys_err extends AbstractFunction {
+    public static class sys_err extends AbstractFunction implements Optimizable {
 
 		@Override
         public Exceptions.ExceptionType[] thrown() {
@@ -179,6 +184,13 @@ public class Cmdline {
 				new ExampleScript("Basic usage", "#Note this is guaranteed to print to standard err\nsys_out('Hello World!')", ":Hello World!")
 			};
 		}
+
+		@Override
+		public Set<OptimizationOption> optimizationOptions() {
+			return EnumSet.of(
+						OptimizationOption.INSTANT_RETURN
+			);
+		}
     }
 
     @api(environments={GlobalEnv.class})
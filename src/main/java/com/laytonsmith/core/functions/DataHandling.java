@@ -11,6 +11,7 @@ import com.laytonsmith.core.environments.Environment;
 import com.laytonsmith.core.environments.GlobalEnv;
 import com.laytonsmith.core.exceptions.*;
 import com.laytonsmith.core.functions.Exceptions.ExceptionType;
+import com.laytonsmith.core.natives.interfaces.ArrayAccess;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -176,10 +177,10 @@ public class DataHandling {
 			Construct c = args[1];
 			while (c instanceof IVariable) {
 				IVariable cur = (IVariable) c;
-				c = env.getEnv(GlobalEnv.class).GetVarList().get(cur.getName(), cur.getTarget()).ival();
+				c = env.getEnv(GlobalEnv.class).GetVarList().get(cur).ival();
 			}
 			if (args[0] instanceof IVariable) {
-				IVariable v = new IVariable(((IVariable) args[0]).getName(), c, t);
+				IVariable v = new IVariable((IVariable) args[0], c, t);
 				env.getEnv(GlobalEnv.class).GetVarList().set(v);
 				return v;
 			}
@@ -545,60 +546,32 @@ public class DataHandling {
 				}
 			}
 			Construct iv = parent.eval(value, env);
-			if (arr instanceof CSlice) {
-				long start = ((CSlice) arr).getStart();
-				long finish = ((CSlice) arr).getFinish();
-				if (finish < start) {
-					arr = new ArrayHandling.range().exec(t, env, new CInt(start, t), new CInt(finish - 1, t), new CInt(-1, t));
-				} else {
-					arr = new ArrayHandling.range().exec(t, env, new CInt(start, t), new CInt(finish + 1, t));
-				}
-			}
 			if (arr instanceof CArray) {
 				if (iv instanceof IVariable) {
-					CArray one = (CArray) arr;
+					ArrayAccess.Cursor cursor = ((CArray) arr).cursor();
 					IVariable kkey = (IVariable) ik;
 					IVariable two = (IVariable) iv;
-					if (!one.inAssociativeMode()) {
-						for (int i = 0; i < one.size(); i++) {
-							if(kkey != null){
-								env.getEnv(GlobalEnv.class).GetVarList().set(new IVariable(kkey.getName(), new CInt(i, t), t));
-							}
-							env.getEnv(GlobalEnv.class).GetVarList().set(new IVariable(two.getName(), one.get(i, t), t));
-							try {
-								parent.eval(code, env);
-							} catch (LoopBreakException e) {
-								int num = e.getTimes();
-								if (num > 1) {
-									e.setTimes(--num);
-									throw e;
-								}
-								return new CVoid(t);
-							} catch (LoopContinueException e) {
-								i += e.getTimes() - 1;
-								continue;
-							}
+					int skip = 0;
+					while (cursor.next()) {
+						if (skip > 0) {
+							skip--;
+							continue;
 						}
-					} else {
-						for (int i = 0; i < one.size(); i++) {
-							String index = one.keySet().toArray(new String[]{})[i];
-							if(kkey != null){
-								env.getEnv(GlobalEnv.class).GetVarList().set(new IVariable(kkey.getName(), new CString(index, t), t));
-							}
-							env.getEnv(GlobalEnv.class).GetVarList().set(new IVariable(two.getName(), one.get(index, t), t));
-							try {
-								parent.eval(code, env);
-							} catch (LoopBreakException e) {
-								int num = e.getTimes();
-								if (num > 1) {
-									e.setTimes(--num);
-									throw e;
-								}
-								return new CVoid(t);
-							} catch (LoopContinueException e) {
-								i += e.getTimes() - 1;
-								continue;
+						if(kkey != null){
+							env.getEnv(GlobalEnv.class).GetVarList().set(new IVariable(kkey, cursor.key(t), t));
+						}
+						env.getEnv(GlobalEnv.class).GetVarList().set(new IVariable(two, cursor.value(t), t));
+						try {
+							parent.eval(code, env);
+						} catch (LoopBreakException e) {
+							int num = e.getTimes();
+							if (num > 1) {
+								e.setTimes(--num);
+								throw e;
 							}
+							return new CVoid(t);
+						} catch (LoopContinueException e) {
+							skip = e.getTimes() - 1;
 						}
 					}
 				} else {
@@ -694,7 +667,8 @@ public class DataHandling {
 			} else {
 				ParseTree pass [] = new ParseTree[nodes.length - 1];
 				System.arraycopy(nodes, 0, pass, 0, nodes.length - 1);
-				nodes[0] = new ParseTree(data, null);
+				//The array has already been evaluated, so it must not be evaluated again
+				pass[0] = new ParseTree(data, null);
 				return super.execs(t, env, parent, pass);
 			}
 
@@ -1779,7 +1753,7 @@ public class DataHandling {
 		@Override
 		public Construct execs(Target t, Environment env, Script parent, ParseTree... nodes) {
 			Procedure myProc = getProcedure(t, env, parent, nodes);
-			env.getEnv(GlobalEnv.class).GetProcs().put(myProc.getName(), myProc);
+			env.getEnv(GlobalEnv.class).DefineProc(myProc);
 			return new CVoid(t);
 		}
 
@@ -1831,7 +1805,7 @@ public class DataHandling {
 										//into this proc, if the call to the proc didn't have a value in this slot.
 										c = new CString("", t);
 									}
-									ivar = new IVariable(((IVariable) cons).getName(), c.clone(), t);
+									ivar = new IVariable((IVariable) cons, c.clone(), t);
 								} catch (CloneNotSupportedException ex) {
 									//
 								}
@@ -2098,7 +2072,7 @@ public class DataHandling {
 			if (args.length < 1) {
 				throw new ConfigRuntimeException("Expecting at least one argument to " + getName(), ExceptionType.InsufficientArgumentsException, t);
 			}
-			Procedure proc = env.getEnv(GlobalEnv.class).GetProcs().get(args[0].val());
+			Procedure proc = env.getEnv(GlobalEnv.class).GetProc(args[0].val());
 			if (proc != null) {
 				List<Construct> vars = new ArrayList<Construct>(Arrays.asList(args));
 				vars.remove(0);
@@ -2226,7 +2200,7 @@ public class DataHandling {
 
 		@Override
 		public Construct exec(Target t, Environment env, Construct... args) {
-			return new CBoolean(env.getEnv(GlobalEnv.class).GetProcs().get(args[0].val()) == null ? false : true, t);
+			return new CBoolean(env.getEnv(GlobalEnv.class).GetProc(args[0].val()) == null ? false : true, t);
 		}
 	}
 
@@ -2495,7 +2469,7 @@ public class DataHandling {
 			if (args.length == 1) {
 				if (args[0] instanceof IVariable) {
 					IVariable cur = (IVariable) args[0];
-					Globals.SetGlobal(environment.getEnv(GlobalEnv.class).GetVarList().get(cur.getName(), cur.getTarget()));
+					Globals.SetGlobal(environment.getEnv(GlobalEnv.class).GetVarList().get(cur));
 				} else {
 					throw new ConfigRuntimeException("Expecting a IVariable when only one parameter is specified", ExceptionType.InsufficientArgumentsException, t);
 				}
@@ -100,7 +100,7 @@ public class EventBinding {
 					throw new ConfigRuntimeException("The custom parameters must be ivariables", ExceptionType.CastException, t);
 				}
 				IVariable cur = (IVariable) var;
-				((IVariable) var).setIval(env.getEnv(GlobalEnv.class).GetVarList().get(cur.getName(), cur.getTarget()).ival());
+				((IVariable) var).setIval(env.getEnv(GlobalEnv.class).GetVarList().get(cur).ival());
 				custom_params.set((IVariable) var);
 			}
 			Environment newEnv = env;
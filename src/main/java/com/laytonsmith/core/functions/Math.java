@@ -19,7 +19,6 @@ import com.laytonsmith.core.functions.Math;
 import com.laytonsmith.core.natives.interfaces.ArrayAccess;
 import com.sk89q.worldedit.expression.Expression;
 import com.sk89q.worldedit.expression.ExpressionException;
-import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Random;
@@ -37,6 +36,52 @@ public class Math {
 		return "Provides mathematical functions to scripts";
 	}
 
+	/**
+	 * Integers up to this magnitude can be represented exactly as a double, so
+	 * within this range, math on longs gives exactly the same results as the normal
+	 * double math.
+	 */
+	private static final long MAX_EXACT = 1L << 53;
+
+	/**
+	 * The fast path for add, subtract and multiply, which does the math on longs
+	 * instead of doubles, and so avoids the conversions back and forth. This only
+	 * applies if all the arguments are integers, and the result is guaranteed to be
+	 * the same as with the double math, otherwise null is returned, and the normal
+	 * path should be used.
+	 *
+	 * @param op One of '+', '-' or '*'
+	 */
+	private static CInt intMath(char op, Target t, Construct[] args) {
+		if (!(args[0] instanceof CInt)) {
+			return null;
+		}
+		long tally = ((CInt) args[0]).getInt();
+		for (int i = 1; i < args.length; i++) {
+			if (!(args[i] instanceof CInt) || tally > MAX_EXACT || tally < -MAX_EXACT) {
+				return null;
+			}
+			long next = ((CInt) args[i]).getInt();
+			if (op == '*') {
+				//Within int range, the product can't overflow
+				if (tally > Integer.MAX_VALUE || tally < Integer.MIN_VALUE
+						|| next > Integer.MAX_VALUE || next < Integer.MIN_VALUE) {
+					return null;
+				}
+				tally *= next;
+			} else {
+				if (next > MAX_EXACT || next < -MAX_EXACT) {
+					return null;
+				}
+				tally = op == '+' ? tally + next : tally - next;
+			}
+		}
+		if (tally > MAX_EXACT || tally < -MAX_EXACT) {
+			return null;
+		}
+		return CInt.GetCInt(tally, t);
+	}
+
 	@api
 	public static class add extends AbstractFunction implements Optimizable{
 
@@ -52,6 +97,10 @@ public class Math {
 
 		@Override
 		public Construct exec(Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			Construct fast = intMath('+', t, args);
+			if (fast != null) {
+				return fast;
+			}
 			double tally = Static.getNumber(args[0], t);
 			for (int i = 1; i < args.length; i++) {
 				tally += Static.getNumber(args[i], t);
@@ -129,6 +178,10 @@ public class Math {
 
 		@Override
 		public Construct exec(Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			Construct fast = intMath('-', t, args);
+			if (fast != null) {
+				return fast;
+			}
 			double tally = Static.getNumber(args[0], t);
 			for (int i = 1; i < args.length; i++) {
 				tally -= Static.getNumber(args[i], t);
@@ -196,6 +249,10 @@ public class Math {
 
 		@Override
 		public Construct exec(Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			Construct fast = intMath('*', t, args);
+			if (fast != null) {
+				return fast;
+			}
 			double tally = Static.getNumber(args[0], t);
 			for (int i = 1; i < args.length; i++) {
 				tally *= Static.getNumber(args[i], t);
@@ -346,7 +403,7 @@ public class Math {
 		public Construct exec(Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
 			long arg1 = Static.getInt(args[0], t);
 			long arg2 = Static.getInt(args[1], t);
-			return new CInt(arg1 % arg2, t);
+			return CInt.GetCInt(arg1 % arg2, t);
 		}
 
 		@Override
@@ -500,7 +557,7 @@ public class Math {
 							} else {
 								newVal = temp - delta;
 							}
-							new ArrayHandling.array_set().exec(t, env, array, index, new CInt(newVal, t));
+							new ArrayHandling.array_set().exec(t, env, array, index, CInt.GetCInt(newVal, t));
 						} else {
 							throw new ConfigRuntimeException("Cannot increment/decrement a non numeric value.", ExceptionType.CastException, t);
 						}
@@ -511,7 +568,7 @@ public class Math {
 					} else {
 						valueToReturn = temp;
 					}
-					return new CInt(valueToReturn, t);
+					return CInt.GetCInt(valueToReturn, t);
 				}
 			}
 			Construct [] args = new Construct[nodes.length];
@@ -550,20 +607,20 @@ public class Math {
 			if (args.length == 2) {
 				if (args[1] instanceof IVariable) {
 					IVariable cur2 = (IVariable) args[1];
-					args[1] = env.getEnv(GlobalEnv.class).GetVarList().get(cur2.getName(), cur2.getTarget());
+					args[1] = env.getEnv(GlobalEnv.class).GetVarList().get(cur2);
 				}
 				value = Static.getInt(args[1], t);
 			}
 			if (args[0] instanceof IVariable) {
 				IVariable cur = (IVariable) args[0];
-				IVariable v = env.getEnv(GlobalEnv.class).GetVarList().get(cur.getName(), cur.getTarget());
+				IVariable v = env.getEnv(GlobalEnv.class).GetVarList().get(cur);
 				Construct newVal;
 				if (Static.anyDoubles(v.ival())) {
 					newVal = new CDouble(Static.getDouble(v.ival(), t) + value, t);
 				} else {
-					newVal = new CInt(Static.getInt(v.ival(), t) + value, t);
+					newVal = CInt.GetCInt(Static.getInt(v.ival(), t) + value, t);
 				}
-				v = new IVariable(v.getName(), newVal, t);
+				v = new IVariable(v, newVal, t);
 				env.getEnv(GlobalEnv.class).GetVarList().set(v);
 				return v;
 			} else {
@@ -659,18 +716,18 @@ public class Math {
 			if (args.length == 2) {
 				if (args[1] instanceof IVariable) {
 					IVariable cur2 = (IVariable) args[1];
-					args[1] = env.getEnv(GlobalEnv.class).GetVarList().get(cur2.getName(), cur2.getTarget());
+					args[1] = env.getEnv(GlobalEnv.class).GetVarList().get(cur2);
 				}
 				value = Static.getInt(args[1], t);
 			}
 			if (args[0] instanceof IVariable) {
 				IVariable cur = (IVariable) args[0];
-				IVariable v = env.getEnv(GlobalEnv.class).GetVarList().get(cur.getName(), cur.getTarget());
+				IVariable v = env.getEnv(GlobalEnv.class).GetVarList().get(cur);
 				Construct newVal;
 				if (Static.anyDoubles(v.ival())) {
 					newVal = new CDouble(Static.getDouble(v.ival(), t) + value, t);
 				} else {
-					newVal = new CInt(Static.getInt(v.ival(), t) + value, t);
+					newVal = CInt.GetCInt(Static.getInt(v.ival(), t) + value, t);
 				}
 				Construct oldVal = null;
 				try {
@@ -678,7 +735,7 @@ public class Math {
 				} catch (CloneNotSupportedException ex) {
 					Logger.getLogger(Math.class.getName()).log(Level.SEVERE, null, ex);
 				}
-				v = new IVariable(v.getName(), newVal, t);
+				v = new IVariable(v, newVal, t);
 				env.getEnv(GlobalEnv.class).GetVarList().set(v);
 				return oldVal;
 			} else {
@@ -768,20 +825,20 @@ public class Math {
 			if (args.length == 2) {
 				if (args[1] instanceof IVariable) {
 					IVariable cur2 = (IVariable) args[1];
-					args[1] = env.getEnv(GlobalEnv.class).GetVarList().get(cur2.getName(), cur2.getTarget());
+					args[1] = env.getEnv(GlobalEnv.class).GetVarList().get(cur2);
 				}
 				value = Static.getInt(args[1], t);
 			}
 			if (args[0] instanceof IVariable) {
 				IVariable cur = (IVariable) args[0];
-				IVariable v = env.getEnv(GlobalEnv.class).GetVarList().get(cur.getName(), cur.getTarget());
+				IVariable v = env.getEnv(GlobalEnv.class).GetVarList().get(cur);
 				Construct newVal;
 				if (Static.anyDoubles(v.ival())) {
 					newVal = new CDouble(Static.getDouble(v.ival(), t) - value, t);
 				} else {
-					newVal = new CInt(Static.getInt(v.ival(), t) - value, t);
+					newVal = CInt.GetCInt(Static.getInt(v.ival(), t) - value, t);
 				}
-				v = new IVariable(v.getName(), newVal, t);
+				v = new IVariable(v, newVal, t);
 				env.getEnv(GlobalEnv.class).GetVarList().set(v);
 				return v;
 			} else {
@@ -870,18 +927,18 @@ public class Math {
 			if (args.length == 2) {
 				if (args[1] instanceof IVariable) {
 					IVariable cur2 = (IVariable) args[1];
-					args[1] = env.getEnv(GlobalEnv.class).GetVarList().get(cur2.getName(), cur2.getTarget());
+					args[1] = env.getEnv(GlobalEnv.class).GetVarList().get(cur2);
 				}
 				value = Static.getInt(args[1], t);
 			}
 			if (args[0] instanceof IVariable) {
 				IVariable cur = (IVariable) args[0];
-				IVariable v = env.getEnv(GlobalEnv.class).GetVarList().get(cur.getName(), cur.getTarget());
+				IVariable v = env.getEnv(GlobalEnv.class).GetVarList().get(cur);
 				Construct newVal;
 				if (Static.anyDoubles(v.ival())) {
 					newVal = new CDouble(Static.getDouble(v.ival(), t) - value, t);
 				} else {
-					newVal = new CInt(Static.getInt(v.ival(), t) - value, t);
+					newVal = CInt.GetCInt(Static.getInt(v.ival(), t) - value, t);
 				}
 				Construct oldVal = null;
 				try {
@@ -889,7 +946,7 @@ public class Math {
 				} catch (CloneNotSupportedException ex) {
 					Logger.getLogger(Math.class.getName()).log(Level.SEVERE, null, ex);
 				}
-				v = new IVariable(v.getName(), newVal, t);
+				v = new IVariable(v, newVal, t);
 				env.getEnv(GlobalEnv.class).GetVarList().set(v);
 				return oldVal;
 			} else {
@@ -1306,13 +1363,8 @@ public class Math {
 						ExceptionType.InsufficientArgumentsException, t);
 			}
 			double lowest = Double.POSITIVE_INFINITY;
-			List<Construct> list = new ArrayList<Construct>();
-			recList(list, args);
-			for (Construct c : list) {
-				double d = Static.getNumber(c, t);
-				if (d < lowest) {
-					lowest = d;
-				}
+			for (Construct c : args) {
+				lowest = lowest(lowest, c, t);
 			}
 			if (lowest == (long) lowest) {
 				return new CInt((long) lowest, t);
@@ -1321,17 +1373,41 @@ public class Math {
 			}
 		}
 
-		public List<Construct> recList(List<Construct> list, Construct... args) {
-			for (Construct c : args) {
-				if (c instanceof CArray) {
-					for (int i = 0; i < ((CArray) c).size(); i++) {
-						recList(list, ((CArray) c).get(i, Target.UNKNOWN));
+		/**
+		 * Returns the lowest of the given value and c, or all the values in c, if it is an
+		 * array. Arrays of only ints or only doubles are gone through directly, without
+		 * creating a construct for each value.
+		 */
+		private static double lowest(double lowest, Construct c, Target t) {
+			if (c instanceof CArray) {
+				CArray ca = (CArray) c;
+				PrimitiveList values = ca.getPrimitiveList();
+				if (values instanceof PrimitiveList.Longs) {
+					PrimitiveList.Longs longs = (PrimitiveList.Longs) values;
+					for (int i = 0; i < longs.size(); i++) {
+						if (longs.getLong(i) < lowest) {
+							lowest = longs.getLong(i);
+						}
+					}
+				} else if (values instanceof PrimitiveList.Doubles) {
+					PrimitiveList.Doubles doubles = (PrimitiveList.Doubles) values;
+					for (int i = 0; i < doubles.size(); i++) {
+						if (doubles.getDouble(i) < lowest) {
+							lowest = doubles.getDouble(i);
+						}
 					}
 				} else {
-					list.add(c);
+					for (int i = 0; i < ca.size(); i++) {
+						lowest = lowest(lowest, ca.get(i, Target.UNKNOWN), t);
+					}
+				}
+			} else {
+				double d = Static.getNumber(c, t);
+				if (d < lowest) {
+					lowest = d;
 				}
 			}
-			return list;
+			return lowest;
 		}
 
 		@Override
@@ -1389,13 +1465,8 @@ public class Math {
 						ExceptionType.InsufficientArgumentsException, t);
 			}
 			double highest = Double.NEGATIVE_INFINITY;
-			List<Construct> list = new ArrayList<Construct>();
-			recList(list, args);
-			for (Construct c : list) {
-				double d = Static.getNumber(c, t);
-				if (d > highest) {
-					highest = d;
-				}
+			for (Construct c : args) {
+				highest = highest(highest, c, t);
 			}
 			if (highest == (long) highest) {
 				return new CInt((long) highest, t);
@@ -1404,17 +1475,41 @@ public class Math {
 			}
 		}
 
-		public List<Construct> recList(List<Construct> list, Construct... args) {
-			for (Construct c : args) {
-				if (c instanceof CArray) {
-					for (int i = 0; i < ((CArray) c).size(); i++) {
-						recList(list, ((CArray) c).get(i, Target.UNKNOWN));
+		/**
+		 * Returns the highest of the given value and c, or all the values in c, if it is an
+		 * array. Arrays of only ints or only doubles are gone through directly, without
+		 * creating a construct for each value.
+		 */
+		private static double highest(double highest, Construct c, Target t) {
+			if (c instanceof CArray) {
+				CArray ca = (CArray) c;
+				PrimitiveList values = ca.getPrimitiveList();
+				if (values instanceof PrimitiveList.Longs) {
+					PrimitiveList.Longs longs = (PrimitiveList.Longs) values;
+					for (int i = 0; i < longs.size(); i++) {
+						if (longs.getLong(i) > highest) {
+							highest = longs.getLong(i);
+						}
+					}
+				} else if (values instanceof PrimitiveList.Doubles) {
+					PrimitiveList.Doubles doubles = (PrimitiveList.Doubles) values;
+					for (int i = 0; i < doubles.size(); i++) {
+						if (doubles.getDouble(i) > highest) {
+							highest = doubles.getDouble(i);
+						}
 					}
 				} else {
-					list.add(c);
+					for (int i = 0; i < ca.size(); i++) {
+						highest = highest(highest, ca.get(i, Target.UNKNOWN), t);
+					}
+				}
+			} else {
+				double d = Static.getNumber(c, t);
+				if (d > highest) {
+					highest = d;
 				}
 			}
-			return list;
+			return highest;
 		}
 
 		@Override
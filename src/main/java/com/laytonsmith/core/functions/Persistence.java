@@ -1,6 +1,8 @@
 package com.laytonsmith.core.functions;
 
 import com.laytonsmith.PureUtilities.Common.StringUtils;
+import com.laytonsmith.PureUtilities.DaemonManager;
+import com.laytonsmith.abstraction.StaticLayer;
 import com.laytonsmith.annotations.api;
 import com.laytonsmith.annotations.noboilerplate;
 import com.laytonsmith.core.*;
@@ -82,20 +84,7 @@ public class Persistence {
 			} catch (MarshalException e) {
 				throw new Exceptions.FormatException(e.getMessage(), t);
 			}
-			char pc = '.';
-			for (int i = 0; i < key.length(); i++) {
-				Character c = key.charAt(i);
-				if (i != 0) {
-					pc = key.charAt(i - 1);
-				}
-				if ((i == 0 || i == key.length() - 1 || pc == '.') && c == '.') {
-					throw new ConfigRuntimeException("Periods may only be used as seperators between namespaces.", ExceptionType.FormatException, t);
-				}
-				if (c != '_' && c != '.' && !Character.isLetterOrDigit(c)) {
-					throw new ConfigRuntimeException("Param 1 in store_value must only contain letters, digits, underscores, or dots, (which denote namespaces).",
-							ExceptionType.FormatException, t);
-				}
-			}
+			ValidateKey(key, getName(), t);
 			CHLog.GetLogger().Log(CHLog.Tags.PERSISTENCE, LogLevel.DEBUG, "Storing: " + key + " -> " + value, t);
 			try {
 				env.getEnv(GlobalEnv.class).GetPersistenceNetwork().set(env.getEnv(GlobalEnv.class).GetDaemonManager(), ("storage." + key).split("\\."), value);
@@ -402,6 +391,504 @@ public class Persistence {
 		}
 	}
 
+	@api(environments={GlobalEnv.class})
+	@noboilerplate
+	public static class store_value_async extends AbstractFunction {
+
+		@Override
+		public String getName() {
+			return "store_value_async";
+		}
+
+		@Override
+		public Integer[] numArgs() {
+			return new Integer[]{Integer.MAX_VALUE};
+		}
+
+		@Override
+		public String docs() {
+			return "void {[namespace, ...,] key, value, [callback]} Works like store_value, but the value is stored on a separate"
+					+ " thread, and this function returns immediately. This must be used instead of store_value for data sources"
+					+ " with the async modifier. Values are stored in the order that they were requested, so a get_value_async"
+					+ " after a store_value_async will always see the new value. If provided, the callback is run on the main"
+					+ " thread once the value has actually been written to the data source, and should have the following signature:"
+					+ " closure(@exception){ &lt;code&gt; }. If @exception is null, the value was stored successfully,"
+					+ " otherwise it is an exception array describing the error.";
+		}
+
+		@Override
+		public ExceptionType[] thrown() {
+			return new ExceptionType[]{ExceptionType.FormatException, ExceptionType.InsufficientArgumentsException};
+		}
+
+		@Override
+		public boolean isRestricted() {
+			return true;
+		}
+
+		@Override
+		public CHVersion since() {
+			return CHVersion.V3_3_1;
+		}
+
+		@Override
+		public Boolean runAsync() {
+			return null;
+		}
+
+		@Override
+		public Construct exec(final Target t, final Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			final CClosure callback;
+			int valueIndex = args.length - 1;
+			if (args.length > 0 && args[args.length - 1] instanceof CClosure) {
+				callback = (CClosure) args[args.length - 1];
+				valueIndex--;
+			} else {
+				callback = null;
+			}
+			if (valueIndex < 1) {
+				throw new ConfigRuntimeException(getName() + " was not provided with enough arguments. Check the documentation, and try again.", ExceptionType.InsufficientArgumentsException, t);
+			}
+			Construct[] keyArgs = new Construct[valueIndex];
+			System.arraycopy(args, 0, keyArgs, 0, valueIndex);
+			String key = GetNamespace(keyArgs, null, getName(), t);
+			String value;
+			try {
+				value = Construct.json_encode(args[valueIndex], t);
+			} catch (MarshalException e) {
+				throw new Exceptions.FormatException(e.getMessage(), t);
+			}
+			ValidateKey(key, getName(), t);
+			CHLog.GetLogger().Log(CHLog.Tags.PERSISTENCE, LogLevel.DEBUG, "Storing asynchronously: " + key + " -> " + value, t);
+			final DaemonManager dm = env.getEnv(GlobalEnv.class).GetDaemonManager();
+			env.getEnv(GlobalEnv.class).GetPersistenceNetwork().setAsync(dm, ("storage." + key).split("\\."), value, new PersistenceNetwork.Callback<Boolean>() {
+
+				@Override
+				public void result(Boolean result) {
+					if (callback != null) {
+						ExecuteCallback(dm, callback, new Construct[]{new CNull(t)});
+					}
+				}
+
+				@Override
+				public void error(Exception error) {
+					ConfigRuntimeException ex = GetException(error, t);
+					if (callback != null) {
+						ExecuteCallback(dm, callback, new Construct[]{ObjectGenerator.GetGenerator().exception(ex, t)});
+					} else {
+						ReactOnMainThread(dm, ex, env);
+					}
+				}
+			});
+			return new CVoid(t);
+		}
+
+		@Override
+		public LogLevel profileAt() {
+			return LogLevel.DEBUG;
+		}
+	}
+
+	@api(environments={GlobalEnv.class})
+	@noboilerplate
+	public static class get_value_async extends AbstractFunction {
+
+		@Override
+		public String getName() {
+			return "get_value_async";
+		}
+
+		@Override
+		public Integer[] numArgs() {
+			return new Integer[]{Integer.MAX_VALUE};
+		}
+
+		@Override
+		public String docs() {
+			return "void {[namespace, ...,] key, callback} Works like get_value, but the value is retrieved on a separate"
+					+ " thread, and this function returns immediately. This must be used instead of get_value for data sources"
+					+ " with the async modifier. Once the value has been retrieved, the callback is run on the main thread,"
+					+ " and should have the following signature: closure(@value, @exception){ &lt;code&gt; }. If @exception"
+					+ " is null, then @value contains the value that get_value would have returned, otherwise @value is null,"
+					+ " and @exception is an exception array describing the error.";
+		}
+
+		@Override
+		public ExceptionType[] thrown() {
+			return new ExceptionType[]{ExceptionType.CastException, ExceptionType.InsufficientArgumentsException};
+		}
+
+		@Override
+		public boolean isRestricted() {
+			return true;
+		}
+
+		@Override
+		public CHVersion since() {
+			return CHVersion.V3_3_1;
+		}
+
+		@Override
+		public Boolean runAsync() {
+			return null;
+		}
+
+		@Override
+		public Construct exec(final Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			if (args.length < 2) {
+				throw new ConfigRuntimeException(getName() + " was not provided with enough arguments. Check the documentation, and try again.", ExceptionType.InsufficientArgumentsException, t);
+			}
+			if (!(args[args.length - 1] instanceof CClosure)) {
+				throw new ConfigRuntimeException("The last argument to " + getName() + " must be a closure.", ExceptionType.CastException, t);
+			}
+			final CClosure callback = (CClosure) args[args.length - 1];
+			String namespace = GetNamespace(args, args.length - 1, getName(), t);
+			CHLog.GetLogger().Log(CHLog.Tags.PERSISTENCE, LogLevel.DEBUG, "Getting value asynchronously: " + namespace, t);
+			final DaemonManager dm = env.getEnv(GlobalEnv.class).GetDaemonManager();
+			env.getEnv(GlobalEnv.class).GetPersistenceNetwork().getAsync(dm, ("storage." + namespace).split("\\."), new PersistenceNetwork.Callback<String>() {
+
+				@Override
+				public void result(String result) {
+					Construct value;
+					if (result == null) {
+						value = new CNull(t);
+					} else {
+						try {
+							value = Construct.json_decode(result, t);
+						} catch (MarshalException ex) {
+							error(ex);
+							return;
+						}
+					}
+					ExecuteCallback(dm, callback, new Construct[]{value, new CNull(t)});
+				}
+
+				@Override
+				public void error(Exception error) {
+					ConfigRuntimeException ex = GetException(error, t);
+					ExecuteCallback(dm, callback, new Construct[]{new CNull(t), ObjectGenerator.GetGenerator().exception(ex, t)});
+				}
+			});
+			return new CVoid(t);
+		}
+
+		@Override
+		public LogLevel profileAt() {
+			return LogLevel.DEBUG;
+		}
+	}
+
+	@api(environments={GlobalEnv.class})
+	@noboilerplate
+	public static class get_values_async extends AbstractFunction {
+
+		@Override
+		public String getName() {
+			return "get_values_async";
+		}
+
+		@Override
+		public Integer[] numArgs() {
+			return new Integer[]{Integer.MAX_VALUE};
+		}
+
+		@Override
+		public String docs() {
+			return "void {name[, space, ...], callback} Works like get_values, but the values are retrieved on a separate"
+					+ " thread, and this function returns immediately. This must be used instead of get_values for data sources"
+					+ " with the async modifier. Once the values have been retrieved, the callback is run on the main thread,"
+					+ " and should have the following signature: closure(@values, @exception){ &lt;code&gt; }. If @exception"
+					+ " is null, then @values contains the array that get_values would have returned, otherwise @values is null,"
+					+ " and @exception is an exception array describing the error.";
+		}
+
+		@Override
+		public ExceptionType[] thrown() {
+			return new ExceptionType[]{ExceptionType.CastException, ExceptionType.InsufficientArgumentsException};
+		}
+
+		@Override
+		public boolean isRestricted() {
+			return true;
+		}
+
+		@Override
+		public CHVersion since() {
+			return CHVersion.V3_3_1;
+		}
+
+		@Override
+		public Boolean runAsync() {
+			return null;
+		}
+
+		@Override
+		public Construct exec(final Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			if (args.length < 2) {
+				throw new ConfigRuntimeException(getName() + " was not provided with enough arguments. Check the documentation, and try again.", ExceptionType.InsufficientArgumentsException, t);
+			}
+			if (!(args[args.length - 1] instanceof CClosure)) {
+				throw new ConfigRuntimeException("The last argument to " + getName() + " must be a closure.", ExceptionType.CastException, t);
+			}
+			final CClosure callback = (CClosure) args[args.length - 1];
+			String namespace = GetNamespace(args, args.length - 1, getName(), t);
+			CHLog.GetLogger().Log(CHLog.Tags.PERSISTENCE, LogLevel.DEBUG, "Getting all values asynchronously from " + namespace, t);
+			final DaemonManager dm = env.getEnv(GlobalEnv.class).GetDaemonManager();
+			env.getEnv(GlobalEnv.class).GetPersistenceNetwork().getNamespaceAsync(dm, ("storage." + namespace).split("\\."), new PersistenceNetwork.Callback<Map<String[], String>>() {
+
+				@Override
+				public void result(Map<String[], String> result) {
+					CArray ca = new CArray(t);
+					for (String[] e : result.keySet()) {
+						try {
+							String key = StringUtils.Join(e, ".").replaceFirst("storage\\.", "");
+							ca.set(new CString(key, t), Construct.json_decode(result.get(e), t), t);
+						} catch (MarshalException ex) {
+							Logger.getLogger(Persistence.class.getName()).log(Level.SEVERE, null, ex);
+						}
+					}
+					ExecuteCallback(dm, callback, new Construct[]{ca, new CNull(t)});
+				}
+
+				@Override
+				public void error(Exception error) {
+					ConfigRuntimeException ex = GetException(error, t);
+					ExecuteCallback(dm, callback, new Construct[]{new CNull(t), ObjectGenerator.GetGenerator().exception(ex, t)});
+				}
+			});
+			return new CVoid(t);
+		}
+
+		@Override
+		public LogLevel profileAt() {
+			return LogLevel.DEBUG;
+		}
+	}
+
+	@api(environments={GlobalEnv.class})
+	@noboilerplate
+	public static class has_value_async extends AbstractFunction {
+
+		@Override
+		public String getName() {
+			return "has_value_async";
+		}
+
+		@Override
+		public Integer[] numArgs() {
+			return new Integer[]{Integer.MAX_VALUE};
+		}
+
+		@Override
+		public String docs() {
+			return "void {[namespace, ...,] key, callback} Works like has_value, but the check is done on a separate"
+					+ " thread, and this function returns immediately. This must be used instead of has_value for data sources"
+					+ " with the async modifier. Once the check is done, the callback is run on the main thread,"
+					+ " and should have the following signature: closure(@value, @exception){ &lt;code&gt; }. If @exception"
+					+ " is null, then @value contains the boolean that has_value would have returned, otherwise @value is null,"
+					+ " and @exception is an exception array describing the error.";
+		}
+
+		@Override
+		public ExceptionType[] thrown() {
+			return new ExceptionType[]{ExceptionType.CastException, ExceptionType.InsufficientArgumentsException};
+		}
+
+		@Override
+		public boolean isRestricted() {
+			return true;
+		}
+
+		@Override
+		public CHVersion since() {
+			return CHVersion.V3_3_1;
+		}
+
+		@Override
+		public Boolean runAsync() {
+			return null;
+		}
+
+		@Override
+		public Construct exec(final Target t, Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			if (args.length < 2) {
+				throw new ConfigRuntimeException(getName() + " was not provided with enough arguments. Check the documentation, and try again.", ExceptionType.InsufficientArgumentsException, t);
+			}
+			if (!(args[args.length - 1] instanceof CClosure)) {
+				throw new ConfigRuntimeException("The last argument to " + getName() + " must be a closure.", ExceptionType.CastException, t);
+			}
+			final CClosure callback = (CClosure) args[args.length - 1];
+			String namespace = GetNamespace(args, args.length - 1, getName(), t);
+			final DaemonManager dm = env.getEnv(GlobalEnv.class).GetDaemonManager();
+			env.getEnv(GlobalEnv.class).GetPersistenceNetwork().hasKeyAsync(dm, ("storage." + namespace).split("\\."), new PersistenceNetwork.Callback<Boolean>() {
+
+				@Override
+				public void result(Boolean result) {
+					ExecuteCallback(dm, callback, new Construct[]{new CBoolean(result, t), new CNull(t)});
+				}
+
+				@Override
+				public void error(Exception error) {
+					ConfigRuntimeException ex = GetException(error, t);
+					ExecuteCallback(dm, callback, new Construct[]{new CNull(t), ObjectGenerator.GetGenerator().exception(ex, t)});
+				}
+			});
+			return new CVoid(t);
+		}
+
+		@Override
+		public LogLevel profileAt() {
+			return LogLevel.DEBUG;
+		}
+	}
+
+	@api(environments={GlobalEnv.class})
+	@noboilerplate
+	public static class clear_value_async extends AbstractFunction {
+
+		@Override
+		public String getName() {
+			return "clear_value_async";
+		}
+
+		@Override
+		public Integer[] numArgs() {
+			return new Integer[]{Integer.MAX_VALUE};
+		}
+
+		@Override
+		public String docs() {
+			return "void {[namespace, ...,] key, [callback]} Works like clear_value, but the value is cleared on a separate"
+					+ " thread, and this function returns immediately. This must be used instead of clear_value for data sources"
+					+ " with the async modifier. Like store_value_async, changes are made in the order that they were requested."
+					+ " If provided, the callback is run on the main thread once the change has actually been written to the"
+					+ " data source, and should have the following signature: closure(@exception){ &lt;code&gt; }. If @exception"
+					+ " is null, the value was cleared successfully, otherwise it is an exception array describing the error.";
+		}
+
+		@Override
+		public ExceptionType[] thrown() {
+			return new ExceptionType[]{ExceptionType.InsufficientArgumentsException};
+		}
+
+		@Override
+		public boolean isRestricted() {
+			return true;
+		}
+
+		@Override
+		public CHVersion since() {
+			return CHVersion.V3_3_1;
+		}
+
+		@Override
+		public Boolean runAsync() {
+			return null;
+		}
+
+		@Override
+		public Construct exec(final Target t, final Environment env, Construct... args) throws CancelCommandException, ConfigRuntimeException {
+			final CClosure callback;
+			Integer exclude = null;
+			if (args.length > 0 && args[args.length - 1] instanceof CClosure) {
+				callback = (CClosure) args[args.length - 1];
+				exclude = args.length - 1;
+			} else {
+				callback = null;
+			}
+			String namespace = GetNamespace(args, exclude, getName(), t);
+			CHLog.GetLogger().Log(CHLog.Tags.PERSISTENCE, LogLevel.DEBUG, "Clearing value asynchronously: " + namespace, t);
+			final DaemonManager dm = env.getEnv(GlobalEnv.class).GetDaemonManager();
+			env.getEnv(GlobalEnv.class).GetPersistenceNetwork().clearKeyAsync(dm, ("storage." + namespace).split("\\."), new PersistenceNetwork.Callback<Void>() {
+
+				@Override
+				public void result(Void result) {
+					if (callback != null) {
+						ExecuteCallback(dm, callback, new Construct[]{new CNull(t)});
+					}
+				}
+
+				@Override
+				public void error(Exception error) {
+					ConfigRuntimeException ex = GetException(error, t);
+					if (callback != null) {
+						ExecuteCallback(dm, callback, new Construct[]{ObjectGenerator.GetGenerator().exception(ex, t)});
+					} else {
+						ReactOnMainThread(dm, ex, env);
+					}
+				}
+			});
+			return new CVoid(t);
+		}
+
+		@Override
+		public LogLevel profileAt() {
+			return LogLevel.DEBUG;
+		}
+	}
+
+	/**
+	 * Converts an exception from the persistence network into a ConfigRuntimeException,
+	 * the same way the synchronous functions do.
+	 */
+	private static ConfigRuntimeException GetException(Exception e, Target t) {
+		if (e instanceof IllegalArgumentException || e instanceof MarshalException) {
+			return new ConfigRuntimeException(e.getMessage(), ExceptionType.FormatException, t, e);
+		}
+		return new ConfigRuntimeException(e.getMessage(), ExceptionType.IOException, t, e);
+	}
+
+	/**
+	 * Runs the callback on the main thread.
+	 */
+	private static void ExecuteCallback(DaemonManager dm, final CClosure callback, final Construct[] args) {
+		StaticLayer.GetConvertor().runOnMainThreadLater(dm, new Runnable() {
+
+			@Override
+			public void run() {
+				callback.execute(args);
+			}
+		});
+	}
+
+	/**
+	 * Reports the exception on the main thread, for when there is no callback to send it to.
+	 */
+	private static void ReactOnMainThread(DaemonManager dm, final ConfigRuntimeException e, final Environment env) {
+		StaticLayer.GetConvertor().runOnMainThreadLater(dm, new Runnable() {
+
+			@Override
+			public void run() {
+				ConfigRuntimeException.React(e, env);
+			}
+		});
+	}
+
+	/**
+	 * Throws a FormatException if the key is not a valid key to store a value
+	 * in.
+	 *
+	 * @param key
+	 * @param name
+	 * @param t
+	 */
+	private static void ValidateKey(String key, String name, Target t) {
+		char pc = '.';
+		for (int i = 0; i < key.length(); i++) {
+			Character c = key.charAt(i);
+			if (i != 0) {
+				pc = key.charAt(i - 1);
+			}
+			if ((i == 0 || i == key.length() - 1 || pc == '.') && c == '.') {
+				throw new ConfigRuntimeException("Periods may only be used as seperators between namespaces.", ExceptionType.FormatException, t);
+			}
+			if (c != '_' && c != '.' && !Character.isLetterOrDigit(c)) {
+				throw new ConfigRuntimeException("Param 1 in " + name + " must only contain letters, digits, underscores, or dots, (which denote namespaces).",
+						ExceptionType.FormatException, t);
+			}
+		}
+	}
+
 	/**
 	 * Generates the namespace for this value, given an array of constructs. If
 	 * the entire list of arguments isn't supposed to be part of the namespace,
@@ -228,7 +228,7 @@ public class Reflection {
 					throw new ConfigRuntimeException("Invalid variable provided: " + element + " does not exist in the current scope", ExceptionType.FormatException, t);
 				}
 			} else if (element.startsWith("_")) {
-				if (!environment.getEnv(GlobalEnv.class).GetProcs().containsKey(element)) {
+				if (environment.getEnv(GlobalEnv.class).GetProc(element) == null) {
 					throw new ConfigRuntimeException("Invalid procedure name provided: " + element + " does not exist in the current scope", ExceptionType.FormatException, t);
 				}
 			} else {
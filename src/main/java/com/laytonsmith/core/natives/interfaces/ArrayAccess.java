@@ -43,4 +43,42 @@ public interface ArrayAccess extends Mixed, Sizable {
      * @return 
      */
     public Construct slice(int begin, int end, Target t);
+	
+	/**
+	 * Returns a cursor over the elements, in order. This should be preferred over
+	 * getting the keys and then looking up each value, since it doesn't have to
+	 * copy or look anything up. Implementations should document what happens if
+	 * the object is modified while a cursor is open.
+	 * @return 
+	 */
+	public Cursor cursor();
+	
+	/**
+	 * Walks through the elements of an ArrayAccess. A new cursor is positioned before the
+	 * first element, so {@link #next()} must be called before the first element can
+	 * be read.
+	 */
+	public interface Cursor {
+		
+		/**
+		 * Moves to the next element.
+		 * @return False if there are no more elements, in which case the cursor
+		 * doesn't move.
+		 */
+		public boolean next();
+		
+		/**
+		 * Returns the key of the current element.
+		 * @param t The target of the key, if it has to be created
+		 * @return 
+		 */
+		public Construct key(Target t);
+		
+		/**
+		 * Returns the value of the current element.
+		 * @param t The target of the value, if it has to be created
+		 * @return 
+		 */
+		public Construct value(Target t);
+	}
 }
@@ -12,11 +12,12 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.regex.Pattern;
 
 /**
  *
@@ -141,7 +142,7 @@ public abstract class AbstractDataSource implements DataSource {
 		String ns = StringUtils.Join(namespace, ".");
 		for (String key : stringKeySet()) {
 			if ("".equals(ns) //Blank string; this means they want it to always match.
-					|| key.matches(Pattern.quote(ns) + "(?:$|\\..*)")) {
+					|| key.equals(ns) || key.startsWith(ns + ".")) {
 				String[] split = key.split("\\.");
 				list.add(split);
 			}
@@ -149,6 +150,31 @@ public abstract class AbstractDataSource implements DataSource {
 		return list;
 	}
 
+	@Override
+	public final Map<String[], String> getValues(String[] namespace) throws DataSourceException {
+		checkGet(namespace);
+		return getValues0(namespace);
+	}
+
+	/**
+	 * Subclasses that can natively retrieve the keys and values in a namespace
+	 * at once should override this. By default, this gets the keys with getNamespace,
+	 * then gets each value with get0.
+	 * @param namespace
+	 * @return
+	 * @throws DataSourceException 
+	 */
+	protected Map<String[], String> getValues0(String[] namespace) throws DataSourceException {
+		Map<String[], String> map = new HashMap<String[], String>();
+		for(String[] key : getNamespace(namespace)){
+			String value = get0(key);
+			if(value != null){
+				map.put(key, value);
+			}
+		}
+		return map;
+	}
+
 	private void setInvalidModifiers() {
 		DataSourceModifier[] invalid = this.invalidModifiers();
 		if (invalid == null) {
@@ -240,6 +266,11 @@ public abstract class AbstractDataSource implements DataSource {
 			errors.add(uri.toString() + " contains both http and https modifiers. Because these are mutually exclusive, this doesn't make sense, and https will be assumed.");
 			modifiers.remove(DataSourceModifier.HTTP);
 		}
+		if (modifiers.contains(DataSourceModifier.JOURNAL) && (modifiers.contains(DataSourceModifier.READONLY) || modifiers.contains(DataSourceModifier.TRANSIENT)
+				|| modifiers.contains(DataSourceModifier.SSH))) {
+			errors.add(uri.toString() + " contains the journal modifier, but journaling is only possible on local files that are neither read only nor transient; journal will be ignored.");
+			modifiers.remove(DataSourceModifier.JOURNAL);
+		}
 		if (!errors.isEmpty()) {
 			throw new DataSourceException(StringUtils.Join(errors, "\n"));
 		}
@@ -251,16 +282,24 @@ public abstract class AbstractDataSource implements DataSource {
 	}
 
 	/**
-	 * This method checks to see if a set operation should simply throw a
-	 * ReadOnlyException based on the modifiers.
+	 * Throws an IllegalArgumentException if the key is not valid.
+	 * @param key
 	 */
-	private void checkSet(String [] key) throws ReadOnlyException {
+	static void checkKey(String[] key) {
 		for(String namespace : key){
 			if("_".equals(namespace)){
 				throw new IllegalArgumentException("In the key \"" + StringUtils.Join(key, ".") + ", the namespace \"_\" is not allowed."
 						+ " (Namespaces may contain an underscore, but may not be just an underscore.)");
 			}
 		}
+	}
+
+	/**
+	 * This method checks to see if a set operation should simply throw a
+	 * ReadOnlyException based on the modifiers.
+	 */
+	private void checkSet(String [] key) throws ReadOnlyException {
+		checkKey(key);
 		if (modifiers.contains(DataSourceModifier.READONLY)) {
 			throw new ReadOnlyException();
 		}
@@ -271,12 +310,7 @@ public abstract class AbstractDataSource implements DataSource {
 	 * this time. If the data set is transient, it will do so.
 	 */
 	private void checkGet(String[] key) throws DataSourceException {
-		for(String namespace : key){
-			if("_".equals(namespace)){
-				throw new IllegalArgumentException("In the key \"" + StringUtils.Join(key, ".") + ", the namespace \"_\" is not allowed."
-						+ " (Namespaces may contain an underscore, but may not be just an underscore.)");
-			}
-		}
+		checkKey(key);
 		if(this.getModifiers().contains(DataSource.DataSourceModifier.TRANSIENT)){
             this.populate();
         }
@@ -6,6 +6,7 @@ import com.laytonsmith.core.CHVersion;
 import com.laytonsmith.core.Documentation;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -45,6 +46,18 @@ public interface DataSource extends Documentation {
 	 */
 	public Set<String[]> getNamespace(String[] namespace) throws DataSourceException;
 
+	/**
+	 * Given a namespace, returns all the keys in this data source that are
+	 * in the namespace, along with their values. This is the same as calling
+	 * getNamespace, then get on each key, however data sources that can
+	 * do a range scan natively should do so, and return the keys and values
+	 * at once.
+	 *
+	 * @param namespace
+	 * @return
+	 */
+	public Map<String[], String> getValues(String[] namespace) throws DataSourceException;
+
 	/**
 	 * Retrieves a value from the data source. This should be the same
 	 * as get(key, false), which is generally the default usage.
@@ -183,14 +196,22 @@ public interface DataSource extends Documentation {
 		+ " If the connection is also transient, a call to get_value() cannot be used in synchronous mode, and will fail if async"
 		+ " mode is not used. ", CHVersion.V3_3_1),
 		ASYNC("Forces retrievals to this connection to require asyncronous usage. This is handy if an otherwise blocking data source has gotten"
-		+ " too large to allow synchonous connections, or if you are using a medium/large data source transiently.", CHVersion.V3_3_1),
+		+ " too large to allow synchonous connections, or if you are using a medium/large data source transiently. On the main thread,"
+		+ " the synchronous functions such as get_value() will fail for keys stored in this connection, and the async functions, such as"
+		+ " get_value_async() must be used instead.", CHVersion.V3_3_1),
 		PRETTYPRINT("For text based files, where it is applicable and possible, if there is a way to \"Pretty Print\" the data, do so. This usually comes"
 		+ " at the cost of file size, but makes it easier to read in a text editor. For some data sources, this is not possible, due to the file"
 		+ " layout requirements of the protocol itself.", CHVersion.V3_3_1),
 		SSH("Retrieves the file via SSH. This cannot be used in combination with the HTTP or HTTPS flags. The file path must match the syntax used"
 		+ " by SCP connections, for instance: ssh:yml://user@host:/path/to/file/over/ssh.yml. This will only work with public-key authentication"
 		+ " however, since there is no practical way to input your password otherwise. Since this is a remote IO connection, async is implied if this"
-		+ " modifier is set.", CHVersion.V3_3_1);
+		+ " modifier is set.", CHVersion.V3_3_1),
+		JOURNAL("For file based data sources, instead of writing out the entire file every time a value is changed, the change is appended"
+		+ " to a journal file that sits beside the data file (which will be the filename with .journal appended). Periodically, the journal"
+		+ " is folded back into the data file in the background, and on startup, any changes in the journal are replayed on top of the data"
+		+ " file. This makes writes to large files much more efficient, though the data file itself may be somewhat out of date at any given"
+		+ " time, so external applications should not read the data file directly. This cannot be combined with the read-only or transient"
+		+ " modifiers, and only works with local files.", CHVersion.V3_3_1);
 		private CHVersion since;
 		private String documentation;
 
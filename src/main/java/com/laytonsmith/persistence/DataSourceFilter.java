@@ -1,6 +1,7 @@
 package com.laytonsmith.persistence;
 
 import com.laytonsmith.PureUtilities.Common.FileUtil;
+import com.laytonsmith.PureUtilities.LRUMap;
 import com.laytonsmith.PureUtilities.PropertiesManager;
 import com.laytonsmith.PureUtilities.Common.StringUtils;
 import java.io.File;
@@ -10,10 +11,10 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 /**
  * Given a File, creates a data source filter, which can be
@@ -23,27 +24,38 @@ import java.util.regex.Pattern;
 public class DataSourceFilter {
 
 	/**
-	 * Maps the regex-converted filter to a URI string. This is not stored
-	 * as a URI, because it might have capture usages in it.
+	 * The root of the compiled filter trie. Each level of the trie is one
+	 * namespace segment of the filter.
 	 */
-	private Map<Pattern, String> mappings = new HashMap<Pattern, String>();
+	private final Node root = new Node();
 	/**
-	 * This maps the compiled pattern to the original in-config filter.
-	 * So, hi\..*? would map to hi.**
+	 * Filters that can't be represented in the trie, because they contain a **
+	 * that is mixed with other characters in the same segment (and so may end
+	 * partway through a segment). These are few in practice, and are simply
+	 * checked one at a time.
 	 */
-	private Map<Pattern, String> original = new HashMap<Pattern, String>();
+	private final List<Filter> complex = new ArrayList<Filter>();
+	/**
+	 * The normalized filters that have been defined, to detect duplicates.
+	 */
+	private final Set<String> defined = new HashSet<String>();
 	/**
 	 * This maps the split key to the URI string, for use in namespace comparisons.
 	 */
 	private Map<String[], String> namespaced = new HashMap<String[], String>();
 	/**
-	 * Since data lookups are expensive, cache them.
+	 * The maximum number of entries in each of the lookup caches.
 	 */
-	private Map<String, URI> cache = new TreeMap<String, URI>();
+	private static final int CACHE_SIZE = 10000;
+	/**
+	 * Since data lookups are expensive, cache them. The cache is bounded, since
+	 * the number of distinct keys is not.
+	 */
+	private final Map<String, URI> cache = new LRUMap<String, URI>(CACHE_SIZE);
 	/**
 	 * Namespace lookups are also expensive, so let's also cache the results.
 	 */
-	private Map<String, List<URI>> namespaceCache = new TreeMap<String, List<URI>>();
+	private final Map<String, List<URI>> namespaceCache = new LRUMap<String, List<URI>>(CACHE_SIZE);
 
 	/**
 	 * Creates a new data source filter. This is represented by a file that
@@ -122,11 +134,7 @@ public class DataSourceFilter {
 						+ " Found this instead: " + key);
 				}
 				
-				String regexKey = toRegex(key);
-				
-				Pattern pattern = Pattern.compile(regexKey + "$");
-
-				//Ok, have the pattern, now lets see if the value is an alias
+				//Ok, now lets see if the value is an alias
 
 				String value = p.get(key);
 				String originalValue = value;
@@ -142,8 +150,9 @@ public class DataSourceFilter {
 					}
 				}
 
-				//Is this pattern already in the mapping? If so, we need to throw an error.
-				if (mappings.containsKey(pattern)) {
+				//Is this filter already defined? If so, we need to throw an error.
+				String normalized = normalize(key);
+				if (defined.contains(normalized)) {
 					throw new DataSourceException("Multiple definitions exist for the key: " + key);
 				}
 
@@ -158,19 +167,166 @@ public class DataSourceFilter {
 						+ (isAlias ? "(Defined for alias " + originalValue + ")" : "") + ".");
 				}
 				//Alright. It's cool. Add it to the list.
-				mappings.put(pattern, value);
-				original.put(pattern, key);
+				defined.add(normalized);
+				add(new Filter(normalized, uriValue));
 				namespaced.put(key.split("\\."), value);
 			}
 			//else it's an alias, and we've already dealt with it
 		}
 		if(!hasDefault){
-			Pattern m = Pattern.compile(".*?");
-			mappings.put(m, defaultURI.toString());
-			original.put(m, "**");
+			add(new Filter("**", defaultURI));
 			namespaced.put(new String[]{"**"}, defaultURI.toString());
 		}
 	}
+
+	/**
+	 * Parenthesis are allowed in filters, but have no effect on matching, so
+	 * they are simply removed.
+	 * @param key
+	 * @return 
+	 */
+	private static String normalize(String key){
+		return key.trim().replace("(", "").replace(")", "");
+	}
+
+	/**
+	 * Adds the filter to the trie, or to the list of complex filters, if it can't
+	 * be represented in the trie.
+	 * @param filter 
+	 */
+	private void add(Filter filter){
+		for(String segment : filter.segments){
+			if(segment.contains("**") && !"**".equals(segment)){
+				complex.add(filter);
+				return;
+			}
+		}
+		Node node = root;
+		for(String segment : filter.segments){
+			Node next;
+			if("**".equals(segment)){
+				if(node.globstar == null){
+					node.globstar = new Node();
+				}
+				next = node.globstar;
+			} else if("*".equals(segment)){
+				if(node.star == null){
+					node.star = new Node();
+				}
+				next = node.star;
+			} else if(segment.contains("*")){
+				next = node.globs.get(segment);
+				if(next == null){
+					next = new Node();
+					node.globs.put(segment, next);
+				}
+			} else {
+				next = node.literals.get(segment);
+				if(next == null){
+					next = new Node();
+					node.literals.put(segment, next);
+				}
+			}
+			node = next;
+		}
+		node.filter = filter;
+	}
+
+	/**
+	 * A node in the filter trie.
+	 */
+	private static class Node {
+		/**
+		 * Children for segments that are a plain string.
+		 */
+		final Map<String, Node> literals = new HashMap<String, Node>();
+		/**
+		 * Children for segments that contain a * along with other characters,
+		 * for instance "player*"
+		 */
+		final Map<String, Node> globs = new HashMap<String, Node>(0);
+		/**
+		 * The child for a segment that is exactly *, which matches exactly one segment.
+		 */
+		Node star;
+		/**
+		 * The child for a segment that is exactly **, which matches one or more segments.
+		 */
+		Node globstar;
+		/**
+		 * If a filter ends at this node, this is it.
+		 */
+		Filter filter;
+	}
+
+	/**
+	 * A single filter from the configuration, along with its precomputed specificity.
+	 */
+	private static class Filter {
+		final String filter;
+		final String[] segments;
+		final URI uri;
+		/**
+		 * The number of segments with no wildcards in them. This is the primary
+		 * measure of how specific a filter is.
+		 */
+		final int literalSegments;
+		/**
+		 * The number of non wildcard characters in segments that do have wildcards.
+		 */
+		final int literalCharacters;
+		/**
+		 * The number of segments that contain a **
+		 */
+		final int globstars;
+
+		Filter(String filter, URI uri){
+			this.filter = filter;
+			this.segments = filter.split("\\.");
+			this.uri = uri;
+			int literalSegments = 0;
+			int literalCharacters = 0;
+			int globstars = 0;
+			for(String segment : segments){
+				if(!segment.contains("*")){
+					literalSegments++;
+				} else {
+					literalCharacters += segment.replace("*", "").length();
+					if(segment.contains("**")){
+						globstars++;
+					}
+				}
+			}
+			this.literalSegments = literalSegments;
+			this.literalCharacters = literalCharacters;
+			this.globstars = globstars;
+		}
+
+		/**
+		 * Returns true if this filter is a more specific match than the other
+		 * filter. The most specific filter is the one that, minus wildcards, matches
+		 * the most namespaces. Ties are broken by the number of other matching characters,
+		 * then by preferring * over **, and finally by the filter text itself, so the result
+		 * is always deterministic.
+		 * @param other
+		 * @return 
+		 */
+		boolean moreSpecificThan(Filter other){
+			if(other == null){
+				return true;
+			}
+			if(literalSegments != other.literalSegments){
+				return literalSegments > other.literalSegments;
+			}
+			if(literalCharacters != other.literalCharacters){
+				return literalCharacters > other.literalCharacters;
+			}
+			if(globstars != other.globstars){
+				return globstars < other.globstars;
+			}
+			return filter.compareTo(other.filter) < 0;
+		}
+	}
 	
 	/**
 	 * Given a key filter, returns a regex pattern that is suitable for
@@ -232,8 +388,11 @@ public class DataSourceFilter {
 	 * @return
 	 */
 	public List<URI> getAllConnections(String key) {
-		if(namespaceCache.containsKey(key)){
-			return new ArrayList<URI>(namespaceCache.get(key));
+		synchronized(namespaceCache){
+			List<URI> cached = namespaceCache.get(key);
+			if(cached != null){
+				return new ArrayList<URI>(cached);
+			}
 		}
 		Map<String[], String> matches = new HashMap<String[], String>();
 		String [] split = key.split("\\.");
@@ -250,9 +409,8 @@ public class DataSourceFilter {
 					String requestedPart = split[comparing];
 					String myPart = comparison[comparing];
 					if(myPart.contains("*")){
-						//It's got a wildcard, so we need to convert it to a regex and compare from there
-						String regexPart = toRegex(myPart);
-						if(!requestedPart.matches(regexPart)){							
+						//It's got a wildcard, so we need to do a wildcard match
+						if(!globMatches(normalize(myPart), 0, requestedPart, 0)){
 							continue outer;
 						}
 					} else {
@@ -280,7 +438,9 @@ public class DataSourceFilter {
 				//Won't happen
 			}
 		}
-		namespaceCache.put(key, list);
+		synchronized(namespaceCache){
+			namespaceCache.put(key, list);
+		}
 		return new ArrayList<URI>(list);
 	}
 	
@@ -301,54 +461,101 @@ public class DataSourceFilter {
 	 * @return
 	 */
 	public URI getConnection(String key) {
-		//Since looking through these patterns, doing the matches, calculating string distance are all
-		//fairly expensive operations, let's improve the runtime complexity by using a cache
-		if (cache.containsKey(key)) {
-			return cache.get(key);
+		synchronized (cache) {
+			URI u = cache.get(key);
+			if (u != null) {
+				return u;
+			}
 		}
-		List<Pattern> matches = new ArrayList<Pattern>();
-		for (Pattern p : mappings.keySet()) {
-			if (p.matcher(key).matches()) {
-				matches.add(p);
+		String[] segments = key.split("\\.");
+		Filter best = match(root, segments, 0, null);
+		for (Filter f : complex) {
+			if (f.moreSpecificThan(best) && globMatches(f.filter, 0, key, 0)) {
+				best = f;
 			}
 		}
-		//Ok, we have a list of the actual matches, we have to narrow it down to the closest
-		//match.
-		Pattern closest = null;
-		if (matches.isEmpty()) {
-			//Trivial case
+		if (best == null) {
 			return null;
-		} else if (matches.size() == 1) {
-			//Yay! Also a trivial case!            
-			closest = matches.get(0);
-		} else {
-			int lowest = Integer.MAX_VALUE;
-			for (Pattern p : matches) {
-				//The closest match is defined as a filter that, minus wild cards, matches more characters.
-				//So, for instance, if the key is a.b.c.d, then this matches a.*.c.d better than a.*.*.d
-				//The easiest way to detect this is to simply remove * characters, and do a Levenshtein distance on the strings, and
-				//whichever one is lowest, is the closest.
-				String originalKey = original.get(p);
-				int dist = StringUtils.LevenshteinDistance(key, originalKey.replaceAll("\\*", "").replaceAll("[\\(\\)]", ""));
-				if (dist < lowest) {
-					closest = p;
-					lowest = dist;
+		}
+		synchronized (cache) {
+			cache.put(key, best.uri);
+		}
+		return best.uri;
+	}
+
+	/**
+	 * Walks the trie, matching the segments starting at index, and returns the most specific
+	 * filter that matches the whole key, or the best filter so far, if none of the filters
+	 * under this node are better.
+	 * @param node
+	 * @param segments
+	 * @param index
+	 * @param best
+	 * @return 
+	 */
+	private static Filter match(Node node, String[] segments, int index, Filter best) {
+		if (index == segments.length) {
+			if (node.filter != null && node.filter.moreSpecificThan(best)) {
+				return node.filter;
+			}
+			return best;
+		}
+		String segment = segments[index];
+		Node next = node.literals.get(segment);
+		if (next != null) {
+			best = match(next, segments, index + 1, best);
+		}
+		if (!node.globs.isEmpty()) {
+			for (Map.Entry<String, Node> glob : node.globs.entrySet()) {
+				if (globMatches(glob.getKey(), 0, segment, 0)) {
+					best = match(glob.getValue(), segments, index + 1, best);
 				}
 			}
 		}
+		if (node.star != null) {
+			best = match(node.star, segments, index + 1, best);
+		}
+		if (node.globstar != null) {
+			//** consumes one or more segments
+			for (int i = index + 1; i <= segments.length; i++) {
+				best = match(node.globstar, segments, i, best);
+			}
+		}
+		return best;
+	}
 
-		try {
-			if (closest == null) {
-				return null;
+	/**
+	 * Returns true if the text, starting at ti, matches the filter pattern, starting at pi.
+	 * A * matches any number of characters, except for dots, and a ** matches any
+	 * number of characters, including dots.
+	 * @param pattern
+	 * @param pi
+	 * @param text
+	 * @param ti
+	 * @return 
+	 */
+	private static boolean globMatches(String pattern, int pi, String text, int ti) {
+		while (pi < pattern.length()) {
+			char c = pattern.charAt(pi);
+			if (c == '*') {
+				boolean crossSegments = pi + 1 < pattern.length() && pattern.charAt(pi + 1) == '*';
+				pi += crossSegments ? 2 : 1;
+				for (int i = ti; i <= text.length(); i++) {
+					if (globMatches(pattern, pi, text, i)) {
+						return true;
+					}
+					if (i < text.length() && !crossSegments && text.charAt(i) == '.') {
+						return false;
+					}
+				}
+				return false;
 			}
-			String uri = mappings.get(closest);
-			URI u = new URI(uri);
-			//Store it in our cache
-			cache.put(key, u);
-			return u;
-		} catch (URISyntaxException ex) {
-			//We already verified that this won't happen, so yeah.
-			return null;
+			if (ti >= text.length() || text.charAt(ti) != c) {
+				return false;
+			}
+			pi++;
+			ti++;
 		}
+		return ti == text.length();
 	}
 }
@@ -99,31 +99,71 @@ public final class DataSourceModel {
 	}
 
 	public String get(String[] key) {
-		return getValue(new ArrayList<String>(Arrays.asList(key)), tree);
+		GenericTreeNode<Pair<String, String>> node = find(key);
+		return node == null || node == tree ? null : node.getData().getValue();
 	}
 
 	public void set(String[] key, String value) {
 		setValue(new ArrayList<String>(Arrays.asList(key)), tree, value);
 	}
 
-	public void clearKey(String[] key) {
-		set(key, null);
+	/**
+	 * Returns the node for the given key, or null if there is no such node.
+	 *
+	 * @param key
+	 * @return
+	 */
+	private GenericTreeNode<Pair<String, String>> find(String[] key) {
+		GenericTreeNode<Pair<String, String>> node = tree;
+		outer:
+		for (String part : key) {
+			for (GenericTreeNode<Pair<String, String>> child : node.getChildren()) {
+				if (child.getData().getKey().equals(part)) {
+					node = child;
+					continue outer;
+				}
+			}
+			return null;
+		}
+		return node;
 	}
 
-	private String getValue(List<String> keys, GenericTreeNode<Pair<String, String>> treeNode) {
-		String value = null;
-		if (!keys.isEmpty()) {
-			String key = keys.get(0);
-			keys.remove(0);
-			for (GenericTreeNode<Pair<String, String>> child : treeNode.getChildren()) {
-				if (child.getData().getKey().equals(key)) {
-					return getValue(keys, child);
-				}
+	/**
+	 * Returns all the keys and values in the given namespace, including the namespace
+	 * itself. Only the subtree under the namespace is walked, rather than the whole
+	 * model.
+	 *
+	 * @param namespace
+	 * @return
+	 */
+	public Map<String[], String> getValues(String[] namespace) {
+		Map<String[], String> map = new HashMap<String[], String>();
+		GenericTreeNode<Pair<String, String>> node = find(namespace);
+		if (node != null) {
+			List<String> ongoingKey = new ArrayList<String>(Arrays.asList(namespace));
+			if (namespace.length > 0 && node.getData().getValue() != null) {
+				map.put(namespace, node.getData().getValue());
+			}
+			for (GenericTreeNode<Pair<String, String>> child : node.getChildren()) {
+				collectValues(child, ongoingKey, map);
 			}
-		} else {
-			value = treeNode.getData().getValue();
 		}
-		return value;
+		return map;
+	}
+
+	private void collectValues(GenericTreeNode<Pair<String, String>> treeNode, List<String> ongoingKey, Map<String[], String> values) {
+		ongoingKey.add(treeNode.getData().getKey());
+		if (treeNode.getData().getValue() != null) {
+			values.put(ongoingKey.toArray(new String[ongoingKey.size()]), treeNode.getData().getValue());
+		}
+		for (GenericTreeNode<Pair<String, String>> child : treeNode.getChildren()) {
+			collectValues(child, ongoingKey, values);
+		}
+		ongoingKey.remove(ongoingKey.size() - 1);
+	}
+
+	public void clearKey(String[] key) {
+		set(key, null);
 	}
 
 	private void setValue(List<String> keys, GenericTreeNode<Pair<String, String>> treeNode, String value) {
@@ -8,6 +8,7 @@ import com.laytonsmith.persistence.io.ConnectionMixinFactory;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -25,23 +26,27 @@ import java.util.logging.Logger;
 @datasource("mem")
 public final class MemoryDataSource extends AbstractDataSource {
 	
-	private static final Map<String, Map<String, String>> databasePool = new TreeMap<String, Map<String, String>>();
+	private static final Map<String, TreeMap<String, String>> databasePool = new TreeMap<String, TreeMap<String, String>>();
 	
 	/**
 	 * Clears all data from all databases. Should be called when a natural reload type operation is called.
 	 */
 	public static void ClearDatabases(){
-		for(String s : databasePool.keySet()){
-			databasePool.get(s).clear();
+		synchronized(databasePool){
+			for(String s : databasePool.keySet()){
+				databasePool.get(s).clear();
+			}
+			databasePool.clear();
 		}
-		databasePool.clear();
 	}
 	
-	private static Map<String, String> getDatabase(String name){
-		if(!databasePool.containsKey(name)){
-			databasePool.put(name, new TreeMap<String, String>());
+	private static TreeMap<String, String> getDatabase(String name){
+		synchronized(databasePool){
+			if(!databasePool.containsKey(name)){
+				databasePool.put(name, new TreeMap<String, String>());
+			}
+			return databasePool.get(name);
 		}
-		return databasePool.get(name);
 	}
 	
 	private String dbName;
@@ -159,6 +164,39 @@ public final class MemoryDataSource extends AbstractDataSource {
 	}
 	
 
+	@Override
+	protected synchronized Map<String[], String> getValues0(String[] namespace) throws DataSourceException {
+		Map<String, String> values = new HashMap<String, String>();
+		String ns = StringUtils.Join(namespace, ".");
+		TreeMap<String, String> db = getDatabase(dbName);
+		if(namespace.length == 0){
+			values.putAll(db);
+		} else {
+			if(db.containsKey(ns)){
+				values.put(ns, db.get(ns));
+			}
+			values.putAll(db.subMap(ns + ".", ns + "/"));
+		}
+		if(inTransaction()){
+			for(Transaction t : transactionList){
+				if(namespace.length == 0 || t.key.equals(ns) || t.key.startsWith(ns + ".")){
+					if(t.action == Action.CLEAR){
+						values.remove(t.key);
+					} else if(t.action == Action.SET){
+						values.put(t.key, t.value);
+					}
+				}
+			}
+		}
+		Map<String[], String> ret = new HashMap<String[], String>();
+		for(Map.Entry<String, String> entry : values.entrySet()){
+			if(entry.getValue() != null){
+				ret.put(entry.getKey().split("\\."), entry.getValue());
+			}
+		}
+		return ret;
+	}
+
 	@Override
 	public Set<String> stringKeySet() throws DataSourceException {
 		Set<String> keys = new TreeSet<String>();
@@ -1,60 +1,504 @@
 package com.laytonsmith.persistence;
 
 import com.laytonsmith.PureUtilities.DaemonManager;
+import com.laytonsmith.PureUtilities.Common.StringUtils;
+import com.laytonsmith.PureUtilities.Web.WebUtility;
+import com.laytonsmith.annotations.datasource;
 import com.laytonsmith.core.CHVersion;
 import com.laytonsmith.persistence.io.ConnectionMixinFactory;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.net.URLEncoder;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  *
  * @author lsmith
  */
-//@datasource("mysql")
+@datasource("mysql")
 public class MySQLDataSource extends AbstractDataSource{
-	
+
+	/* These values may not be changed without creating an upgrade routine */
+	private static final String KEY_COLUMN = "key";
+	private static final String VALUE_COLUMN = "value";
+	/**
+	 * The maximum number of rows that are sent in a single multi-row statement
+	 * when a transaction is committed.
+	 */
+	private static final int BATCH_SIZE = 500;
+	private static final int DEFAULT_POOL_SIZE = 4;
+	/**
+	 * Pools are shared by all data sources that connect to the same database
+	 * with the same credentials, since a network may have several tables in the
+	 * same database. They stay open until {@link #ClosePools()} is called.
+	 */
+	private static final Map<String, ConnectionPool> pools = new HashMap<String, ConnectionPool>();
+
+	/**
+	 * Closes all the connection pools. This should be called when the persistence
+	 * network is replaced, after it has been flushed, since the data sources of the
+	 * old network can't be used afterwards.
+	 */
+	public static void ClosePools(){
+		synchronized(pools){
+			for(ConnectionPool p : pools.values()){
+				p.close();
+			}
+			pools.clear();
+		}
+	}
+
+	private String host;
+	private int port;
+	private String database;
+	private String table;
+	private String username;
+	private String password;
+	private int poolSize = DEFAULT_POOL_SIZE;
+	private ConnectionPool pool;
+	/**
+	 * Changes made inside a transaction, in the order they were made. A null value
+	 * means the key was cleared. These are sent to the database in batches when the
+	 * transaction is committed.
+	 */
+	private final Map<String, String> transactionList = new LinkedHashMap<String, String>();
+
 	private MySQLDataSource(){
-		
+
 	}
-	
+
 	public MySQLDataSource(URI uri, ConnectionMixinFactory.ConnectionMixinOptions options) throws DataSourceException{
 		super(uri, options);
+		try{
+			host = uri.getHost();
+			port = uri.getPort() == -1 ? 3306 : uri.getPort();
+			if(uri.getUserInfo() != null){
+				String[] userInfo = uri.getUserInfo().split(":", 2);
+				username = userInfo[0];
+				if(userInfo.length > 1){
+					password = userInfo[1];
+				}
+			}
+			String[] path = uri.getPath().replaceFirst("^/", "").split("/");
+			if(path.length != 2 || "".equals(path[0]) || "".equals(path[1])){
+				throw new DataSourceException("The MySQL connection " + uri.toString() + " must specify both the database and the table, i.e. mysql://host/database/table");
+			}
+			database = path[0];
+			table = path[1];
+			if(uri.getQuery() != null){
+				Map<String, String> queryString = WebUtility.getQueryMap(uri.getQuery());
+				if(queryString.containsKey("pool")){
+					poolSize = Integer.parseInt(queryString.get("pool"));
+				}
+			}
+			pool = getPool();
+			Connection c = pool.acquire();
+			boolean ok = false;
+			try {
+				createTable(c);
+				ok = true;
+			} finally {
+				pool.release(c, ok);
+			}
+		} catch(DataSourceException e){
+			throw e;
+		} catch(Exception e){
+			throw new DataSourceException("An error occured while setting up a connection to the MySQL database: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the JDBC connection string for this data source.
+	 * @return
+	 */
+	protected String getConnectionString() {
+		try {
+			return "jdbc:mysql://" + host + ":" + port + "/" + database + "?generateSimpleParameterMetadata=true"
+					+ "&jdbcCompliantTruncation=false&useUnicode=true&characterEncoding=UTF-8"
+					+ (username == null ? "" : "&user=" + URLEncoder.encode(username, "UTF-8"))
+					+ (password == null ? "" : "&password=" + URLEncoder.encode(password, "UTF-8"));
+		} catch (UnsupportedEncodingException ex) {
+			throw new Error(ex);
+		}
+	}
+
+	private ConnectionPool getPool() throws ClassNotFoundException {
+		String connectionString = getConnectionString();
+		if(connectionString.startsWith("jdbc:mysql:")){
+			Class.forName(com.mysql.jdbc.Driver.class.getName());
+		}
+		synchronized(pools){
+			ConnectionPool p = pools.get(connectionString);
+			if(p == null){
+				p = new ConnectionPool(connectionString, poolSize);
+				pools.put(connectionString, p);
+			}
+			return p;
+		}
+	}
+
+	private void createTable(Connection c) throws SQLException{
+		//If the table already exists, we leave it alone, so that the user doesn't
+		//need CREATE permissions once the table is set up.
+		ResultSet rs = c.getMetaData().getTables(null, null, table, null);
+		try {
+			if(rs.next()){
+				return;
+			}
+		} finally {
+			rs.close();
+		}
+		Statement statement = c.createStatement();
+		try {
+			//The key is compared in binary, so that keys are case sensitive, and so that namespace
+			//lookups can be done as a range scan on the primary key.
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + table + "` ("
+					+ "`" + KEY_COLUMN + "` VARCHAR(255) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL,"
+					+ " `" + VALUE_COLUMN + "` MEDIUMTEXT,"
+					+ " PRIMARY KEY (`" + KEY_COLUMN + "`)"
+					+ ") ENGINE=InnoDB DEFAULT CHARSET=utf8");
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * A bounded pool of connections to a single database. If all the connections are in
+	 * use, callers block until one is released. Connections that have failed are discarded
+	 * rather than returned to the pool.
+	 */
+	private static class ConnectionPool {
+		private final String connectionString;
+		private final int maxSize;
+		private final LinkedList<Connection> idle = new LinkedList<Connection>();
+		private int open = 0;
+		private boolean closed = false;
+
+		public ConnectionPool(String connectionString, int maxSize){
+			this.connectionString = connectionString;
+			this.maxSize = Math.max(1, maxSize);
+		}
+
+		public Connection acquire() throws SQLException{
+			synchronized(this){
+				while(true){
+					if(closed){
+						throw new SQLException("The connection pool for " + connectionString + " has been closed");
+					}
+					while(!idle.isEmpty()){
+						Connection c = idle.removeFirst();
+						if(!c.isClosed()){
+							return c;
+						}
+						open--;
+					}
+					if(open < maxSize){
+						open++;
+						break;
+					}
+					try {
+						this.wait();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a connection", ex);
+					}
+				}
+			}
+			//Don't hold the lock while actually connecting
+			try {
+				return DriverManager.getConnection(connectionString);
+			} catch(SQLException e){
+				synchronized(this){
+					open--;
+					this.notify();
+				}
+				throw e;
+			}
+		}
+
+		/**
+		 * Returns the connection to the pool. If ok is false, the connection is assumed
+		 * to be in a bad state, and is closed instead, as it is if the pool has been closed.
+		 */
+		public void release(Connection c, boolean ok){
+			synchronized(this){
+				if(ok && !closed){
+					idle.addFirst(c);
+					this.notify();
+					return;
+				}
+				open--;
+				this.notify();
+			}
+			try {
+				c.close();
+			} catch (SQLException ex) {
+				//Ignored, we're throwing it away anyways
+			}
+		}
+
+		/**
+		 * Closes the idle connections, and any that are in use once they are released.
+		 * The pool can't be used afterwards.
+		 */
+		public void close(){
+			List<Connection> connections;
+			synchronized(this){
+				closed = true;
+				connections = new ArrayList<Connection>(idle);
+				open -= idle.size();
+				idle.clear();
+				this.notifyAll();
+			}
+			for(Connection c : connections){
+				try {
+					c.close();
+				} catch (SQLException ex) {
+					//Ignored, we're throwing it away anyways
+				}
+			}
+		}
+	}
+
+	@Override
+	public Set<String[]> keySet() throws DataSourceException {
+		return getNamespace(new String[]{});
 	}
 
 	@Override
-	public Set<String[]> keySet() {
-		throw new UnsupportedOperationException("Not supported yet.");
+	public Set<String[]> getNamespace(String[] namespace) throws DataSourceException {
+		return getValues0(namespace).keySet();
+	}
+
+	@Override
+	protected Map<String[], String> getValues0(String[] namespace) throws DataSourceException {
+		Map<String, String> values = new HashMap<String, String>();
+		String ns = StringUtils.Join(namespace, ".");
+		Connection c = null;
+		boolean ok = false;
+		try{
+			c = pool.acquire();
+			PreparedStatement statement;
+			if(namespace.length == 0){
+				statement = c.prepareStatement("SELECT `" + KEY_COLUMN + "`, `" + VALUE_COLUMN + "` FROM `" + table + "`");
+			} else {
+				//A range scan on the primary key, everything from "ns." up to, but not including "ns/",
+				//since '/' is the character right after '.'
+				statement = c.prepareStatement("SELECT `" + KEY_COLUMN + "`, `" + VALUE_COLUMN + "` FROM `" + table + "` WHERE `" + KEY_COLUMN + "`=?"
+						+ " OR (`" + KEY_COLUMN + "`>=? AND `" + KEY_COLUMN + "`<?)");
+				statement.setString(1, ns);
+				statement.setString(2, ns + ".");
+				statement.setString(3, ns + "/");
+			}
+			try {
+				ResultSet rs = statement.executeQuery();
+				while(rs.next()){
+					values.put(rs.getString(1), rs.getString(2));
+				}
+			} finally {
+				statement.close();
+			}
+			ok = true;
+		} catch(SQLException e){
+			throw new DataSourceException("Could not retrieve values from MySQL connection " + uri.toString(), e);
+		} finally {
+			if(c != null){
+				pool.release(c, ok);
+			}
+		}
+		if(inTransaction()){
+			synchronized(transactionList){
+				for(Map.Entry<String, String> entry : transactionList.entrySet()){
+					if("".equals(ns) || entry.getKey().equals(ns) || entry.getKey().startsWith(ns + ".")){
+						values.put(entry.getKey(), entry.getValue());
+					}
+				}
+			}
+		}
+		Map<String[], String> ret = new HashMap<String[], String>();
+		for(Map.Entry<String, String> entry : values.entrySet()){
+			if(entry.getValue() != null){
+				ret.put(entry.getKey().split("\\."), entry.getValue());
+			}
+		}
+		return ret;
 	}
 
 	@Override
 	public String get0(String[] key) throws DataSourceException {
-		throw new UnsupportedOperationException("Not supported yet.");
+		String fKey = StringUtils.Join(key, ".");
+		if(inTransaction()){
+			synchronized(transactionList){
+				if(transactionList.containsKey(fKey)){
+					return transactionList.get(fKey);
+				}
+			}
+		}
+		Connection c = null;
+		boolean ok = false;
+		try{
+			c = pool.acquire();
+			PreparedStatement statement = c.prepareStatement("SELECT `" + VALUE_COLUMN + "` FROM `" + table + "` WHERE `" + KEY_COLUMN + "`=?");
+			try {
+				statement.setString(1, fKey);
+				ResultSet rs = statement.executeQuery();
+				String value = null;
+				if(rs.next()){
+					value = rs.getString(1);
+				}
+				ok = true;
+				return value;
+			} finally {
+				statement.close();
+			}
+		} catch(SQLException e){
+			throw new DataSourceException("Could not get key from MySQL connection " + uri.toString(), e);
+		} finally {
+			if(c != null){
+				pool.release(c, ok);
+			}
+		}
 	}
 
 	@Override
 	public boolean set0(DaemonManager dm, String[] key, String value) throws ReadOnlyException, DataSourceException, IOException {
-		throw new UnsupportedOperationException("Not supported yet.");
+		String fKey = StringUtils.Join(key, ".");
+		if(inTransaction()){
+			synchronized(transactionList){
+				//Remove it first, so the key moves to the end of the list
+				transactionList.remove(fKey);
+				transactionList.put(fKey, value);
+			}
+			return true;
+		}
+		Map<String, String> change = new HashMap<String, String>();
+		change.put(fKey, value);
+		try {
+			write(change);
+		} catch(SQLException e){
+			throw new DataSourceException("Could not set key in MySQL connection " + uri.toString(), e);
+		}
+		return true;
+	}
+
+	@Override
+	protected void clearKey0(DaemonManager dm, String[] key) throws ReadOnlyException, DataSourceException, IOException {
+		set0(dm, key, null);
+	}
+
+	/**
+	 * Writes out the given changes in a single database transaction. Sets are sent
+	 * as multi-row upserts, and clears as multi-row deletes, at most BATCH_SIZE rows
+	 * at a time.
+	 * @param changes A map of keys to values. A null value means the key should be deleted.
+	 */
+	private void write(Map<String, String> changes) throws SQLException{
+		List<Map.Entry<String, String>> sets = new ArrayList<Map.Entry<String, String>>();
+		List<String> deletes = new ArrayList<String>();
+		for(Map.Entry<String, String> entry : changes.entrySet()){
+			if(entry.getValue() == null){
+				deletes.add(entry.getKey());
+			} else {
+				sets.add(entry);
+			}
+		}
+		Connection c = pool.acquire();
+		boolean ok = false;
+		try {
+			boolean batched = changes.size() > 1;
+			if(batched){
+				c.setAutoCommit(false);
+			}
+			try {
+				for(int i = 0; i < sets.size(); i += BATCH_SIZE){
+					List<Map.Entry<String, String>> batch = sets.subList(i, Math.min(sets.size(), i + BATCH_SIZE));
+					StringBuilder sql = new StringBuilder("INSERT INTO `" + table + "` (`" + KEY_COLUMN + "`, `" + VALUE_COLUMN + "`) VALUES ");
+					for(int j = 0; j < batch.size(); j++){
+						sql.append(j == 0 ? "(?, ?)" : ", (?, ?)");
+					}
+					sql.append(" ON DUPLICATE KEY UPDATE `" + VALUE_COLUMN + "`=VALUES(`" + VALUE_COLUMN + "`)");
+					PreparedStatement statement = c.prepareStatement(sql.toString());
+					try {
+						int param = 1;
+						for(Map.Entry<String, String> entry : batch){
+							statement.setString(param++, entry.getKey());
+							statement.setString(param++, entry.getValue());
+						}
+						statement.executeUpdate();
+					} finally {
+						statement.close();
+					}
+				}
+				for(int i = 0; i < deletes.size(); i += BATCH_SIZE){
+					List<String> batch = deletes.subList(i, Math.min(deletes.size(), i + BATCH_SIZE));
+					StringBuilder sql = new StringBuilder("DELETE FROM `" + table + "` WHERE `" + KEY_COLUMN + "` IN (");
+					for(int j = 0; j < batch.size(); j++){
+						sql.append(j == 0 ? "?" : ", ?");
+					}
+					sql.append(")");
+					PreparedStatement statement = c.prepareStatement(sql.toString());
+					try {
+						int param = 1;
+						for(String key : batch){
+							statement.setString(param++, key);
+						}
+						statement.executeUpdate();
+					} finally {
+						statement.close();
+					}
+				}
+				if(batched){
+					c.commit();
+				}
+			} catch(SQLException e){
+				if(batched){
+					c.rollback();
+				}
+				throw e;
+			} finally {
+				if(batched){
+					c.setAutoCommit(true);
+				}
+			}
+			ok = true;
+		} finally {
+			pool.release(c, ok);
+		}
 	}
 
 	@Override
 	public void populate() throws DataSourceException {
-		throw new UnsupportedOperationException("Not supported yet.");
+		//All data is transient
 	}
 
 	@Override
 	public DataSourceModifier[] implicitModifiers() {
-		return null;
+		return new DataSourceModifier[]{DataSourceModifier.TRANSIENT};
 	}
 
 	@Override
 	public DataSourceModifier[] invalidModifiers() {
-		return null;
+		return new DataSourceModifier[]{DataSourceModifier.HTTP, DataSourceModifier.HTTPS, DataSourceModifier.SSH,
+			DataSourceModifier.PRETTYPRINT, DataSourceModifier.JOURNAL
+		};
 	}
 
 	@Override
 	public String docs() {
-		return "MySQL {mysql://[user[:password]@]host[:port]/database/table}"
+		return "MySQL {mysql://[user[:password]@]host[:port]/database/table?pool=4}"
 			+ " This type stores data in a MySQL database. Unlike the"
 			+ " file based systems, this is extremely efficient, but"
 			+ " requires a database connection already set up to work."
@@ -62,23 +506,46 @@ public class MySQLDataSource extends AbstractDataSource{
 			+ " from multiple data sink/sources at once, which is not"
 			+ " possible without the potential for corruption in file"
 			+ " based data sources, without risking either data corruption,"
-			+ " or extremely low efficiency. The layout of the table"
-			+ " in the database is required to be of a specific format: TODO";
+			+ " or extremely low efficiency. The table will be created if it"
+			+ " does not already exist, and must have two columns, `" + KEY_COLUMN + "`, a"
+			+ " case sensitive (binary collation) VARCHAR(255) primary key, and `" + VALUE_COLUMN + "`, a"
+			+ " MEDIUMTEXT. Up to \"pool\" connections (" + DEFAULT_POOL_SIZE + " by default) are kept open"
+			+ " to the database. Since this is a network connection, if the database is not on"
+			+ " localhost, it is recommended that it be async as well.";
 	}
 
 	@Override
 	public CHVersion since() {
-		return CHVersion.V0_0_0;
+		return CHVersion.V3_3_1;
 	}
 
 	@Override
 	protected void startTransaction0(DaemonManager dm) {
-		throw new UnsupportedOperationException("TODO: Not supported yet.");
+		//Changes are simply tracked in the transaction list until the transaction is stopped
 	}
 
 	@Override
 	protected void stopTransaction0(DaemonManager dm, boolean rollback) throws DataSourceException, IOException {
-		throw new UnsupportedOperationException("TODO: Not supported yet.");
+		Map<String, String> changes;
+		synchronized(transactionList){
+			changes = new LinkedHashMap<String, String>(transactionList);
+			transactionList.clear();
+		}
+		if(rollback || changes.isEmpty()){
+			return;
+		}
+		if(dm != null){
+			dm.activateThread(null);
+		}
+		try {
+			write(changes);
+		} catch(SQLException e){
+			throw new DataSourceException("Could not commit the transaction to MySQL connection " + uri.toString(), e);
+		} finally {
+			if(dm != null){
+				dm.deactivateThread(null);
+			}
+		}
 	}
-	
+
 }
@@ -1,16 +1,31 @@
 package com.laytonsmith.persistence;
 
 import com.laytonsmith.PureUtilities.DaemonManager;
+import com.laytonsmith.PureUtilities.Pair;
 import com.laytonsmith.PureUtilities.Common.FileUtil;
+import com.laytonsmith.PureUtilities.Common.StringUtils;
 import com.laytonsmith.persistence.io.ConnectionMixinFactory;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A persistence network is a group of data sources that can act transparently
@@ -22,14 +37,135 @@ import java.util.TreeMap;
  * getting values, and getting multiple values at once, based on a namespace
  * match. All other aspects of how the data is stored and retrieved are
  * abstracted, so you needn't worry about any of those details.
+ * <p>
+ * The network is threadsafe. Each data source has its own read/write lock, so
+ * operations on independent data sources never block each other, and reads
+ * from a data source that is cached in memory can happen in parallel.
+ * <p>
+ * Data sources with the async modifier may not be accessed synchronously from
+ * the main thread (see {@link #setMainThread(Thread)}), and must instead be accessed
+ * with the async methods, which run on a dedicated I/O thread, and report the
+ * result to a {@link Callback}. The callbacks for async writes are only run once the
+ * change has actually been written to the data source, (or writing it failed) though
+ * the returned Future completes as soon as the change has been accepted into the buffer.
+ * <p>
+ * Writes are buffered in front of each data source, so that repeatedly setting
+ * the same key only writes the final value, and so that the data source can write
+ * a whole batch of changes at once, in a single transaction. The buffer is flushed
+ * once it has {@link #MAX_BUFFERED} keys in it, or {@link #FLUSH_DELAY} milliseconds
+ * after the first buffered write, whichever comes first. Reads see buffered values.
+ * The DaemonManager passed to set stays active until the value is flushed, so waiting
+ * on it will also wait for the buffer to be written, and {@link #flush()} may be called
+ * to write everything out immediately, for instance during shutdown.
+ * <p>
+ * If writing the buffer fails, the changes stay in the buffer, and the write is retried
+ * later, backing off on repeated failures. The error is thrown by the next operation on
+ * that data source, unless a retry succeeded in the meantime, so a failure is never
+ * silently dropped. A flush that has to happen before a write can be buffered, because
+ * the buffer is full, throws its error straight away.
  *
  * @author lsmith
  */
 public class PersistenceNetwork {
 
-	private DataSourceFilter filter;
-	private Map<URI, DataSource> dsCache;
-	private ConnectionMixinFactory.ConnectionMixinOptions options;
+	/**
+	 * The number of milliseconds a write may sit in the buffer before it is flushed.
+	 */
+	public static final long FLUSH_DELAY = 500;
+	/**
+	 * The number of distinct keys that may be buffered for a single data source
+	 * before the buffer is flushed.
+	 */
+	public static final int MAX_BUFFERED = 1000;
+
+	private final DataSourceFilter filter;
+	private final ConcurrentMap<URI, DataSourceHandle> dsCache;
+	private final ConnectionMixinFactory.ConnectionMixinOptions options;
+	/**
+	 * The thread that is not allowed to block on async data sources, or null, if
+	 * there is no such thread.
+	 */
+	private volatile Thread mainThread = null;
+	/**
+	 * Runs the async operations, and the delayed buffer flushes. There is a single
+	 * thread, so async operations are run in the order they were requested, which
+	 * means that a get after a set will always see the new value. The thread dies
+	 * off when it is idle, but it is shut down by {@link #close()}, so that nothing
+	 * is written by an old network once it has been replaced.
+	 */
+	private final ScheduledThreadPoolExecutor ioExecutor;
+
+	/**
+	 * The result of an async operation is sent to a Callback. Note that the callback
+	 * is run on the I/O thread, not the thread that requested the operation. The
+	 * callback for a write is run by whichever thread writes out the buffer, which
+	 * is usually the I/O thread, but may be a thread that called {@link #flush()},
+	 * or filled up the buffer, and it is run while the data source is locked.
+	 */
+	public static interface Callback<T> {
+
+		/**
+		 * Called with the result of the operation, if it was successful.
+		 * @param result
+		 */
+		public void result(T result);
+
+		/**
+		 * Called if the operation failed.
+		 * @param error
+		 */
+		public void error(Exception error);
+	}
+
+	/**
+	 * Holds a lazily loaded data source, along with the lock that guards it.
+	 */
+	private static class DataSourceHandle {
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+		private volatile DataSource ds;
+		/**
+		 * Transient data sources re-populate on every read, so reads from them
+		 * aren't actually read only, and must hold the write lock.
+		 */
+		private volatile boolean sharedReads;
+		private volatile boolean async;
+		private volatile boolean readOnly;
+		/**
+		 * Writes that haven't been sent to the data source yet, in the order they
+		 * were last made. A null value means the key was cleared. This is only
+		 * modified while holding the write lock, and only read while holding
+		 * at least the read lock.
+		 */
+		private final Map<String, String> buffer = new LinkedHashMap<String, String>();
+		/**
+		 * The DaemonManagers that have been activated for the buffered writes, which
+		 * will be deactivated once they are flushed. This is guarded by the write lock.
+		 */
+		private final Map<DaemonManager, DaemonManager> managers = new IdentityHashMap<DaemonManager, DaemonManager>();
+		/**
+		 * The callbacks of the async writes that are buffered, along with whether
+		 * or not each write changed the value. These are run when the buffer is
+		 * flushed. This is guarded by the write lock.
+		 */
+		private final List<Pair<Callback<Boolean>, Boolean>> callbacks = new ArrayList<Pair<Callback<Boolean>, Boolean>>();
+		private boolean flushScheduled = false;
+		/**
+		 * The error from the last failed flush, which hasn't been reported yet.
+		 */
+		private volatile Exception flushError = null;
+		/**
+		 * The number of flushes that have failed in a row, used to back off the retries.
+		 */
+		private int failures = 0;
+
+		public Lock readLock() {
+			return sharedReads ? lock.readLock() : lock.writeLock();
+		}
+
+		public Lock writeLock() {
+			return lock.writeLock();
+		}
+	}
 
 	/**
 	 * Given a configuration and a default URI, constructs a new persistence
@@ -63,8 +199,19 @@ public class PersistenceNetwork {
 	 */
 	public PersistenceNetwork(String configuration, URI defaultURI, ConnectionMixinFactory.ConnectionMixinOptions options) throws DataSourceException {
 		filter = new DataSourceFilter(configuration, defaultURI);
-		dsCache = new TreeMap<URI, DataSource>();
+		dsCache = new ConcurrentHashMap<URI, DataSourceHandle>();
 		this.options = options;
+		ioExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "PersistenceNetwork-IO");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		ioExecutor.setKeepAliveTime(30, TimeUnit.SECONDS);
+		ioExecutor.allowCoreThreadTimeOut(true);
 		//Data sources are lazily loaded, so we don't need to do anything right now to load them.
 	}
 	
@@ -80,39 +227,104 @@ public class PersistenceNetwork {
 	}
 
 	/**
-	 * Returns the data source object for this URI.
+	 * Sets the main thread. Data sources that are marked as async will refuse
+	 * synchronous operations from this thread. If null, (the default) any thread
+	 * may use any data source synchronously.
+	 * @param mainThread
+	 */
+	public void setMainThread(Thread mainThread){
+		this.mainThread = mainThread;
+	}
+
+	/**
+	 * Throws a DataSourceException if the data source is async, and the current
+	 * thread is the main thread.
+	 */
+	private void checkThread(DataSourceHandle handle) throws DataSourceException {
+		if (handle.async && Thread.currentThread() == mainThread) {
+			throw new DataSourceException("The data source " + handle.ds.toString() + " is async, and may not be used"
+					+ " synchronously from the main thread. Use the async functions instead.");
+		}
+	}
+
+	/**
+	 * Throws the error from the last failed flush of this data source, if it hasn't
+	 * been reported yet. The changes that failed to be written are still buffered.
+	 */
+	private void checkFlushError(DataSourceHandle handle) throws DataSourceException {
+		Exception error = handle.flushError;
+		if (error != null) {
+			handle.flushError = null;
+			throw new DataSourceException("Could not write buffered values to " + handle.ds.toString()
+					+ ", the write will be retried: " + error.getMessage(), error);
+		}
+	}
+
+	/**
+	 * Returns the handle for the data source for this URI, loading the data source
+	 * if this is the first time it has been requested. If two threads request the same
+	 * data source at once, only one of them will load it, but loading one data source
+	 * does not block requests for any other data source.
 	 *
 	 * @param uri
 	 * @return
 	 * @throws DataSourceException
 	 */
-	private DataSource getDataSource(URI uri) throws DataSourceException {
-		if (!dsCache.containsKey(uri)) {
-			dsCache.put(uri, DataSourceFactory.GetDataSource(uri, options));
+	private DataSourceHandle getDataSource(URI uri) throws DataSourceException {
+		DataSourceHandle handle = dsCache.get(uri);
+		if (handle == null) {
+			DataSourceHandle newHandle = new DataSourceHandle();
+			handle = dsCache.putIfAbsent(uri, newHandle);
+			if (handle == null) {
+				handle = newHandle;
+			}
+		}
+		if (handle.ds == null) {
+			synchronized (handle) {
+				if (handle.ds == null) {
+					DataSource ds = DataSourceFactory.GetDataSource(uri, options);
+					handle.sharedReads = !ds.getModifiers().contains(DataSource.DataSourceModifier.TRANSIENT);
+					handle.async = ds.getModifiers().contains(DataSource.DataSourceModifier.ASYNC);
+					handle.readOnly = ds.getModifiers().contains(DataSource.DataSourceModifier.READONLY);
+					handle.ds = ds;
+				}
+			}
 		}
-		return dsCache.get(uri);
+		return handle;
 	}
 
 	/**
 	 * Returns the value for this key, or null if it doesn't exist.
 	 *
 	 * @param key
-	 * @param isMainThread If true, then async connections will fail. This should be set by the calling 
-	 * code to determine whether or not this thread is considered the "main thread" and if blocking calls
-	 * are acceptable.
 	 * @return
 	 * @throws DataSourceException
 	 * @throws IllegalArgumentException If the key is invalid
 	 */
-	public synchronized String get(String[] key/*boolean isMainThread*/) throws DataSourceException, IllegalArgumentException {
-		//TODO: Use isMainThread here
-		DataSource ds = getDataSource(filter.getConnection(key));
-		return ds.get(key);
+	public String get(String[] key) throws DataSourceException, IllegalArgumentException {
+		DataSourceHandle handle = getDataSource(filter.getConnection(key));
+		checkThread(handle);
+		checkFlushError(handle);
+		Lock lock = handle.readLock();
+		lock.lock();
+		try {
+			String fKey = StringUtils.Join(key, ".");
+			if (handle.buffer.containsKey(fKey)) {
+				AbstractDataSource.checkKey(key);
+				return handle.buffer.get(fKey);
+			}
+			return handle.ds.get(key);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
 	 * Sets the value for this key, and returns true if it was actually changed.
-	 * (Which typically implies that the model was changed.)
+	 * (Which typically implies that the model was changed.) The value is buffered,
+	 * and written to the data source later, though it is visible to reads immediately.
+	 * For transient data sources, the current value isn't looked up, so true is
+	 * returned unless the key already has the same value in the buffer.
 	 *
 	 * @param key
 	 * @param value
@@ -122,9 +334,27 @@ public class PersistenceNetwork {
 	 * @throws IOException
 	 * @throws IllegalArgumentException If the key is invalid
 	 */
-	public synchronized boolean set(DaemonManager dm, String[] key, String value) throws DataSourceException, ReadOnlyException, IOException, IllegalArgumentException {
-		DataSource ds = getDataSource(filter.getConnection(key));
-		return ds.set(dm, key, value);
+	public boolean set(DaemonManager dm, String[] key, String value) throws DataSourceException, ReadOnlyException, IOException, IllegalArgumentException {
+		return set(dm, key, value, null);
+	}
+
+	/**
+	 * Sets the value, and sends whether or not it was changed to the callback once it
+	 * has been written to the data source. If this throws an exception, the callback
+	 * is not run.
+	 */
+	private boolean set(DaemonManager dm, String[] key, String value, Callback<Boolean> callback) throws DataSourceException, ReadOnlyException, IOException, IllegalArgumentException {
+		DataSourceHandle handle = getDataSource(filter.getConnection(key));
+		checkThread(handle);
+		if (handle.readOnly) {
+			//Let the data source throw the ReadOnlyException
+			boolean changed = handle.ds.set(dm, key, value);
+			if (callback != null) {
+				callback.result(changed);
+			}
+			return changed;
+		}
+		return buffer(dm, handle, key, value, callback);
 	}
 
 	/**
@@ -136,9 +366,22 @@ public class PersistenceNetwork {
 	 * @throws DataSourceException
 	 * @throws IllegalArgumentException If the key is invalid
 	 */
-	public synchronized boolean hasKey(String[] key) throws DataSourceException, IllegalArgumentException {
-		DataSource ds = getDataSource(filter.getConnection(key));
-		return ds.hasKey(key);
+	public boolean hasKey(String[] key) throws DataSourceException, IllegalArgumentException {
+		DataSourceHandle handle = getDataSource(filter.getConnection(key));
+		checkThread(handle);
+		checkFlushError(handle);
+		Lock lock = handle.readLock();
+		lock.lock();
+		try {
+			String fKey = StringUtils.Join(key, ".");
+			if (handle.buffer.containsKey(fKey)) {
+				AbstractDataSource.checkKey(key);
+				return handle.buffer.get(fKey) != null;
+			}
+			return handle.ds.hasKey(key);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -149,9 +392,25 @@ public class PersistenceNetwork {
 	 * @throws DataSourceException
 	 * @throws IllegalArgumentException If the key is invalid
 	 */
-	public synchronized void clearKey(DaemonManager dm, String[] key) throws DataSourceException, ReadOnlyException, IOException, IllegalArgumentException {
-		DataSource ds = getDataSource(filter.getConnection(key));
-		ds.clearKey(dm, key);
+	public void clearKey(DaemonManager dm, String[] key) throws DataSourceException, ReadOnlyException, IOException, IllegalArgumentException {
+		clearKey(dm, key, null);
+	}
+
+	/**
+	 * Clears the key, and runs the callback once that has been written to the data
+	 * source. If this throws an exception, the callback is not run.
+	 */
+	private void clearKey(DaemonManager dm, String[] key, Callback<Boolean> callback) throws DataSourceException, ReadOnlyException, IOException, IllegalArgumentException {
+		DataSourceHandle handle = getDataSource(filter.getConnection(key));
+		checkThread(handle);
+		if (handle.readOnly) {
+			handle.ds.clearKey(dm, key);
+			if (callback != null) {
+				callback.result(true);
+			}
+			return;
+		}
+		buffer(dm, handle, key, null, callback);
 	}
 
 	/**
@@ -164,22 +423,431 @@ public class PersistenceNetwork {
 	 * @return
 	 * @throws IllegalArgumentException If the key is invalid
 	 */
-	public synchronized Map<String[], String> getNamespace(String[] namespace /*, boolean isMainThread*/) throws DataSourceException, IllegalArgumentException {
-		//TODO: isMainThread needs to be used here somewhere, I think?
+	public Map<String[], String> getNamespace(String[] namespace) throws DataSourceException, IllegalArgumentException {
 		List<URI> uris = filter.getAllConnections(namespace);
-		//First we have to get the namespaces. We can get a list of all the connections
-		//we need to search, then grab all the data in them, but then we need to use
-		//just a plain get() to grab the data, based on each key, because we don't
-		//want to accidentally grab a "hidden" value in another data source.
-		List<String[]> keysToGrab = new ArrayList<String[]>();
-		for (URI uri : uris) {
-			keysToGrab.addAll(getDataSource(uri).getNamespace(namespace));
-		}
-		//Ok, now the keys to grab are all populated, so let's walk through them and build our map
+		//Each data source scans its own range of keys and hands us back the values along
+		//with them, but a data source may contain keys that are routed elsewhere now,
+		//so we only keep the ones that this data source is actually responsible for,
+		//otherwise we would accidentally grab a "hidden" value.
 		Map<String[], String> map = new HashMap<String[], String>();
-		for (String[] key : keysToGrab) {
-			map.put(key, get(key));
+		String ns = StringUtils.Join(namespace, ".");
+		for (URI uri : uris) {
+			DataSourceHandle handle = getDataSource(uri);
+			checkThread(handle);
+			checkFlushError(handle);
+			Map<String, String> values = new HashMap<String, String>();
+			Lock lock = handle.readLock();
+			lock.lock();
+			try {
+				for (Map.Entry<String[], String> entry : handle.ds.getValues(namespace).entrySet()) {
+					values.put(StringUtils.Join(entry.getKey(), "."), entry.getValue());
+				}
+				//Buffered values take precedence
+				for (Map.Entry<String, String> entry : handle.buffer.entrySet()) {
+					String key = entry.getKey();
+					if ("".equals(ns) || key.equals(ns) || key.startsWith(ns + ".")) {
+						values.put(key, entry.getValue());
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+			for (Map.Entry<String, String> entry : values.entrySet()) {
+				if (entry.getValue() != null && uri.equals(filter.getConnection(entry.getKey()))) {
+					map.put(entry.getKey().split("\\."), entry.getValue());
+				}
+			}
 		}
 		return map;
 	}
+
+	/**
+	 * Adds the change to the data source's buffer, and flushes the buffer if it is full,
+	 * or schedules a flush if this is the first change in the buffer. The callback, if
+	 * not null, is run once the change has been written, unless this throws an exception.
+	 */
+	private boolean buffer(DaemonManager dm, final DataSourceHandle handle, String[] key, String value, Callback<Boolean> callback) throws DataSourceException, ReadOnlyException, IOException {
+		AbstractDataSource.checkKey(key);
+		String fKey = StringUtils.Join(key, ".");
+		Lock lock = handle.writeLock();
+		lock.lock();
+		try {
+			checkFlushError(handle);
+			boolean changed;
+			if (handle.buffer.containsKey(fKey) || handle.sharedReads) {
+				String old = handle.buffer.containsKey(fKey) ? handle.buffer.get(fKey) : handle.ds.get(key);
+				changed = old == null ? value != null : !old.equals(value);
+			} else {
+				//Looking this up may be expensive, so just assume it's a change
+				changed = true;
+			}
+			//Remove it first, so the buffer stays in the order of the most recent changes
+			handle.buffer.remove(fKey);
+			handle.buffer.put(fKey, value);
+			if (dm != null && !handle.managers.containsKey(dm)) {
+				dm.activateThread(null);
+				handle.managers.put(dm, dm);
+			}
+			if (handle.buffer.size() >= MAX_BUFFERED) {
+				try {
+					flush(handle);
+				} finally {
+					//If this failed, the error is thrown from here, so it doesn't need to be reported again
+					handle.flushError = null;
+				}
+				if (callback != null) {
+					callback.result(changed);
+				}
+			} else {
+				if (callback != null) {
+					handle.callbacks.add(new Pair<Callback<Boolean>, Boolean>(callback, changed));
+				}
+				scheduleFlush(handle, FLUSH_DELAY);
+			}
+			return changed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Schedules a flush of the data source's buffer on the I/O thread, if one isn't
+	 * already scheduled. The write lock must be held when this is called.
+	 */
+	private void scheduleFlush(final DataSourceHandle handle, long delay) {
+		if (handle.flushScheduled || ioExecutor.isShutdown()) {
+			return;
+		}
+		handle.flushScheduled = true;
+		ioExecutor.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				Lock lock = handle.writeLock();
+				lock.lock();
+				try {
+					flush(handle);
+				} catch (Exception ex) {
+					Logger.getLogger(PersistenceNetwork.class.getName()).log(Level.SEVERE,
+							"Could not write buffered values to " + handle.ds.toString() + ", the write will be retried", ex);
+				} finally {
+					lock.unlock();
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes the buffered changes to the data source. If there is more than one change,
+	 * they are written in a single transaction. The write lock must be held when this is
+	 * called. The changes are only removed from the buffer once they have been written.
+	 * If writing them fails, they stay in the buffer, a retry is scheduled, and the error
+	 * is remembered, so it can be reported by the next operation on this data source, as
+	 * well as being thrown from here. Either way, the DaemonManagers are deactivated, so
+	 * a data source that keeps failing doesn't keep anything waiting on them forever, and
+	 * the callbacks of the buffered async writes are run, with the error if it failed.
+	 */
+	private void flush(DataSourceHandle handle) throws DataSourceException, ReadOnlyException, IOException {
+		handle.flushScheduled = false;
+		if (handle.buffer.isEmpty()) {
+			return;
+		}
+		List<DaemonManager> dms = new ArrayList<DaemonManager>(handle.managers.keySet());
+		handle.managers.clear();
+		List<Pair<Callback<Boolean>, Boolean>> callbacks = new ArrayList<Pair<Callback<Boolean>, Boolean>>(handle.callbacks);
+		handle.callbacks.clear();
+		DaemonManager dm = dms.isEmpty() ? new DaemonManager() : dms.get(0);
+		try {
+			boolean transaction = handle.buffer.size() > 1;
+			if (transaction) {
+				handle.ds.startTransaction(dm);
+			}
+			boolean success = false;
+			try {
+				for (Map.Entry<String, String> change : handle.buffer.entrySet()) {
+					String[] key = change.getKey().split("\\.");
+					if (change.getValue() == null) {
+						handle.ds.clearKey(dm, key);
+					} else {
+						handle.ds.set(dm, key, change.getValue());
+					}
+				}
+				success = true;
+			} finally {
+				if (transaction) {
+					handle.ds.stopTransaction(dm, !success);
+				}
+			}
+			handle.buffer.clear();
+			handle.flushError = null;
+			handle.failures = 0;
+			for (Pair<Callback<Boolean>, Boolean> callback : callbacks) {
+				runCallback(callback.getKey(), callback.getValue(), null);
+			}
+		} catch (Exception e) {
+			handle.flushError = e;
+			handle.failures++;
+			//Back off, up to about a minute between retries
+			scheduleFlush(handle, FLUSH_DELAY << java.lang.Math.min(handle.failures, 7));
+			//The changes are retried, but the callbacks have to be told now
+			for (Pair<Callback<Boolean>, Boolean> callback : callbacks) {
+				runCallback(callback.getKey(), null, e);
+			}
+			throw e;
+		} finally {
+			for (DaemonManager d : dms) {
+				d.deactivateThread(null);
+			}
+		}
+	}
+
+	/**
+	 * Waits for the async operations that have already been requested, then writes out
+	 * everything that is buffered, as {@link #flush()} does. This should be called when
+	 * the network is being replaced, before the connections of the data sources are closed.
+	 * Async operations that are requested after this are rejected, and nothing more will
+	 * be written in the background.
+	 *
+	 * @throws DataSourceException
+	 * @throws ReadOnlyException
+	 * @throws IOException
+	 */
+	public void close() throws DataSourceException, ReadOnlyException, IOException {
+		//The delayed flushes are replaced by the flush below
+		ioExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		ioExecutor.shutdown();
+		try {
+			if (!ioExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+				Logger.getLogger(PersistenceNetwork.class.getName()).log(Level.WARNING,
+						"Timed out waiting for the async persistence operations to finish");
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	/**
+	 * Sends the result or the error to the callback. An exception thrown by the
+	 * callback is logged, so it doesn't stop the other callbacks from being run.
+	 */
+	private static void runCallback(Callback<Boolean> callback, Boolean result, Exception error) {
+		try {
+			if (error == null) {
+				callback.result(result);
+			} else {
+				callback.error(error);
+			}
+		} catch (RuntimeException e) {
+			Logger.getLogger(PersistenceNetwork.class.getName()).log(Level.SEVERE, "Uncaught exception in a persistence callback", e);
+		}
+	}
+
+	/**
+	 * Immediately writes all the buffered changes to their data sources. This should
+	 * be called before the network is discarded. If any of the data sources fail,
+	 * the others are still written, and the first error is thrown. Errors that
+	 * aren't thrown from here are reported by the next operation on their data source.
+	 *
+	 * @throws DataSourceException
+	 * @throws ReadOnlyException
+	 * @throws IOException
+	 */
+	public void flush() throws DataSourceException, ReadOnlyException, IOException {
+		Exception error = null;
+		for (DataSourceHandle handle : dsCache.values()) {
+			if (handle.ds == null) {
+				continue;
+			}
+			Lock lock = handle.writeLock();
+			lock.lock();
+			try {
+				flush(handle);
+			} catch (Exception e) {
+				if (error == null) {
+					error = e;
+					//It's thrown from here, so it doesn't need to be reported again
+					handle.flushError = null;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		} else if (error instanceof DataSourceException) {
+			throw (DataSourceException) error;
+		} else if (error instanceof ReadOnlyException) {
+			throw (ReadOnlyException) error;
+		} else if (error instanceof IOException) {
+			throw (IOException) error;
+		}
+	}
+
+	/**
+	 * Gets the value for this key on the I/O thread, and sends it to the callback.
+	 * This may be used with async data sources from the main thread.
+	 *
+	 * @param dm The DaemonManager, which is kept active until the operation finishes. May be null.
+	 * @param key
+	 * @param callback The callback, which may be null.
+	 * @return
+	 */
+	public Future<String> getAsync(DaemonManager dm, final String[] key, Callback<String> callback) {
+		return submit(dm, new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return get(key);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Sets the value for this key on the I/O thread, and sends whether or not the value
+	 * was changed to the callback, once it has actually been written to the data source.
+	 * This may be used with async data sources from the main thread. The returned Future
+	 * completes once the value has been accepted, which is usually before it is written.
+	 * If writing it fails, the error is sent to the callback, and the write is retried,
+	 * as with {@link #set}.
+	 *
+	 * @param dm The DaemonManager, which is kept active until the value is written. May be null.
+	 * @param key
+	 * @param value
+	 * @param callback The callback, which may be null.
+	 * @return
+	 */
+	public Future<Boolean> setAsync(final DaemonManager dm, final String[] key, final String value, final Callback<Boolean> callback) {
+		return submit(dm, new Callable<Boolean>() {
+
+			@Override
+			public Boolean call() throws Exception {
+				try {
+					return set(dm, key, value, callback);
+				} catch (Exception e) {
+					if (callback != null) {
+						callback.error(e);
+					}
+					throw e;
+				}
+			}
+		}, null);
+	}
+
+	/**
+	 * Checks whether the key is set on the I/O thread, and sends the result to the callback.
+	 * This may be used with async data sources from the main thread.
+	 *
+	 * @param dm The DaemonManager, which is kept active until the operation finishes. May be null.
+	 * @param key
+	 * @param callback The callback, which may be null.
+	 * @return
+	 */
+	public Future<Boolean> hasKeyAsync(DaemonManager dm, final String[] key, Callback<Boolean> callback) {
+		return submit(dm, new Callable<Boolean>() {
+
+			@Override
+			public Boolean call() throws Exception {
+				return hasKey(key);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Clears the key on the I/O thread, and runs the callback once that has actually been
+	 * written to the data source. This may be used with async data sources from the main
+	 * thread. As with {@link #setAsync}, the returned Future completes once the change has
+	 * been accepted.
+	 *
+	 * @param dm The DaemonManager, which is kept active until the change is written. May be null.
+	 * @param key
+	 * @param callback The callback, which may be null. The result is always null.
+	 * @return
+	 */
+	public Future<Void> clearKeyAsync(final DaemonManager dm, final String[] key, final Callback<Void> callback) {
+		final Callback<Boolean> cleared = callback == null ? null : new Callback<Boolean>() {
+
+			@Override
+			public void result(Boolean result) {
+				callback.result(null);
+			}
+
+			@Override
+			public void error(Exception error) {
+				callback.error(error);
+			}
+		};
+		return submit(dm, new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				try {
+					clearKey(dm, key, cleared);
+				} catch (Exception e) {
+					if (callback != null) {
+						callback.error(e);
+					}
+					throw e;
+				}
+				return null;
+			}
+		}, null);
+	}
+
+	/**
+	 * Gets all the values in the namespace on the I/O thread, and sends them to the
+	 * callback. This may be used with async data sources from the main thread.
+	 *
+	 * @param dm The DaemonManager, which is kept active until the operation finishes. May be null.
+	 * @param namespace
+	 * @param callback The callback, which may be null.
+	 * @return
+	 */
+	public Future<Map<String[], String>> getNamespaceAsync(DaemonManager dm, final String[] namespace, Callback<Map<String[], String>> callback) {
+		return submit(dm, new Callable<Map<String[], String>>() {
+
+			@Override
+			public Map<String[], String> call() throws Exception {
+				return getNamespace(namespace);
+			}
+		}, callback);
+	}
+
+	private <T> Future<T> submit(final DaemonManager dm, final Callable<T> task, final Callback<T> callback) {
+		if (dm != null) {
+			dm.activateThread(null);
+		}
+		try {
+			return ioExecutor.submit(new Callable<T>() {
+
+				@Override
+				public T call() throws Exception {
+					try {
+						T result;
+						try {
+							result = task.call();
+						} catch (Exception e) {
+							if (callback != null) {
+								callback.error(e);
+							}
+							throw e;
+						}
+						if (callback != null) {
+							callback.result(result);
+						}
+						return result;
+					} finally {
+						if (dm != null) {
+							dm.deactivateThread(null);
+						}
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			if (dm != null) {
+				dm.deactivateThread(null);
+			}
+			throw e;
+		}
+	}
 }
@@ -8,13 +8,23 @@ import com.laytonsmith.core.CHVersion;
 import com.laytonsmith.persistence.io.ConnectionMixinFactory;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.Transaction;
-import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
 
 /**
  *
@@ -23,114 +33,318 @@ import redis.clients.jedis.exceptions.JedisConnectionException;
 @datasource("redis")
 public class RedisDataSource extends AbstractDataSource {
 
-	private Jedis connection;
-	private Transaction transaction;
-	private JedisShardInfo shardInfo;
+	/**
+	 * The number of keys we ask redis to look at per SCAN call.
+	 */
+	private static final int SCAN_COUNT = 1000;
+	/**
+	 * The cursor that starts a SCAN, and that redis returns when the SCAN is done.
+	 */
+	private static final String SCAN_START = "0";
+	private static final int DEFAULT_POOL_SIZE = 8;
+	/**
+	 * Pools are shared by all data sources that connect to the same server with
+	 * the same settings, so a network with several redis filters only opens one set
+	 * of connections. They stay open until {@link #ClosePools()} is called.
+	 */
+	private static final Map<String, JedisPool> pools = new HashMap<String, JedisPool>();
+
+	/**
+	 * Closes all the connection pools. This should be called when the persistence
+	 * network is replaced, after it has been flushed, since the data sources of the
+	 * old network can't be used afterwards.
+	 */
+	public static void ClosePools(){
+		synchronized(pools){
+			for(JedisPool p : pools.values()){
+				p.destroy();
+			}
+			pools.clear();
+		}
+	}
+
+	private JedisPool pool;
 	private String host;
 	private int port;
-	private int timeout;
+	private int timeout = Protocol.DEFAULT_TIMEOUT;
 	private String password;
-	
+	private int poolSize = DEFAULT_POOL_SIZE;
+	/**
+	 * Changes made inside a transaction, in the order they were made. A null value
+	 * means the key was cleared. These are sent on a single connection, inside a
+	 * MULTI/EXEC block, when the transaction is committed.
+	 */
+	private final Map<String, String> transactionList = new LinkedHashMap<String, String>();
+
 	private RedisDataSource(){
-		
+
 	}
-	
+
 	public RedisDataSource(URI uri, ConnectionMixinFactory.ConnectionMixinOptions options) throws DataSourceException {
 		super(uri, options);
 		try{
 			host = uri.getHost();
-			port = uri.getPort();
-			Map<String, String> queryString = WebUtility.getQueryMap(uri.getQuery());
-			if(port == -1){
-				shardInfo = new JedisShardInfo(host);
-			} else {
-				shardInfo = new JedisShardInfo(host, port);
+			port = uri.getPort() == -1 ? Protocol.DEFAULT_PORT : uri.getPort();
+			if(uri.getQuery() != null){
+				Map<String, String> queryString = WebUtility.getQueryMap(uri.getQuery());
+				if(queryString.containsKey("timeout")){
+					timeout = Integer.parseInt(queryString.get("timeout"));
+				}
+				if(queryString.containsKey("password")){
+					password = queryString.get("password");
+				}
+				if(queryString.containsKey("pool")){
+					poolSize = Integer.parseInt(queryString.get("pool"));
+				}
 			}
-			if(queryString.containsKey("timeout")){
-				timeout = Integer.parseInt(queryString.get("timeout"));
-				shardInfo.setTimeout(timeout);
-			}
-			if(queryString.containsKey("password")){
-				password = queryString.get("password");
-				shardInfo.setPassword(password);
-			}
-			connect();
+			pool = getPool();
 		} catch(Exception e){
 			throw new DataSourceException(e.getMessage(), e);
 		}
 	}
-	
-	private void connect(){
-		if(connection == null || !connection.isConnected()){
-			connection = new Jedis(shardInfo);
+
+	private JedisPool getPool(){
+		String id = host + ":" + port + ":" + timeout + ":" + poolSize + ":" + password;
+		synchronized(pools){
+			JedisPool p = pools.get(id);
+			if(p == null){
+				JedisPoolConfig config = new JedisPoolConfig();
+				config.setMaxTotal(Math.max(1, poolSize));
+				config.setMaxIdle(Math.max(1, poolSize));
+				p = new JedisPool(config, host, port, timeout, password);
+				pools.put(id, p);
+			}
+			return p;
+		}
+	}
+
+	private Jedis getResource() throws DataSourceException {
+		try{
+			return pool.getResource();
+		} catch(JedisException e){
+			throw new DataSourceException("Could not connect to redis at " + host + ":" + port, e);
+		}
+	}
+
+	/**
+	 * Returns the connection to the pool. If ok is false, the connection is assumed
+	 * to be in a bad state, and is thrown away instead.
+	 */
+	private void release(Jedis jedis, boolean ok){
+		if(ok){
+			pool.returnResource(jedis);
+		} else {
+			pool.returnBrokenResource(jedis);
 		}
 	}
 
 	@Override
 	protected boolean set0(DaemonManager dm, String[] key, String value) throws ReadOnlyException, DataSourceException, IOException {
-		connect();
 		String ckey = StringUtils.Join(key, ".");
-		String status;
-		try{
-			if(inTransaction()){
-				status = transaction.set(ckey, value).get();
-			} else {
-				status = connection.set(ckey, value);
+		if(inTransaction()){
+			synchronized(transactionList){
+				transactionList.remove(ckey);
+				transactionList.put(ckey, value);
 			}
-		} catch(JedisConnectionException e){
+			return true;
+		}
+		Jedis jedis = getResource();
+		boolean ok = false;
+		try{
+			String status = jedis.set(ckey, value);
+			ok = true;
+			return "OK".equals(status);
+		} catch(JedisException e){
 			throw new DataSourceException(e);
+		} finally {
+			release(jedis, ok);
 		}
-		return "OK".equals(status);
 	}
 
 	@Override
 	protected void clearKey0(DaemonManager dm, String[] key) throws ReadOnlyException, DataSourceException, IOException {
-		connect();
 		String ckey = StringUtils.Join(key, ".");
-		try{
-			if(inTransaction()){
-				transaction.del(ckey);
-			} else {
-				connection.del(ckey);				
+		if(inTransaction()){
+			synchronized(transactionList){
+				transactionList.remove(ckey);
+				transactionList.put(ckey, null);
 			}
-		} catch(JedisConnectionException e){
+			return;
+		}
+		Jedis jedis = getResource();
+		boolean ok = false;
+		try{
+			jedis.del(ckey);
+			ok = true;
+		} catch(JedisException e){
 			throw new DataSourceException(e);
+		} finally {
+			release(jedis, ok);
 		}
 	}
 
 	@Override
 	protected String get0(String[] key) throws DataSourceException {
-		connect();
 		String ckey = StringUtils.Join(key, ".");
-		try{
-			if(inTransaction()){
-				return transaction.get(ckey).get();
-			} else {
-				return connection.get(ckey);
+		if(inTransaction()){
+			synchronized(transactionList){
+				if(transactionList.containsKey(ckey)){
+					return transactionList.get(ckey);
+				}
 			}
-		} catch(JedisConnectionException e){
+		}
+		Jedis jedis = getResource();
+		boolean ok = false;
+		try{
+			String value = jedis.get(ckey);
+			ok = true;
+			return value;
+		} catch(JedisException e){
 			throw new DataSourceException(e);
+		} finally {
+			release(jedis, ok);
 		}
 	}
 
 	@Override
 	public Set<String[]> keySet() throws DataSourceException {
-		connect();
-		Set<String> ret;
+		return getNamespace(new String[]{});
+	}
+
+	@Override
+	public Set<String[]> getNamespace(String[] namespace) throws DataSourceException {
+		String ns = StringUtils.Join(namespace, ".");
+		Set<String> keys = new HashSet<String>();
+		Jedis jedis = getResource();
+		boolean ok = false;
 		try{
-			if(inTransaction()){
-				ret = transaction.keys("*").get();
-			} else {
-				ret = connection.keys("*");
+			if(namespace.length != 0 && jedis.exists(ns)){
+				keys.add(ns);
 			}
-		} catch(JedisConnectionException e){
+			String cursor = SCAN_START;
+			do {
+				ScanResult<String> result = jedis.scan(cursor, getScanParams(namespace));
+				cursor = result.getStringCursor();
+				keys.addAll(result.getResult());
+			} while(!SCAN_START.equals(cursor));
+			ok = true;
+		} catch(JedisException e){
 			throw new DataSourceException(e);
+		} finally {
+			release(jedis, ok);
 		}
-		Set<String[]> parsed = new HashSet<String[]>();
-		for(String s : ret){
-			parsed.add(s.split("\\."));
+		Map<String, String> values = new HashMap<String, String>();
+		for(String key : keys){
+			values.put(key, "");
 		}
-		return parsed;
+		overlayTransaction(ns, values);
+		Set<String[]> ret = new HashSet<String[]>();
+		for(String key : values.keySet()){
+			ret.add(key.split("\\."));
+		}
+		return ret;
+	}
+
+	@Override
+	protected Map<String[], String> getValues0(String[] namespace) throws DataSourceException {
+		String ns = StringUtils.Join(namespace, ".");
+		Map<String, String> values = new HashMap<String, String>();
+		Jedis jedis = getResource();
+		boolean ok = false;
+		try{
+			//Each page of keys from the SCAN is fetched with an MGET, but the MGETs are
+			//pipelined, so we only wait on the responses once, at the end.
+			List<String[]> pages = new ArrayList<String[]>();
+			String cursor = SCAN_START;
+			do {
+				ScanResult<String> result = jedis.scan(cursor, getScanParams(namespace));
+				cursor = result.getStringCursor();
+				if(!result.getResult().isEmpty()){
+					pages.add(result.getResult().toArray(new String[result.getResult().size()]));
+				}
+			} while(!SCAN_START.equals(cursor));
+			Pipeline pipeline = jedis.pipelined();
+			Response<String> nsValue = null;
+			if(namespace.length != 0){
+				nsValue = pipeline.get(ns);
+			}
+			List<Response<List<String>>> responses = new ArrayList<Response<List<String>>>();
+			for(String[] page : pages){
+				responses.add(pipeline.mget(page));
+			}
+			pipeline.sync();
+			if(nsValue != null && nsValue.get() != null){
+				values.put(ns, nsValue.get());
+			}
+			for(int i = 0; i < pages.size(); i++){
+				String[] page = pages.get(i);
+				List<String> pageValues = responses.get(i).get();
+				for(int j = 0; j < page.length; j++){
+					//The key may have been removed in between the SCAN and the MGET
+					if(pageValues.get(j) != null){
+						values.put(page[j], pageValues.get(j));
+					}
+				}
+			}
+			ok = true;
+		} catch(JedisException e){
+			throw new DataSourceException(e);
+		} finally {
+			release(jedis, ok);
+		}
+		overlayTransaction(ns, values);
+		Map<String[], String> ret = new HashMap<String[], String>();
+		for(Map.Entry<String, String> entry : values.entrySet()){
+			ret.put(entry.getKey().split("\\."), entry.getValue());
+		}
+		return ret;
+	}
+
+	/**
+	 * Applies the changes made in the current transaction (if any) to the values
+	 * in this namespace. Cleared keys are removed.
+	 */
+	private void overlayTransaction(String ns, Map<String, String> values){
+		if(!inTransaction()){
+			return;
+		}
+		synchronized(transactionList){
+			for(Map.Entry<String, String> entry : transactionList.entrySet()){
+				String key = entry.getKey();
+				if("".equals(ns) || key.equals(ns) || key.startsWith(ns + ".")){
+					if(entry.getValue() == null){
+						values.remove(key);
+					} else {
+						values.put(key, entry.getValue());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the SCAN parameters that match all the keys inside this namespace,
+	 * but not the namespace key itself.
+	 */
+	private static ScanParams getScanParams(String[] namespace){
+		ScanParams params = new ScanParams();
+		params.match(namespace.length == 0 ? "*" : escapeGlob(StringUtils.Join(namespace, ".")) + ".*");
+		params.count(SCAN_COUNT);
+		return params;
+	}
+
+	/**
+	 * Escapes the characters that have special meaning in a redis glob pattern.
+	 */
+	private static String escapeGlob(String s){
+		StringBuilder b = new StringBuilder();
+		for(char c : s.toCharArray()){
+			if(c == '*' || c == '?' || c == '[' || c == ']' || c == '\\'){
+				b.append('\\');
+			}
+			b.append(c);
+		}
+		return b.toString();
 	}
 
 	@Override
@@ -151,18 +365,21 @@ public class RedisDataSource extends AbstractDataSource {
 			DataSourceModifier.HTTP,
 			DataSourceModifier.HTTPS,
 			DataSourceModifier.PRETTYPRINT,
-			DataSourceModifier.SSH
+			DataSourceModifier.SSH,
+			DataSourceModifier.JOURNAL
 		};
 	}
 
 	@Override
 	public String docs() {
-		return "Redis {redis://host:port?timeout=90&password=pass} This type allows a connection to a "
+		return "Redis {redis://host:port?timeout=90&password=pass&pool=8} This type allows a connection to a "
 				+ " redis server. A redis server must be set up and running, and if not \"localhost,\" it is heavily"
 				+ " recommended to be async as well. Instructions for download and setup"
 				+ " can be found at http://redis.io/download though"
 				+ " Windows does not appear to be officially supported. The options in the url may be set to provide"
-				+ " additional connection information.";
+				+ " additional connection information. Connections are pooled, and pool sets the maximum number of"
+				+ " connections that will be opened to the server. Namespace lookups use SCAN, which requires redis 2.8 or"
+				+ " newer, so that large databases don't block the server.";
 	}
 
 	@Override
@@ -172,20 +389,39 @@ public class RedisDataSource extends AbstractDataSource {
 
 	@Override
 	protected void startTransaction0(DaemonManager dm) {
-		dm.activateThread(null);
-		connection.multi();
-		dm.deactivateThread(null);
+		synchronized(transactionList){
+			transactionList.clear();
+		}
 	}
 
 	@Override
 	protected void stopTransaction0(DaemonManager dm, boolean rollback) throws DataSourceException, IOException {
-		dm.activateThread(null);
-		if(rollback){
-			transaction.discard();
-		} else {
+		Map<String, String> changes;
+		synchronized(transactionList){
+			changes = new LinkedHashMap<String, String>(transactionList);
+			transactionList.clear();
+		}
+		if(rollback || changes.isEmpty()){
+			return;
+		}
+		Jedis jedis = getResource();
+		boolean ok = false;
+		try{
+			Transaction transaction = jedis.multi();
+			for(Map.Entry<String, String> entry : changes.entrySet()){
+				if(entry.getValue() == null){
+					transaction.del(entry.getKey());
+				} else {
+					transaction.set(entry.getKey(), entry.getValue());
+				}
+			}
 			transaction.exec();
+			ok = true;
+		} catch(JedisException e){
+			throw new DataSourceException(e);
+		} finally {
+			release(jedis, ok);
 		}
-		dm.deactivateThread(null);
 	}
-	
+
 }
@@ -6,16 +6,22 @@ import com.laytonsmith.annotations.datasource;
 import com.laytonsmith.core.CHVersion;
 import com.laytonsmith.persistence.io.ConnectionMixin;
 import com.laytonsmith.persistence.io.ConnectionMixinFactory;
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,9 +36,34 @@ public class SQLiteDataSource extends AbstractDataSource{
 	private static final String KEY_COLUMN = "key";
 	private static final String VALUE_COLUMN = "value";
 	private static final String TABLE_NAME = "persistance"; //Note the misspelling!
-	Connection connection;
+	/**
+	 * Opening a connection and preparing the statements is far more expensive than
+	 * the queries themselves, so connections are kept open, one per database file,
+	 * and shared by all data sources that use that file, until {@link #CloseConnections()}
+	 * is called.
+	 */
+	private static final Map<String, SQLiteConnection> connections = new HashMap<String, SQLiteConnection>();
 	String path;
 	ConnectionMixin mixin;
+	/**
+	 * The connection that our current transaction is running on, whose lock we hold,
+	 * or null if we aren't in a transaction.
+	 */
+	private SQLiteConnection transaction = null;
+
+	/**
+	 * Closes all the open connections. This should be called when the persistence
+	 * network is replaced, after it has been flushed. Data sources that are still
+	 * in use will open a new connection.
+	 */
+	public static void CloseConnections(){
+		synchronized(connections){
+			for(SQLiteConnection c : connections.values()){
+				c.close();
+			}
+			connections.clear();
+		}
+	}
 	
 	private SQLiteDataSource(){
 		
@@ -41,49 +72,142 @@ public class SQLiteDataSource extends AbstractDataSource{
 		super(uri, options);		
 		mixin = getConnectionMixin();		
 		try {
-			try{
-				Class.forName(org.sqlite.JDBC.class.getName());
-				path = mixin.getPath();
-				connect();
-				Statement statement = connection.createStatement();
-				statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + TABLE_NAME + "` (`" + KEY_COLUMN + "` TEXT PRIMARY KEY,"
-						+ " `" + VALUE_COLUMN + "` TEXT)");
-			}finally {
-				disconnect();
+			Class.forName(org.sqlite.JDBC.class.getName());
+			path = mixin.getPath();
+			synchronized(connections){
+				//If the file was replaced (or deleted) since we opened it, the old connection
+				//would continue to operate on the old file, so start over.
+				SQLiteConnection c = connections.get(path);
+				if(c != null && !c.isSameFile()){
+					c.close();
+					connections.remove(path);
+				}
 			}
+			getConnection();
 		} catch (Exception ex) {
 			throw new DataSourceException("An error occured while setting up a connection to the SQLite database", ex);
 		} 
 	}
 	
 	/**
-	 * All calls to connect must have a corresponding call to disconnect() in
-	 * a finally block.
+	 * Returns the shared connection for this database file, opening it if
+	 * need be, or the connection our transaction is running on, if we are in
+	 * one. All uses of the connection must hold its lock.
 	 */
-	private void connect() throws IOException, SQLException{
-		connection = DriverManager.getConnection("jdbc:sqlite:" + mixin.getPath());		
+	private SQLiteConnection getConnection() throws SQLException{
+		if(transaction != null){
+			return transaction;
+		}
+		synchronized(connections){
+			SQLiteConnection c = connections.get(path);
+			if(c == null || c.connection.isClosed()){
+				c = new SQLiteConnection(path);
+				connections.put(path, c);
+			}
+			return c;
+		}
 	}
 	
-	private void disconnect() throws SQLException{
-		if(connection != null){
-			connection.close();
+	/**
+	 * A long lived connection to a database file, along with the statements
+	 * that are used against it, which are prepared only once.
+	 */
+	private static class SQLiteConnection {
+		final Connection connection;
+		final PreparedStatement get;
+		final PreparedStatement set;
+		final PreparedStatement delete;
+		final PreparedStatement keys;
+		final PreparedStatement namespace;
+		final PreparedStatement values;
+		final PreparedStatement namespaceValues;
+		final String path;
+		final Object fileKey;
+		/**
+		 * Guards the connection and the statements. A transaction holds this from
+		 * start to finish, since the connection's auto commit setting is shared.
+		 */
+		final ReentrantLock lock = new ReentrantLock();
+		
+		SQLiteConnection(String path) throws SQLException{
+			this.path = path;
+			connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+			fileKey = getFileKey(path);
+			Statement statement = connection.createStatement();
+			try {
+				//Write ahead logging allows reads to proceed while a write is happening, and
+				//makes commits much cheaper, since the whole database file needn't be synced.
+				statement.execute("PRAGMA journal_mode=WAL");
+				statement.execute("PRAGMA synchronous=NORMAL");
+				statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + TABLE_NAME + "` (`" + KEY_COLUMN + "` TEXT PRIMARY KEY,"
+						+ " `" + VALUE_COLUMN + "` TEXT)");
+			} finally {
+				statement.close();
+			}
+			get = connection.prepareStatement("SELECT `" + VALUE_COLUMN + "` FROM `" + TABLE_NAME + "` WHERE `" + KEY_COLUMN + "`=?");
+			set = connection.prepareStatement("INSERT OR REPLACE INTO `" + TABLE_NAME + "` (`" + KEY_COLUMN + "`, `" + VALUE_COLUMN + "`) VALUES (?, ?)");
+			delete = connection.prepareStatement("DELETE FROM `" + TABLE_NAME + "` WHERE `" + KEY_COLUMN + "`=?");
+			keys = connection.prepareStatement("SELECT `" + KEY_COLUMN + "` FROM `" + TABLE_NAME + "`");
+			//Rather than using LIKE, which can't use the primary key index and treats
+			//underscores specially, a namespace is selected as the range of keys between
+			//"namespace." and "namespace/", since '/' is the character right after '.'
+			namespace = connection.prepareStatement("SELECT `" + KEY_COLUMN + "` FROM `" + TABLE_NAME + "` WHERE `" + KEY_COLUMN + "`=?"
+					+ " OR (`" + KEY_COLUMN + "`>=? AND `" + KEY_COLUMN + "`<?)");
+			values = connection.prepareStatement("SELECT `" + KEY_COLUMN + "`, `" + VALUE_COLUMN + "` FROM `" + TABLE_NAME + "`");
+			namespaceValues = connection.prepareStatement("SELECT `" + KEY_COLUMN + "`, `" + VALUE_COLUMN + "` FROM `" + TABLE_NAME + "` WHERE `" + KEY_COLUMN + "`=?"
+					+ " OR (`" + KEY_COLUMN + "`>=? AND `" + KEY_COLUMN + "`<?)");
+		}
+		
+		/**
+		 * Closes the connection, once any transaction that is running on it is over.
+		 */
+		void close(){
+			lock.lock();
+			try {
+				connection.close();
+			} catch (SQLException ex) {
+				Logger.getLogger(SQLiteDataSource.class.getName()).log(Level.WARNING, "Could not close the SQLite connection " + path, ex);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Returns true if the file at our path is still the file that we opened.
+		 * If the platform can't tell us, we assume that it is.
+		 */
+		boolean isSameFile(){
+			Object current = getFileKey(path);
+			return fileKey == null || fileKey.equals(current);
+		}
+		
+		private static Object getFileKey(String path){
+			try {
+				return Files.readAttributes(new File(path).toPath(), BasicFileAttributes.class).fileKey();
+			} catch (IOException ex) {
+				return null;
+			}
 		}
 	}
 
 	@Override
 	public Set<String[]> keySet() throws DataSourceException{
 		try{
+			SQLiteConnection c = getConnection();
+			c.lock.lock();
 			try {
-				connect();
-				Statement statement = connection.createStatement();
-				ResultSet rs = statement.executeQuery("SELECT `" + KEY_COLUMN + "` FROM `" + TABLE_NAME + "`");
-				Set<String[]> list = new HashSet<String[]>();
-				while(rs.next()){
-					list.add(rs.getString(KEY_COLUMN).split("\\."));
+				ResultSet rs = c.keys.executeQuery();
+				try {
+					Set<String[]> list = new HashSet<String[]>();
+					while(rs.next()){
+						list.add(rs.getString(KEY_COLUMN).split("\\."));
+					}
+					return list;
+				} finally {
+					rs.close();
 				}
-				return list;
-			} finally{
-				disconnect();
+			} finally {
+				c.lock.unlock();
 			}
 		} catch (Exception ex) {
 			throw new DataSourceException("Could not retrieve key set from SQLite connection " + path, ex);
@@ -91,20 +215,89 @@ public class SQLiteDataSource extends AbstractDataSource{
 	}
 
 	@Override
-	public String get0(String[] key) throws DataSourceException {
+	public Set<String[]> getNamespace(String[] namespace) throws DataSourceException {
+		if(namespace.length == 0){
+			return keySet();
+		}
+		String ns = StringUtils.Join(namespace, ".");
 		try{
-			try{
-				connect();
-				PreparedStatement statement = connection.prepareStatement("SELECT `" + VALUE_COLUMN + "` FROM `" + TABLE_NAME + "` WHERE `" + KEY_COLUMN + "`=?");
-				statement.setString(1, StringUtils.Join(key, "."));
-				ResultSet rs = statement.executeQuery();
-				if(rs.next()){
-					return rs.getString(VALUE_COLUMN);
+			SQLiteConnection c = getConnection();
+			c.lock.lock();
+			try {
+				c.namespace.setString(1, ns);
+				c.namespace.setString(2, ns + ".");
+				c.namespace.setString(3, ns + "/");
+				ResultSet rs = c.namespace.executeQuery();
+				try {
+					Set<String[]> list = new HashSet<String[]>();
+					while(rs.next()){
+						list.add(rs.getString(KEY_COLUMN).split("\\."));
+					}
+					return list;
+				} finally {
+					rs.close();
+				}
+			} finally {
+				c.lock.unlock();
+			}
+		} catch (Exception ex) {
+			throw new DataSourceException("Could not retrieve namespace from SQLite connection " + path, ex);
+		}
+	}
+
+	@Override
+	protected Map<String[], String> getValues0(String[] namespace) throws DataSourceException {
+		try{
+			SQLiteConnection c = getConnection();
+			c.lock.lock();
+			try {
+				PreparedStatement statement;
+				if(namespace.length == 0){
+					statement = c.values;
 				} else {
-					return null;
+					String ns = StringUtils.Join(namespace, ".");
+					statement = c.namespaceValues;
+					statement.setString(1, ns);
+					statement.setString(2, ns + ".");
+					statement.setString(3, ns + "/");
+				}
+				ResultSet rs = statement.executeQuery();
+				try {
+					Map<String[], String> map = new HashMap<String[], String>();
+					while(rs.next()){
+						map.put(rs.getString(KEY_COLUMN).split("\\."), rs.getString(VALUE_COLUMN));
+					}
+					return map;
+				} finally {
+					rs.close();
 				}
 			} finally {
-				disconnect();
+				c.lock.unlock();
+			}
+		} catch (Exception ex) {
+			throw new DataSourceException("Could not retrieve values from SQLite connection " + path, ex);
+		}
+	}
+
+	@Override
+	public String get0(String[] key) throws DataSourceException {
+		try{
+			SQLiteConnection c = getConnection();
+			c.lock.lock();
+			try {
+				c.get.setString(1, StringUtils.Join(key, "."));
+				ResultSet rs = c.get.executeQuery();
+				try {
+					if(rs.next()){
+						return rs.getString(VALUE_COLUMN);
+					} else {
+						return null;
+					}
+				} finally {
+					rs.close();
+				}
+			} finally {
+				c.lock.unlock();
 			}
 		} catch(Exception e){
 			throw new DataSourceException("Could not get key from SQLite connection " + path, e);
@@ -118,14 +311,14 @@ public class SQLiteDataSource extends AbstractDataSource{
 			return true;
 		}
 		try{
-			try{
-				connect();
-				PreparedStatement statement = connection.prepareStatement("INSERT OR REPLACE INTO `" + TABLE_NAME + "` (`" + KEY_COLUMN + "`, `" + VALUE_COLUMN + "`) VALUES (?, ?)");
-				statement.setString(1, StringUtils.Join(key, "."));
-				statement.setString(2, value);
-				return statement.executeUpdate() > 0;
+			SQLiteConnection c = getConnection();
+			c.lock.lock();
+			try {
+				c.set.setString(1, StringUtils.Join(key, "."));
+				c.set.setString(2, value);
+				return c.set.executeUpdate() > 0;
 			} finally {
-				disconnect();
+				c.lock.unlock();
 			}
 		} catch(Exception e){
 			throw new DataSourceException("Could not set key in SQLite connection " + path, e);			
@@ -134,19 +327,17 @@ public class SQLiteDataSource extends AbstractDataSource{
 
 	@Override
 	protected void clearKey0(DaemonManager dm, String[] key) throws ReadOnlyException, DataSourceException, IOException {
-		if(hasKey(key)){
-			try{
-				try{
-					connect();				
-					PreparedStatement statement = connection.prepareStatement("DELETE FROM `" + TABLE_NAME + "` WHERE `" + KEY_COLUMN + "`=?");
-					statement.setString(1, StringUtils.Join(key, "."));
-					statement.executeUpdate();
-				} finally{
-					disconnect();
-				}
-			} catch(Exception e){
-				throw new DataSourceException("Could not clear key in SQLite connection " + path, e);
+		try{
+			SQLiteConnection c = getConnection();
+			c.lock.lock();
+			try {
+				c.delete.setString(1, StringUtils.Join(key, "."));
+				c.delete.executeUpdate();
+			} finally {
+				c.lock.unlock();
 			}
+		} catch(Exception e){
+			throw new DataSourceException("Could not clear key in SQLite connection " + path, e);
 		}
 	}		
 
@@ -163,7 +354,7 @@ public class SQLiteDataSource extends AbstractDataSource{
 	@Override
 	public DataSourceModifier[] invalidModifiers() {
 		return new DataSourceModifier[]{DataSourceModifier.HTTP, DataSourceModifier.HTTPS, DataSourceModifier.SSH,
-			DataSourceModifier.PRETTYPRINT
+			DataSourceModifier.PRETTYPRINT, DataSourceModifier.JOURNAL
 		};
 	}
 
@@ -171,7 +362,9 @@ public class SQLiteDataSource extends AbstractDataSource{
 	public String docs() {
 		return "SQLite {sqlite://path/to/db/file.db} This type store data in a SQLite database."
 			+ " All the pros and cons of MySQL apply here. The database will contain a lone table"
-				+ " named " + TABLE_NAME + ", with two columns, " + KEY_COLUMN + " and " + VALUE_COLUMN;
+				+ " named " + TABLE_NAME + ", with two columns, " + KEY_COLUMN + " and " + VALUE_COLUMN + "."
+				+ " The database is kept open, and uses write ahead logging, so the -wal and -shm files that"
+				+ " appear beside the database file while it is in use should not be deleted.";
 	}
 
 	@Override
@@ -181,23 +374,47 @@ public class SQLiteDataSource extends AbstractDataSource{
 
 	@Override
 	protected void startTransaction0(DaemonManager dm) {
+		SQLiteConnection c;
 		try {
-			connection.prepareStatement("BEGIN TRANSACTION").execute();
+			c = getConnection();
 		} catch (SQLException ex) {
 			Logger.getLogger(SQLiteDataSource.class.getName()).log(Level.SEVERE, null, ex);
+			return;
+		}
+		//The lock is held until the transaction is over, so other data sources that share
+		//the connection can't run their statements inside of our transaction, or commit it.
+		c.lock.lock();
+		try {
+			c.connection.setAutoCommit(false);
+			transaction = c;
+		} catch (SQLException ex) {
+			c.lock.unlock();
+			Logger.getLogger(SQLiteDataSource.class.getName()).log(Level.SEVERE, null, ex);
 		}
 	}
 
 	@Override
 	protected void stopTransaction0(DaemonManager dm, boolean rollback) throws DataSourceException, IOException {
+		SQLiteConnection c = transaction;
+		if(c == null){
+			//Starting the transaction failed, so the changes were already committed one by one
+			return;
+		}
+		transaction = null;
 		try {
-			if(rollback){
-				connection.prepareStatement("ROLLBACK TRANSACTION").execute();
-			} else {
-				connection.prepareStatement("END TRANSACTION").execute();
+			try {
+				if(rollback){
+					c.connection.rollback();
+				} else {
+					c.connection.commit();
+				}
+			} finally {
+				c.connection.setAutoCommit(true);
 			}
 		} catch (SQLException ex) {
-			Logger.getLogger(SQLiteDataSource.class.getName()).log(Level.SEVERE, null, ex);
+			throw new DataSourceException("Could not " + (rollback ? "roll back" : "commit") + " the transaction in SQLite connection " + path, ex);
+		} finally {
+			c.lock.unlock();
 		}
 	}
 }
@@ -441,7 +441,7 @@ public class SerializedPersistence extends AbstractDataSource implements Persist
 
 	@Override
 	public DataSourceModifier[] invalidModifiers() {
-		return new DataSourceModifier[]{DataSourceModifier.HTTP, DataSourceModifier.HTTPS, DataSourceModifier.PRETTYPRINT};
+		return new DataSourceModifier[]{DataSourceModifier.HTTP, DataSourceModifier.HTTPS, DataSourceModifier.PRETTYPRINT, DataSourceModifier.JOURNAL};
 	}
 
 	@Override
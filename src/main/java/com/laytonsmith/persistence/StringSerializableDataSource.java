@@ -1,10 +1,22 @@
 package com.laytonsmith.persistence;
 
+import com.laytonsmith.PureUtilities.Common.StringUtils;
 import com.laytonsmith.PureUtilities.DaemonManager;
+import com.laytonsmith.PureUtilities.Pair;
+import com.laytonsmith.persistence.io.ConnectionMixin;
 import com.laytonsmith.persistence.io.ConnectionMixinFactory;
+import com.laytonsmith.persistence.io.JournalFile;
+import com.laytonsmith.persistence.io.ReadWriteFileConnection;
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,6 +45,26 @@ public abstract class StringSerializableDataSource extends AbstractDataSource {
 	 * when the transaction finishes.
 	 */
 	private boolean hasChanges = false;
+	/**
+	 * If the journal modifier is set, this is the journal that changes are
+	 * appended to, instead of writing out the whole model.
+	 */
+	private JournalFile journal;
+	/**
+	 * Journal records made inside a transaction. These are appended to the
+	 * journal all at once when the transaction is committed.
+	 */
+	private final List<Pair<String, String>> pendingJournal = new ArrayList<Pair<String, String>>();
+	/**
+	 * True while a compaction of the journal is running in the background.
+	 */
+	private volatile boolean compacting = false;
+	/**
+	 * Once the journal has this many records in it, it is folded back into
+	 * the data file.
+	 */
+	private static final int COMPACTION_THRESHOLD = 1000;
+	private static ExecutorService compactor;
 	
 	protected StringSerializableDataSource(){
 		
@@ -55,7 +87,109 @@ public abstract class StringSerializableDataSource extends AbstractDataSource {
 	@Override
 	protected void clearKey0(DaemonManager dm, String[] key) throws DataSourceException, ReadOnlyException, IOException {
 		model.clearKey(key);
-		writeData(dm, serializeModel());
+		writeChange(dm, key, null);
+	}
+
+	/**
+	 * Writes out a change to the model, or if we are in a transaction, notes that
+	 * the change needs to be written out when the transaction finishes. If this
+	 * data source is journaled, only the change itself is written out, otherwise
+	 * the entire model is.
+	 * @param dm
+	 * @param key
+	 * @param value The new value, or null if the key was cleared
+	 */
+	private void writeChange(DaemonManager dm, String[] key, String value) throws IOException, ReadOnlyException, DataSourceException {
+		JournalFile j = getJournal();
+		if(inTransaction()){
+			if(j != null){
+				pendingJournal.add(new Pair<String, String>(StringUtils.Join(key, "."), value));
+			}
+			hasChanges = true;
+		} else if(j != null){
+			List<Pair<String, String>> change = new ArrayList<Pair<String, String>>();
+			change.add(new Pair<String, String>(StringUtils.Join(key, "."), value));
+			j.append(change);
+			checkCompaction(dm);
+		} else {
+			//We need to output the model now
+			writeData(dm, serializeModel());
+		}
+	}
+
+	/**
+	 * Returns the journal for this data source, or null if this data source
+	 * is not journaled.
+	 * @return
+	 * @throws DataSourceException 
+	 */
+	private JournalFile getJournal() throws DataSourceException {
+		if(journal == null && hasModifier(DataSourceModifier.JOURNAL)){
+			ConnectionMixin mixin = getConnectionMixin();
+			if(!(mixin instanceof ReadWriteFileConnection)){
+				throw new DataSourceException("The journal modifier can only be used with local files, but " + uri.toString() + " is not a local file.");
+			}
+			try {
+				journal = new JournalFile(new File(mixin.getPath()));
+			} catch (IOException ex) {
+				throw new DataSourceException("Could not determine the path for the journal for " + uri.toString(), ex);
+			}
+		}
+		return journal;
+	}
+
+	/**
+	 * If the journal has grown large enough, folds it back into the data file. The
+	 * model is serialized on the calling thread, so it is consistent with the journal,
+	 * but the file is written, and the journal truncated, in the background.
+	 * @param dm 
+	 */
+	private void checkCompaction(final DaemonManager dm) throws IOException {
+		if(compacting || journal.getRecordCount() < COMPACTION_THRESHOLD){
+			return;
+		}
+		compacting = true;
+		final String snapshot = serializeModel();
+		final long offset = journal.length();
+		if(dm != null){
+			dm.activateThread(null);
+		}
+		getCompactor().submit(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					((ReadWriteFileConnection) getConnectionMixin()).writeDataNow(snapshot);
+					//Only now that the data file is safely written can we drop the
+					//records it contains. If we crash before this point, the records
+					//are simply replayed again on startup, which is harmless.
+					journal.discard(offset);
+				} catch (Exception ex) {
+					Logger.getLogger(StringSerializableDataSource.class.getName()).log(Level.SEVERE, "Could not compact the journal for " + uri.toString(), ex);
+				} finally {
+					compacting = false;
+					if(dm != null){
+						dm.deactivateThread(null);
+					}
+				}
+			}
+		});
+	}
+
+	private static synchronized ExecutorService getCompactor(){
+		if(compactor == null){
+			compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "JournalCompactor");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+		}
+		return compactor;
 	}
 
 	@Override
@@ -78,10 +212,21 @@ public abstract class StringSerializableDataSource extends AbstractDataSource {
 		if(hasChanges){
 			hasChanges = false;
 			if(rollback){
+				pendingJournal.clear();
 				populate();
 			} else {
 				try {
-					writeData(dm, serializeModel());
+					JournalFile j = getJournal();
+					if(j != null){
+						try {
+							j.append(pendingJournal);
+						} finally {
+							pendingJournal.clear();
+						}
+						checkCompaction(dm);
+					} else {
+						writeData(dm, serializeModel());
+					}
 				} catch (ReadOnlyException ex) {
 					//This shouldn't happen, because we won't have been allowed to set any 
 					Logger.getLogger(StringSerializableDataSource.class.getName()).log(Level.SEVERE, null, ex);
@@ -106,6 +251,21 @@ public abstract class StringSerializableDataSource extends AbstractDataSource {
 			throw new DataSourceException("Could not populate the data source with data: " + e.getMessage(), e);
 		}
 		populateModel(data);
+		JournalFile j = getJournal();
+		if(j != null){
+			//Replay any changes that haven't been folded into the data file yet
+			try {
+				j.replay(new JournalFile.RecordHandler() {
+
+					@Override
+					public void record(String key, String value) {
+						model.set(key.split("\\."), value);
+					}
+				});
+			} catch (IOException ex) {
+				throw new DataSourceException("Could not replay the journal for " + uri.toString() + ": " + ex.getMessage(), ex);
+			}
+		}
 	}
 
 	@Override
@@ -113,6 +273,16 @@ public abstract class StringSerializableDataSource extends AbstractDataSource {
 		return model.keySet();
 	}
 
+	@Override
+	public Set<String[]> getNamespace(String[] namespace) throws DataSourceException {
+		return model.getValues(namespace).keySet();
+	}
+
+	@Override
+	protected Map<String[], String> getValues0(String[] namespace) throws DataSourceException {
+		return model.getValues(namespace);
+	}
+
 	@Override
 	protected final String get0(String[] key) throws DataSourceException {
 		return model.get(key);
@@ -128,12 +298,7 @@ public abstract class StringSerializableDataSource extends AbstractDataSource {
 			return false;
 		}
 		model.set(key, value);
-		if(!inTransaction()){
-			//We need to output the model now
-			writeData(dm, serializeModel());
-		} else {
-			hasChanges = true;
-		}
+		writeChange(dm, key, value);
 		return true;
 	}
 
@@ -1,5 +1,6 @@
 package com.laytonsmith.persistence.io;
 
+import com.laytonsmith.PureUtilities.MemoryMapFileUtil;
 import com.laytonsmith.persistence.DataSource;
 import com.laytonsmith.persistence.DataSourceException;
 import java.io.File;
@@ -19,6 +20,7 @@ public class ConnectionMixinFactory {
 	
 	public static class ConnectionMixinOptions{
 		File workingDirectory = null;
+		int writeDelay = MemoryMapFileUtil.DEFAULT_WRITE_DELAY;
 		/**
 		 * In the case of file based connections, this is the working
 		 * directory, that is, the "." directory used to resolve
@@ -29,6 +31,16 @@ public class ConnectionMixinFactory {
 			this.workingDirectory = workingDirectory;
 		}		
 		
+		/**
+		 * In the case of file based connections, this is the minimum number
+		 * of milliseconds between writes to the file. Changes made in between
+		 * writes are batched together.
+		 * @param writeDelay 
+		 */
+		public void setWriteDelay(int writeDelay){
+			this.writeDelay = writeDelay;
+		}
+		
 	}
 	
 	/**
@@ -62,7 +74,7 @@ public class ConnectionMixinFactory {
 				if(modifiers.contains(DataSource.DataSourceModifier.READONLY)){
 					return new ReadOnlyFileConnection(uri, options.workingDirectory, blankDataModel);
 				} else {
-					return new ReadWriteFileConnection(uri, options.workingDirectory, blankDataModel);
+					return new ReadWriteFileConnection(uri, options.workingDirectory, blankDataModel, options.writeDelay);
 				}
 			} catch (IOException ex) {
 				throw new DataSourceException("IOException: " + ex.getMessage(), ex);
@@ -0,0 +1,283 @@
+package com.laytonsmith.persistence.io;
+
+import com.laytonsmith.PureUtilities.Pair;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A journal file is an append only log of changes to a file based data source,
+ * which lives beside the data file itself. Instead of re-serializing the entire
+ * model on every write, each set or clear is appended as a small record, and
+ * the full model is only written out periodically, at which point the journal
+ * can be discarded. On startup, the journal is replayed on top of the data file.
+ *
+ * Each record is a single line. A set record is "S\tkey\tvalue" and a clear
+ * record is "C\tkey". Backslashes, tabs and newlines within the key or value
+ * are escaped. A trailing line with no newline is a record that was only
+ * partially written (for instance, due to a crash). It is ignored, and cut off
+ * the journal when it is replayed, so that later records start on a new line.
+ *
+ * @author lsmith
+ */
+public class JournalFile {
+
+	/**
+	 * The extension appended to the data file's name to get the journal file's name.
+	 */
+	public static final String EXTENSION = ".journal";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Receives the records in a journal, in the order they were written.
+	 */
+	public static interface RecordHandler {
+
+		/**
+		 * Called for each record in the journal.
+		 *
+		 * @param key The key, in dot notation
+		 * @param value The value, or null if the key was cleared
+		 */
+		void record(String key, String value);
+	}
+
+	private final File file;
+	private int recordCount = 0;
+
+	/**
+	 * Creates a new journal for the given data file. The journal itself is
+	 * not created until the first record is appended.
+	 *
+	 * @param dataFile The data file this journal belongs to
+	 */
+	public JournalFile(File dataFile) {
+		this.file = new File(dataFile.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Appends the given changes to the journal. A null value in the pair
+	 * means that the key was cleared.
+	 *
+	 * @param changes
+	 * @throws IOException
+	 */
+	public synchronized void append(List<Pair<String, String>> changes) throws IOException {
+		if (changes.isEmpty()) {
+			return;
+		}
+		StringBuilder b = new StringBuilder();
+		for (Pair<String, String> change : changes) {
+			if (change.getValue() == null) {
+				b.append("C\t").append(escape(change.getKey())).append("\n");
+			} else {
+				b.append("S\t").append(escape(change.getKey())).append("\t").append(escape(change.getValue())).append("\n");
+			}
+		}
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(b.toString().getBytes(UTF8));
+			out.flush();
+		} finally {
+			out.close();
+		}
+		recordCount += changes.size();
+	}
+
+	/**
+	 * Reads the journal, and sends each complete record to the handler, in order.
+	 *
+	 * @param handler
+	 * @throws IOException
+	 */
+	public synchronized void replay(RecordHandler handler) throws IOException {
+		recordCount = 0;
+		if (!file.exists()) {
+			return;
+		}
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < bytes.length) {
+				int r = in.read(bytes, read, bytes.length - read);
+				if (r == -1) {
+					break;
+				}
+				read += r;
+			}
+		} finally {
+			in.close();
+		}
+		String data = new String(bytes, UTF8);
+		int start = 0;
+		int end;
+		while ((end = data.indexOf('\n', start)) != -1) {
+			String line = data.substring(start, end);
+			start = end + 1;
+			String[] parts = line.split("\t", -1);
+			if (parts.length == 2 && "C".equals(parts[0])) {
+				handler.record(unescape(parts[1]), null);
+			} else if (parts.length == 3 && "S".equals(parts[0])) {
+				handler.record(unescape(parts[1]), unescape(parts[2]));
+			} else {
+				Logger.getLogger(JournalFile.class.getName()).log(Level.WARNING, "Skipping malformed record in journal {0}", file.getPath());
+				continue;
+			}
+			recordCount++;
+		}
+		int recordsEnd = lastRecordEnd(bytes);
+		if (recordsEnd < bytes.length) {
+			//Anything after the last newline is a partially written record, which we ignore.
+			//It is cut off, so that the next record appended doesn't end up on the same line.
+			Logger.getLogger(JournalFile.class.getName()).log(Level.WARNING, "Discarding partially written record at the end of journal {0}", file.getPath());
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(recordsEnd);
+			} finally {
+				raf.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of records currently in the journal.
+	 *
+	 * @return
+	 */
+	public synchronized int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns the current length of the journal, in bytes. This can be passed
+	 * to {@link #discard(long)} once everything up to this point has been
+	 * written out to the data file.
+	 *
+	 * @return
+	 */
+	public synchronized long length() {
+		return file.length();
+	}
+
+	/**
+	 * Discards all the records before the given offset, keeping any records that were
+	 * appended after that point. This should only be called once the data file is known
+	 * to contain all the changes before the offset.
+	 *
+	 * @param offset
+	 * @throws IOException
+	 */
+	public synchronized void discard(long offset) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		long length = file.length();
+		if (offset >= length) {
+			if (!file.delete()) {
+				new FileOutputStream(file).close();
+			}
+			recordCount = 0;
+			return;
+		}
+		byte[] tail = new byte[(int) (length - offset)];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(offset);
+			raf.readFully(tail);
+		} finally {
+			raf.close();
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(tail);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		int count = 0;
+		for (byte b : tail) {
+			if (b == '\n') {
+				count++;
+			}
+		}
+		recordCount = count;
+	}
+
+	/**
+	 * Returns the offset just past the last newline in the data, or 0 if there is none.
+	 */
+	private static int lastRecordEnd(byte[] bytes) {
+		for (int i = bytes.length - 1; i >= 0; i--) {
+			if (bytes[i] == '\n') {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	private static String escape(String s) {
+		StringBuilder b = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '\\':
+					b.append("\\\\");
+					break;
+				case '\t':
+					b.append("\\t");
+					break;
+				case '\n':
+					b.append("\\n");
+					break;
+				case '\r':
+					b.append("\\r");
+					break;
+				default:
+					b.append(c);
+			}
+		}
+		return b.toString();
+	}
+
+	private static String unescape(String s) {
+		StringBuilder b = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				char n = s.charAt(++i);
+				switch (n) {
+					case 't':
+						b.append('\t');
+						break;
+					case 'n':
+						b.append('\n');
+						break;
+					case 'r':
+						b.append('\r');
+						break;
+					default:
+						b.append(n);
+				}
+			} else {
+				b.append(c);
+			}
+		}
+		return b.toString();
+	}
+}
@@ -44,6 +44,14 @@ public class ReadWriteFileConnection implements ConnectionMixin{
 	 * the reads and writes.
 	 */
 	public ReadWriteFileConnection(URI uri, File workingDirectory, String blankDataModel) throws IOException{
+		this(uri, workingDirectory, blankDataModel, MemoryMapFileUtil.DEFAULT_WRITE_DELAY);
+	}
+
+	/**
+	 * Creates a new ReadWriteFileConnection, which waits at least writeDelay milliseconds
+	 * between writes to the file.
+	 */
+	public ReadWriteFileConnection(URI uri, File workingDirectory, String blankDataModel, int writeDelay) throws IOException{
 		{
 			//This bit is a little tricky. Since this is a file path, not a URL, we can't use most of the parts
 			//of the URI class. We need to get the scheme specific part directly, and parse it ourselves. Given
@@ -77,6 +85,7 @@ public class ReadWriteFileConnection implements ConnectionMixin{
 		}
 		this.blankDataModel = blankDataModel;
 		writer = MemoryMapFileUtil.getInstance(file, grabber);
+		writer.setWriteDelay(writeDelay);
 	}
 
 	@Override
@@ -108,6 +117,24 @@ public class ReadWriteFileConnection implements ConnectionMixin{
 		writer.mark(dm);
 	}
 
+	/**
+	 * Writes the data out to the file immediately, on the calling thread, instead of
+	 * marking it dirty for the background writer. The data is written to a temporary
+	 * file first, then moved over the real file, so the file is never left half
+	 * written. This is for callers that need to know the data is actually on disk
+	 * before they continue, for instance, before discarding a journal.
+	 * @param data
+	 * @throws ReadOnlyException
+	 * @throws IOException 
+	 */
+	public void writeDataNow(String data) throws ReadOnlyException, IOException {
+		if(reader.isZipped()){
+			throw new ReadOnlyException("Cannot write to a zipped file.");
+		}
+		this.data = data.getBytes(encoding);
+		writer.writeNow();
+	}
+
 	@Override
 	public String getPath() throws IOException {
 		return file.getCanonicalPath();
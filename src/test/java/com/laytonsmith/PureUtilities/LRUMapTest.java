@@ -0,0 +1,40 @@
+package com.laytonsmith.PureUtilities;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class LRUMapTest {
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		Map<String, Integer> map = new LRUMap<String, Integer>(3);
+		map.put("a", 1);
+		map.put("b", 2);
+		map.put("c", 3);
+		//Accessing a makes b the least recently used
+		assertEquals(Integer.valueOf(1), map.get("a"));
+		map.put("d", 4);
+		assertEquals(3, map.size());
+		assertFalse(map.containsKey("b"));
+		assertEquals(Arrays.asList("c", "a", "d"), new ArrayList<String>(map.keySet()));
+	}
+
+	@Test
+	public void testNeverExceedsMaxSize() {
+		LRUMap<Integer, Integer> map = new LRUMap<Integer, Integer>(100);
+		for (int i = 0; i < 1000; i++) {
+			map.put(i, i);
+			assertTrue(map.size() <= map.getMaxSize());
+		}
+		assertEquals(100, map.size());
+		assertTrue(map.containsKey(999));
+		assertFalse(map.containsKey(899));
+	}
+}
@@ -0,0 +1,62 @@
+package com.laytonsmith.PureUtilities;
+
+import com.laytonsmith.PureUtilities.Common.FileUtil;
+import java.io.File;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class MemoryMapFileUtilTest {
+
+	File file = new File("MemoryMapFileUtilTest.txt");
+	String data = "";
+	MemoryMapFileUtil.DataGrabber grabber = new MemoryMapFileUtil.DataGrabber() {
+
+		@Override
+		public byte[] getData() {
+			return data.getBytes();
+		}
+	};
+
+	public MemoryMapFileUtilTest() {
+	}
+
+	@Before
+	public void setUp() {
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+		new File(file.getPath() + ".tmp").delete();
+	}
+
+	@Test(timeout=10000)
+	public void testMarkWritesLatestData() throws Exception {
+		MemoryMapFileUtil writer = MemoryMapFileUtil.getInstance(file, grabber);
+		writer.setWriteDelay(100);
+		DaemonManager dm = new DaemonManager();
+		for(int i = 0; i < 100; i++){
+			data = "value" + i;
+			writer.mark(dm);
+		}
+		dm.waitForThreads();
+		assertEquals("value99", FileUtil.read(file));
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void testWriteNowReplacesFile() throws Exception {
+		FileUtil.write("a much longer old value", file);
+		MemoryMapFileUtil writer = MemoryMapFileUtil.getInstance(file, grabber);
+		data = "new";
+		writer.writeNow();
+		assertEquals("new", FileUtil.read(file));
+	}
+}
@@ -0,0 +1,96 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.CVoid;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.environments.Environment;
+import com.laytonsmith.core.environments.GlobalEnv;
+import com.laytonsmith.core.functions.Cmdline;
+import com.laytonsmith.core.functions.Function;
+import com.laytonsmith.testing.StaticTest;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class InstantReturnExecutorTest {
+
+	Environment env;
+	Target t = Target.UNKNOWN;
+
+	@BeforeClass
+	public static void setUpClass() {
+		StaticTest.InstallFakeServerFrontend();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		env = Static.GenerateStandaloneEnvironment();
+	}
+
+	@Test
+	public void testIsInstantReturn() {
+		assertTrue(InstantReturnExecutor.IsInstantReturn(new Cmdline.sys_out()));
+		//exit has to run on the main thread
+		assertFalse(InstantReturnExecutor.IsInstantReturn(new Cmdline.exit()));
+	}
+
+	@Test(timeout = 10000)
+	public void testCallsRunInOrder() throws Exception {
+		Function f = new Cmdline.sys_out();
+		PrintStream out = System.out;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		StringBuilder expected = new StringBuilder();
+		System.setOut(new PrintStream(bytes, true));
+		try {
+			for (int i = 0; i < 100; i++) {
+				Construct ret = InstantReturnExecutor.exec(f, t, env, new CString("line" + i, t));
+				assertTrue(ret instanceof CVoid);
+				expected.append("line").append(i).append(System.getProperty("line.separator"));
+			}
+			env.getEnv(GlobalEnv.class).GetDaemonManager().waitForThreads();
+		} finally {
+			System.setOut(out);
+		}
+		assertEquals(expected.toString(), bytes.toString());
+	}
+
+	@Test(timeout = 10000)
+	public void testMutableArgumentsRunInPlace() throws Exception {
+		CArray array = new CArray(t, new CString("a", t));
+		PrintStream out = System.out;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(bytes, true));
+		try {
+			InstantReturnExecutor.exec(new Cmdline.sys_out(), t, env, array);
+			//The script may change the array straight away, so the call can't be queued
+			array.push(new CString("b", t));
+			assertEquals("{a}" + System.getProperty("line.separator"), bytes.toString());
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testDrain() throws Exception {
+		InstantReturnExecutor.exec(new Cmdline.sys_err(), t, env, new CString("", t));
+		assertTrue(InstantReturnExecutor.drain(5000));
+	}
+
+	@Test(timeout = 30000)
+	public void testReloadPreferences() throws Exception {
+		InstantReturnExecutor.exec(new Cmdline.sys_err(), t, env, new CString("", t));
+		InstantReturnExecutor.ReloadPreferences();
+		//A new worker is started, rather than the call being run in place
+		assertTrue(InstantReturnExecutor.exec(new Cmdline.sys_err(), t, env, new CString("", t)) instanceof CVoid);
+		assertTrue(InstantReturnExecutor.drain(5000));
+	}
+}
@@ -5,10 +5,12 @@ package com.laytonsmith.core;
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.abstraction.MCServer;
 import com.laytonsmith.commandhelper.CommandHelperPlugin;
+import com.laytonsmith.core.constructs.IVariableList;
 import com.laytonsmith.core.constructs.Target;
 import com.laytonsmith.core.constructs.Token;
 import com.laytonsmith.core.constructs.Variable;
 import com.laytonsmith.core.environments.CommandHelperEnvironment;
+import com.laytonsmith.core.environments.GlobalEnv;
 import com.laytonsmith.core.exceptions.ConfigCompileException;
 import com.laytonsmith.core.exceptions.ConfigRuntimeException;
 import com.laytonsmith.testing.StaticTest;
@@ -518,6 +520,24 @@ public class MethodScriptCompilerTest {
         verify(fakePlayer).sendMessage("hello world \\ '");
     }
     
+	@Test
+	public void testAliasKeepsSlotsBetweenRuns() throws Exception {
+		String config = "/cmd = >>>\n"
+				+ "assign(@a, 1) msg(@a)"
+				+ "<<<";
+		Script s = MethodScriptCompiler.preprocess(MethodScriptCompiler.lex(config, null, false)).get(0);
+		s.compile();
+		s.run(s.getVariables("/cmd"), env, null);
+		IVariableList first = env.getEnv(GlobalEnv.class).GetVarList();
+		com.laytonsmith.core.environments.Environment env2 = Static.GenerateStandaloneEnvironment();
+		env2.getEnv(CommandHelperEnvironment.class).SetPlayer(fakePlayer);
+		s.run(s.getVariables("/cmd"), env2, null);
+		IVariableList second = env2.getEnv(GlobalEnv.class).GetVarList();
+		assertNotSame(first, second);
+		assertSame(first.getSlots(), second.getSlots());
+		verify(fakePlayer, times(2)).sendMessage("1");
+	}
+    
     @Test
     public void testCompile7() throws ConfigCompileException {
         String config = "/cmd = >>>\n"
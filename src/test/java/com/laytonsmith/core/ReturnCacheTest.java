@@ -0,0 +1,137 @@
+package com.laytonsmith.core;
+
+import com.laytonsmith.core.constructs.CArray;
+import com.laytonsmith.core.constructs.CBoolean;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CString;
+import com.laytonsmith.core.constructs.Construct;
+import com.laytonsmith.core.constructs.Target;
+import com.laytonsmith.core.environments.Environment;
+import com.laytonsmith.core.functions.DataHandling;
+import com.laytonsmith.core.functions.Function;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class ReturnCacheTest {
+
+	Target t = Target.UNKNOWN;
+	Function cheap = new DataHandling.is_string();
+	/**
+	 * is_string, made expensive enough to be worth caching.
+	 */
+	Function expensive = new DataHandling.is_string() {
+
+		@Override
+		public Construct exec(Target t, Environment env, Construct... args) {
+			long end = System.nanoTime() + ReturnCache.MIN_COST * 2;
+			while (System.nanoTime() < end) {
+				//Spin
+			}
+			return super.exec(t, env, args);
+		}
+	};
+
+	@Before
+	public void setUp() {
+		ReturnCache.clear();
+	}
+
+	private ReturnCache.CallSite probed(Function f) {
+		ReturnCache.CallSite site = new ReturnCache.CallSite();
+		for (int i = 0; i < ReturnCache.PROBE_SIZE; i++) {
+			ReturnCache.exec(site, f, t, null, new CString("probe", t));
+		}
+		return site;
+	}
+
+	@Test
+	public void testIsCacheable() {
+		assertTrue(ReturnCache.IsCacheable(cheap));
+		assertFalse(ReturnCache.IsCacheable(new DataHandling.assign()));
+	}
+
+	@Test
+	public void testCheapFunctionIsNotCached() {
+		ReturnCache.CallSite site = probed(cheap);
+		assertFalse(site.isEnabled());
+		assertEquals(1, ReturnCache.getDisabledCallSites());
+		ReturnCache.exec(site, cheap, t, null, new CString("a", t));
+		ReturnCache.exec(site, cheap, t, null, new CString("a", t));
+		assertEquals(0, ReturnCache.getHits());
+		assertEquals(0, ReturnCache.getMisses());
+	}
+
+	@Test
+	public void testRepeatedCallHits() {
+		ReturnCache.CallSite site = probed(expensive);
+		assertTrue(site.isCaching());
+		Construct first = ReturnCache.exec(site, expensive, t, null, new CString("a", t));
+		Construct second = ReturnCache.exec(site, expensive, t, null, new CString("a", t));
+		assertTrue(((CBoolean) first).getBoolean());
+		assertTrue(((CBoolean) second).getBoolean());
+		assertEquals(1, ReturnCache.getMisses());
+		assertEquals(1, ReturnCache.getHits());
+		//Same string, but a different type, so it isn't the same call
+		Construct third = ReturnCache.exec(site, expensive, t, null, new CInt(1, t));
+		assertFalse(((CBoolean) third).getBoolean());
+		assertEquals(2, ReturnCache.getMisses());
+		//Same type and value, but a different instance
+		ReturnCache.exec(site, expensive, t, null, new CInt("1", t));
+		assertEquals(2, ReturnCache.getHits());
+		//Same number, but the function might use the string
+		ReturnCache.exec(site, expensive, t, null, new CInt("01", t));
+		assertEquals(2, ReturnCache.getHits());
+		assertEquals(2, ReturnCache.getMisses());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsDropped() {
+		ReturnCache.CallSite site = probed(expensive);
+		for (int i = 0; i <= ReturnCache.SIZE; i++) {
+			ReturnCache.exec(site, expensive, t, null, new CInt(i, t));
+			ReturnCache.exec(site, expensive, t, null, new CInt(1, t));
+		}
+		assertEquals(ReturnCache.SIZE + 1, ReturnCache.getMisses());
+		ReturnCache.exec(site, expensive, t, null, new CInt(1, t));
+		ReturnCache.exec(site, expensive, t, null, new CInt(ReturnCache.SIZE, t));
+		assertEquals(ReturnCache.SIZE + 1, ReturnCache.getMisses());
+		ReturnCache.exec(site, expensive, t, null, new CInt(0, t));
+		assertEquals(ReturnCache.SIZE + 2, ReturnCache.getMisses());
+	}
+
+	@Test
+	public void testArraysAreNotCached() {
+		ReturnCache.CallSite site = probed(expensive);
+		ReturnCache.exec(site, expensive, t, null, new CArray(t));
+		ReturnCache.exec(site, expensive, t, null, new CArray(t));
+		assertEquals(0, ReturnCache.getHits());
+		assertEquals(0, ReturnCache.getMisses());
+	}
+
+	@Test
+	public void testPoorHitRateDisablesCallSite() {
+		ReturnCache.CallSite site = probed(expensive);
+		for (int i = 0; i < ReturnCache.SAMPLE_SIZE; i++) {
+			ReturnCache.exec(site, expensive, t, null, new CInt(i, t));
+		}
+		assertFalse(site.isEnabled());
+		assertEquals(1, ReturnCache.getDisabledCallSites());
+		ReturnCache.exec(site, expensive, t, null, new CInt(0, t));
+		assertEquals(0, ReturnCache.getHits());
+	}
+
+	@Test
+	public void testClearEmptiesCallSites() {
+		ReturnCache.CallSite site = probed(expensive);
+		ReturnCache.exec(site, expensive, t, null, new CString("a", t));
+		ReturnCache.clear();
+		ReturnCache.exec(site, expensive, t, null, new CString("a", t));
+		assertEquals(0, ReturnCache.getHits());
+		assertEquals(1, ReturnCache.getMisses());
+	}
+}
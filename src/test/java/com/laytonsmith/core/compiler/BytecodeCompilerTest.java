@@ -0,0 +1,97 @@
+package com.laytonsmith.core.compiler;
+
+import com.laytonsmith.abstraction.MCPlayer;
+import com.laytonsmith.core.Prefs;
+import com.laytonsmith.core.exceptions.ConfigCompileException;
+import com.laytonsmith.testing.StaticTest;
+import static com.laytonsmith.testing.StaticTest.*;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class BytecodeCompilerTest {
+
+	MCPlayer fakePlayer;
+
+	@Before
+	public void setUp() {
+		StaticTest.InstallFakeServerFrontend();
+		fakePlayer = GetOnlinePlayer();
+		//Compile everything straight away
+		BytecodeCompiler.SetThreshold(1);
+		BytecodeCompiler.SetEnabled(true);
+	}
+
+	@After
+	public void tearDown() {
+		BytecodeCompiler.SetThreshold(BytecodeCompiler.DEFAULT_THRESHOLD);
+		BytecodeCompiler.SetEnabled(false);
+	}
+
+	private void assertSameAsInterpreter(String expected, String script) throws ConfigCompileException {
+		assertEquals(expected, SRun(script, fakePlayer));
+		BytecodeCompiler.SetEnabled(false);
+		assertEquals(expected, SRun(script, fakePlayer));
+		BytecodeCompiler.SetEnabled(true);
+	}
+
+	public static final String LOOP = "assign(@sum, 0)"
+			+ " for(assign(@i, 0), lt(@i, 10), inc(@i), assign(@sum, add(@sum, multiply(@i, 2))))"
+			+ " @sum";
+	public static final String NESTED_SPECIAL_EXEC = "assign(@a, array())"
+			+ " foreach(array(1, 20), @i, array_push(@a, if(gt(add(@i, 1), 10), 'big', 'small')))"
+			+ " array_implode(@a, ' ')";
+	public static final String PROCEDURES = "proc(_double, @x, return(multiply(@x, 2)))"
+			+ " assign(@r, add(_double(add(1, 2)), 6))"
+			+ " @r";
+	public static final String EXCEPTIONS = "assign(@r, 'not caught')"
+			+ " assign(@zero, 0)"
+			+ " try(add(1, divide(1, @zero)), @e, assign(@r, to_lower(concat('CAU', 'GHT'))))"
+			+ " @r";
+	public static final String VARIABLES = "assign(@s, '')"
+			+ " foreach(1..3, @i, assign(@s, concat(@s, add(assign(@j, multiply(@i, 2)), @j), array_size(1..2))))"
+			+ " @s";
+	/**
+	 * The scripts that are checked here, which the benchmark also runs.
+	 */
+	public static final String[] SCRIPTS = new String[]{LOOP, NESTED_SPECIAL_EXEC, PROCEDURES, EXCEPTIONS, VARIABLES};
+
+	@Test
+	public void testLoop() throws ConfigCompileException {
+		assertSameAsInterpreter("90", LOOP);
+	}
+
+	@Test
+	public void testNestedSpecialExec() throws ConfigCompileException {
+		//if() isn't compiled, but its arguments are
+		assertSameAsInterpreter("small big", NESTED_SPECIAL_EXEC);
+	}
+
+	@Test
+	public void testProcedures() throws ConfigCompileException {
+		assertSameAsInterpreter("12", PROCEDURES);
+	}
+
+	@Test
+	public void testExceptions() throws ConfigCompileException {
+		assertSameAsInterpreter("caught", EXCEPTIONS);
+	}
+
+	@Test
+	public void testVariables() throws ConfigCompileException {
+		//assign returns the variable, which add has to resolve
+		assertSameAsInterpreter("428212", VARIABLES);
+	}
+
+	@Test
+	public void testReloadPreferences() {
+		BytecodeCompiler.SetEnabled(true);
+		BytecodeCompiler.ReloadPreferences();
+		assertEquals(Prefs.isInitialized() && Prefs.CompileHotCode(), BytecodeCompiler.IsEnabled());
+	}
+}
@@ -0,0 +1,69 @@
+package com.laytonsmith.core.constructs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class AssociativeArrayTest {
+
+	Target t = Target.UNKNOWN;
+
+	@Test
+	public void testOrder() {
+		AssociativeArray a = new AssociativeArray();
+		for (String key : new String[]{"b", "10", "2", "a", "1.5", "9"}) {
+			a.put(key, new CString(key, t));
+		}
+		assertEquals(Arrays.asList("1.5", "2", "9", "10", "a", "b"), new ArrayList<String>(a.keySet()));
+	}
+
+	@Test
+	public void testNumericKeysAreTheSame() {
+		AssociativeArray a = new AssociativeArray();
+		a.put("1", new CString("one", t));
+		a.put("01", new CString("zero one", t));
+		a.put("1.0", new CString("one point zero", t));
+		assertEquals(1, a.size());
+		assertEquals("one point zero", a.get("1").val());
+		assertEquals("one point zero", a.get("001").val());
+		//The first key is kept
+		assertEquals("1", a.keySet().iterator().next());
+		a.remove("1.");
+		assertTrue(a.isEmpty());
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		AssociativeArray a = new AssociativeArray();
+		a.put("a", new CString("1", t));
+		a.put("b", new CString("2", t));
+		a.put("c", new CString("3", t));
+		Iterator<Construct> it = a.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().val().equals("2")) {
+				it.remove();
+			}
+		}
+		assertFalse(a.containsKey("b"));
+		assertEquals(2, a.size());
+		assertEquals(Arrays.asList("a", "c"), new ArrayList<String>(a.keySet()));
+	}
+
+	@Test
+	public void testCopyIsIndependent() {
+		AssociativeArray a = new AssociativeArray();
+		a.put("a", new CString("1", t));
+		AssociativeArray copy = new AssociativeArray(a);
+		copy.put("a", new CString("2", t));
+		copy.put("b", new CString("3", t));
+		assertEquals("1", a.get("a").val());
+		assertFalse(a.containsKey("b"));
+		assertEquals("2", copy.get("a").val());
+	}
+}
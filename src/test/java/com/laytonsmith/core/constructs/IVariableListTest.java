@@ -0,0 +1,76 @@
+package com.laytonsmith.core.constructs;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class IVariableListTest {
+
+	Target t = Target.UNKNOWN;
+
+	@Test
+	public void testGetAndSet() {
+		IVariableList list = new IVariableList();
+		list.set(new IVariable("@a", new CInt(1, t), t));
+		assertEquals("1", list.get("@a", t).val());
+		IVariable ref = new IVariable("@a", t);
+		assertEquals("1", list.get(ref).val());
+		list.set(new IVariable(ref, new CInt(2, t), t));
+		assertEquals("2", list.get("@a", t).val());
+	}
+
+	@Test
+	public void testMissingVariableIsCreated() {
+		IVariableList list = new IVariableList();
+		assertFalse(list.keySet().contains("@missing"));
+		assertEquals("", list.get("@missing", t).val());
+		assertTrue(list.keySet().contains("@missing"));
+	}
+
+	@Test
+	public void testCloneIsIndependent() {
+		IVariableList list = new IVariableList();
+		list.set(new IVariable("@a", new CInt(1, t), t));
+		IVariableList clone = list.clone();
+		clone.set(new IVariable("@a", new CInt(2, t), t));
+		clone.set(new IVariable("@b", new CInt(3, t), t));
+		assertEquals("1", list.get("@a", t).val());
+		assertFalse(list.keySet().contains("@b"));
+		assertEquals("2", clone.get("@a", t).val());
+	}
+
+	@Test
+	public void testSlotsArePerTable() {
+		IVariableList list = new IVariableList();
+		for (int i = 0; i < 100; i++) {
+			list.set(new IVariable("@v" + i, new CInt(i, t), t));
+		}
+		IVariableList other = new IVariableList();
+		other.set(new IVariable("@v99", new CInt(1, t), t));
+		assertEquals(1, other.varList.length);
+		assertEquals("99", list.get("@v99", t).val());
+		assertEquals("1", other.get("@v99", t).val());
+	}
+
+	@Test
+	public void testNodeUsedWithSeveralTables() {
+		IVariableList.Slots slots = new IVariableList.Slots();
+		IVariableList first = new IVariableList(slots);
+		first.set(new IVariable("@a", new CInt(1, t), t));
+		first.set(new IVariable("@b", new CInt(2, t), t));
+		IVariableList other = new IVariableList();
+		other.set(new IVariable("@b", new CInt(3, t), t));
+		IVariable ref = new IVariable("@b", t);
+		assertEquals("2", first.get(ref).val());
+		assertEquals("3", other.get(ref).val());
+		assertEquals("2", first.get(ref).val());
+		IVariableList second = new IVariableList(slots);
+		assertEquals("", second.get(ref).val());
+		second.set(new IVariable(ref, new CInt(4, t), t));
+		assertEquals("4", second.get("@b", t).val());
+		assertEquals("2", first.get("@b", t).val());
+	}
+}
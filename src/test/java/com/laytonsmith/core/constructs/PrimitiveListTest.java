@@ -0,0 +1,78 @@
+package com.laytonsmith.core.constructs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class PrimitiveListTest {
+
+	Target t = Target.UNKNOWN;
+
+	@Test
+	public void testArraySwitchesStore() {
+		CArray ca = new CArray(t, new CInt(1, t), new CInt(2, t));
+		assertTrue(ca.getPrimitiveList() instanceof PrimitiveList.Longs);
+		ca.push(new CInt(3, t));
+		assertTrue(ca.getPrimitiveList() instanceof PrimitiveList.Longs);
+		ca.push(new CString("a", t));
+		assertNull(ca.getPrimitiveList());
+		assertEquals("{1, 2, 3, a}", ca.val());
+
+		ca = new CArray(t, new CDouble(1.5, t), new CDouble(2.5, t));
+		assertTrue(ca.getPrimitiveList() instanceof PrimitiveList.Doubles);
+		ca.set(new CInt(0, t), new CInt(1, t), t);
+		assertNull(ca.getPrimitiveList());
+		assertEquals("{1, 2.5}", ca.val());
+
+		ca = new CArray(t);
+		ca.push(new CString("a", t));
+		assertTrue(ca.getPrimitiveList() instanceof PrimitiveList.Strings);
+		ca.remove(new CInt(0, t));
+		ca.push(new CInt(5, t));
+		assertTrue(ca.getPrimitiveList() instanceof PrimitiveList.Longs);
+	}
+
+	@Test
+	public void testValuesKeepTheirString() {
+		CArray ca = new CArray(t, new CInt("007", t), new CDouble("1.50", t));
+		assertNull(ca.getPrimitiveList());
+		assertEquals("{007, 1.50}", ca.val());
+		ca = new CArray(t, new CBareString("a", t));
+		assertNull(ca.getPrimitiveList());
+	}
+
+	@Test
+	public void testClone() {
+		CArray ca = new CArray(t, new CInt(1, t), new CInt(2, t));
+		CArray clone = ca.clone();
+		clone.push(new CInt(3, t));
+		assertEquals("{1, 2}", ca.val());
+		assertEquals("{1, 2, 3}", clone.val());
+		assertTrue(clone.getPrimitiveList() instanceof PrimitiveList.Longs);
+	}
+
+	@Test
+	public void testSort() {
+		CArray ca = new CArray(t, new CInt(3, t), new CInt(-1, t), new CInt(2, t));
+		ca.sort(CArray.SortType.REGULAR);
+		assertEquals("{-1, 2, 3}", ca.val());
+		ca = new CArray(t, new CInt(10, t), new CInt(9, t));
+		ca.sort(CArray.SortType.STRING);
+		assertEquals("{10, 9}", ca.val());
+		ca = new CArray(t, new CString("b", t), new CString("B", t), new CString("a", t));
+		ca.sort(CArray.SortType.STRING);
+		assertEquals("{B, a, b}", ca.val());
+	}
+
+	@Test
+	public void testCopy() {
+		assertTrue(PrimitiveList.Copy(Arrays.<Construct>asList(new CString("a", t), new CString("b", t))) instanceof PrimitiveList.Strings);
+		assertTrue(PrimitiveList.Copy(Arrays.<Construct>asList(new CString("a", t), new CInt(1, t))) instanceof ArrayList);
+		assertTrue(PrimitiveList.Copy(new ArrayList<Construct>()) instanceof ArrayList);
+	}
+}
@@ -157,6 +157,16 @@ public class ArrayHandlingTest {
         verify(fakePlayer).sendMessage("{1, 2, 3}");
     }
 
+    @Test(timeout = 10000)
+    public void testArrayPushAssociative() throws ConfigCompileException {
+        SRun("assign(@a, array(a: a, 3: b))"
+                + "array_push(@a, c)"
+                + "array_remove(@a, 4)"
+                + "array_push(@a, d)"
+                + "msg(@a)", fakePlayer);
+        verify(fakePlayer).sendMessage("{3: b, 4: d, a: a}");
+    }
+
     @Test(expected = Exception.class)
     public void testArrayPushEx() throws CancelCommandException {
         ArrayHandling.array_push a = new ArrayHandling.array_push();
@@ -189,6 +199,48 @@ public class ArrayHandlingTest {
         assertEquals("{}", SRun("range(1, 0)", fakePlayer));
     }
 
+    @Test(timeout = 10000)
+    public void testRangeIsLazy() throws ConfigCompileException {
+        assertEquals("1000000000", SRun("array_size(range(1000000000))", fakePlayer));
+        assertEquals("999999999", SRun("array_get(range(1000000000), -1)", fakePlayer));
+        assertEquals("true", SRun("array_contains(range(0, 10, 2), 4)", fakePlayer));
+        assertEquals("false", SRun("array_contains(range(0, 10, 2), 5)", fakePlayer));
+        assertEquals("true", SRun("array_contains(range(0, 10, 2), 4.0)", fakePlayer));
+        assertEquals("false", SRun("array_contains(range(0, 10, 2), 10)", fakePlayer));
+        assertEquals("true", SRun("array_contains(3..1, 2)", fakePlayer));
+    }
+
+    @Test(timeout = 10000)
+    public void testModifyingRange() throws ConfigCompileException {
+        SRun("@a = range(3) array_push(@a, 10) msg(@a)", fakePlayer);
+        verify(fakePlayer).sendMessage("{0, 1, 2, 10}");
+        SRun("@a = range(3) array_set(@a, 0, 5) msg(@a)", fakePlayer);
+        verify(fakePlayer).sendMessage("{5, 1, 2}");
+        SRun("for(@i = 0, @i < 2, @i++, @s = 1..3 array_push(@s, 4) msg(array_size(@s)))", fakePlayer);
+        verify(fakePlayer, times(2)).sendMessage("4");
+    }
+
+    @Test(timeout = 10000)
+    public void testSliceArgumentIsCopied() throws ConfigCompileException {
+        SRun("proc(_f, @a, array_push(@a, 4) return(@a)) msg(_f(1..3)) msg(_f(1..3))", fakePlayer);
+        verify(fakePlayer, times(2)).sendMessage("{1, 2, 3, 4}");
+        SRun("proc(_g, @a, array_push(@a, 4) return(array_size(@a))) for(@i = 0, @i < 2, @i++, msg(_g(1..3)))", fakePlayer);
+        verify(fakePlayer, times(2)).sendMessage("4");
+    }
+
+    @Test(timeout = 10000)
+    public void testPrimitiveArrays() throws ConfigCompileException {
+        assertEquals("true", SRun("array_contains(array(1, 2, 3), 2.0)", fakePlayer));
+        assertEquals("false", SRun("array_contains(array(1, 2, 3), 4)", fakePlayer));
+        assertEquals("true", SRun("array_contains(array(1.5, 2.5), 2.5)", fakePlayer));
+        assertEquals("true", SRun("array_contains(array('a', 'b'), 'b')", fakePlayer));
+        assertEquals("true", SRun("array_contains(array('1.0', '2'), 1)", fakePlayer));
+        assertEquals("{1, 2, 3}", SRun("array_sort(array(3, 1, 2))", fakePlayer));
+        assertEquals("{1.5, 2.25, 3.5}", SRun("array_sort(array(3.5, 1.5, 2.25), 'NUMERIC')", fakePlayer));
+        assertEquals("-4", SRun("min(array(3, -4, 10), 2)", fakePlayer));
+        assertEquals("10.5", SRun("max(array(3.5, 10.5), array(array(1, 2)))", fakePlayer));
+    }
+
     @Test
     public void testArraySliceAndNegativeIndexes() throws ConfigCompileException {
         assertEquals("{a, b}", SRun("array(a, b, c, d, e)[..1]", null));
@@ -166,6 +166,24 @@ public class DataHandlingTest {
 		verify(fakePlayer, times(4)).sendMessage("pass");
 		verify(fakePlayer, times(0)).sendMessage("fail");
 	}
+	
+	@Test(timeout = 10000)
+	public void testForeachelseEvaluatesArrayOnce() throws Exception{
+		SRun("assign(@n, 0) foreachelse(array(inc(@n)), @val, msg(@n), msg('fail'))", fakePlayer);
+		verify(fakePlayer).sendMessage("1");
+	}
+	
+	@Test(timeout = 10000)
+	public void testForeachModifyingArray() throws Exception{
+		SRun("@array = array(1, 2) @string = ''"
+				+ " foreach(@array, @value, if(@value < 3, array_push(@array, @value + 2)) @string .= @value)"
+				+ " msg(@string)", fakePlayer);
+		verify(fakePlayer).sendMessage("1234");
+		SRun("@array = array(a: 1, c: 3) @string = ''"
+				+ " foreach(@array, @key, @value, if(@key == 'a', array_set(@array, 'b', 2) array_remove(@array, 'c')) @string .= @key)"
+				+ " msg(@string)", fakePlayer);
+		verify(fakePlayer).sendMessage("ab");
+	}
 
     @Test(timeout = 10000)
     public void testCallProcIsProc() throws ConfigCompileException {
@@ -333,6 +351,27 @@ public class DataHandlingTest {
         verify(fakePlayer).sendMessage("{1, 2}");
     }
 
+	@Test(timeout = 10000)
+	public void testProcArguments() throws ConfigCompileException {
+		SRun("proc(_proc, @a, @b, msg(@arguments))"
+				+ " _proc(1)"
+				+ " _proc(1, 2, 3)", fakePlayer);
+		verify(fakePlayer).sendMessage("{1, }");
+		verify(fakePlayer).sendMessage("{1, 2, 3}");
+	}
+
+	@Test(timeout = 10000)
+	public void testProcRedefinedBetweenCalls() throws ConfigCompileException {
+		//The same call site has to pick up the new definition
+		SRun("proc(_proc, return(1))"
+				+ " for(assign(@i, 0), lt(@i, 2), inc(@i),"
+				+ "     msg(_proc())"
+				+ "     proc(_proc, return(2))"
+				+ " )", fakePlayer);
+		verify(fakePlayer).sendMessage("1");
+		verify(fakePlayer).sendMessage("2");
+	}
+
     @Test(timeout = 10000)
     public void testIsBoolean() throws ConfigCompileException {
         SRun("msg(is_boolean(1)) msg(is_boolean(true))", fakePlayer);
@@ -5,6 +5,8 @@ package com.laytonsmith.core.functions;
 import com.laytonsmith.abstraction.MCPlayer;
 import com.laytonsmith.abstraction.MCServer;
 import com.laytonsmith.core.Static;
+import com.laytonsmith.core.constructs.CInt;
+import com.laytonsmith.core.constructs.CString;
 import com.laytonsmith.core.constructs.IVariable;
 import com.laytonsmith.core.constructs.IVariableList;
 import com.laytonsmith.core.constructs.Target;
@@ -79,6 +81,24 @@ public class MathTest {
         assertCEquals(C.onstruct(3.1415), a.exec(Target.UNKNOWN, env, C.onstruct(3), C.onstruct(0.1415)));
     }
 
+	@Test(timeout = 10000)
+	public void testIntegerMathMatchesDoubleMath() {
+		//Beyond 2^53, the results are rounded the same way the double math always has
+		assertCEquals(C.onstruct(9007199254740992L), new Math.add().exec(t, env, C.onstruct(9007199254740992L), C.onstruct(1)));
+		assertCEquals(C.onstruct(-9007199254740992L), new Math.subtract().exec(t, env, C.onstruct(-9007199254740992L), C.onstruct(1)));
+		assertCEquals(C.onstruct(9000000000L), new Math.multiply().exec(t, env, C.onstruct(3000000000L), C.onstruct(3)));
+		assertCEquals(C.onstruct(-24), new Math.multiply().exec(t, env, C.onstruct(2), C.onstruct(-3), C.onstruct(4)));
+		assertCEquals(C.onstruct(4.5), new Math.add().exec(t, env, C.onstruct(2), new CString("2.5", t)));
+		assertEquals("7", new CInt(7, t).val());
+		assertEquals("007", new CInt("007", t).val());
+		assertSame(CInt.GetCInt(5, t), CInt.GetCInt(5, t));
+		//Reading a variable doesn't change the target of the shared instance it holds
+		Target other = new Target(5, null, 0);
+		new IVariable("var", CInt.GetCInt(5, t), other).ival();
+		assertSame(t, CInt.GetCInt(5, t).getTarget());
+		assertSame(other, new IVariable("var", new CInt(5, t), other).ival().getTarget());
+	}
+
     @Test(timeout = 10000)
     public void testDec() throws ConfigCompileException {
         Math.dec a = new Math.dec();
@@ -0,0 +1,120 @@
+package com.laytonsmith.persistence;
+
+import java.net.URI;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class DataSourceFilterTest {
+
+	private static DataSourceFilter filter(String... lines) throws Exception {
+		StringBuilder b = new StringBuilder();
+		for (String line : lines) {
+			b.append(line).append("\n");
+		}
+		return new DataSourceFilter(b.toString(), new URI("test://default"));
+	}
+
+	private static String connection(DataSourceFilter filter, String key) {
+		URI uri = filter.getConnection(key);
+		return uri == null ? null : uri.getHost();
+	}
+
+	@Test
+	public void testGlobPrecedence() throws Exception {
+		DataSourceFilter f = filter(
+				"a.b.c=test://literal",
+				"a.*.c=test://star",
+				"a.**=test://globstar",
+				"**=test://all");
+		assertEquals("literal", connection(f, "a.b.c"));
+		assertEquals("star", connection(f, "a.x.c"));
+		assertEquals("globstar", connection(f, "a.x.y"));
+		assertEquals("globstar", connection(f, "a.b.c.d"));
+		assertEquals("all", connection(f, "b"));
+		assertEquals("all", connection(f, "b.a.b.c"));
+	}
+
+	@Test
+	public void testDefault() throws Exception {
+		DataSourceFilter f = filter("a.b=test://ab");
+		assertEquals("ab", connection(f, "a.b"));
+		assertEquals("default", connection(f, "a.c"));
+	}
+
+	@Test
+	public void testStarMatchesOneSegment() throws Exception {
+		DataSourceFilter f = filter(
+				"a.*=test://star",
+				"a.**=test://globstar");
+		assertEquals("star", connection(f, "a.b"));
+		assertEquals("globstar", connection(f, "a.b.c"));
+		assertEquals("default", connection(f, "a"));
+	}
+
+	@Test
+	public void testPartialGlobs() throws Exception {
+		DataSourceFilter f = filter(
+				"players.player*=test://prefix",
+				"players.*=test://star");
+		assertEquals("prefix", connection(f, "players.player1"));
+		assertEquals("star", connection(f, "players.other"));
+	}
+
+	@Test
+	public void testSpecificityTies() throws Exception {
+		//More literal characters win
+		DataSourceFilter f = filter(
+				"*s.x=test://short",
+				"player*.x=test://long");
+		assertEquals("long", connection(f, "players.x"));
+		//* is preferred over **
+		f = filter(
+				"**.x=test://globstar",
+				"*.x=test://star");
+		assertEquals("star", connection(f, "y.x"));
+		//Complete ties are broken by the filter text, regardless of the order
+		//the filters are defined in
+		f = filter(
+				"a*.b=test://first",
+				"*a.b=test://second");
+		assertEquals("second", connection(f, "aa.b"));
+		f = filter(
+				"*a.b=test://second",
+				"a*.b=test://first");
+		assertEquals("second", connection(f, "aa.b"));
+	}
+
+	@Test
+	public void testComplexFilters() throws Exception {
+		DataSourceFilter f = filter(
+				"x.a**z=test://complex",
+				"x.**=test://globstar");
+		assertEquals("complex", connection(f, "x.ab.cz"));
+		assertEquals("complex", connection(f, "x.az"));
+		assertEquals("globstar", connection(f, "x.ab.c"));
+	}
+
+	@Test
+	public void testParenthesesAreIgnored() throws Exception {
+		DataSourceFilter f = filter("a.(b).c=test://paren");
+		assertEquals("paren", connection(f, "a.b.c"));
+	}
+
+	@Test
+	public void testCacheEviction() throws Exception {
+		DataSourceFilter f = filter(
+				"a.*=test://star",
+				"a.b=test://literal");
+		assertEquals("literal", connection(f, "a.b"));
+		//Go through more keys than the cache holds, so the earlier lookups are evicted
+		for (int i = 0; i < 20000; i++) {
+			assertEquals("star", connection(f, "a.key" + i));
+		}
+		assertEquals("literal", connection(f, "a.b"));
+		assertEquals("star", connection(f, "a.key0"));
+	}
+}
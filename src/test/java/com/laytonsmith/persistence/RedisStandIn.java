@@ -0,0 +1,289 @@
+package com.laytonsmith.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * A tiny in process stand in for redis-server, which speaks just enough of the
+ * redis protocol to test the redis data source with. It supports the string
+ * commands GET, SET, DEL, EXISTS and MGET, SCAN with MATCH and COUNT, and
+ * MULTI/EXEC/DISCARD. Everything is kept in memory, and is lost once the
+ * server is stopped.
+ *
+ * @author lsmith
+ */
+public class RedisStandIn {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ServerSocket server;
+	private final Map<String, String> data = new TreeMap<String, String>();
+	private final List<Socket> clients = new ArrayList<Socket>();
+	private volatile boolean running = true;
+
+	/**
+	 * Starts the server on a free port on the loopback interface.
+	 * @throws IOException
+	 */
+	public RedisStandIn() throws IOException {
+		server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+		Thread acceptor = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while (running) {
+					try {
+						final Socket s = server.accept();
+						synchronized (clients) {
+							clients.add(s);
+						}
+						Thread client = new Thread(new Runnable() {
+
+							@Override
+							public void run() {
+								try {
+									serve(s);
+								} catch (IOException ex) {
+									//The client went away
+								}
+							}
+						}, "RedisStandIn-Client");
+						client.setDaemon(true);
+						client.start();
+					} catch (IOException ex) {
+						//The server was stopped
+					}
+				}
+			}
+		}, "RedisStandIn");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	public void stop() throws IOException {
+		running = false;
+		server.close();
+		synchronized (clients) {
+			for (Socket s : clients) {
+				s.close();
+			}
+		}
+	}
+
+	private void serve(Socket s) throws IOException {
+		InputStream in = new BufferedInputStream(s.getInputStream());
+		OutputStream out = new BufferedOutputStream(s.getOutputStream());
+		List<List<String>> queued = null;
+		while (true) {
+			List<String> command = readCommand(in);
+			if (command == null) {
+				return;
+			}
+			String name = command.get(0).toUpperCase();
+			if ("MULTI".equals(name)) {
+				queued = new ArrayList<List<String>>();
+				writeStatus(out, "OK");
+			} else if ("DISCARD".equals(name)) {
+				queued = null;
+				writeStatus(out, "OK");
+			} else if ("EXEC".equals(name)) {
+				if (queued == null) {
+					writeError(out, "ERR EXEC without MULTI");
+				} else {
+					ByteArrayOutputStream replies = new ByteArrayOutputStream();
+					synchronized (data) {
+						for (List<String> c : queued) {
+							execute(c, replies);
+						}
+					}
+					out.write(("*" + queued.size() + "\r\n").getBytes(UTF8));
+					out.write(replies.toByteArray());
+					queued = null;
+				}
+			} else if (queued != null) {
+				queued.add(command);
+				writeStatus(out, "QUEUED");
+			} else if ("QUIT".equals(name)) {
+				writeStatus(out, "OK");
+				out.flush();
+				s.close();
+				return;
+			} else {
+				synchronized (data) {
+					execute(command, out);
+				}
+			}
+			out.flush();
+		}
+	}
+
+	private void execute(List<String> command, OutputStream out) throws IOException {
+		String name = command.get(0).toUpperCase();
+		if ("PING".equals(name)) {
+			writeStatus(out, "PONG");
+		} else if ("AUTH".equals(name) || "SELECT".equals(name)) {
+			writeStatus(out, "OK");
+		} else if ("GET".equals(name)) {
+			writeBulk(out, data.get(command.get(1)));
+		} else if ("SET".equals(name)) {
+			data.put(command.get(1), command.get(2));
+			writeStatus(out, "OK");
+		} else if ("DEL".equals(name)) {
+			int count = 0;
+			for (int i = 1; i < command.size(); i++) {
+				if (data.remove(command.get(i)) != null) {
+					count++;
+				}
+			}
+			writeInteger(out, count);
+		} else if ("EXISTS".equals(name)) {
+			writeInteger(out, data.containsKey(command.get(1)) ? 1 : 0);
+		} else if ("MGET".equals(name)) {
+			out.write(("*" + (command.size() - 1) + "\r\n").getBytes(UTF8));
+			for (int i = 1; i < command.size(); i++) {
+				writeBulk(out, data.get(command.get(i)));
+			}
+		} else if ("SCAN".equals(name)) {
+			scan(command, out);
+		} else {
+			writeError(out, "ERR unknown command '" + name + "'");
+		}
+	}
+
+	/**
+	 * The cursor is simply the index into the sorted key list, which is good
+	 * enough as long as keys aren't changing during the scan.
+	 */
+	private void scan(List<String> command, OutputStream out) throws IOException {
+		int cursor = Integer.parseInt(command.get(1));
+		Pattern match = null;
+		int count = 10;
+		for (int i = 2; i < command.size() - 1; i += 2) {
+			if ("MATCH".equalsIgnoreCase(command.get(i))) {
+				match = Pattern.compile(globToRegex(command.get(i + 1)));
+			} else if ("COUNT".equalsIgnoreCase(command.get(i))) {
+				count = Integer.parseInt(command.get(i + 1));
+			}
+		}
+		List<String> keys = new ArrayList<String>(data.keySet());
+		List<String> page = new ArrayList<String>();
+		int end = Math.min(keys.size(), cursor + count);
+		for (int i = cursor; i < end; i++) {
+			if (match == null || match.matcher(keys.get(i)).matches()) {
+				page.add(keys.get(i));
+			}
+		}
+		out.write("*2\r\n".getBytes(UTF8));
+		writeBulk(out, end >= keys.size() ? "0" : Integer.toString(end));
+		out.write(("*" + page.size() + "\r\n").getBytes(UTF8));
+		for (String key : page) {
+			writeBulk(out, key);
+		}
+	}
+
+	private static String globToRegex(String glob) {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '\\' && i + 1 < glob.length()) {
+				b.append(Pattern.quote(Character.toString(glob.charAt(++i))));
+			} else if (c == '*') {
+				b.append(".*");
+			} else if (c == '?') {
+				b.append(".");
+			} else {
+				b.append(Pattern.quote(Character.toString(c)));
+			}
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Reads a command, sent as an array of bulk strings. Returns null if the client
+	 * disconnected.
+	 */
+	private static List<String> readCommand(InputStream in) throws IOException {
+		String line = readLine(in);
+		if (line == null) {
+			return null;
+		}
+		if (!line.startsWith("*")) {
+			throw new IOException("Expected a multi bulk command, but got " + line);
+		}
+		int count = Integer.parseInt(line.substring(1));
+		List<String> command = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			String header = readLine(in);
+			if (header == null || !header.startsWith("$")) {
+				throw new IOException("Expected a bulk string, but got " + header);
+			}
+			byte[] bytes = new byte[Integer.parseInt(header.substring(1))];
+			int read = 0;
+			while (read < bytes.length) {
+				int r = in.read(bytes, read, bytes.length - read);
+				if (r == -1) {
+					return null;
+				}
+				read += r;
+			}
+			//Skip the trailing \r\n
+			in.read();
+			in.read();
+			command.add(new String(bytes, UTF8));
+		}
+		return command;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		int c;
+		while ((c = in.read()) != -1) {
+			if (c == '\r') {
+				in.read();
+				return new String(b.toByteArray(), UTF8);
+			}
+			b.write(c);
+		}
+		return null;
+	}
+
+	private static void writeStatus(OutputStream out, String status) throws IOException {
+		out.write(("+" + status + "\r\n").getBytes(UTF8));
+	}
+
+	private static void writeError(OutputStream out, String error) throws IOException {
+		out.write(("-" + error + "\r\n").getBytes(UTF8));
+	}
+
+	private static void writeInteger(OutputStream out, long i) throws IOException {
+		out.write((":" + i + "\r\n").getBytes(UTF8));
+	}
+
+	private static void writeBulk(OutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.write("$-1\r\n".getBytes(UTF8));
+			return;
+		}
+		byte[] bytes = s.getBytes(UTF8);
+		out.write(("$" + bytes.length + "\r\n").getBytes(UTF8));
+		out.write(bytes);
+		out.write("\r\n".getBytes(UTF8));
+	}
+}
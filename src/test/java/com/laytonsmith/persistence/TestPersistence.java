@@ -6,6 +6,7 @@ import com.laytonsmith.persistence.StringSerializableDataSource;
 import com.laytonsmith.persistence.DataSourceFactory;
 import com.laytonsmith.persistence.PersistenceNetwork;
 import com.laytonsmith.persistence.MemoryDataSource;
+import com.laytonsmith.persistence.SQLiteDataSource;
 import com.laytonsmith.persistence.DataSourceFilter;
 import com.laytonsmith.PureUtilities.DaemonManager;
 import com.laytonsmith.PureUtilities.Common.FileUtil;
@@ -16,6 +17,10 @@ import com.laytonsmith.persistence.io.ConnectionMixinFactory;
 import com.laytonsmith.persistence.io.ReadWriteFileConnection;
 import static com.laytonsmith.testing.StaticTest.*;
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -26,6 +31,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import org.junit.After;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -215,6 +222,22 @@ public class TestPersistence {
 		deleteFiles("folder/");
 	}
 	
+	@Test
+	public void testConflictingKeysNamespace() throws Exception{
+		//Hidden keys in the default data source shouldn't show up in a namespace lookup
+		PersistenceNetwork network = new PersistenceNetwork("**=transient:json://folder/default.json\nkey.*=transient:json://folder/other.json\n", new URI("default"), options);
+		FileUtil.write("{\"key\":{\"key\":\"value1\"}}", new File("folder/other.json"), true);
+		FileUtil.write("{\"key\":{\"key\":\"nope\",\"a\":{\"b\":\"value2\"}}}", new File("folder/default.json"), true);
+		Map<String[], String> values = network.getNamespace(new String[]{"key"});
+		List<String> output = new ArrayList<String>();
+		for(Map.Entry<String[], String> entry : values.entrySet()){
+			output.add(StringUtils.Join(entry.getKey(), ".") + ": " + entry.getValue());
+		}
+		Collections.sort(output);
+		assertEquals("key.a.b: value2, key.key: value1", StringUtils.Join(output, ", "));
+		deleteFiles("folder/");
+	}
+
 	@Test
 	public void testSQLiteBasic() throws Exception{
 		PersistenceNetwork network = new PersistenceNetwork("**=sqlite://folder/sqlite.db", new URI("default"), options);
@@ -224,6 +247,143 @@ public class TestPersistence {
 		deleteFiles("folder/");
 	}
 	
+	@Test
+	public void testSQLiteTransaction() throws Exception{
+		try{
+			DataSource ds = DataSourceFactory.GetDataSource("sqlite://folder/sqlite.db", options);
+			ds.set(dm, new String[]{"a", "b"}, "value1");
+			ds.startTransaction(dm);
+			ds.set(dm, new String[]{"a", "b"}, "value2");
+			ds.set(dm, new String[]{"a", "c"}, "value3");
+			ds.stopTransaction(dm, true);
+			assertEquals("value1", ds.get(new String[]{"a", "b"}));
+			assertFalse(ds.hasKey(new String[]{"a", "c"}));
+			ds.startTransaction(dm);
+			ds.set(dm, new String[]{"a", "c"}, "value3");
+			ds.stopTransaction(dm, false);
+			assertEquals("value3", ds.get(new String[]{"a", "c"}));
+			assertEquals(2, ds.getNamespace(new String[]{"a"}).size());
+		} finally {
+			deleteFiles("folder/");
+		}
+	}
+
+	@Test(timeout=10000)
+	public void testSQLiteSharedTransaction() throws Exception{
+		try{
+			//Both data sources share the same connection
+			DataSource ds1 = DataSourceFactory.GetDataSource("sqlite://folder/sqlite.db", options);
+			final DataSource ds2 = DataSourceFactory.GetDataSource("sqlite://folder/sqlite.db", options);
+			ds1.startTransaction(dm);
+			ds1.set(dm, new String[]{"a", "b"}, "value1");
+			final CountDownLatch done = new CountDownLatch(1);
+			final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+			new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try{
+						ds2.set(dm, new String[]{"a", "c"}, "value2");
+					} catch(Exception e){
+						errors.add(e);
+					}
+					done.countDown();
+				}
+			}).start();
+			//The other data source must wait for the transaction, rather than joining it
+			Thread.sleep(200);
+			assertEquals(1, done.getCount());
+			ds1.stopTransaction(dm, true);
+			done.await();
+			assertEquals(new ArrayList<Exception>(), errors);
+			assertFalse(ds1.hasKey(new String[]{"a", "b"}));
+			assertEquals("value2", ds1.get(new String[]{"a", "c"}));
+		} finally {
+			SQLiteDataSource.CloseConnections();
+			deleteFiles("folder/");
+		}
+	}
+
+	@Test
+	public void testMySQL() throws Exception{
+		//H2 in MySQL mode stands in for a real MySQL server here. The table doesn't
+		//exist yet, so the data source has to create it.
+		final String connectionString = "jdbc:h2:mem:persistence;MODE=MySQL;DB_CLOSE_DELAY=-1";
+		DataSource ds = new MySQLDataSource(new URI("mysql://localhost/test/persistence"), options){
+
+			@Override
+			protected String getConnectionString() {
+				return connectionString;
+			}
+		};
+		ds.set(dm, new String[]{"a", "b"}, "value1");
+		assertEquals("value1", ds.get(new String[]{"a", "b"}));
+		//Keys are case sensitive
+		assertFalse(ds.hasKey(new String[]{"A", "b"}));
+		ds.startTransaction(dm);
+		ds.set(dm, new String[]{"a", "b"}, "value2");
+		ds.set(dm, new String[]{"a", "c"}, "value3");
+		ds.set(dm, new String[]{"ab"}, "value4");
+		assertEquals("value2", ds.get(new String[]{"a", "b"}));
+		ds.stopTransaction(dm, false);
+		assertEquals("value2", ds.get(new String[]{"a", "b"}));
+		assertEquals(2, ds.getNamespace(new String[]{"a"}).size());
+		ds.startTransaction(dm);
+		ds.clearKey(dm, new String[]{"a", "c"});
+		ds.stopTransaction(dm, true);
+		assertTrue(ds.hasKey(new String[]{"a", "c"}));
+		ds.clearKey(dm, new String[]{"a", "c"});
+		assertFalse(ds.hasKey(new String[]{"a", "c"}));
+		//Once the pools are closed, the old data source can't be used, but new ones can
+		MySQLDataSource.ClosePools();
+		try{
+			ds.get(new String[]{"a", "b"});
+			fail("Expected the closed pool to be rejected");
+		} catch(DataSourceException e){
+			//Pass
+		}
+		DataSource ds2 = new MySQLDataSource(new URI("mysql://localhost/test/persistence"), options){
+
+			@Override
+			protected String getConnectionString() {
+				return connectionString;
+			}
+		};
+		assertEquals("value2", ds2.get(new String[]{"a", "b"}));
+		MySQLDataSource.ClosePools();
+	}
+
+	@Test(timeout=10000)
+	public void testRedis() throws Exception{
+		RedisStandIn redis = new RedisStandIn();
+		try{
+			DataSource ds = DataSourceFactory.GetDataSource("redis://127.0.0.1:" + redis.getPort() + "?pool=2", options);
+			ds.set(dm, new String[]{"a", "b"}, "value1");
+			ds.set(dm, new String[]{"ab"}, "value2");
+			assertEquals("value1", ds.get(new String[]{"a", "b"}));
+			ds.startTransaction(dm);
+			ds.set(dm, new String[]{"a", "c"}, "value3");
+			ds.clearKey(dm, new String[]{"a", "b"});
+			assertEquals("value3", ds.get(new String[]{"a", "c"}));
+			ds.stopTransaction(dm, true);
+			assertFalse(ds.hasKey(new String[]{"a", "c"}));
+			ds.startTransaction(dm);
+			ds.set(dm, new String[]{"a", "c"}, "value3");
+			ds.set(dm, new String[]{"a", "d", "e"}, "value4");
+			ds.stopTransaction(dm, false);
+			Map<String[], String> values = ds.getValues(new String[]{"a"});
+			List<String> output = new ArrayList<String>();
+			for(Map.Entry<String[], String> entry : values.entrySet()){
+				output.add(StringUtils.Join(entry.getKey(), ".") + ": " + entry.getValue());
+			}
+			Collections.sort(output);
+			assertEquals("a.b: value1, a.c: value3, a.d.e: value4", StringUtils.Join(output, ", "));
+			assertEquals(4, ds.keySet().size());
+		} finally {
+			redis.stop();
+		}
+	}
+
 	@Test(expected=IllegalArgumentException.class)
 	public void testNamespaceWithUnderscore() throws Exception {
 		PersistenceNetwork network = new PersistenceNetwork("**=sqlite://folder/sqlite.db", new URI("default"), options);
@@ -276,6 +436,234 @@ public class TestPersistence {
 		}
 	}
 
+	@Test(timeout=60000)
+	public void testConcurrentAccess() throws Exception {
+		final PersistenceNetwork network = new PersistenceNetwork("a.**=mem:concurrenta\nb.**=mem:concurrentb\n**=json://folder/concurrent.json", new URI("default"), options);
+		final String[] areas = new String[]{"a", "b", "c"};
+		final int threadCount = 8;
+		final int iterations = 200;
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> threads = new ArrayList<Thread>();
+		try{
+			for(int t = 0; t < threadCount; t++){
+				final int id = t;
+				Thread thread = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							start.await();
+							for(int i = 0; i < iterations; i++){
+								String[] key = new String[]{areas[i % areas.length], "t" + id, "k" + i};
+								String value = id + ":" + i;
+								network.set(dm, key, value);
+								if(!value.equals(network.get(key))){
+									throw new AssertionError("Read back the wrong value for " + StringUtils.Join(key, "."));
+								}
+								if(i % 20 == 0){
+									network.getNamespace(new String[]{areas[i % areas.length], "t" + id});
+								}
+							}
+						} catch(Throwable e){
+							errors.add(e);
+						}
+					}
+				}, "PersistenceStress-" + t);
+				threads.add(thread);
+				thread.start();
+			}
+			start.countDown();
+			for(Thread thread : threads){
+				thread.join();
+			}
+			dm.waitForThreads();
+			if(!errors.isEmpty()){
+				throw new AssertionError(errors.get(0));
+			}
+			for(int t = 0; t < threadCount; t++){
+				for(int i = 0; i < iterations; i++){
+					assertEquals(t + ":" + i, network.get(new String[]{areas[i % areas.length], "t" + t, "k" + i}));
+				}
+			}
+			for(int a = 0; a < areas.length; a++){
+				int expected = 0;
+				for(int i = a; i < iterations; i += areas.length){
+					expected += threadCount;
+				}
+				assertEquals(expected, network.getNamespace(new String[]{areas[a]}).size());
+			}
+		} finally {
+			MemoryDataSource.ClearDatabases();
+			deleteFiles("folder/");
+		}
+	}
+
+	@Test(timeout=10000)
+	public void testAsync() throws Exception {
+		try{
+			PersistenceNetwork network = new PersistenceNetwork("a.**=async:json://folder/async.json\n**=json://folder/default.json", new URI("default"), options);
+			network.setMainThread(Thread.currentThread());
+			String[] key = new String[]{"a", "b"};
+			try{
+				network.get(key);
+				fail("Expected async data sources to reject synchronous access from the main thread");
+			} catch(DataSourceException e){
+				//Pass
+			}
+			//Other data sources are unaffected
+			network.set(dm, new String[]{"b", "c"}, "value");
+			final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+			network.setAsync(dm, key, "value1", null);
+			Future<String> f = network.getAsync(dm, key, new PersistenceNetwork.Callback<String>() {
+
+				@Override
+				public void result(String result) {
+					results.add(result);
+				}
+
+				@Override
+				public void error(Exception error) {
+					results.add("error");
+				}
+			});
+			assertEquals("value1", f.get());
+			dm.waitForThreads();
+			assertEquals(Arrays.asList("value1"), results);
+		} finally {
+			deleteFiles("folder/");
+		}
+	}
+
+	@Test(timeout=10000)
+	public void testAsyncWriteCallbacks() throws Exception {
+		try{
+			PersistenceNetwork network = new PersistenceNetwork("**=async:json://folder/async.json", new URI("default"), options);
+			network.setMainThread(Thread.currentThread());
+			final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+			network.setAsync(dm, new String[]{"a", "b"}, "value1", new PersistenceNetwork.Callback<Boolean>() {
+
+				@Override
+				public void result(Boolean result) {
+					results.add("set " + result);
+				}
+
+				@Override
+				public void error(Exception error) {
+					results.add("error");
+				}
+			}).get();
+			//The value has been accepted, but not written yet
+			assertEquals(new ArrayList<String>(), results);
+			network.clearKeyAsync(dm, new String[]{"a", "c"}, new PersistenceNetwork.Callback<Void>() {
+
+				@Override
+				public void result(Void result) {
+					results.add("clear");
+				}
+
+				@Override
+				public void error(Exception error) {
+					results.add("error");
+				}
+			});
+			assertTrue(network.hasKeyAsync(dm, new String[]{"a", "b"}, null).get());
+			assertEquals(1, network.getNamespaceAsync(dm, new String[]{"a"}, null).get().size());
+			dm.waitForThreads();
+			assertEquals(Arrays.asList("set true", "clear"), results);
+		} finally {
+			deleteFiles("folder/");
+		}
+	}
+
+	@Test
+	public void testWriteBuffer() throws Exception {
+		try{
+			PersistenceNetwork network = new PersistenceNetwork("**=json://folder/buffer.json", new URI("default"), options);
+			network.set(dm, new String[]{"a", "c"}, "old");
+			network.flush();
+			dm.waitForThreads();
+			for(int i = 0; i < 100; i++){
+				network.set(dm, new String[]{"a", "b"}, "value" + i);
+			}
+			network.clearKey(dm, new String[]{"a", "c"});
+			//Reads see the buffered values, before they are written out
+			assertEquals("value99", network.get(new String[]{"a", "b"}));
+			assertFalse(network.hasKey(new String[]{"a", "c"}));
+			Map<String[], String> values = network.getNamespace(new String[]{"a"});
+			assertEquals(1, values.size());
+			assertEquals("value99", values.values().iterator().next());
+			network.flush();
+			dm.waitForThreads();
+			assertEquals("{\"a\":{\"b\":\"value99\"}}", FileUtil.read(new File("folder/buffer.json")));
+		} finally {
+			deleteFiles("folder/");
+		}
+	}
+
+	@Test
+	public void testFailedFlushIsRetried() throws Exception {
+		try{
+			PersistenceNetwork network = new PersistenceNetwork("**=json://folder/failing.json", new URI("default"), options);
+			network.set(dm, new String[]{"a", "b"}, "old");
+			network.flush();
+			//Swap the data source for one that fails to write until it is told not to
+			Map handles = GetPrivate(network, "dsCache", Map.class);
+			Object handle = handles.values().iterator().next();
+			final DataSource ds = GetPrivate(handle, "ds", DataSource.class);
+			final boolean[] failing = new boolean[]{true};
+			DataSource failingDs = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class[]{DataSource.class}, new InvocationHandler() {
+
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					if(failing[0] && (method.getName().equals("set") || method.getName().equals("clearKey"))){
+						throw new DataSourceException("Write failed");
+					}
+					try{
+						return method.invoke(ds, args);
+					} catch(InvocationTargetException e){
+						throw e.getCause();
+					}
+				}
+			});
+			SetPrivate(handle, "ds", failingDs, DataSource.class);
+			network.set(dm, new String[]{"a", "b"}, "new");
+			try{
+				network.flush();
+				fail("Expected the flush to fail");
+			} catch(DataSourceException e){
+				//Expected
+			}
+			//The change is still buffered, and the error was already thrown, so it isn't reported again
+			assertEquals("new", network.get(new String[]{"a", "b"}));
+			failing[0] = false;
+			network.flush();
+			assertEquals("new", ds.get(new String[]{"a", "b"}));
+		} finally {
+			deleteFiles("folder/");
+		}
+	}
+
+	@Test
+	public void testJournal() throws Exception {
+		try{
+			PersistenceNetwork network = new PersistenceNetwork("**=journal:json://folder/journal.json", new URI("default"), options);
+			network.set(dm, new String[]{"a", "b"}, "value1");
+			network.set(dm, new String[]{"a", "c"}, "value2");
+			network.clearKey(dm, new String[]{"a", "c"});
+			dm.waitForThreads();
+			//The data file shouldn't have been rewritten, only the journal appended to
+			assertFalse(FileUtil.read(new File("folder/journal.json")).contains("value1"));
+			assertTrue(new File("folder/journal.json.journal").exists());
+			//A new network should replay the journal on top of the data file
+			PersistenceNetwork network2 = new PersistenceNetwork("**=journal:json://folder/journal.json", new URI("default"), options);
+			assertEquals("value1", network2.get(new String[]{"a", "b"}));
+			assertFalse(network2.hasKey(new String[]{"a", "c"}));
+		} finally {
+			deleteFiles("folder/");
+		}
+	}
+
 	public String doOutput(String uri, Map<String[], String> data) {
 		try {
 			DataSource ds = DataSourceFactory.GetDataSource(uri, options);
@@ -0,0 +1,98 @@
+package com.laytonsmith.persistence.io;
+
+import com.laytonsmith.PureUtilities.Pair;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author lsmith
+ */
+public class JournalFileTest {
+
+	File dataFile;
+	File journalFile;
+
+	@Before
+	public void setUp() throws IOException {
+		dataFile = File.createTempFile("journal", ".json");
+		journalFile = new File(dataFile.getPath() + JournalFile.EXTENSION);
+	}
+
+	@After
+	public void tearDown() {
+		dataFile.delete();
+		journalFile.delete();
+	}
+
+	private static List<Pair<String, String>> changes(String... keysAndValues) {
+		List<Pair<String, String>> list = new ArrayList<Pair<String, String>>();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			list.add(new Pair<String, String>(keysAndValues[i], keysAndValues[i + 1]));
+		}
+		return list;
+	}
+
+	private static List<String> replay(JournalFile journal) throws IOException {
+		final List<String> records = new ArrayList<String>();
+		journal.replay(new JournalFile.RecordHandler() {
+
+			@Override
+			public void record(String key, String value) {
+				records.add(key + "=" + value);
+			}
+		});
+		return records;
+	}
+
+	@Test
+	public void testReplay() throws IOException {
+		JournalFile journal = new JournalFile(dataFile);
+		journal.append(changes("a.b", "value1", "a.c", "tab\there\nand newline \\"));
+		journal.append(changes("a.b", null));
+		assertEquals(3, journal.getRecordCount());
+		JournalFile reopened = new JournalFile(dataFile);
+		assertEquals(Arrays.asList("a.b=value1", "a.c=tab\there\nand newline \\", "a.b=null"), replay(reopened));
+		assertEquals(3, reopened.getRecordCount());
+	}
+
+	@Test
+	public void testReplayAfterTornRecord() throws IOException {
+		JournalFile journal = new JournalFile(dataFile);
+		journal.append(changes("a", "1", "b", "2"));
+		FileOutputStream out = new FileOutputStream(journalFile, true);
+		try {
+			out.write("S\tc\tpartial".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		JournalFile reopened = new JournalFile(dataFile);
+		assertEquals(Arrays.asList("a=1", "b=2"), replay(reopened));
+		assertEquals(2, reopened.getRecordCount());
+		//The torn record is cut off, so the next record isn't appended to it
+		reopened.append(changes("d", "4"));
+		assertEquals(Arrays.asList("a=1", "b=2", "d=4"), replay(new JournalFile(dataFile)));
+	}
+
+	@Test
+	public void testDiscard() throws IOException {
+		JournalFile journal = new JournalFile(dataFile);
+		journal.append(changes("a", "1", "b", "2"));
+		long offset = journal.length();
+		journal.append(changes("c", "3"));
+		journal.discard(offset);
+		assertEquals(1, journal.getRecordCount());
+		assertEquals(Arrays.asList("c=3"), replay(new JournalFile(dataFile)));
+		journal.discard(journal.length());
+		assertEquals(0, journal.getRecordCount());
+		assertEquals(new ArrayList<String>(), replay(new JournalFile(dataFile)));
+	}
+}